@@ -13,7 +13,10 @@ import static rtgre.chat.ChatApplication.LOGGER;
  */
 public class ChatLauncher {
     /**
-     * Avec le paramètre "server" sur la ligne de commande, ChatServer, sinon lance ChatApplication
+     * Avec le paramètre "server" sur la ligne de commande, ChatServer, sinon lance ChatApplication.
+     * Les options suivantes sont transmises au serveur, par exemple `server --engine=nio --io-threads=4`
+     * pour utiliser le moteur réseau non-bloquant, ou `server --engine=virtual` pour un thread virtuel par client
+     * (voir {@link rtgre.server.ServerConfig#fromArgs(String[])}).
      * @param args Paramètres de la ligne de commande
      */
     public static void main(String[] args) {
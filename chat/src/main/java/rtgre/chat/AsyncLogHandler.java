@@ -0,0 +1,169 @@
+package rtgre.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Handler asynchrone : les enregistrements sont déposés dans une file bornée et publiés par un thread
+ * d'écriture dédié auprès des handlers cibles (console, fichier). La mise en forme et les entrées/sorties
+ * ne sont donc jamais faites par les threads réseau. Un dépôt n'attend jamais : lorsque la file est pleine,
+ * l'enregistrement est abandonné et comptabilisé ({@link #getDropped()}).
+ */
+public class AsyncLogHandler extends Handler {
+    /** Délai maximal d'attente du thread d'écriture à la fermeture, en millisecondes */
+    private static final long CLOSE_TIMEOUT_MS = 1000;
+    /** Handlers auxquels les enregistrements sont publiés */
+    private final List<Handler> targets;
+    /** File des enregistrements en attente de publication */
+    private final BlockingQueue<LogRecord> queue;
+    /** Nombre d'enregistrements abandonnés faute de place dans la file */
+    private final LongAdder dropped = new LongAdder();
+    /** Thread d'écriture */
+    private final Thread writer;
+    /** Le handler est-il fermé ? */
+    private volatile boolean closed = false;
+
+    /**
+     * Crée le handler, sans démarrer son thread d'écriture (voir {@link #start(List, int)})
+     * @param targets Les handlers auxquels publier les enregistrements
+     * @param capacity La capacité de la file d'attente
+     */
+    private AsyncLogHandler(List<Handler> targets, int capacity) {
+        this.targets = List.copyOf(targets);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        setLevel(Level.ALL);
+        this.writer = Thread.ofPlatform().name("log-writer").daemon().unstarted(this::writeLoop);
+    }
+
+    /**
+     * Crée un handler et démarre son thread d'écriture, une fois le handler entièrement construit
+     * @param targets Les handlers auxquels publier les enregistrements
+     * @param capacity La capacité de la file d'attente
+     * @return Le handler
+     */
+    public static AsyncLogHandler start(List<Handler> targets, int capacity) {
+        AsyncLogHandler async = new AsyncLogHandler(targets, capacity);
+        async.writer.start();
+        return async;
+    }
+
+    /**
+     * Remplace les handlers d'un logger par un unique handler asynchrone qui leur délègue les publications
+     * @param logger Le logger, en général le logger racine
+     * @param capacity La capacité de la file d'attente
+     * @return Le handler installé, ou `null` si le logger n'a aucun handler
+     */
+    public static AsyncLogHandler install(Logger logger, int capacity) {
+        List<Handler> targets = new ArrayList<>();
+        for (Handler handler : logger.getHandlers()) {
+            if (handler instanceof AsyncLogHandler) {
+                return (AsyncLogHandler) handler;
+            }
+            targets.add(handler);
+        }
+        if (targets.isEmpty()) {
+            return null;
+        }
+        for (Handler handler : targets) {
+            logger.removeHandler(handler);
+        }
+        AsyncLogHandler async = start(targets, capacity);
+        logger.addHandler(async);
+        return async;
+    }
+
+    /**
+     * Dépose un enregistrement dans la file, sans attendre. La classe et la méthode appelantes sont déterminées
+     * avant le dépôt, tant que la pile d'appels de l'émetteur est disponible.
+     * @param record L'enregistrement
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        record.getSourceClassName();
+        if (!queue.offer(record)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Boucle du thread d'écriture : publie les enregistrements auprès des handlers cibles,
+     * en vidant leurs tampons chaque fois que la file est vide
+     */
+    private void writeLoop() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                LogRecord record = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    for (Handler target : targets) {
+                        target.publish(record);
+                    }
+                }
+                if (queue.isEmpty()) {
+                    flushTargets();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Vide les tampons des handlers cibles
+     */
+    private void flushTargets() {
+        for (Handler target : targets) {
+            target.flush();
+        }
+    }
+
+    /**
+     * Vide les tampons des handlers cibles ; les enregistrements encore en file sont publiés par le thread d'écriture
+     */
+    @Override
+    public void flush() {
+        flushTargets();
+    }
+
+    /**
+     * Ferme le handler : les enregistrements en file sont publiés, puis les handlers cibles sont fermés
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Handler target : targets) {
+            target.close();
+        }
+    }
+
+    /**
+     * Getter de `dropped`
+     * @return Le nombre d'enregistrements abandonnés faute de place dans la file
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Nombre d'enregistrements en attente de publication
+     * @return La taille de la file
+     */
+    public int getPending() {
+        return queue.size();
+    }
+}
@@ -13,7 +13,6 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.util.*;
 import java.util.logging.Level;
-import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
 /**
@@ -22,6 +21,8 @@ import java.util.logging.Logger;
 public class ChatApplication extends Application {
     /** Logger de l'application graphique */
     public static final Logger LOGGER = Logger.getLogger(ChatApplication.class.getCanonicalName());
+    /** Façade de journalisation différée, au-dessus de {@link #LOGGER} */
+    public static final ChatLog LOG = new ChatLog(LOGGER);
     /** Controller de l'application de chat */
     private ChatController controller;
     /** Stage principal */
@@ -30,7 +31,7 @@ public class ChatApplication extends Application {
         try {
             InputStream is = ChatApplication.class
                     .getResource("logging.properties").openStream();
-            LogManager.getLogManager().readConfiguration(is);
+            ChatLog.configure(is);
             if (!Files.exists(new File("target/").toPath())) {
                 Files.createDirectory(new File("target").toPath());
             }
@@ -11,16 +11,20 @@ import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.ContextMenuEvent;
+import javafx.scene.input.ScrollEvent;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import net.synedra.validatorfx.Check;
 import net.synedra.validatorfx.Validator;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import rtgre.chat.graphisme.ContactListViewCell;
 import rtgre.chat.graphisme.PostListViewCell;
@@ -39,6 +43,7 @@ import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static rtgre.chat.ChatApplication.LOG;
 import static rtgre.chat.ChatApplication.LOGGER;
 
 /**
@@ -95,8 +100,8 @@ public class ChatController implements Initializable {
     private Validator validatorLogin = new Validator();
     /** Client de connexion */
     private ChatClient client = null;
-    /** Liste des messages */
-    private PostVector postVector;
+    /** Les messages reçus, par conversation et par identifiant */
+    private PostStore postStore;
     /** Liste des salons */
     private RoomMap roomMap = new RoomMap();
     /** Liste observable associée aux salons */
@@ -113,6 +118,23 @@ public class ChatController implements Initializable {
     private MenuItem editMenuItem;
     /** Menu `cancelMenuItem` */
     private MenuItem cancelMenuItem;
+    /** Nombre de posts demandés par page de l'historique */
+    private static final int HISTORY_PAGE_SIZE = 50;
+    /** Table de ventilation des évènements reçus du serveur, avec leurs statistiques par type */
+    private final EventDispatcher<ChatController, JSONObject> dispatcher = new EventDispatcher<ChatController, JSONObject>()
+            .onEach(EventType.CONT, ChatController::handleContEvent)
+            .onEach(EventType.POST, ChatController::handlePostEvent)
+            .onEach(EventType.ROOM, ChatController::handleRoomEvent)
+            .onEach(EventType.PAGE, ChatController::handlePageEvent)
+            .onEach(EventType.BATCH, ChatController::handleBatchEvent);
+    /** Contact ou salon dont l'historique est affiché */
+    private String historySelect;
+    /** Curseur de la page suivante de l'historique (contenu du dernier évènement "PAGE" reçu) */
+    private JSONObject historyCursor;
+    /** Reste-t-il des posts plus anciens à demander ? */
+    private boolean historyHasMore = false;
+    /** Une page de l'historique est-elle en cours de chargement ? */
+    private boolean historyLoading = false;
 
     /**
      * Initialisation du composant graphique
@@ -179,6 +201,7 @@ public class ChatController implements Initializable {
 
         initContextMenu();
         postListView.setOnContextMenuRequested(this::handleContextMenu);
+        postListView.addEventFilter(ScrollEvent.SCROLL, this::handlePostListScroll);
 
         initContactListView();
         initPostListView();
@@ -258,7 +281,7 @@ public class ChatController implements Initializable {
             if (controller.isOk()) {
                 Post post = new Post(postUUID, timestamp, from, to, controller.hostTextField.getText());
                 client.sendPostEvent(post);
-                postVector.remove(postListView.getSelectionModel().getSelectedItem());
+                postStore.remove(postListView.getSelectionModel().getSelectedItem());
                 postsObservableList.remove(postListView.getSelectionModel().getSelectedItem());
                 postListView.refresh();
             }
@@ -281,7 +304,7 @@ public class ChatController implements Initializable {
         Post post = new Post(postUUID, timestamp, from, to, "Ce message a été supprimé.");
         post.setEditable(false);
         client.sendPostEvent(post);
-        postVector.remove(postListView.getSelectionModel().getSelectedItem());
+        postStore.remove(postListView.getSelectionModel().getSelectedItem());
         postsObservableList.remove(postListView.getSelectionModel().getSelectedItem());
         postListView.refresh();
     }
@@ -429,36 +452,19 @@ public class ChatController implements Initializable {
             matcher.matches();
             String host = matcher.group(1);
             int port = (matcher.group(2) != null) ? Integer.parseInt(matcher.group(2)) : 2024;
-            try {
-                LOGGER.info(host + ":" + port);
-                this.client = new ChatClient(host, port, this);
-                initContactListView();
-                initPostListView();
-                clearLists();
-                contactMap.add(this.contact);
-
-                client.sendAuthEvent(contact);
-                this.contact.setConnected(true);
-                client.sendListRoomEvent();
-                client.sendEvent(new rtgre.modeles.Event(rtgre.modeles.Event.LIST_CONTACTS, new JSONObject()));
-                client.sendEvent(new rtgre.modeles.Event(rtgre.modeles.Event.CONT, contact.toJsonObject()));
-                initContactListView();
-                initPostListView();
-                this.statusLabel.setText("%s%s@%s:%s".formatted(i18nBundle.getString("connected"), this.contact.getLogin(), host, port));
-                this.connectionButton.setText(i18nBundle.getString("disconnect"));
-
+            LOGGER.info(host + ":" + port);
+            Thread connecting = new Thread(() -> {
                 try {
-                    properties.setProperty("login", loginTextField.getText());
-                    properties.store(new FileOutputStream(getClass().getResource("config.properties").getPath()), null);
-                } catch (Exception e) {
-                    LOGGER.warning("Unable to store login in config!");
+                    ChatClient connected = ChatClient.connect(host, port, this, Framing.LENGTH_PREFIXED, EventCodec.BINARY);
+                    Platform.runLater(() -> onConnected(connected, host, port));
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, e.getMessage(), e);
+                    Platform.runLater(this::onConnectionError);
                 }
-
-            } catch (Exception e) {
-                new Alert(Alert.AlertType.ERROR, i18nBundle.getString("connectionError")).showAndWait();
-                connectionButton.setSelected(false);
-            }
-        } else if (!connectionButton.isSelected()) {
+            }, "connection");
+            connecting.setDaemon(true);
+            connecting.start();
+        } else if (!connectionButton.isSelected() && this.client != null) {
             this.client.sendQuitEvent();
             clearLists();
             if (this.client.isConnected()) {
@@ -469,12 +475,62 @@ public class ChatController implements Initializable {
         }
     }
 
+    /**
+     * Fin de la connexion au serveur, sur le thread de l'interface : initialise les listes et s'authentifie
+     * @param connected Le client connecté
+     * @param host IP ou nom de domaine du serveur
+     * @param port port d'écoute du serveur
+     */
+    private void onConnected(ChatClient connected, String host, int port) {
+        if (!connectionButton.isSelected()) {
+            connected.close();
+            return;
+        }
+        this.client = connected;
+        try {
+            initContactListView();
+            initPostListView();
+            clearLists();
+            contactMap.add(this.contact);
+
+            this.contact.setConnected(true);
+            client.sendEvents(() -> {
+                client.sendAuthEvent(contact);
+                client.sendListRoomEvent();
+                client.sendListContactEvent();
+                client.sendEvent(new rtgre.modeles.Event(rtgre.modeles.Event.CONT, contact.toJsonObject()));
+            });
+            initContactListView();
+            initPostListView();
+            this.statusLabel.setText("%s%s@%s:%s".formatted(i18nBundle.getString("connected"), this.contact.getLogin(), host, port));
+            this.connectionButton.setText(i18nBundle.getString("disconnect"));
+
+            try {
+                properties.setProperty("login", loginTextField.getText());
+                properties.store(new FileOutputStream(getClass().getResource("config.properties").getPath()), null);
+            } catch (Exception e) {
+                LOGGER.warning("Unable to store login in config!");
+            }
+
+        } catch (Exception e) {
+            onConnectionError();
+        }
+    }
+
+    /**
+     * Échec de la connexion au serveur, sur le thread de l'interface
+     */
+    private void onConnectionError() {
+        new Alert(Alert.AlertType.ERROR, i18nBundle.getString("connectionError")).showAndWait();
+        connectionButton.setSelected(false);
+    }
+
     /**
      * Vide toutes les maps, les vecteurs et les listes observables.
      */
     private void clearLists() {
         this.contactMap = new ContactMap();
-        this.postVector = new PostVector();
+        this.postStore = new PostStore();
         this.roomMap = new RoomMap();
         contactObservableList.clear();
         postsObservableList.clear();
@@ -631,7 +687,7 @@ public class ChatController implements Initializable {
         postsObservableList.clear();
         postsObservableList.add(postSys);
         client.sendEvent(new rtgre.modeles.Event("JOIN", new JSONObject().put("room", roomSelected.getRoomName())));
-        client.sendListPostEvent(0, roomSelected.toString());
+        requestHistory(roomSelected.toString());
         postListView.refresh();
     }
 
@@ -653,36 +709,160 @@ public class ChatController implements Initializable {
         Post postSys = new Post("system", loginTextField.getText(), i18nBundle.getString("systemHelloContact") + contactSelected.getLogin());
         postsObservableList.clear();
         postsObservableList.add(postSys);
-        client.sendListPostEvent(0, contactSelected.getLogin());
+        requestHistory(contactSelected.getLogin());
         postListView.refresh();
     }
 
 
     /**
-     * Callback gérant les évènements réseaux reçus en provenance du serveur, en fonction du type de l'évènement
+     * Demande la page la plus récente de l'historique d'une conversation
+     * @param select Le login du contact ou le salon sélectionné
+     */
+    private void requestHistory(String select) {
+        historySelect = select;
+        historyCursor = null;
+        historyHasMore = false;
+        historyLoading = true;
+        client.sendListPostPageEvent(select, HISTORY_PAGE_SIZE, null, null);
+    }
+
+    /**
+     * Demande la page précédente de l'historique de la conversation affichée, s'il en reste une
+     * et qu'aucune page n'est déjà en cours de chargement
+     */
+    private void requestOlderPosts() {
+        if (client == null || historySelect == null || historyCursor == null || !historyHasMore || historyLoading) {
+            return;
+        }
+        historyLoading = true;
+        client.sendListPostPageEvent(historySelect, HISTORY_PAGE_SIZE,
+                historyCursor.getLong("beforeTimestamp"), historyCursor.getString("beforeId"));
+    }
+
+    /**
+     * Remonter dans la liste des messages alors qu'elle est déjà en haut demande les messages plus anciens
+     * @param e L'évènement de défilement
+     */
+    private void handlePostListScroll(ScrollEvent e) {
+        if (e.getDeltaY() <= 0) {
+            return;
+        }
+        for (Node node : postListView.lookupAll(".scroll-bar")) {
+            if (node instanceof ScrollBar bar && bar.getOrientation() == Orientation.VERTICAL
+                    && bar.isVisible() && bar.getValue() > bar.getMin()) {
+                return;
+            }
+        }
+        requestOlderPosts();
+    }
+
+    /**
+     * Callback gérant les évènements réseaux reçus en provenance du serveur, en fonction du type de l'évènement,
+     * ventilés par la table {@link #dispatcher}
      * @param event L'évènement reçu
      */
     public void handleEvent(rtgre.modeles.Event event) {
-        LOGGER.info("Received new event! : " + event);
-        LOGGER.info(event.getType());
-        if (event.getType().equals("CONT")) {
-            handleContEvent(event.getContent());
-        } else if (event.getType().equals(rtgre.modeles.Event.POST)) {
-            handlePostEvent(event.getContent());
-        } else if (event.getType().equals(rtgre.modeles.Event.ROOM)) {
-            handleRoomEvent(event.getContent());
-        } else {
+        LOG.log(Level.FINE, "Received new event! : %s", event);
+        if (!dispatcher.dispatch(EventType.fromTag(event.getType()), this, event.getContent())) {
             LOGGER.warning("Unhandled event type: " + event.getType());
             this.client.close();
         }
     }
 
+    /**
+     * Statistiques du traitement des évènements reçus du serveur, par type : nombre d'évènements,
+     * d'erreurs et durée des traitements
+     * @return Les statistiques des types déjà reçus
+     */
+    public Map<EventType, EventTypeStats> getEventStats() {
+        return dispatcher.getStats();
+    }
+
+    /**
+     * Traite un lot d'évènements "POST", "CONT" ou "ROOM" en une seule mise à jour de l'affichage
+     * @param content Le contenu d'un évènement `"BTCH"`
+     */
+    private void handleBatchEvent(JSONObject content) {
+        String type = content.getString("type");
+        JSONArray items = content.getJSONArray("items");
+        if (type.equals(rtgre.modeles.Event.POST)) {
+            handlePostBatch(items);
+        } else if (type.equals(rtgre.modeles.Event.CONT)) {
+            List<Contact> added = new ArrayList<>();
+            for (int i = 0; i < items.length(); i++) {
+                Contact newContact = updateContact(items.getJSONObject(i));
+                if (newContact != null) {
+                    added.add(newContact);
+                }
+            }
+            contactObservableList.addAll(added);
+            contactsListView.refresh();
+        } else if (type.equals(rtgre.modeles.Event.ROOM)) {
+            List<Room> rooms = new ArrayList<>();
+            for (int i = 0; i < items.length(); i++) {
+                Room room = new Room(items.getJSONObject(i).getString("room"));
+                roomMap.add(room);
+                rooms.add(room);
+            }
+            roomObservableList.addAll(rooms);
+            roomsListView.refresh();
+        } else {
+            LOGGER.warning("Unhandled batch type: " + type);
+        }
+    }
+
+    /**
+     * Traite un lot de posts : ceux de la conversation affichée remplacent leurs éventuelles versions précédentes
+     * puis la liste est triée et rafraîchie une seule fois ; les autres sont traités un par un
+     * @param items Les contenus des posts
+     */
+    private void handlePostBatch(JSONArray items) {
+        String displayed = (historySelect == null) ? null : Post.conversationKey(contact.getLogin(), historySelect);
+        List<Post> posts = new ArrayList<>(items.length());
+        Set<UUID> ids = new HashSet<>();
+        for (int i = 0; i < items.length(); i++) {
+            Post post = Post.fromJson(items.getJSONObject(i));
+            if (post.getConversation().equals(displayed)) {
+                posts.add(post);
+                ids.add(post.getId());
+            } else {
+                handlePostEvent(items.getJSONObject(i));
+            }
+        }
+        if (posts.isEmpty()) {
+            return;
+        }
+        for (Post post : posts) {
+            postStore.add(post);
+        }
+        postsObservableList.removeIf(post -> ids.contains(post.getId()));
+        postsObservableList.addAll(posts);
+        postListView.getItems().sort(Comparator.comparingLong(Post::getTimestamp));
+        postListView.refresh();
+    }
+
+    /**
+     * Traite la fin d'une page de l'historique : mémorise le curseur de la page suivante
+     * et s'il reste des posts plus anciens à demander
+     * @param content Le contenu d'un évènement `"PAGE"`
+     */
+    private void handlePageEvent(JSONObject content) {
+        if (!content.getString("select").equals(historySelect)) {
+            return;
+        }
+        historyLoading = false;
+        historyHasMore = content.getBoolean("hasMore");
+        if (content.has("beforeTimestamp")) {
+            historyCursor = content;
+        }
+    }
+
     /**
      * Traite les évènements de type "CONT" informant de l'état d'un contact
      * @param content Le contenu d'un évènement `"CONT"`
      */
     private void handleRoomEvent(JSONObject content) {
-        LOGGER.info(content.toString());
+        LOG.log(Level.FINEST, content::toString);
         Room room = new Room(content.getString("room"));
         roomMap.add(room);
         roomObservableList.add(room);
@@ -695,75 +875,68 @@ public class ChatController implements Initializable {
      */
     private void handlePostEvent(JSONObject content) {
 
-        LOGGER.info("Selected: " + roomsListView.getSelectionModel().getSelectedItem());
-        LOGGER.info("From: " + content.getString("from"));
-        LOGGER.info("To: " + content.getString("to"));
+        LOG.log(Level.FINEST, "Selected: %s, from: %s, to: %s", roomsListView.getSelectionModel().getSelectedItem(),
+                content.getString("from"), content.getString("to"));
 
         try {
             if (!content.getString("to").contains("#")) {
-                LOGGER.info("New message to contact!");
+                LOG.log(Level.FINEST, "New message to contact!");
                 if (contactsListView.getSelectionModel().getSelectedItem().getLogin().equals(content.getString("to"))) {
-                    LOGGER.info("New message! to:dm, from:" + content.getString("from"));
-                    postVector.remove(Post.fromJson(content));
-                    postsObservableList.remove(Post.fromJson(content));
-                    postVector.add(Post.fromJson(content));
-                    postsObservableList.add(Post.fromJson(content));
+                    LOG.log(Level.FINEST, "New message! to:dm, from:%s", content.getString("from"));
+                    Post post = Post.fromJson(content);
+                    postStore.add(post);
+                    postsObservableList.remove(post);
+                    postsObservableList.add(post);
 
                     postListView.refresh();
                 }
                 if (contact.getLogin().equals(content.getString("to"))) {
                     if (contactsListView.getSelectionModel().getSelectedItem().getLogin().equals(content.getString("from"))) {
-                        LOGGER.info("New message! to:dm, from:myself");
-                        postVector.remove(Post.fromJson(content));
-                        postsObservableList.remove(Post.fromJson(content));
-                        postVector.add(Post.fromJson(content));
-                        postsObservableList.add(Post.fromJson(content));
+                        LOG.log(Level.FINEST, "New message! to:dm, from:myself");
+                        Post post = Post.fromJson(content);
+                        postStore.add(post);
+                        postsObservableList.remove(post);
+                        postsObservableList.add(post);
 
                         postListView.refresh();
 
                     } else {
                         contactMap.getContact(content.getString("from")).getUnreadCount().incrementUnreadCount();
                         contactsListView.refresh();
-                        LOGGER.info("New unread message ! from:" + content.getString("from"));
-                        LOGGER.info("%d".formatted(contactsListView.getSelectionModel().getSelectedItem().getUnreadCount().getUnreadCount()));
+                        LOG.log(Level.FINEST, "New unread message ! from:%s (%d)", content.getString("from"),
+                                contactsListView.getSelectionModel().getSelectedItem().getUnreadCount().getUnreadCount());
                     }
                 }
 
             } else {
-                LOGGER.info("New message to room!");
+                LOG.log(Level.FINEST, "New message to room!");
                 if (roomsListView.getSelectionModel().getSelectedItem().getRoomName().equals(content.getString("to"))) {
-                    LOGGER.info("New message! to:room, from:myself");
-                    postVector.remove(Post.fromJson(content));
-                    postsObservableList.remove(Post.fromJson(content));
-                    postVector.add(Post.fromJson(content));
-                    postsObservableList.add(Post.fromJson(content));
+                    LOG.log(Level.FINEST, "New message! to:room, from:myself");
+                    Post post = Post.fromJson(content);
+                    postStore.add(post);
+                    postsObservableList.remove(post);
+                    postsObservableList.add(post);
 
                     postListView.refresh();
                 } else {
                     roomMap.get(content.getString("to")).getUnreadCount().incrementUnreadCount();
                     roomsListView.refresh();
-                    LOGGER.info("New unread message ! from:" + content.getString("from"));
-                    LOGGER.info("%d".formatted(contactsListView.getSelectionModel().getSelectedItem().getUnreadCount().getUnreadCount()));
+                    LOG.log(Level.FINEST, "New unread message ! from:%s (%d)", content.getString("from"),
+                            contactsListView.getSelectionModel().getSelectedItem().getUnreadCount().getUnreadCount());
                 }
             }
         } catch (Exception e) {
             if (content.getString("to").contains("#")) {
                 roomMap.get(content.getString("to")).getUnreadCount().incrementUnreadCount();
                 roomsListView.refresh();
-                LOGGER.info("New message to room + nothing sel");
+                LOG.log(Level.FINEST, "New message to room + nothing sel");
             } else {
                 contactMap.getContact(content.getString("from")).getUnreadCount().incrementUnreadCount();
                 contactsListView.refresh();
-                LOGGER.info("New message to contact + nothing sel");
+                LOG.log(Level.FINEST, "New message to contact + nothing sel");
             }
         } finally {
-            postListView.getItems().sort((o1,o2)->{
-                if(o1.equals(o2)) return 0;
-                if(o1.getTimestamp() > o2.getTimestamp())
-                    return 1;
-                else
-                    return 0;
-            });
+            postListView.getItems().sort(Comparator.comparingLong(Post::getTimestamp));
             postListView.refresh();
         }
     }
@@ -774,23 +947,36 @@ public class ChatController implements Initializable {
      * @param content Le contenu d'un évènement `"CONT"`
      */
     private void handleContEvent(JSONObject content) {
+        Contact newContact = updateContact(content);
+        if (newContact != null) {
+            contactObservableList.add(newContact);
+        }
+        contactsListView.refresh();
+    }
+
+    /**
+     * Met à jour l'état d'un contact connu, ou crée le contact s'il est inconnu
+     * @param content Le contenu d'un évènement `"CONT"`
+     * @return Le contact créé, à ajouter à la liste affichée, ou `null` si le contact était déjà connu
+     */
+    private Contact updateContact(JSONObject content) {
         Contact contact = contactMap.getContact(content.getString("login"));
         java.awt.Image avatar = null;
         if (!content.getString("avatar").isEmpty()) {
             avatar = Contact.base64ToImage(content.getString("avatar"));
         }
         if (contact != null) {
-            LOGGER.info(contactMap.toString());
+            LOG.log(Level.FINEST, contactMap::toString);
             contactMap.getContact(content.getString("login")).setConnected(content.getBoolean("connected"));
             if (avatar != null) {
-                LOGGER.log(Level.FINEST, avatar.toString());
+                LOG.log(Level.FINEST, avatar::toString);
                 contactMap.getContact(content.getString("login")).setAvatar(avatar);
             }
-            contactsListView.refresh();
-            LOGGER.info(contactMap.toString());
+            LOG.log(Level.FINEST, contactMap::toString);
+            return null;
         } else {
-            LOGGER.log(Level.FINEST, content.toString());
-            LOGGER.info(contactMap.toString());
+            LOG.log(Level.FINEST, content::toString);
+            LOG.log(Level.FINEST, contactMap::toString);
             Contact user = Contact.fromJSON(
                     content,
                     new File("chat/src/main/resources/rtgre/chat/avatars.png")
@@ -799,8 +985,8 @@ public class ChatController implements Initializable {
                 user.setAvatar(avatar);
             }
             contactMap.add(user);
-            contactObservableList.add(user);
-            LOGGER.info(contactMap.toString());
+            LOG.log(Level.FINEST, contactMap::toString);
+            return user;
         }
     }
 }
\ No newline at end of file
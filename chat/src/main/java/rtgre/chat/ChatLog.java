@@ -0,0 +1,206 @@
+package rtgre.chat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Façade de journalisation du client et du serveur, au-dessus d'un {@link Logger} :
+ * un message n'est construit que si son niveau est actif, et sa mise en forme (`String.formatted`)
+ * est différée jusqu'à sa publication par un handler — sur le thread d'écriture de l'{@link AsyncLogHandler}
+ * lorsqu'il est installé. Les arguments doivent donc être des valeurs qui ne changent plus
+ * (chaines, évènements reçus, identifiants...).
+ * Les messages propres à chaque évènement reçu ou émis sont journalisés aux niveaux FINE ou FINEST.
+ */
+public final class ChatLog {
+    /** Propriété de `logging.properties` activant l'{@link AsyncLogHandler} (`true` par défaut) */
+    public static final String ASYNC_PROPERTY = "rtgre.chat.ChatLog.async";
+    /** Propriété de `logging.properties` fixant la capacité de la file de l'{@link AsyncLogHandler} */
+    public static final String CAPACITY_PROPERTY = "rtgre.chat.ChatLog.capacity";
+    /** Capacité par défaut de la file de l'{@link AsyncLogHandler} */
+    public static final int DEFAULT_CAPACITY = 8192;
+    /** Parcours de la pile d'appels, pour attribuer chaque message à son appelant plutôt qu'à la façade */
+    private static final StackWalker WALKER = StackWalker.getInstance();
+    /** Le logger sous-jacent */
+    private final Logger logger;
+
+    /**
+     * Constructeur
+     * @param logger Le logger sous-jacent
+     */
+    public ChatLog(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Lit la configuration de la journalisation puis, sauf si `rtgre.chat.ChatLog.async=false`,
+     * remplace les handlers du logger racine par un {@link AsyncLogHandler} qui leur délègue les publications
+     * @param configuration Le contenu de `logging.properties`
+     * @throws IOException si la configuration ne peut être lue
+     */
+    public static void configure(InputStream configuration) throws IOException {
+        LogManager manager = LogManager.getLogManager();
+        manager.readConfiguration(configuration);
+        if (!"false".equalsIgnoreCase(manager.getProperty(ASYNC_PROPERTY))) {
+            int capacity = DEFAULT_CAPACITY;
+            String property = manager.getProperty(CAPACITY_PROPERTY);
+            if (property != null) {
+                try {
+                    capacity = Integer.parseInt(property.trim());
+                } catch (NumberFormatException e) {
+                    Logger.getLogger("").warning("Capacité de journalisation invalide : " + property);
+                }
+            }
+            AsyncLogHandler.install(Logger.getLogger(""), capacity);
+        }
+    }
+
+    /**
+     * Getter du logger sous-jacent
+     * @return Le logger
+     */
+    public Logger getLogger() {
+        return logger;
+    }
+
+    /**
+     * Le niveau est-il actif ? À tester avant de préparer des arguments coûteux
+     * @param level Le niveau
+     * @return `true` si un message de ce niveau serait publié
+     */
+    public boolean isLoggable(Level level) {
+        return logger.isLoggable(level);
+    }
+
+    /**
+     * Journalise un message constant
+     * @param level Le niveau
+     * @param message Le message
+     */
+    public void log(Level level, String message) {
+        if (logger.isLoggable(level)) {
+            publish(new LogRecord(level, message));
+        }
+    }
+
+    /**
+     * Journalise un message mis en forme à sa publication
+     * @param level Le niveau
+     * @param format Le format, à la manière de {@link String#formatted(Object...)}
+     * @param arg L'argument du format
+     */
+    public void log(Level level, String format, Object arg) {
+        if (logger.isLoggable(level)) {
+            publish(new FormattedRecord(level, format, new Object[] {arg}));
+        }
+    }
+
+    /**
+     * Journalise un message mis en forme à sa publication
+     * @param level Le niveau
+     * @param format Le format, à la manière de {@link String#formatted(Object...)}
+     * @param arg1 Le premier argument du format
+     * @param arg2 Le second argument du format
+     */
+    public void log(Level level, String format, Object arg1, Object arg2) {
+        if (logger.isLoggable(level)) {
+            publish(new FormattedRecord(level, format, new Object[] {arg1, arg2}));
+        }
+    }
+
+    /**
+     * Journalise un message mis en forme à sa publication
+     * @param level Le niveau
+     * @param format Le format, à la manière de {@link String#formatted(Object...)}
+     * @param arg1 Le premier argument du format
+     * @param arg2 Le deuxième argument du format
+     * @param arg3 Le troisième argument du format
+     */
+    public void log(Level level, String format, Object arg1, Object arg2, Object arg3) {
+        if (logger.isLoggable(level)) {
+            publish(new FormattedRecord(level, format, new Object[] {arg1, arg2, arg3}));
+        }
+    }
+
+    /**
+     * Journalise un message construit par un fournisseur, appelé seulement si le niveau est actif
+     * @param level Le niveau
+     * @param message Le fournisseur du message
+     */
+    public void log(Level level, Supplier<String> message) {
+        if (logger.isLoggable(level)) {
+            publish(new LogRecord(level, message.get()));
+        }
+    }
+
+    /**
+     * Journalise un message accompagné d'une exception
+     * @param level Le niveau
+     * @param message Le message
+     * @param thrown L'exception
+     */
+    public void log(Level level, String message, Throwable thrown) {
+        if (logger.isLoggable(level)) {
+            LogRecord record = new LogRecord(level, message);
+            record.setThrown(thrown);
+            publish(record);
+        }
+    }
+
+    /**
+     * Transmet un enregistrement au logger, qui le filtre et le remet à ses handlers.
+     * La classe et la méthode appelantes sont renseignées ici, la pile d'appels n'étant plus celle de l'émetteur
+     * lorsque l'enregistrement est publié par l'{@link AsyncLogHandler}.
+     * @param record L'enregistrement
+     */
+    private void publish(LogRecord record) {
+        WALKER.walk(frames -> frames.filter(frame -> !frame.getClassName().equals(ChatLog.class.getName())).findFirst())
+                .ifPresent(frame -> {
+                    record.setSourceClassName(frame.getClassName());
+                    record.setSourceMethodName(frame.getMethodName());
+                });
+        record.setLoggerName(logger.getName());
+        logger.log(record);
+    }
+
+    /**
+     * Enregistrement dont le message n'est mis en forme qu'à la première lecture,
+     * c'est-à-dire par le formateur du handler qui le publie
+     */
+    private static final class FormattedRecord extends LogRecord {
+        /** Version de la forme sérialisée, celle de {@link LogRecord} étendue du message mis en forme */
+        private static final long serialVersionUID = 1L;
+        /** Les arguments du format, libérés une fois le message construit */
+        private transient Object[] args;
+        /** Le message mis en forme, `null` tant qu'il n'a pas été lu */
+        private String formatted;
+
+        /**
+         * Constructeur
+         * @param level Le niveau
+         * @param format Le format
+         * @param args Les arguments du format
+         */
+        FormattedRecord(Level level, String format, Object[] args) {
+            super(level, format);
+            this.args = args;
+        }
+
+        /**
+         * Message mis en forme, construit à la première lecture
+         * @return Le message
+         */
+        @Override
+        public synchronized String getMessage() {
+            if (formatted == null) {
+                formatted = super.getMessage().formatted(args);
+                args = null;
+            }
+            return formatted;
+        }
+    }
+}
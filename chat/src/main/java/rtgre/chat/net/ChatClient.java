@@ -1,17 +1,22 @@
 package rtgre.chat.net;
 
 import javafx.application.Platform;
+import org.json.JSONException;
 import org.json.JSONObject;
 import rtgre.chat.ChatController;
 import rtgre.modeles.Contact;
 import rtgre.modeles.Event;
+import rtgre.modeles.EventCodec;
+import rtgre.modeles.Framing;
 import rtgre.modeles.Message;
 import rtgre.modeles.Post;
 
 import java.io.IOException;
+import java.net.ProtocolException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static rtgre.chat.ChatApplication.LOG;
 import static rtgre.chat.ChatApplication.LOGGER;
 
 /**
@@ -37,25 +42,97 @@ public class ChatClient extends ClientTCP {
         this.listener = listener;
     }
 
+    /**
+     * Ouvre la connexion TCP au serveur <code>host:port</code> avec le découpage demandé
+     * (voir {@link ClientTCP#ClientTCP(String, int, Framing)})
+     *
+     * @param host IP ou nom de domaine du serveur
+     * @param port port d'écoute du serveur
+     * @param listener instance de ChatController liée au client
+     * @param framing Le découpage du flux
+     * @throws IOException si la connexion échoue ou si le serveur n'accepte pas le découpage demandé
+     */
+    public ChatClient(String host, int port, ChatController listener, Framing framing) throws IOException {
+        super(host, port, framing);
+        this.listener = listener;
+    }
+
+    /**
+     * Ouvre la connexion TCP au serveur <code>host:port</code> avec le découpage et l'encodage demandés
+     * (voir {@link ClientTCP#ClientTCP(String, int, Framing, EventCodec)})
+     *
+     * @param host IP ou nom de domaine du serveur
+     * @param port port d'écoute du serveur
+     * @param listener instance de ChatController liée au client
+     * @param framing Le découpage du flux
+     * @param codec L'encodage des évènements
+     * @throws IOException si la connexion échoue ou si le serveur n'accepte pas le découpage ou l'encodage demandé
+     */
+    public ChatClient(String host, int port, ChatController listener, Framing framing, EventCodec codec) throws IOException {
+        super(host, port, framing, codec);
+        this.listener = listener;
+    }
+
+    /**
+     * Ouvre la connexion au serveur avec le découpage et l'encodage demandés, puis, si le serveur ne les accepte pas
+     * (serveur historique, mandataire...), rouvre la connexion en mode {@link Framing#LINE} avec l'encodage JSON.
+     * L'appel est bloquant pendant la négociation : il ne doit pas être fait depuis le thread de l'interface.
+     *
+     * @param host IP ou nom de domaine du serveur
+     * @param port port d'écoute du serveur
+     * @param listener instance de ChatController liée au client
+     * @param framing Le découpage du flux souhaité
+     * @param codec L'encodage des évènements souhaité
+     * @return Le client connecté
+     * @throws IOException si la connexion échoue
+     */
+    public static ChatClient connect(String host, int port, ChatController listener, Framing framing, EventCodec codec) throws IOException {
+        try {
+            return new ChatClient(host, port, listener, framing, codec);
+        } catch (ProtocolException e) {
+            LOG.log(Level.WARNING, "%s, repli sur le mode %s", e.getMessage(), Framing.LINE);
+            return new ChatClient(host, port, listener, Framing.LINE, EventCodec.JSON);
+        }
+    }
+
 
     /**
-     * Envoi d'un évènement, sérialisé dans sa représentation JSON, au serveur.
+     * Envoi d'un évènement au serveur, sérialisé dans sa représentation JSON
+     * ou selon l'encodage négocié avec le serveur.
      * @param event L'évènement à envoyer
      */
     public void sendEvent(Event event) {
         connected = true;
         try {
+            if (codec != EventCodec.JSON) {
+                LOG.log(Level.FINE, BLUE + "Envoi: %s" + RST, event);
+                this.send(event.toFrame());
+                return;
+            }
             String message = event.toJson();
             if (message == null) { // fin du flux stdIn
                 message = END_MESSAGE;
             }
-            LOGGER.log(Level.FINE, BLUE + "Envoi: " + message + RST);
+            LOG.log(Level.FINE, BLUE + "Envoi: %s" + RST, message);
             this.send(message);
             if (END_MESSAGE.equals(message)) {
                 connected = false;
             }
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, e.getMessage(), e);
+            LOG.log(Level.SEVERE, e.getMessage(), e);
+            connected = false;
+        }
+    }
+
+    /**
+     * Envoi de plusieurs évènements en une seule écriture sur la socket
+     * @param sends Les envois à regrouper (appels aux méthodes `send...Event`), dans l'ordre
+     */
+    public void sendEvents(Runnable sends) {
+        try {
+            sendGrouped(sends);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, e.getMessage(), e);
             connected = false;
         }
     }
@@ -85,13 +162,41 @@ public class ChatClient extends ClientTCP {
     }
 
     /**
-     * Demande la liste des salons (évènement de type "LSTR")
+     * Demande une page de l'historique des posts (évènement de type "LSTP" avec une taille de page) :
+     * les `limit` posts les plus récents antérieurs au curseur. Le serveur répond par les posts, regroupés en un évènement "BTCH",
+     * puis par un évènement "PAGE".
+     * @param select Le login du contact ou le salon de discussion avec lequel les posts ont été échangés
+     * @param limit Le nombre maximal de posts demandés
+     * @param beforeTimestamp Le timestamp du curseur, ou `null` pour demander les posts les plus récents
+     * @param beforeId L'identifiant du curseur, ou `null`
+     */
+    public void sendListPostPageEvent(String select, int limit, Long beforeTimestamp, String beforeId) {
+        JSONObject content = new JSONObject()
+                .put("select", select)
+                .put("limit", limit)
+                .put("batch", true);
+        if (beforeTimestamp != null) {
+            content.put("beforeTimestamp", beforeTimestamp).put("beforeId", beforeId);
+        }
+        sendEvent(new Event(Event.LIST_POSTS, content));
+    }
+
+    /**
+     * Demande la liste des salons (évènement de type "LSTR"), reçue en un évènement "BTCH"
      */
     public void sendListRoomEvent() {
-        Event listRoomEvent = new Event(Event.LIST_ROOMS, new JSONObject());
+        Event listRoomEvent = new Event(Event.LIST_ROOMS, new JSONObject().put("batch", true));
         sendEvent(listRoomEvent);
     }
 
+    /**
+     * Demande la liste des contacts (évènement de type "LSTC"), reçue en un évènement "BTCH"
+     */
+    public void sendListContactEvent() {
+        Event listContactEvent = new Event(Event.LIST_CONTACTS, new JSONObject().put("batch", true));
+        sendEvent(listContactEvent);
+    }
+
     /**
      * Envoie un évènement de fermeture de connexion (de type "QUIT")
      */
@@ -102,24 +207,31 @@ public class ChatClient extends ClientTCP {
 
 
     /**
-     * Boucle de réception des messages : chaque message est un évènement sérialisé en JSON, qui est transféré à ChatController.handleEvent(rtgre.modeles.Event) pour traitement.
-     * Si le message n'est pas conforme (format JSON), la connection est stoppée.
+     * Boucle de réception des messages : chaque message est un évènement, décodé selon l'encodage de la connexion,
+     * qui est transféré à ChatController.handleEvent(rtgre.modeles.Event) pour traitement.
+     * Si le message n'est pas conforme, la connection est stoppée.
      */
     @Override
     public void receiveLoop() {
-        LOGGER.info(RED + "Boucle de réception de messages..." + RST);
+        LOG.log(Level.INFO, RED + "Boucle de réception de messages..." + RST);
         try {
             while (connected) {
+                if (codec != EventCodec.JSON) {
+                    Event event = this.receiveEvent();
+                    LOG.log(Level.FINE, RED + "Réception: %s" + RST, event);
+                    if (listener != null) {
+                        Platform.runLater(() -> listener.handleEvent(event));
+                    }
+                    continue;
+                }
                 String message = this.receive();
-                LOGGER.finest(RED + "Réception: " + message + RST);
-                LOGGER.info(RED + message + RST);
+                LOG.log(Level.FINE, RED + "Réception: %s" + RST, message);
                 if (listener != null) {
-                    LOGGER.log(Level.FINE, message);
                     Platform.runLater(() -> listener.handleEvent(Event.fromJson(message)));
                 }
             }
-        } catch (IOException e) {
-            LOGGER.severe("[%s] %s".formatted(ipPort, e));
+        } catch (IOException | JSONException e) {
+            LOG.log(Level.SEVERE, "[%s] %s", ipPort, e);
             connected = false;
             Platform.runLater(() -> listener.connectionButton.setSelected(false));
         } finally {
@@ -1,12 +1,21 @@
 package rtgre.chat.net;
 
 
+import rtgre.modeles.Event;
+import rtgre.modeles.EventCodec;
+import rtgre.modeles.EventFrame;
+import rtgre.modeles.FrameReader;
+import rtgre.modeles.Framing;
+
 import java.io.*;
+import java.net.ProtocolException;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.logging.Level;
 
-import static rtgre.chat.ChatApplication.LOGGER;
+import static rtgre.chat.ChatApplication.LOG;
 
 /**
  * Client TCP : envoie des chaines de caractères à un serveur et lit les chaines en retour.
@@ -20,6 +29,8 @@ public class ClientTCP {
     public static final String RST = "\u001b[0m";
     /** Fin de message */
     public static final String END_MESSAGE = "fin";
+    /** Délai maximal de réponse du serveur au préambule de négociation, en millisecondes */
+    public static final int HANDSHAKE_TIMEOUT_MS = 3000;
 
     /**
      * Socket connecté au serveur
@@ -32,10 +43,25 @@ public class ClientTCP {
     protected PrintStream out;
 
     /**
-     * Flux de caractères UTF-8 en entrée
+     * Flux de caractères UTF-8 en entrée (découpage {@link Framing#LINE})
      */
     protected BufferedReader in;
 
+    /**
+     * Flux des évènements en entrée (découpage {@link Framing#LENGTH_PREFIXED}, `null` sinon)
+     */
+    protected FrameReader frames;
+
+    /**
+     * Découpage du flux négocié avec le serveur
+     */
+    protected Framing framing = Framing.LINE;
+
+    /**
+     * Encodage des évènements négocié avec le serveur
+     */
+    protected EventCodec codec = EventCodec.JSON;
+
     /**
      * Chaine de caractères "ip:port" du client
      */
@@ -46,6 +72,12 @@ public class ClientTCP {
      */
     protected boolean connected;
 
+    /**
+     * Nombre d'envois groupés en cours (voir {@link #sendGrouped(Runnable)}) : tant qu'il est positif,
+     * les messages restent dans le tampon du flux de sortie
+     */
+    private int groupDepth = 0;
+
 
     /**
      * Programme principal [Déprécié]
@@ -66,23 +98,79 @@ public class ClientTCP {
     /**
      * Le constructeur ouvre la connexion TCP au serveur <code>host:port</code>
      * et récupère les flux de caractères en entrée {@link #in} et sortie {@link #out}
-     *import static rtgre.chat.ChatApplication.LOGGER;
      * @param host IP ou nom de domaine du serveur
      * @param port port d'écoute du serveur
      * @throws IOException si la connexion échoue ou si les flux ne sont pas récupérables
      */
     public ClientTCP(String host, int port) throws IOException {
-        LOGGER.info("Connexion à [%s:%d]".formatted(host, port));
+        this(host, port, Framing.LINE);
+    }
+
+    /**
+     * Ouvre la connexion TCP au serveur <code>host:port</code> avec le découpage demandé.
+     * En mode {@link Framing#LENGTH_PREFIXED}, le préambule de négociation est envoyé au serveur,
+     * qui doit le renvoyer avant tout évènement pour accepter ce mode.
+     * @param host IP ou nom de domaine du serveur
+     * @param port port d'écoute du serveur
+     * @param framing Le découpage du flux
+     * @throws IOException si la connexion échoue, si les flux ne sont pas récupérables
+     *                     ou si le serveur n'accepte pas le découpage demandé
+     */
+    public ClientTCP(String host, int port, Framing framing) throws IOException {
+        this(host, port, framing, EventCodec.JSON);
+    }
+
+    /**
+     * Ouvre la connexion TCP au serveur <code>host:port</code> avec le découpage et l'encodage demandés.
+     * En mode {@link Framing#LENGTH_PREFIXED}, le préambule de négociation désignant l'encodage est envoyé
+     * au serveur, qui doit le renvoyer dans un délai de {@link #HANDSHAKE_TIMEOUT_MS} avant tout évènement
+     * pour accepter ce mode.
+     * @param host IP ou nom de domaine du serveur
+     * @param port port d'écoute du serveur
+     * @param framing Le découpage du flux
+     * @param codec L'encodage des évènements ({@link EventCodec#JSON} obligatoirement en mode {@link Framing#LINE})
+     * @throws ProtocolException si le serveur refuse le découpage ou l'encodage demandé, ou ne répond pas à temps
+     * @throws IOException si la connexion échoue ou si les flux ne sont pas récupérables
+     * @throws IllegalArgumentException si un encodage autre que JSON est demandé en mode {@link Framing#LINE}
+     */
+    public ClientTCP(String host, int port, Framing framing, EventCodec codec) throws IOException {
+        if (framing == Framing.LINE && codec != EventCodec.JSON) {
+            throw new IllegalArgumentException("Codec %s requires length-prefixed framing".formatted(codec));
+        }
+        LOG.log(Level.INFO, "Connexion à [%s:%d]", host, port);
         sock = new Socket(host, port);
         ipPort = "%s:%d".formatted(sock.getLocalAddress().getHostAddress(), sock.getLocalPort());
-        LOGGER.info("[%s] Connexion établie vers [%s:%d]".formatted(ipPort, host, port));
+        LOG.log(Level.INFO, "[%s] Connexion établie vers [%s:%d]", ipPort, host, port);
         this.connected = true;
-        LOGGER.fine("[%s] Recuperation des flux d'octets en entree et sortie".formatted(ipPort));
+        LOG.log(Level.FINE, "[%s] Recuperation des flux d'octets en entree et sortie", ipPort);
         OutputStream os = sock.getOutputStream();
         InputStream is = sock.getInputStream();
-        LOGGER.fine("[%s] Conversion flux d'octets en flux de caractères UTF-8".formatted(ipPort));
-        out = new PrintStream(os, true, StandardCharsets.UTF_8);
-        in = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8), 2048);
+        LOG.log(Level.FINE, "[%s] Conversion flux d'octets en flux de caractères UTF-8", ipPort);
+        out = new PrintStream(new BufferedOutputStream(os), false, StandardCharsets.UTF_8);
+        if (framing == Framing.LENGTH_PREFIXED) {
+            byte[] preamble = Framing.preamble(codec);
+            out.write(preamble);
+            flush();
+            BufferedInputStream buffered = new BufferedInputStream(is);
+            byte[] answer;
+            sock.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            try {
+                answer = buffered.readNBytes(preamble.length);
+            } catch (SocketTimeoutException e) {
+                answer = new byte[0];
+            }
+            if (!Arrays.equals(preamble, answer)) {
+                sock.close();
+                this.connected = false;
+                throw new ProtocolException("Framing %s with codec %s refused by server".formatted(framing, codec));
+            }
+            sock.setSoTimeout(0);
+            frames = new FrameReader(buffered, framing, codec);
+        } else {
+            in = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8), 2048);
+        }
+        this.framing = framing;
+        this.codec = codec;
         Thread rcLoop = new Thread(this::receiveLoop);
         rcLoop.setDaemon(true);
         rcLoop.start();
@@ -95,8 +183,63 @@ public class ClientTCP {
      * @throws IOException lorsqu'une erreur sur le flux de sortie est détectée
      */
     public void send(String message) throws IOException {
-        LOGGER.finest("send: %s".formatted(message));
-        out.println(message);
+        LOG.log(Level.FINEST, "send: %s", message);
+        synchronized (out) {
+            if (framing == Framing.LINE) {
+                out.println(message);
+            } else {
+                EventFrame.of(message).writeTo(out, framing);
+            }
+            if (groupDepth == 0) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Envoie une trame selon le découpage et l'encodage de la connexion
+     *
+     * @param frame La trame à transmettre
+     * @throws IOException lorsqu'une erreur sur le flux de sortie est détectée
+     */
+    protected void send(EventFrame frame) throws IOException {
+        LOG.log(Level.FINEST, "send: %s", frame);
+        synchronized (out) {
+            frame.writeTo(out, framing, codec);
+            if (groupDepth == 0) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Envoie en une seule écriture sur la socket tous les messages transmis par {@link #send(String)}
+     * pendant l'exécution de `sends` : le flux de sortie n'est vidé qu'à la fin de l'envoi groupé le plus externe.
+     *
+     * @param sends Les envois à regrouper
+     * @throws IOException lorsqu'une erreur sur le flux de sortie est détectée
+     */
+    public void sendGrouped(Runnable sends) throws IOException {
+        synchronized (out) {
+            groupDepth++;
+            try {
+                sends.run();
+            } finally {
+                groupDepth--;
+            }
+            if (groupDepth == 0) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Vide le tampon du flux de sortie sur la socket
+     *
+     * @throws IOException lorsqu'une erreur sur le flux de sortie est détectée
+     */
+    private void flush() throws IOException {
+        out.flush();
         if (out.checkError()) {
             throw new IOException("Output stream error");
         }
@@ -125,24 +268,43 @@ public class ClientTCP {
      * @throws IOException lorsque la fin du flux est atteinte
      */
     public String receive() throws IOException {
-        String message = in.readLine();
-        LOGGER.finest("receive: %s".formatted(message));
+        String message = (framing == Framing.LINE) ? in.readLine() : frames.readFrame();
+        LOG.log(Level.FINEST, "receive: %s", message);
         if (message == null) {
             throw new IOException("End of the stream has been reached");
         }
         return message;
     }
 
+    /**
+     * Attente d'un évènement en entrée, décodé selon l'encodage de la connexion.
+     *
+     * @return L'évènement reçu
+     * @throws IOException lorsque la fin du flux est atteinte ou si les octets reçus ne forment pas un évènement
+     * @throws org.json.JSONException si une ligne reçue n'est pas un évènement JSON valide
+     */
+    public Event receiveEvent() throws IOException {
+        if (codec == EventCodec.JSON) {
+            return Event.fromJson(receive());
+        }
+        Event event = frames.readEvent();
+        LOG.log(Level.FINEST, "receive: %s", event);
+        if (event == null) {
+            throw new IOException("End of the stream has been reached");
+        }
+        return event;
+    }
+
     /**
      * Fermeture de la connexion TCP
      */
     public void close() {
-        LOGGER.info("[%s] Fermeture de la connexion".formatted(ipPort));
+        LOG.log(Level.INFO, "[%s] Fermeture de la connexion", ipPort);
         try {
             sock.close();
             this.connected = false;
         } catch (IOException e) {
-            LOGGER.finest("[%s] %s".formatted(ipPort, e));
+            LOG.log(Level.FINEST, "[%s] %s", ipPort, e);
         }
     }
 
@@ -151,24 +313,24 @@ public class ClientTCP {
      * Boucle d'envoi de messages
      */
     public void sendLoop() {
-        LOGGER.log(Level.FINE, BLUE + "Boucle d'envoi de messages..." + RST);
+        LOG.log(Level.FINE, BLUE + "Boucle d'envoi de messages..." + RST);
         BufferedReader stdIn = new BufferedReader(new InputStreamReader(System.in));
         connected = true;
         try {
             while (connected) {
-                LOGGER.log(Level.FINE, BLUE + "Votre message (\"fin\" pour terminer) : " + RST);
+                LOG.log(Level.FINE, BLUE + "Votre message (\"fin\" pour terminer) : " + RST);
                 String message = stdIn.readLine();
                 if (message == null) { // fin du flux stdIn
                     message = END_MESSAGE;
                 }
-                LOGGER.log(Level.FINE, BLUE + "Envoi: " + message + RST);
+                LOG.log(Level.FINE, BLUE + "Envoi: %s" + RST, message);
                 this.send(message);
                 if (END_MESSAGE.equals(message)) {
                     connected = false;
                 }
             }
         } catch (IOException e) {
-            LOGGER.log(Level.WARNING, e.getMessage(), e);
+            LOG.log(Level.WARNING, e.getMessage(), e);
             connected = false;
         }
     }
@@ -177,15 +339,15 @@ public class ClientTCP {
      * Boucle de réception de messages
      */
     public void receiveLoop() {
-        LOGGER.log(Level.FINE, RED + "Boucle de réception de messages..." + RST);
+        LOG.log(Level.FINE, RED + "Boucle de réception de messages..." + RST);
         connected = true;
         try {
             while (connected) {
                 String message = this.receive();
-                LOGGER.log(Level.FINE, RED + "Réception: " + message + RST);
+                LOG.log(Level.FINE, RED + "Réception: %s" + RST, message);
             }
         } catch (IOException e) {
-            LOGGER.severe("[%s] %s".formatted(ipPort, e));
+            LOG.log(Level.SEVERE, "[%s] %s", ipPort, e);
             connected = false;
         }
     }
@@ -0,0 +1,551 @@
+package rtgre.modeles;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Encodage binaire compact des évènements :
+ * *    le type est un octet (indice dans {@link #TYPES}, ou {@link #CUSTOM_TYPE} suivi du type en toutes lettres) ;
+ * *    le contenu est une valeur typée par un octet de marque : les entiers sont des varints (zigzag),
+ *      les identifiants UUID 16 octets bruts, les chaines une longueur varint suivie de l'UTF-8 ;
+ * *    les posts (objets `id`, `timestamp`, `from`, `to`, `body` et éventuellement `editable`) ont une forme dédiée,
+ *      sans le nom des clés.
+ * Le décodage produit un évènement dont le contenu JSON est équivalent à celui de l'évènement encodé.
+ */
+public class BinaryEventCodec implements EventCodec {
+    /** Types d'évènements codés sur un octet, par leur indice */
+    static final String[] TYPES = {
+            Event.AUTH, Event.QUIT, Event.MESG, Event.JOIN, Event.POST, Event.CONT, Event.LIST_CONTACTS,
+            Event.LIST_POSTS, Event.SYSTEM, Event.LIST_ROOMS, Event.ROOM, Event.PAGE, Event.BATCH
+    };
+    /** Octet de type annonçant un type absent de {@link #TYPES}, transmis en toutes lettres */
+    static final int CUSTOM_TYPE = 0xFF;
+    /** Profondeur maximale d'imbrication des objets et tableaux décodés */
+    static final int MAX_DEPTH = 64;
+
+    /** Marque de la valeur `null` */
+    private static final byte NULL = 'N';
+    /** Marque du booléen vrai */
+    private static final byte TRUE = 'T';
+    /** Marque du booléen faux */
+    private static final byte FALSE = 'F';
+    /** Marque d'un entier (varint zigzag) */
+    private static final byte LONG = 'I';
+    /** Marque d'un flottant (8 octets) */
+    private static final byte DOUBLE = 'D';
+    /** Marque d'un nombre décimal arbitraire (chaine) */
+    private static final byte DECIMAL = 'B';
+    /** Marque d'une chaine de caractères */
+    private static final byte STRING = 'S';
+    /** Marque d'une chaine représentant un UUID (16 octets) */
+    private static final byte UUID_STRING = 'U';
+    /** Marque d'un objet (nombre de clés, puis chaque clé et sa valeur) */
+    private static final byte OBJECT = 'O';
+    /** Marque d'un tableau (nombre d'éléments, puis chaque élément) */
+    private static final byte ARRAY = 'A';
+    /** Marque d'un post (forme dédiée sans le nom des clés) */
+    private static final byte POST = 'P';
+
+    /**
+     * Identifiant de l'encodage binaire : 'B'
+     * @return L'octet identifiant l'encodage
+     */
+    @Override
+    public byte id() {
+        return 'B';
+    }
+
+    /**
+     * Encode un évènement sous sa forme binaire
+     * @param event L'évènement
+     * @return Les octets de l'évènement encodé
+     */
+    @Override
+    public byte[] encode(Event event) {
+        Output out = new Output(64);
+        int tag = typeTag(event.getType());
+        out.writeByte(tag);
+        if (tag == CUSTOM_TYPE) {
+            out.writeString(event.getType());
+        }
+        writeValue(out, event.getContent());
+        return out.toByteArray();
+    }
+
+    /**
+     * Décode un évènement binaire
+     * @param bytes Le tableau contenant l'évènement encodé
+     * @param offset La position du premier octet de l'évènement
+     * @param length Le nombre d'octets de l'évènement
+     * @return L'évènement décodé
+     * @throws IOException si les octets ne forment pas un évènement valide, y compris un nombre non représentable
+     *                     en JSON ou une imbrication plus profonde que {@link #MAX_DEPTH}
+     */
+    @Override
+    public Event decode(byte[] bytes, int offset, int length) throws IOException {
+        Input in = new Input(bytes, offset, length);
+        int tag = in.readByte() & 0xFF;
+        String type;
+        if (tag == CUSTOM_TYPE) {
+            type = in.readString();
+        } else if (tag < TYPES.length) {
+            type = TYPES[tag];
+        } else {
+            throw new IOException("Unknown event type tag: " + tag);
+        }
+        Object content;
+        try {
+            content = readValue(in, 0);
+        } catch (JSONException | NumberFormatException e) {
+            throw new IOException("Invalid event content: " + e.getMessage(), e);
+        }
+        if (!(content instanceof JSONObject object) || in.remaining() != 0) {
+            throw new IOException("Invalid event content");
+        }
+        return new Event(type, object);
+    }
+
+    /**
+     * Octet représentant un type d'évènement
+     * @param type Le type d'évènement
+     * @return L'indice du type dans {@link #TYPES}, ou {@link #CUSTOM_TYPE}
+     */
+    private static int typeTag(String type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) {
+                return i;
+            }
+        }
+        return CUSTOM_TYPE;
+    }
+
+    /**
+     * Encode une valeur JSON précédée de sa marque
+     * @param out Le tampon de sortie
+     * @param value La valeur
+     */
+    private static void writeValue(Output out, Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean b) {
+            out.writeByte(b ? TRUE : FALSE);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(LONG);
+            out.writeVarLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            out.writeByte(DECIMAL);
+            out.writeString(value.toString());
+        } else if (value instanceof UUID uuid) {
+            out.writeByte(UUID_STRING);
+            out.writeUuid(uuid);
+        } else if (value instanceof String s) {
+            UUID uuid = parseUuid(s);
+            if (uuid != null) {
+                out.writeByte(UUID_STRING);
+                out.writeUuid(uuid);
+            } else {
+                out.writeByte(STRING);
+                out.writeString(s);
+            }
+        } else if (value instanceof JSONObject object) {
+            if (!writePost(out, object)) {
+                out.writeByte(OBJECT);
+                out.writeVarInt(object.length());
+                for (String key : object.keySet()) {
+                    out.writeString(key);
+                    writeValue(out, object.opt(key));
+                }
+            }
+        } else if (value instanceof JSONArray array) {
+            out.writeByte(ARRAY);
+            out.writeVarInt(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                writeValue(out, array.opt(i));
+            }
+        } else if (value instanceof Map<?, ?> || value instanceof Collection<?> || value.getClass().isArray()) {
+            writeValue(out, JSONObject.wrap(value));
+        } else {
+            out.writeByte(STRING);
+            out.writeString(value.toString());
+        }
+    }
+
+    /**
+     * Encode un objet sous la forme dédiée aux posts, s'il en a exactement la structure
+     * @param out Le tampon de sortie
+     * @param object L'objet
+     * @return `true` si l'objet a été encodé comme un post, `false` sinon (rien n'est écrit)
+     */
+    private static boolean writePost(Output out, JSONObject object) {
+        boolean hasEditable = object.has("editable");
+        if (object.length() != (hasEditable ? 6 : 5)
+                || !(object.opt("timestamp") instanceof Number timestamp)
+                || (timestamp instanceof Double || timestamp instanceof Float || timestamp instanceof BigDecimal)
+                || !(object.opt("from") instanceof String from)
+                || !(object.opt("to") instanceof String to)
+                || !(object.opt("body") instanceof String body)
+                || (hasEditable && !(object.opt("editable") instanceof Boolean))) {
+            return false;
+        }
+        Object idValue = object.opt("id");
+        UUID id = (idValue instanceof UUID uuid) ? uuid : (idValue instanceof String s) ? parseUuid(s) : null;
+        if (id == null) {
+            return false;
+        }
+        out.writeByte(POST);
+        out.writeUuid(id);
+        out.writeVarLong(timestamp.longValue());
+        out.writeString(from);
+        out.writeString(to);
+        out.writeString(body);
+        out.writeByte(hasEditable ? (object.getBoolean("editable") ? 3 : 1) : 0);
+        return true;
+    }
+
+    /**
+     * Décode une valeur JSON précédée de sa marque
+     * @param in Le tampon d'entrée
+     * @param depth Le nombre d'objets et tableaux englobant la valeur
+     * @return La valeur
+     * @throws IOException si la marque est inconnue, si les octets sont tronqués, si un flottant n'est pas fini
+     *                     ou si l'imbrication dépasse {@link #MAX_DEPTH}
+     */
+    private static Object readValue(Input in, int depth) throws IOException {
+        byte marker = in.readByte();
+        switch (marker) {
+            case NULL:
+                return JSONObject.NULL;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case LONG:
+                return in.readVarLong();
+            case DOUBLE: {
+                double value = Double.longBitsToDouble(in.readLong());
+                if (!Double.isFinite(value)) {
+                    throw new IOException("Non-finite number: " + value);
+                }
+                return value;
+            }
+            case DECIMAL:
+                return new BigDecimal(in.readString());
+            case STRING:
+                return in.readString();
+            case UUID_STRING:
+                return in.readUuid().toString();
+            case OBJECT: {
+                checkDepth(depth);
+                int count = in.readVarInt();
+                JSONObject object = new JSONObject();
+                for (int i = 0; i < count; i++) {
+                    String key = in.readString();
+                    object.put(key, readValue(in, depth + 1));
+                }
+                return object;
+            }
+            case ARRAY: {
+                checkDepth(depth);
+                int count = in.readVarInt();
+                JSONArray array = new JSONArray();
+                for (int i = 0; i < count; i++) {
+                    array.put(readValue(in, depth + 1));
+                }
+                return array;
+            }
+            case POST: {
+                JSONObject post = new JSONObject()
+                        .put("id", in.readUuid().toString())
+                        .put("timestamp", in.readVarLong())
+                        .put("from", in.readString())
+                        .put("to", in.readString())
+                        .put("body", in.readString());
+                byte flags = in.readByte();
+                if ((flags & 1) != 0) {
+                    post.put("editable", (flags & 2) != 0);
+                }
+                return post;
+            }
+            default:
+                throw new IOException("Unknown value marker: " + marker);
+        }
+    }
+
+    /**
+     * Vérifie qu'un objet ou un tableau peut encore être imbriqué
+     * @param depth Le nombre d'objets et tableaux englobants
+     * @throws IOException si l'imbrication dépasse {@link #MAX_DEPTH}
+     */
+    private static void checkDepth(int depth) throws IOException {
+        if (depth >= MAX_DEPTH) {
+            throw new IOException("Binary event nested too deeply");
+        }
+    }
+
+    /**
+     * Interprète une chaine comme un UUID, uniquement si elle en est la représentation canonique
+     * (le décodage doit restituer exactement la même chaine)
+     * @param s La chaine
+     * @return L'UUID, ou `null` si la chaine n'est pas un UUID canonique
+     */
+    private static UUID parseUuid(String s) {
+        if (s.length() != 36 || s.charAt(8) != '-' || s.charAt(13) != '-' || s.charAt(18) != '-' || s.charAt(23) != '-') {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(s);
+            return uuid.toString().equals(s) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Représentation textuelle de l'encodage
+     * @return Le nom de l'encodage
+     */
+    @Override
+    public String toString() {
+        return "BINARY";
+    }
+
+    /**
+     * Tampon de sortie extensible
+     */
+    private static final class Output {
+        /** Les octets écrits */
+        private byte[] bytes;
+        /** Le nombre d'octets écrits */
+        private int length = 0;
+
+        /**
+         * Crée un tampon vide
+         * @param capacity La capacité initiale
+         */
+        Output(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        /**
+         * Garantit la place pour `n` octets supplémentaires
+         * @param n Le nombre d'octets à écrire
+         */
+        private void ensure(int n) {
+            if (length + n > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + n));
+            }
+        }
+
+        /**
+         * Écrit un octet
+         * @param b L'octet (8 bits de poids faible)
+         */
+        void writeByte(int b) {
+            ensure(1);
+            bytes[length++] = (byte) b;
+        }
+
+        /**
+         * Écrit un entier sur 8 octets (big-endian)
+         * @param v L'entier
+         */
+        void writeLong(long v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (v >>> shift);
+            }
+        }
+
+        /**
+         * Écrit un entier positif sur 7 bits par octet, le bit de poids fort indiquant la présence d'un octet suivant
+         * @param v L'entier (positif ou nul)
+         */
+        void writeVarInt(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bytes[length++] = (byte) v;
+        }
+
+        /**
+         * Écrit un entier signé en varint après codage zigzag (les petites valeurs négatives restent courtes)
+         * @param v L'entier
+         */
+        void writeVarLong(long v) {
+            ensure(10);
+            long zigzag = (v << 1) ^ (v >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            bytes[length++] = (byte) zigzag;
+        }
+
+        /**
+         * Écrit une chaine : sa longueur en octets (varint) puis son encodage UTF-8
+         * @param s La chaine
+         */
+        void writeString(String s) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, length, utf8.length);
+            length += utf8.length;
+        }
+
+        /**
+         * Écrit un UUID sur 16 octets
+         * @param uuid L'UUID
+         */
+        void writeUuid(UUID uuid) {
+            writeLong(uuid.getMostSignificantBits());
+            writeLong(uuid.getLeastSignificantBits());
+        }
+
+        /**
+         * Copie des octets écrits
+         * @return Un tableau de la taille exacte des octets écrits
+         */
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    /**
+     * Lecture d'un tableau d'octets borné
+     */
+    private static final class Input {
+        /** Les octets à lire */
+        private final byte[] bytes;
+        /** La position de lecture */
+        private int position;
+        /** La position suivant le dernier octet lisible */
+        private final int end;
+
+        /**
+         * Crée un lecteur sur une portion de tableau
+         * @param bytes Le tableau
+         * @param offset La position du premier octet
+         * @param length Le nombre d'octets lisibles
+         */
+        Input(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        /**
+         * Nombre d'octets restant à lire
+         * @return Le nombre d'octets
+         */
+        int remaining() {
+            return end - position;
+        }
+
+        /**
+         * Vérifie que `n` octets restent à lire
+         * @param n Le nombre d'octets attendus
+         * @throws IOException si les octets sont tronqués
+         */
+        private void require(int n) throws IOException {
+            if (n < 0 || end - position < n) {
+                throw new IOException("Truncated binary event");
+            }
+        }
+
+        /**
+         * Lit un octet
+         * @return L'octet
+         * @throws IOException si les octets sont tronqués
+         */
+        byte readByte() throws IOException {
+            require(1);
+            return bytes[position++];
+        }
+
+        /**
+         * Lit un entier sur 8 octets (big-endian)
+         * @return L'entier
+         * @throws IOException si les octets sont tronqués
+         */
+        long readLong() throws IOException {
+            require(8);
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (bytes[position++] & 0xFF);
+            }
+            return v;
+        }
+
+        /**
+         * Lit un entier positif varint
+         * @return L'entier
+         * @throws IOException si les octets sont tronqués ou si le varint est trop long
+         */
+        int readVarInt() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = readByte();
+                v |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return v;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        /**
+         * Lit un entier signé varint (zigzag)
+         * @return L'entier
+         * @throws IOException si les octets sont tronqués ou si le varint est trop long
+         */
+        long readVarLong() throws IOException {
+            long zigzag = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                byte b = readByte();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        /**
+         * Lit une chaine : sa longueur en octets (varint) puis son encodage UTF-8
+         * @return La chaine
+         * @throws IOException si les octets sont tronqués
+         */
+        String readString() throws IOException {
+            int n = readVarInt();
+            require(n);
+            String s = new String(bytes, position, n, StandardCharsets.UTF_8);
+            position += n;
+            return s;
+        }
+
+        /**
+         * Lit un UUID sur 16 octets
+         * @return L'UUID
+         * @throws IOException si les octets sont tronqués
+         */
+        UUID readUuid() throws IOException {
+            return new UUID(readLong(), readLong());
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package rtgre.modeles;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.logging.Level;
 
@@ -10,22 +13,90 @@ import static rtgre.chat.ChatApplication.LOGGER;
 
 /**
  * Classe modélisant la connexion à la base de données des posts.
+ * Une instance est destinée à rester ouverte pendant toute la vie du serveur : les requêtes d'écriture
+ * sont préparées une seule fois à l'ouverture, puis réutilisées (accès sérialisés entre les threads).
  */
-public class DatabaseApi {
+public class DatabaseApi implements PostRepository {
+    /** Chemin par défaut du fichier de la base de données */
+    public static final String DEFAULT_PATH = "target/dbase.db";
+    /** Version du schéma de la base, enregistrée dans `PRAGMA user_version` */
+    public static final int SCHEMA_VERSION = 2;
+    /** Colonnes renseignées à l'écriture d'un post */
+    private static final String POST_COLUMNS = "(`id`, `timestamp`, `from`, `to`, `body`, `connected`, `conversation`)";
+    /** Requête d'ajout d'un post */
+    private static final String INSERT_POST = "INSERT INTO posts " + POST_COLUMNS + " VALUES (?, ?, ?, ?, ?, ?, ?)";
+    /** Requête de remplacement d'un post de même UUID */
+    private static final String REPLACE_POST = "INSERT OR REPLACE INTO posts " + POST_COLUMNS + " VALUES (?, ?, ?, ?, ?, ?, ?)";
+    /** Requête des posts d'une conversation depuis un instant donné (parcours de l'index `posts_conversation_timestamp`) */
+    private static final String SELECT_CONVERSATION = "SELECT * FROM posts WHERE `conversation` = ? AND `timestamp` >= ? ORDER BY `timestamp`";
+    /**
+     * Requête des posts d'une conversation antérieurs à un curseur (timestamp, identifiant), les plus récents d'abord :
+     * l'identifiant textuel départage les posts de même timestamp dans l'ordre de {@link PostStore#ORDER}
+     */
+    private static final String SELECT_CONVERSATION_PAGE = "SELECT * FROM posts WHERE `conversation` = ?"
+            + " AND (`timestamp` < ? OR (`timestamp` = ? AND `id` < ?)) ORDER BY `timestamp` DESC, `id` DESC LIMIT ?";
+    /** Requête des conversations, par date de leur dernier post décroissante (parcours de l'index `posts_conversation_timestamp`) */
+    private static final String SELECT_CONVERSATIONS = "SELECT `conversation`, MAX(`timestamp`) AS `last` FROM posts"
+            + " GROUP BY `conversation` ORDER BY `last` DESC";
+    /**
+     * Migrations du schéma : l'élément i fait passer la base de la version i+1 à la version i+2.
+     * La version 1 est la table `posts` d'origine, sans clé de conversation ni index secondaire.
+     */
+    private static final String[][] MIGRATIONS = {
+            {
+                    "ALTER TABLE posts ADD COLUMN `conversation` text",
+                    "UPDATE posts SET `conversation` = CASE"
+                            + " WHEN `to` LIKE '#%' THEN `to`"
+                            + " WHEN `from` <= `to` THEN `from` || '|' || `to`"
+                            + " ELSE `to` || '|' || `from` END",
+                    "CREATE INDEX IF NOT EXISTS posts_conversation_timestamp ON posts (`conversation`, `timestamp`)",
+                    "CREATE INDEX IF NOT EXISTS posts_timestamp ON posts (`timestamp`)"
+            }
+    };
+    /** Requête de suppression d'un post */
+    private static final String DELETE_POST = "DELETE FROM posts WHERE id=?";
     /** Connexion à la base de données */
     private Connection con;
     /** Curseur "statement" à exécuter */
     private Statement stmt;
+    /** Requête préparée d'ajout d'un post */
+    private PreparedStatement insertStmt;
+    /** Requête préparée de remplacement d'un post */
+    private PreparedStatement replaceStmt;
+    /** Requête préparée de suppression d'un post */
+    private PreparedStatement deleteStmt;
+    /** Chemin du fichier de la base de données */
+    private final String path;
+    /** Profil de stockage appliqué à l'ouverture */
+    private final StorageProfile profile;
 
     /**
-     * Constructeur par défaut : connecte la base de donnée et et créer un statement
+     * Constructeur par défaut : connecte la base de donnée par défaut avec le profil de stockage {@link StorageProfile#BALANCED}
      */
     public DatabaseApi() {
+        this(DEFAULT_PATH, StorageProfile.BALANCED);
+    }
+
+    /**
+     * Constructeur : connecte la base de donnée, applique le profil de stockage, crée un statement et prépare les requêtes d'écriture
+     * @param path Le chemin du fichier de la base de données
+     * @param profile Le profil de stockage
+     */
+    public DatabaseApi(String path, StorageProfile profile) {
+        this.path = path;
+        this.profile = profile;
         try {
-            this.con = DriverManager.getConnection("jdbc:sqlite:target/dbase.db");
+            this.con = DriverManager.getConnection("jdbc:sqlite:" + path);
             this.stmt = con.createStatement();
+            for (String pragma : profile.pragmas()) {
+                stmt.execute(pragma);
+            }
             initDB(con);
-            LOGGER.info("Database connected!");
+            migrate(con);
+            this.insertStmt = con.prepareStatement(INSERT_POST);
+            this.replaceStmt = con.prepareStatement(REPLACE_POST);
+            this.deleteStmt = con.prepareStatement(DELETE_POST);
+            LOGGER.info("Database connected! (%s, %s)".formatted(path, profile));
             } catch (SQLException e) {
             LOGGER.severe("Can't connect to database! \n");
             LOGGER.log(Level.FINE, e.getMessage(), e);
@@ -54,6 +125,76 @@ public class DatabaseApi {
         }
     }
 
+    /**
+     * Met à jour le schéma de la base jusqu'à {@link #SCHEMA_VERSION}, en appliquant dans une transaction
+     * chacune des migrations manquantes. Une base créée avant l'apparition des versions est en version 1.
+     * @param con La connexion à la base de données
+     * @throws SQLException si une migration échoue (la base reste alors dans sa version précédente)
+     */
+    private void migrate(Connection con) throws SQLException {
+        int version;
+        try (ResultSet result = stmt.executeQuery("PRAGMA user_version")) {
+            version = Math.max(1, result.getInt(1));
+        }
+        while (version < SCHEMA_VERSION) {
+            con.setAutoCommit(false);
+            try {
+                for (String sql : MIGRATIONS[version - 1]) {
+                    stmt.execute(sql);
+                }
+                version++;
+                stmt.execute("PRAGMA user_version = " + version);
+                con.commit();
+                LOGGER.info("Database schema migrated to version " + version);
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Version du schéma de la base
+     * @return La version enregistrée dans la base, 0 si elle ne peut être lue
+     */
+    public int getSchemaVersion() {
+        String version = getPragma("user_version");
+        return (version == null) ? 0 : Integer.parseInt(version);
+    }
+
+    /**
+     * Valeur courante d'un paramètre SQLite
+     * @param name Le nom du paramètre (`journal_mode`, `synchronous`...)
+     * @return La valeur lue, ou `null` si elle ne peut être lue
+     */
+    public synchronized String getPragma(String name) {
+        try (Statement pragmaStmt = con.createStatement();
+             ResultSet result = pragmaStmt.executeQuery("PRAGMA " + name)) {
+            return result.next() ? result.getString(1) : null;
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Getter de `path`
+     * @return Le chemin du fichier de la base de données
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Getter de `profile`
+     * @return Le profil de stockage
+     */
+    public StorageProfile getProfile() {
+        return profile;
+    }
+
     /**
      * Récupère un post selon son UUID
      * @param uuid l'UUID du post
@@ -76,7 +217,7 @@ public class DatabaseApi {
      * @return Une liste de résultats contenant les posts, triés dans l'ordre chronologique
      */
     public ResultSet getPostsSince(long timestamp) {
-        String query = "SELECT * FROM posts WHERE timestamp >= " + timestamp + "ORDER BY timestamp DESC";
+        String query = "SELECT * FROM posts WHERE timestamp >= " + timestamp + " ORDER BY timestamp";
         try {
             return stmt.executeQuery(query);
         } catch (SQLException e) {
@@ -86,6 +227,117 @@ public class DatabaseApi {
         }
     }
 
+    /**
+     * Récupère les posts d'une conversation (salon ou conversation privée) dont le timestamp est supérieur
+     * ou égal à celui donné. La recherche parcourt l'index (conversation, timestamp) : sa durée
+     * ne dépend que du nombre de posts renvoyés, et non de la taille de la table.
+     * @param conversation La clé de la conversation (voir {@link Post#conversationKey(String, String)})
+     * @param timestamp Le timestamp de comparaison
+     * @return Les posts, triés dans l'ordre chronologique (liste vide si une erreur est survenue)
+     */
+    @Override
+    public synchronized List<Post> getConversationPosts(String conversation, long timestamp) {
+        List<Post> posts = new ArrayList<>();
+        try (PreparedStatement pstmt = con.prepareStatement(SELECT_CONVERSATION)) {
+            pstmt.setString(1, conversation);
+            pstmt.setLong(2, timestamp);
+            try (ResultSet result = pstmt.executeQuery()) {
+                while (result.next()) {
+                    posts.add(fromResultSet(result));
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.severe("Can't get posts of " + conversation + "!");
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+        }
+        return posts;
+    }
+
+    /**
+     * Liste les conversations enregistrées, les plus récemment actives en premier
+     * @return Les clés des conversations (liste vide si une erreur est survenue)
+     */
+    @Override
+    public synchronized List<String> getConversations() {
+        List<String> conversations = new ArrayList<>();
+        try (PreparedStatement pstmt = con.prepareStatement(SELECT_CONVERSATIONS);
+             ResultSet result = pstmt.executeQuery()) {
+            while (result.next()) {
+                conversations.add(result.getString(1));
+            }
+        } catch (SQLException e) {
+            LOGGER.severe("Can't list conversations!");
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+        }
+        return conversations;
+    }
+
+    /**
+     * Récupère une page de l'historique d'une conversation : les posts les plus récents antérieurs à un curseur,
+     * dans l'ordre {@link PostStore#ORDER}. La recherche parcourt l'index (conversation, timestamp) à rebours
+     * depuis le curseur.
+     * @param conversation La clé de la conversation (voir {@link Post#conversationKey(String, String)})
+     * @param beforeTimestamp Le timestamp du curseur
+     * @param beforeId L'identifiant du curseur : les posts de même timestamp et d'identifiant inférieur sont renvoyés
+     * @param limit Le nombre maximal de posts
+     * @return Les posts, triés dans l'ordre chronologique (liste vide si une erreur est survenue)
+     */
+    @Override
+    public synchronized List<Post> getConversationPage(String conversation, long beforeTimestamp, UUID beforeId, int limit) {
+        List<Post> posts = new ArrayList<>(Math.min(limit, 64));
+        try (PreparedStatement pstmt = con.prepareStatement(SELECT_CONVERSATION_PAGE)) {
+            pstmt.setString(1, conversation);
+            pstmt.setLong(2, beforeTimestamp);
+            pstmt.setLong(3, beforeTimestamp);
+            pstmt.setString(4, beforeId.toString());
+            pstmt.setInt(5, limit);
+            try (ResultSet result = pstmt.executeQuery()) {
+                while (result.next()) {
+                    posts.add(fromResultSet(result));
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.severe("Can't get a page of " + conversation + "!");
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+        }
+        Collections.reverse(posts);
+        return posts;
+    }
+
+    /**
+     * Plan d'exécution SQLite de la recherche des posts d'une conversation
+     * @return Le détail du plan, une étape par ligne
+     */
+    synchronized String explainConversationQuery() throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement pstmt = con.prepareStatement("EXPLAIN QUERY PLAN " + SELECT_CONVERSATION)) {
+            pstmt.setString(1, "");
+            pstmt.setLong(2, 0);
+            try (ResultSet result = pstmt.executeQuery()) {
+                while (result.next()) {
+                    plan.append(result.getString("detail")).append('\n');
+                }
+            }
+        }
+        return plan.toString();
+    }
+
+    /**
+     * Construit un post à partir de la ligne courante d'une liste de résultats
+     * @param result La liste de résultats, positionnée sur une ligne
+     * @return Le post correspondant
+     * @throws SQLException si une colonne ne peut être lue
+     */
+    static Post fromResultSet(ResultSet result) throws SQLException {
+        return new Post(
+                UUID.fromString(result.getString("id")),
+                result.getLong("timestamp"),
+                result.getString("from"),
+                result.getString("to"),
+                result.getString("body")
+        );
+    }
+
     /**
      * Récupère tous les posts de la base de données
      * @return Une liste de résultats contenant tous les posts en base
@@ -105,36 +357,93 @@ public class DatabaseApi {
      * @param post Le poste à ajouter
      * @return `true` si le post a bien été ajouté, `false` si une erreur est survenue
      */
-    public boolean addPost(Post post) {
-        String query = "INSERT INTO posts VALUES (?, ?, ?, ?, ?, ?)";
+    public synchronized boolean addPost(Post post) {
         try {
-            PreparedStatement pstmt = con.prepareStatement(query);
-            pstmt.setString(1, post.getId().toString());
-            pstmt.setLong(2, post.getTimestamp());
-            pstmt.setString(3, post.getFrom());
-            pstmt.setString(4, post.getTo());
-            pstmt.setString(5, post.getBody());
-            pstmt.setBoolean(6, post.isEditable());
-
-            pstmt.executeUpdate();
+            bindPost(insertStmt, post);
+            insertStmt.executeUpdate();
             return true;
         } catch (SQLException e) {
             LOGGER.severe("Can't add post!");
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Remplace dans la base le post de même UUID (ou l'ajoute s'il n'y est pas encore), en une seule requête
+     * @param post Le post modifié
+     * @return `true` si le post a bien été enregistré, `false` si une erreur est survenue
+     */
+    public synchronized boolean replacePost(Post post) {
+        try {
+            bindPost(replaceStmt, post);
+            replaceStmt.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            LOGGER.severe("Can't replace post!");
+            LOGGER.log(Level.FINE, e.getMessage(), e);
             return false;
         }
     }
 
+    /**
+     * Enregistre un lot de posts (ajoutés ou modifiés) dans une seule transaction : la base n'est
+     * synchronisée sur le disque qu'une fois pour tout le lot. En cas d'erreur, aucun post du lot n'est enregistré.
+     * @param posts Les posts à enregistrer, dans l'ordre de leur arrivée
+     * @return `true` si le lot a bien été enregistré, `false` si une erreur est survenue
+     */
+    @Override
+    public synchronized boolean savePosts(List<Post> posts) {
+        try {
+            con.setAutoCommit(false);
+            try {
+                for (Post post : posts) {
+                    bindPost(replaceStmt, post);
+                    replaceStmt.addBatch();
+                }
+                replaceStmt.executeBatch();
+                con.commit();
+                return true;
+            } catch (SQLException e) {
+                replaceStmt.clearBatch();
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            LOGGER.severe("Can't save %d posts!".formatted(posts.size()));
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Renseigne les paramètres d'une requête préparée d'écriture avec les champs d'un post
+     * @param pstmt La requête préparée
+     * @param post Le post
+     * @throws SQLException si un paramètre ne peut être renseigné
+     */
+    private static void bindPost(PreparedStatement pstmt, Post post) throws SQLException {
+        pstmt.setString(1, post.getId().toString());
+        pstmt.setLong(2, post.getTimestamp());
+        pstmt.setString(3, post.getFrom());
+        pstmt.setString(4, post.getTo());
+        pstmt.setString(5, post.getBody());
+        pstmt.setBoolean(6, post.isEditable());
+        pstmt.setString(7, post.getConversation());
+    }
+
     /**
      * Enlève un post de la base de données
      * @param post Le post à retirer
      * @return `true` si le post a bien été retiré, `false` si une erreur est survenue
      */
-    public boolean removePost(Post post) {
-        String query = "DELETE FROM posts WHERE id=?";
+    @Override
+    public synchronized boolean removePost(Post post) {
         try {
-            PreparedStatement pstmt = con.prepareStatement(query);
-            pstmt.setString(1, post.getId().toString());
-            pstmt.executeUpdate();
+            deleteStmt.setString(1, post.getId().toString());
+            deleteStmt.executeUpdate();
             return true;
         } catch (SQLException e) {
             LOGGER.severe("Cannot remove post!");
@@ -146,7 +455,8 @@ public class DatabaseApi {
     /**
      * Ferme la connexion à la base de données
      */
-    public void close() {
+    @Override
+    public synchronized void close() {
         try {
             con.close();
         } catch (SQLException e) {
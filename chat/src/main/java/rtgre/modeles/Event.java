@@ -1,8 +1,11 @@
 package rtgre.modeles;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.List;
+
 /**
  * Classe modélisant un évènement permettant un échange client/serveur pour une application de chat.
  */
@@ -29,10 +32,18 @@ public class Event {
     public static final String LIST_ROOMS = "LSTR";
     /** Type de l'évènement serveur -> client : informations sur un salon de discussion */
     public static final String ROOM = "ROOM";
+    /** Type de l'évènement serveur -> client : fin d'une page de l'historique des posts */
+    public static final String PAGE = "PAGE";
+    /** Type de l'évènement serveur -> client : lot de posts, de contacts ou de salons */
+    public static final String BATCH = "BTCH";
+    /** Nombre maximal d'éléments d'un évènement "BTCH" */
+    public static final int MAX_BATCH_ITEMS = 500;
     /** Le type d'évènement de l'Event courant */
     private final String type;
     /** Le contenu de l'Event courant */
     private final JSONObject content;
+    /** La trame encodée de l'évènement, calculée au premier appel de {@link #toFrame()} */
+    private volatile EventFrame frame;
 
 
     /**
@@ -61,6 +72,17 @@ public class Event {
         this.content = content;
     }
 
+    /**
+     * Crée un évènement "BTCH" regroupant plusieurs éléments de même type, remplaçant autant d'évènements
+     * individuels : son contenu indique le type des éléments (`type`, par exemple "POST") et leurs contenus (`items`)
+     * @param itemType Le type des évènements regroupés ("POST", "CONT" ou "ROOM")
+     * @param items Les contenus des évènements regroupés
+     * @return L'évènement "BTCH"
+     */
+    public static Event batch(String itemType, List<JSONObject> items) {
+        return new Event(BATCH, new JSONObject().put("type", itemType).put("items", new JSONArray(items)));
+    }
+
     /**
      * Représentation textuelle de l'objet
      * @return Chaine de caractères représentant l'évènement
@@ -86,6 +108,21 @@ public class Event {
         return toJsonObject().toString();
     }
 
+    /**
+     * Trame réseau de l'évènement : la représentation JSON est sérialisée et encodée en UTF-8 une seule fois,
+     * puis la même trame est renvoyée à chaque appel. Le contenu ne doit donc plus être modifié
+     * une fois la trame demandée.
+     * @return La trame encodée de l'évènement
+     */
+    public EventFrame toFrame() {
+        EventFrame encoded = frame;
+        if (encoded == null) {
+            encoded = EventFrame.of(this);
+            frame = encoded;
+        }
+        return encoded;
+    }
+
     /**
      * Méthode de classe instanciant et renvoyant un évènement à partir d'une chaine de caractères représentant un évènement JSON
      * @param json La représentation JSON d'un évènement
@@ -0,0 +1,51 @@
+package rtgre.modeles;
+
+import java.io.IOException;
+
+/**
+ * Encodage des évènements sur le réseau, négocié pour chaque connexion par le dernier octet du préambule
+ * (voir {@link Framing#preamble(EventCodec)}). Les connexions historiques utilisent {@link #JSON}.
+ */
+public interface EventCodec {
+    /** Encodage JSON (UTF-8), seul encodage possible en mode {@link Framing#LINE} */
+    EventCodec JSON = new JsonEventCodec();
+    /** Encodage binaire compact, en mode {@link Framing#LENGTH_PREFIXED} uniquement */
+    EventCodec BINARY = new BinaryEventCodec();
+
+    /**
+     * Identifiant de l'encodage, transmis dans le préambule de négociation
+     * @return L'octet identifiant l'encodage
+     */
+    byte id();
+
+    /**
+     * Encode un évènement
+     * @param event L'évènement
+     * @return Les octets de l'évènement encodé
+     */
+    byte[] encode(Event event);
+
+    /**
+     * Décode un évènement
+     * @param bytes Le tableau contenant l'évènement encodé
+     * @param offset La position du premier octet de l'évènement
+     * @param length Le nombre d'octets de l'évènement
+     * @return L'évènement décodé
+     * @throws IOException si les octets ne forment pas un évènement valide
+     */
+    Event decode(byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * Renvoie l'encodage associé à son identifiant
+     * @param id L'identifiant reçu dans le préambule
+     * @return L'encodage correspondant, ou `null` si l'identifiant est inconnu
+     */
+    static EventCodec fromId(byte id) {
+        if (id == JSON.id()) {
+            return JSON;
+        } else if (id == BINARY.id()) {
+            return BINARY;
+        }
+        return null;
+    }
+}
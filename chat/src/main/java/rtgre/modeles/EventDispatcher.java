@@ -0,0 +1,163 @@
+package rtgre.modeles;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Table de ventilation des évènements, partagée par le serveur et le client : chaque {@link EventType}
+ * est associé une fois pour toutes à son traitement, retrouvé en temps constant par le rang du type.
+ * Le nombre d'évènements traités, d'erreurs et la durée des traitements sont comptabilisés par type.
+ * Sûre en accès concurrent une fois les traitements enregistrés.
+ * @param <C> Le contexte du traitement (gestionnaire du client côté serveur, contrôleur côté client)
+ * @param <E> La forme de l'évènement transmise au traitement
+ */
+public class EventDispatcher<C, E> {
+    /** Nombre de types d'évènements */
+    private static final int TYPES = EventType.values().length;
+
+    /** Traitements, indexés par le rang du type */
+    @SuppressWarnings("unchecked")
+    private final Handler<C, E>[] handlers = (Handler<C, E>[]) new Handler<?, ?>[TYPES];
+    /** Nombre d'évènements traités, par type */
+    private final LongAdder[] counts = new LongAdder[TYPES];
+    /** Nombre de traitements interrompus par une exception, par type */
+    private final LongAdder[] errors = new LongAdder[TYPES];
+    /** Durée cumulée des traitements (ns), par type */
+    private final LongAdder[] totalNanos = new LongAdder[TYPES];
+    /** Durée du plus long traitement (ns), par type */
+    private final AtomicLong[] maxNanos = new AtomicLong[TYPES];
+    /** Nombre d'évènements sans traitement enregistré */
+    private final LongAdder unhandled = new LongAdder();
+
+    /**
+     * Traitement d'un type d'évènement
+     * @param <C> Le contexte du traitement
+     * @param <E> La forme de l'évènement
+     */
+    @FunctionalInterface
+    public interface Handler<C, E> {
+        /**
+         * Traite un évènement
+         * @param context Le contexte du traitement
+         * @param event L'évènement
+         * @return `false` si la connexion doit être fermée, `true` sinon
+         */
+        boolean handle(C context, E event);
+    }
+
+    /**
+     * Crée une table vide
+     */
+    public EventDispatcher() {
+        for (int i = 0; i < TYPES; i++) {
+            counts[i] = new LongAdder();
+            errors[i] = new LongAdder();
+            totalNanos[i] = new LongAdder();
+            maxNanos[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Enregistre le traitement d'un type d'évènement, qui décide de la poursuite de la connexion
+     * @param type Le type d'évènement
+     * @param handler Le traitement
+     * @return La table, pour enchainer les enregistrements
+     * @throws IllegalStateException si un traitement est déjà enregistré pour ce type
+     */
+    public EventDispatcher<C, E> on(EventType type, Handler<C, E> handler) throws IllegalStateException {
+        if (handlers[type.ordinal()] != null) {
+            throw new IllegalStateException("Handler already registered for " + type);
+        }
+        handlers[type.ordinal()] = handler;
+        return this;
+    }
+
+    /**
+     * Enregistre le traitement d'un type d'évènement après lequel la connexion est toujours poursuivie
+     * @param type Le type d'évènement
+     * @param handler Le traitement
+     * @return La table, pour enchainer les enregistrements
+     * @throws IllegalStateException si un traitement est déjà enregistré pour ce type
+     */
+    public EventDispatcher<C, E> onEach(EventType type, BiConsumer<C, E> handler) throws IllegalStateException {
+        return on(type, (context, event) -> {
+            handler.accept(context, event);
+            return true;
+        });
+    }
+
+    /**
+     * Un traitement est-il enregistré pour ce type ?
+     * @param type Le type d'évènement, éventuellement `null`
+     * @return `true` si un évènement de ce type peut être ventilé
+     */
+    public boolean handles(EventType type) {
+        return type != null && handlers[type.ordinal()] != null;
+    }
+
+    /**
+     * Ventile un évènement vers le traitement de son type, en mesurant sa durée.
+     * Une exception levée par le traitement est comptabilisée puis propagée.
+     * @param type Le type de l'évènement, `null` s'il est inconnu
+     * @param context Le contexte du traitement
+     * @param event L'évènement
+     * @return Le résultat du traitement, ou `false` si aucun traitement n'est enregistré pour ce type
+     */
+    public boolean dispatch(EventType type, C context, E event) {
+        if (!handles(type)) {
+            unhandled.increment();
+            return false;
+        }
+        int i = type.ordinal();
+        long start = System.nanoTime();
+        try {
+            return handlers[i].handle(context, event);
+        } catch (RuntimeException e) {
+            errors[i].increment();
+            throw e;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            counts[i].increment();
+            totalNanos[i].add(nanos);
+            if (nanos > maxNanos[i].get()) {
+                maxNanos[i].accumulateAndGet(nanos, Math::max);
+            }
+        }
+    }
+
+    /**
+     * Statistiques d'un type d'évènement
+     * @param type Le type d'évènement
+     * @return Un instantané des statistiques du type
+     */
+    public EventTypeStats getStats(EventType type) {
+        int i = type.ordinal();
+        return new EventTypeStats(type, counts[i].sum(), errors[i].sum(), totalNanos[i].sum(), maxNanos[i].get());
+    }
+
+    /**
+     * Statistiques des types d'évènements déjà reçus
+     * @return Les statistiques par type, dans l'ordre des types
+     */
+    public Map<EventType, EventTypeStats> getStats() {
+        Map<EventType, EventTypeStats> stats = new EnumMap<>(EventType.class);
+        for (EventType type : EventType.values()) {
+            EventTypeStats typeStats = getStats(type);
+            if (typeStats.count() > 0) {
+                stats.put(type, typeStats);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Nombre d'évènements reçus sans traitement enregistré
+     * @return Le nombre d'évènements non ventilés
+     */
+    public long getUnhandled() {
+        return unhandled.sum();
+    }
+}
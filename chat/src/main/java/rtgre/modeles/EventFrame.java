@@ -0,0 +1,199 @@
+package rtgre.modeles;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Trame immuable prête à être émise sur le réseau : la représentation JSON d'un évènement,
+ * encodée une seule fois en UTF-8 et terminée par une fin de ligne. Une même trame peut être
+ * écrite sur les connexions de tous les destinataires d'une diffusion, quel que soit leur {@link Framing}.
+ */
+public final class EventFrame {
+    /** Les octets de la trame, fin de ligne comprise (jamais modifiés) */
+    private final byte[] bytes;
+    /** Entête de la trame en mode {@link Framing#LENGTH_PREFIXED} : la longueur du JSON, sans fin de ligne */
+    private final byte[] header;
+    /** L'évènement de la trame (`null` pour une trame créée à partir d'une ligne) */
+    private final Event event;
+    /** Dernier encodage non JSON de la trame, calculé à la première émission avec cet encodage */
+    private volatile Encoded encoded = null;
+
+    /**
+     * Trame encodée avec un autre encodage que JSON
+     * @param codec L'encodage
+     * @param header L'entête (longueur de `payload` sur 4 octets)
+     * @param payload Les octets de l'évènement encodé
+     */
+    private record Encoded(EventCodec codec, byte[] header, byte[] payload) {
+    }
+
+    /**
+     * Constructeur privé : les trames sont créées par {@link #of(String)} ou {@link Event#toFrame()}
+     * @param bytes Les octets de la trame
+     * @param event L'évènement de la trame, ou `null`
+     */
+    private EventFrame(byte[] bytes, Event event) {
+        this.bytes = bytes;
+        this.header = header(bytes.length - 1);
+        this.event = event;
+    }
+
+    /**
+     * Encode une ligne de texte (sans fin de ligne) en une trame
+     * @param line La ligne à encoder
+     * @return La trame correspondante
+     */
+    public static EventFrame of(String line) {
+        return new EventFrame((line + "\n").getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    /**
+     * Encode un évènement en une trame, qui pourra aussi être émise avec un autre encodage que JSON
+     * @param event L'évènement à encoder
+     * @return La trame correspondante
+     */
+    static EventFrame of(Event event) {
+        return new EventFrame((event.toJson() + "\n").getBytes(StandardCharsets.UTF_8), event);
+    }
+
+    /**
+     * Entête d'une trame en mode {@link Framing#LENGTH_PREFIXED}
+     * @param length La longueur de l'évènement encodé
+     * @return La longueur sur 4 octets (big-endian)
+     */
+    private static byte[] header(int length) {
+        return new byte[] {(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length};
+    }
+
+    /**
+     * Encodage de la trame avec un autre encodage que JSON, calculé une seule fois
+     * (tant que tous les destinataires utilisent le même encodage)
+     * @param codec L'encodage
+     * @return La trame encodée
+     */
+    private Encoded encoded(EventCodec codec) {
+        Encoded current = encoded;
+        if (current == null || current.codec() != codec) {
+            byte[] payload = codec.encode((event != null) ? event : Event.fromJson(toString()));
+            current = new Encoded(codec, header(payload.length), payload);
+            encoded = current;
+        }
+        return current;
+    }
+
+    /**
+     * Taille de la trame
+     * @return Le nombre d'octets de la trame, fin de ligne comprise
+     */
+    public int length() {
+        return bytes.length;
+    }
+
+    /**
+     * Vue en lecture seule des octets de la trame, indépendante pour chaque appelant (position propre),
+     * sans copie des données
+     * @return Un tampon positionné au début de la trame
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Écrit la trame sur un flux d'octets
+     * @param out Le flux de sortie
+     * @throws IOException si l'écriture échoue
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Vue en lecture seule du JSON de la trame selon le découpage de la connexion : la ligne complète
+     * en mode {@link Framing#LINE}, le JSON sans fin de ligne en mode {@link Framing#LENGTH_PREFIXED}
+     * (à émettre après {@link #headerBuffer()})
+     * @param framing Le découpage de la connexion
+     * @return Un tampon positionné au début des octets à émettre
+     */
+    public ByteBuffer asByteBuffer(Framing framing) {
+        if (framing == Framing.LINE) {
+            return asByteBuffer();
+        }
+        return ByteBuffer.wrap(bytes, 0, bytes.length - 1).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Vue en lecture seule de l'évènement encodé selon l'encodage de la connexion, à émettre en mode
+     * {@link Framing#LENGTH_PREFIXED} après {@link #headerBuffer(EventCodec)}
+     * @param codec L'encodage de la connexion
+     * @return Un tampon positionné au début des octets à émettre
+     */
+    public ByteBuffer asByteBuffer(EventCodec codec) {
+        if (codec == EventCodec.JSON) {
+            return asByteBuffer(Framing.LENGTH_PREFIXED);
+        }
+        return ByteBuffer.wrap(encoded(codec).payload()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Vue en lecture seule de l'entête de la trame en mode {@link Framing#LENGTH_PREFIXED}
+     * @return Un tampon contenant la longueur du JSON sur 4 octets (big-endian)
+     */
+    public ByteBuffer headerBuffer() {
+        return ByteBuffer.wrap(header).asReadOnlyBuffer();
+    }
+
+    /**
+     * Vue en lecture seule de l'entête de la trame en mode {@link Framing#LENGTH_PREFIXED} selon l'encodage de la connexion
+     * @param codec L'encodage de la connexion
+     * @return Un tampon contenant la longueur de l'évènement encodé sur 4 octets (big-endian)
+     */
+    public ByteBuffer headerBuffer(EventCodec codec) {
+        if (codec == EventCodec.JSON) {
+            return headerBuffer();
+        }
+        return ByteBuffer.wrap(encoded(codec).header()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Écrit la trame sur un flux d'octets selon le découpage de la connexion
+     * @param out Le flux de sortie
+     * @param framing Le découpage de la connexion
+     * @throws IOException si l'écriture échoue
+     */
+    public void writeTo(OutputStream out, Framing framing) throws IOException {
+        if (framing == Framing.LINE) {
+            writeTo(out);
+        } else {
+            out.write(header, 0, header.length);
+            out.write(bytes, 0, bytes.length - 1);
+        }
+    }
+
+    /**
+     * Écrit la trame sur un flux d'octets selon le découpage et l'encodage de la connexion
+     * @param out Le flux de sortie
+     * @param framing Le découpage de la connexion
+     * @param codec L'encodage de la connexion ({@link EventCodec#JSON} en mode {@link Framing#LINE})
+     * @throws IOException si l'écriture échoue
+     */
+    public void writeTo(OutputStream out, Framing framing, EventCodec codec) throws IOException {
+        if (codec == EventCodec.JSON) {
+            writeTo(out, framing);
+        } else {
+            Encoded current = encoded(codec);
+            out.write(current.header(), 0, current.header().length);
+            out.write(current.payload(), 0, current.payload().length);
+        }
+    }
+
+    /**
+     * Représentation textuelle de la trame, sans fin de ligne
+     * @return La ligne encodée dans la trame
+     */
+    @Override
+    public String toString() {
+        return new String(bytes, 0, bytes.length - 1, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,78 @@
+package rtgre.modeles;
+
+/**
+ * Types d'évènements du protocole, associés à leur étiquette transmise dans le champ `type`.
+ * L'étiquette reçue est convertie une seule fois par {@link #fromTag(String)} ; les tables de ventilation
+ * ({@link EventDispatcher}) sont ensuite indexées par le rang du type.
+ */
+public enum EventType {
+    /** Authentification (client -> serveur) */
+    AUTH(Event.AUTH),
+    /** Déconnexion (client -> serveur) */
+    QUIT(Event.QUIT),
+    /** Envoi d'un message (client -> serveur) */
+    MESG(Event.MESG),
+    /** Entrée dans un salon (client -> serveur) */
+    JOIN(Event.JOIN),
+    /** Post (serveur -> client, ou client -> serveur pour une modification) */
+    POST(Event.POST),
+    /** Informations sur un contact */
+    CONT(Event.CONT),
+    /** Demande de la liste des contacts (client -> serveur) */
+    LIST_CONTACTS(Event.LIST_CONTACTS),
+    /** Demande de l'historique des posts (client -> serveur) */
+    LIST_POSTS(Event.LIST_POSTS),
+    /** Évènement système interne au client */
+    SYSTEM(Event.SYSTEM),
+    /** Demande de la liste des salons (client -> serveur) */
+    LIST_ROOMS(Event.LIST_ROOMS),
+    /** Informations sur un salon (serveur -> client) */
+    ROOM(Event.ROOM),
+    /** Fin d'une page de l'historique (serveur -> client) */
+    PAGE(Event.PAGE),
+    /** Lot de posts, de contacts ou de salons (serveur -> client) */
+    BATCH(Event.BATCH);
+
+    /** L'étiquette transmise dans le champ `type` de l'évènement */
+    private final String tag;
+
+    /**
+     * Constructeur
+     * @param tag L'étiquette du type
+     */
+    EventType(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Getter de `tag`
+     * @return L'étiquette transmise dans le champ `type` de l'évènement
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * Renvoie le type associé à une étiquette
+     * @param tag L'étiquette reçue
+     * @return Le type correspondant, ou `null` si l'étiquette est inconnue
+     */
+    public static EventType fromTag(String tag) {
+        return switch (tag) {
+            case Event.AUTH -> AUTH;
+            case Event.QUIT -> QUIT;
+            case Event.MESG -> MESG;
+            case Event.JOIN -> JOIN;
+            case Event.POST -> POST;
+            case Event.CONT -> CONT;
+            case Event.LIST_CONTACTS -> LIST_CONTACTS;
+            case Event.LIST_POSTS -> LIST_POSTS;
+            case Event.SYSTEM -> SYSTEM;
+            case Event.LIST_ROOMS -> LIST_ROOMS;
+            case Event.ROOM -> ROOM;
+            case Event.PAGE -> PAGE;
+            case Event.BATCH -> BATCH;
+            default -> null;
+        };
+    }
+}
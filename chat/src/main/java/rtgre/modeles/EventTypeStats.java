@@ -0,0 +1,30 @@
+package rtgre.modeles;
+
+/**
+ * Instantané des statistiques de traitement d'un type d'évènement
+ * @param type Le type d'évènement
+ * @param count Le nombre d'évènements traités
+ * @param errors Le nombre de traitements interrompus par une exception
+ * @param totalNanos La durée cumulée des traitements (ns)
+ * @param maxNanos La durée du plus long traitement (ns)
+ */
+public record EventTypeStats(EventType type, long count, long errors, long totalNanos, long maxNanos) {
+
+    /**
+     * Durée moyenne d'un traitement
+     * @return La durée moyenne en microsecondes (0 si aucun évènement)
+     */
+    public double averageMicros() {
+        return (count == 0) ? 0 : totalNanos / 1e3 / count;
+    }
+
+    /**
+     * Représentation textuelle des statistiques
+     * @return La chaine de caractères représentant les statistiques
+     */
+    @Override
+    public String toString() {
+        return "%s : %d évènement(s), %d erreur(s), %.1f µs en moyenne, %.1f µs au plus"
+                .formatted(type.getTag(), count, errors, averageMicros(), maxNanos / 1e3);
+    }
+}
@@ -0,0 +1,236 @@
+package rtgre.modeles;
+
+import org.json.JSONException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Lecture des évènements reçus sur un flux d'octets, selon le {@link Framing} et l'{@link EventCodec} de la connexion.
+ * En mode {@link Framing#LENGTH_PREFIXED}, chaque évènement est lu d'après la longueur annoncée
+ * par son entête, sans recherche de fin de ligne ; le JSON peut alors contenir des fins de ligne.
+ * Les octets reçus sont accumulés dans un tampon propre à la connexion et réutilisé d'un évènement à l'autre :
+ * une ligne ou une trame est décodée directement depuis ce tampon, sans copie intermédiaire.
+ */
+public class FrameReader {
+    /** Taille initiale du tampon de lecture */
+    private static final int BUFFER_SIZE = 8192;
+    /** Flux d'octets en entrée */
+    private final InputStream in;
+    /** Tampon de lecture, agrandi si besoin à la taille de la plus grande ligne ou trame reçue */
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    /** Position du premier octet non consommé du tampon */
+    private int start = 0;
+    /** Position suivant le dernier octet reçu dans le tampon */
+    private int end = 0;
+    /** Découpage du flux, `null` tant qu'il n'est pas négocié */
+    private Framing framing;
+    /** Encodage des évènements, `null` tant qu'il n'est pas négocié */
+    private EventCodec codec;
+
+    /**
+     * Lecteur d'un flux dont le découpage et l'encodage sont connus (côté client, après négociation)
+     * @param in Le flux d'octets en entrée
+     * @param framing Le découpage du flux
+     * @param codec L'encodage des évènements
+     */
+    public FrameReader(InputStream in, Framing framing, EventCodec codec) {
+        this.in = in;
+        this.framing = framing;
+        this.codec = codec;
+    }
+
+    /**
+     * Lecteur d'un flux d'évènements JSON dont le découpage est connu (côté client, après négociation)
+     * @param in Le flux d'octets en entrée
+     * @param framing Le découpage du flux
+     */
+    public FrameReader(InputStream in, Framing framing) {
+        this(in, framing, EventCodec.JSON);
+    }
+
+    /**
+     * Lecteur d'un flux dont le découpage et l'encodage sont déterminés par ses premiers octets (côté serveur),
+     * voir {@link #negotiate()}
+     * @param in Le flux d'octets en entrée
+     */
+    public FrameReader(InputStream in) {
+        this(in, null, null);
+    }
+
+    /**
+     * Détermine le découpage du flux s'il n'est pas encore connu, en attendant si besoin le premier octet :
+     * un préambule {@link Framing#preamble(EventCodec)} est consommé et sélectionne {@link Framing#LENGTH_PREFIXED}
+     * avec l'encodage qu'il désigne, tout autre octet sélectionne {@link Framing#LINE} avec l'encodage JSON
+     * @return Le découpage du flux
+     * @throws IOException si la lecture échoue ou si le préambule est incomplet ou invalide
+     */
+    public Framing negotiate() throws IOException {
+        if (framing == null) {
+            if (fill(1) && buffer[start] == Framing.preambleByte(0)) {
+                if (!fill(Framing.PREAMBLE_LENGTH)) {
+                    throw new IOException("Invalid framing preamble");
+                }
+                EventCodec requested = Framing.codecOf(Arrays.copyOfRange(buffer, start, start + Framing.PREAMBLE_LENGTH));
+                if (requested == null) {
+                    throw new IOException("Invalid framing preamble");
+                }
+                start += Framing.PREAMBLE_LENGTH;
+                codec = requested;
+                framing = Framing.LENGTH_PREFIXED;
+            } else {
+                codec = EventCodec.JSON;
+                framing = Framing.LINE;
+            }
+        }
+        return framing;
+    }
+
+    /**
+     * Lit l'évènement suivant sous sa forme JSON (encodage {@link EventCodec#JSON} uniquement)
+     * @return La représentation JSON de l'évènement, ou `null` à la fin du flux
+     * @throws IOException si la lecture échoue, si le flux s'interrompt au milieu d'une trame,
+     *                     si la longueur annoncée dépasse {@link Framing#MAX_FRAME_LENGTH}
+     *                     ou si la connexion utilise un autre encodage
+     */
+    public String readFrame() throws IOException {
+        if (negotiate() == Framing.LINE) {
+            return readLine();
+        }
+        if (codec != EventCodec.JSON) {
+            throw new IOException("Frames are encoded with " + codec);
+        }
+        int length = readPayload();
+        if (length < 0) {
+            return null;
+        }
+        String frame = new String(buffer, start, length, StandardCharsets.UTF_8);
+        start += length;
+        return frame;
+    }
+
+    /**
+     * Lit et décode l'évènement suivant, quel que soit l'encodage de la connexion
+     * @return L'évènement, ou `null` à la fin du flux
+     * @throws IOException si la lecture échoue, si le flux s'interrompt au milieu d'une trame
+     *                     ou si les octets reçus ne forment pas un évènement valide
+     * @throws JSONException si une ligne reçue n'est pas un évènement JSON valide
+     */
+    public Event readEvent() throws IOException, JSONException {
+        if (negotiate() == Framing.LINE) {
+            String line = readLine();
+            return (line == null) ? null : Event.fromJson(line);
+        }
+        int length = readPayload();
+        if (length < 0) {
+            return null;
+        }
+        try {
+            return codec.decode(buffer, start, length);
+        } finally {
+            start += length;
+        }
+    }
+
+    /**
+     * Lit une ligne terminée par `\n` (le `\r` final éventuel est retiré), décodée directement depuis le tampon
+     * @return La ligne, ou `null` à la fin du flux ; la dernière ligne peut ne pas être terminée
+     * @throws IOException si la lecture échoue ou si la ligne dépasse {@link Framing#MAX_FRAME_LENGTH}
+     */
+    private String readLine() throws IOException {
+        int scanned = start;
+        while (true) {
+            for (int i = scanned; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    int length = (i > start && buffer[i - 1] == '\r') ? i - 1 - start : i - start;
+                    String line = new String(buffer, start, length, StandardCharsets.UTF_8);
+                    start = i + 1;
+                    return line;
+                }
+            }
+            int available = end - start;
+            if (available > Framing.MAX_FRAME_LENGTH) {
+                throw new IOException("Line too long");
+            }
+            if (!fill(available + 1)) {
+                if (end == start) {
+                    return null;
+                }
+                String line = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+                start = end;
+                return line;
+            }
+            scanned = start + available;
+        }
+    }
+
+    /**
+     * Lit l'entête d'une trame préfixée par sa longueur puis attend que la trame soit entièrement dans le tampon
+     * @return La longueur de la trame, dont les octets commencent à {@link #start}, ou -1 à la fin du flux
+     * @throws IOException si la lecture échoue, si le flux s'interrompt au milieu d'une trame
+     *                     ou si la longueur annoncée dépasse {@link Framing#MAX_FRAME_LENGTH}
+     */
+    private int readPayload() throws IOException {
+        if (!fill(1)) {
+            return -1;
+        }
+        if (!fill(Framing.HEADER_LENGTH)) {
+            throw new EOFException("Truncated frame header");
+        }
+        int length = ((buffer[start] & 0xFF) << 24) | ((buffer[start + 1] & 0xFF) << 16)
+                | ((buffer[start + 2] & 0xFF) << 8) | (buffer[start + 3] & 0xFF);
+        if (length < 0 || length > Framing.MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        start += Framing.HEADER_LENGTH;
+        if (!fill(length)) {
+            throw new EOFException("Truncated frame");
+        }
+        return length;
+    }
+
+    /**
+     * Attend qu'au moins `count` octets non consommés soient dans le tampon, en le compactant
+     * ou en l'agrandissant si besoin. Le tampon n'est agrandi qu'une fois plein d'octets reçus, en doublant
+     * sa taille sans dépasser `count` : une longueur annoncée sans être envoyée n'est jamais allouée d'avance.
+     * @param count Le nombre d'octets attendus
+     * @return `true` si les octets sont disponibles, `false` si le flux se termine avant
+     * @throws IOException si la lecture échoue
+     */
+    private boolean fill(int count) throws IOException {
+        while (end - start < count) {
+            if (end == buffer.length) {
+                if (start == 0) {
+                    buffer = Arrays.copyOf(buffer, Math.min(count, buffer.length * 2));
+                } else {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+            }
+            int n = in.read(buffer, end, buffer.length - end);
+            if (n < 0) {
+                return false;
+            }
+            end += n;
+        }
+        return true;
+    }
+
+    /**
+     * Getter de `framing`
+     * @return Le découpage du flux, ou `null` s'il n'est pas encore négocié
+     */
+    public Framing getFraming() {
+        return framing;
+    }
+
+    /**
+     * Getter de `codec`
+     * @return L'encodage des évènements, ou `null` s'il n'est pas encore négocié
+     */
+    public EventCodec getCodec() {
+        return codec;
+    }
+}
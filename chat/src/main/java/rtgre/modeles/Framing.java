@@ -0,0 +1,77 @@
+package rtgre.modeles;
+
+import java.util.Arrays;
+
+/**
+ * Découpage du flux d'octets d'une connexion en évènements.
+ * Le mode est négocié à la connexion : un client qui souhaite le mode {@link #LENGTH_PREFIXED} commence par
+ * envoyer le préambule {@link #preamble(EventCodec)}, dont le dernier octet désigne l'{@link EventCodec} souhaité,
+ * et que le serveur lui renvoie pour l'accepter. Le premier octet du préambule (0) ne pouvant commencer
+ * une ligne JSON, les clients historiques, qui envoient directement leurs lignes, restent en mode {@link #LINE}
+ * (encodage JSON) sur le même port.
+ */
+public enum Framing {
+    /** Un évènement JSON par ligne, terminé par une fin de ligne (protocole historique) */
+    LINE,
+    /** Chaque évènement JSON est précédé de sa longueur en octets, sur 4 octets (big-endian) */
+    LENGTH_PREFIXED;
+
+    /** Taille de l'entête d'une trame en mode {@link #LENGTH_PREFIXED} */
+    public static final int HEADER_LENGTH = 4;
+    /** Taille maximale d'un évènement en mode {@link #LENGTH_PREFIXED}, en octets */
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+    /** Taille du préambule de négociation du mode {@link #LENGTH_PREFIXED} */
+    public static final int PREAMBLE_LENGTH = 4;
+    /** Début du préambule de négociation, suivi de l'identifiant de l'encodage */
+    private static final byte[] PREAMBLE_PREFIX = {0, 'L', 'P'};
+
+    /**
+     * Préambule de négociation du mode {@link #LENGTH_PREFIXED} avec l'encodage JSON
+     * @return Les octets du préambule
+     */
+    public static byte[] preamble() {
+        return preamble(EventCodec.JSON);
+    }
+
+    /**
+     * Préambule de négociation du mode {@link #LENGTH_PREFIXED} avec l'encodage fourni
+     * @param codec L'encodage des évènements
+     * @return Les octets du préambule
+     */
+    public static byte[] preamble(EventCodec codec) {
+        byte[] preamble = Arrays.copyOf(PREAMBLE_PREFIX, PREAMBLE_LENGTH);
+        preamble[PREAMBLE_LENGTH - 1] = codec.id();
+        return preamble;
+    }
+
+    /**
+     * Octet attendu à une position du début du préambule (avant l'identifiant de l'encodage)
+     * @param index La position dans le préambule, inférieure à `PREAMBLE_LENGTH - 1`
+     * @return L'octet attendu
+     */
+    public static byte preambleByte(int index) {
+        return PREAMBLE_PREFIX[index];
+    }
+
+    /**
+     * Encodage demandé par un préambule de négociation
+     * @param bytes Les octets reçus
+     * @return L'encodage demandé, ou `null` si les octets ne forment pas un préambule d'un encodage connu
+     */
+    public static EventCodec codecOf(byte[] bytes) {
+        if (bytes.length != PREAMBLE_LENGTH
+                || !Arrays.equals(PREAMBLE_PREFIX, Arrays.copyOf(bytes, PREAMBLE_PREFIX.length))) {
+            return null;
+        }
+        return EventCodec.fromId(bytes[PREAMBLE_LENGTH - 1]);
+    }
+
+    /**
+     * Les octets fournis forment-ils un préambule de négociation ?
+     * @param bytes Les octets reçus
+     * @return `true` si les octets correspondent au préambule d'un encodage connu
+     */
+    public static boolean isPreamble(byte[] bytes) {
+        return codecOf(bytes) != null;
+    }
+}
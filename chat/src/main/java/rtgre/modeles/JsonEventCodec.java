@@ -0,0 +1,57 @@
+package rtgre.modeles;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodage JSON des évènements : la représentation de {@link Event#toJson()}, encodée en UTF-8
+ */
+public class JsonEventCodec implements EventCodec {
+
+    /**
+     * Identifiant de l'encodage JSON : '1', le préambule historique du mode {@link Framing#LENGTH_PREFIXED}
+     * @return L'octet identifiant l'encodage
+     */
+    @Override
+    public byte id() {
+        return '1';
+    }
+
+    /**
+     * Encode un évènement en JSON
+     * @param event L'évènement
+     * @return La représentation JSON de l'évènement, en UTF-8
+     */
+    @Override
+    public byte[] encode(Event event) {
+        return event.toJson().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Décode un évènement JSON
+     * @param bytes Le tableau contenant l'évènement encodé
+     * @param offset La position du premier octet de l'évènement
+     * @param length Le nombre d'octets de l'évènement
+     * @return L'évènement décodé
+     * @throws IOException si les octets ne forment pas un évènement JSON valide
+     */
+    @Override
+    public Event decode(byte[] bytes, int offset, int length) throws IOException {
+        try {
+            return Event.fromJson(new String(bytes, offset, length, StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Représentation textuelle de l'encodage
+     * @return Le nom de l'encodage
+     */
+    @Override
+    public String toString() {
+        return "JSON";
+    }
+}
@@ -0,0 +1,414 @@
+package rtgre.modeles;
+
+import org.json.JSONException;
+
+import java.math.BigDecimal;
+
+/**
+ * Lecteur JSON en flux (pull parser) : le JSON est parcouru une seule fois, valeur par valeur, à la demande
+ * de l'appelant, sans construire d'arbre {@link org.json.JSONObject} intermédiaire.
+ * Les valeurs inutiles sont sautées sans être converties.
+ * Les conversions suivent celles de {@link org.json.JSONObject} : {@link #readLong()} accepte un nombre
+ * ou une chaine numérique, {@link #readBoolean()} un booléen ou la chaine "true"/"false".
+ * Un même lecteur peut être réutilisé d'une ligne à l'autre ({@link #reset(String)}) ; les clés et les chaines
+ * connues de sa table de symboles sont alors renvoyées sans allouer de nouvelle chaine.
+ */
+public class JsonPullParser {
+    /** Table vide, utilisée par défaut */
+    private static final String[] NO_SYMBOLS = {};
+    /** Le JSON à lire */
+    private String json;
+    /** Chaines connues (clés, étiquettes) renvoyées telles quelles par {@link #nextKey()} et {@link #readSymbol()} */
+    private final String[] symbols;
+    /** Position de lecture dans le JSON */
+    private int pos;
+    /** Le prochain appel à {@link #nextKey()} doit-il lire la première clé de l'objet ? */
+    private boolean firstKey = false;
+
+    /**
+     * Constructeur
+     * @param json Le JSON à lire
+     */
+    public JsonPullParser(String json) {
+        this.json = json;
+        this.pos = 0;
+        this.symbols = NO_SYMBOLS;
+    }
+
+    /**
+     * Constructeur d'un lecteur réutilisable, à alimenter par {@link #reset(String)}
+     * @param symbols Les chaines connues, renvoyées sans allocation lorsqu'elles sont lues comme clé ou symbole
+     */
+    public JsonPullParser(String[] symbols) {
+        this.json = "";
+        this.pos = 0;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Réinitialise le lecteur pour lire un nouveau JSON
+     * @param json Le JSON à lire
+     */
+    public void reset(String json) {
+        this.json = json;
+        this.pos = 0;
+        this.firstKey = false;
+    }
+
+    /**
+     * Position de lecture courante, à fournir à {@link #seek(int)} pour relire une valeur
+     * @return L'indice du prochain caractère à lire
+     */
+    public int position() {
+        return pos;
+    }
+
+    /**
+     * Reprend la lecture à une position mémorisée par {@link #position()}
+     * @param position L'indice du prochain caractère à lire
+     */
+    public void seek(int position) {
+        this.pos = position;
+        this.firstKey = false;
+    }
+
+    /**
+     * Consomme le début d'un objet
+     * @throws JSONException si la valeur suivante n'est pas un objet
+     */
+    public void beginObject() throws JSONException {
+        if (peek() != '{') {
+            throw error("A JSONObject text must begin with '{'");
+        }
+        pos++;
+        firstKey = true;
+    }
+
+    /**
+     * Lit la clé suivante de l'objet en cours, ou consomme la fin de l'objet.
+     * La valeur associée doit ensuite être lue ou sautée avant l'appel suivant.
+     * @return La clé, ou `null` à la fin de l'objet
+     * @throws JSONException si le JSON est mal formé
+     */
+    public String nextKey() throws JSONException {
+        char c = peek();
+        if (c == '}') {
+            pos++;
+            firstKey = false;
+            return null;
+        }
+        if (!firstKey) {
+            if (c != ',') {
+                throw error("Expected a ',' or '}'");
+            }
+            pos++;
+            c = peek();
+        }
+        firstKey = false;
+        if (c != '"') {
+            throw error("A JSONObject key must be a string");
+        }
+        String key = readSymbol();
+        if (peek() != ':') {
+            throw error("Expected a ':' after a key");
+        }
+        pos++;
+        return key;
+    }
+
+    /**
+     * Consomme la valeur `null` si elle est la valeur suivante
+     * @return `true` si la valeur suivante était `null` (et a été consommée)
+     * @throws JSONException si le JSON est tronqué
+     */
+    public boolean readNull() throws JSONException {
+        if (peek() == 'n' && json.startsWith("null", pos)) {
+            pos += 4;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lit une chaine de caractères
+     * @return La chaine, séquences d'échappement décodées
+     * @throws JSONException si la valeur suivante n'est pas une chaine
+     */
+    public String readString() throws JSONException {
+        if (peek() != '"') {
+            throw error("Value is not a string");
+        }
+        int start = ++pos;
+        int end = json.indexOf('"', start);
+        if (end < 0) {
+            throw error("Unterminated string");
+        }
+        if (json.indexOf('\\', start, end) < 0) {
+            pos = end + 1;
+            return json.substring(start, end);
+        }
+        StringBuilder sb = new StringBuilder(end - start + 16);
+        while (true) {
+            if (pos >= json.length()) {
+                throw error("Unterminated string");
+            }
+            char c = json.charAt(pos++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= json.length()) {
+                throw error("Unterminated string");
+            }
+            char escaped = json.charAt(pos++);
+            switch (escaped) {
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    if (pos + 4 > json.length()) {
+                        throw error("Illegal escape");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(json, pos, pos + 4, 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Illegal escape");
+                    }
+                    pos += 4;
+                }
+                case '"', '\\', '/' -> sb.append(escaped);
+                default -> throw error("Illegal escape");
+            }
+        }
+    }
+
+    /**
+     * Lit une chaine de caractères susceptible d'appartenir à la table de symboles du lecteur
+     * @return L'instance de la table si la chaine y figure, sinon la chaine lue par {@link #readString()}
+     * @throws JSONException si la valeur suivante n'est pas une chaine
+     */
+    public String readSymbol() throws JSONException {
+        if (peek() != '"') {
+            throw error("Value is not a string");
+        }
+        int start = pos + 1;
+        for (String symbol : symbols) {
+            int end = start + symbol.length();
+            if (end < json.length() && json.charAt(end) == '"' && json.startsWith(symbol, start)) {
+                pos = end + 1;
+                return symbol;
+            }
+        }
+        return readString();
+    }
+
+    /**
+     * Lit un entier long : un nombre (tronqué s'il est décimal) ou une chaine numérique
+     * @return L'entier
+     * @throws JSONException si la valeur suivante n'est pas un nombre
+     */
+    public long readLong() throws JSONException {
+        char c = peek();
+        String number;
+        if (c == '"') {
+            number = readString().trim();
+        } else {
+            int start = pos;
+            while (pos < json.length() && isNumberChar(json.charAt(pos))) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error("Value is not a number");
+            }
+            int end = pos;
+            boolean integral = true;
+            for (int i = start; i < end; i++) {
+                char d = json.charAt(i);
+                if (d == '.' || d == 'e' || d == 'E') {
+                    integral = false;
+                    break;
+                }
+            }
+            if (integral) {
+                try {
+                    return Long.parseLong(json, start, end, 10);
+                } catch (NumberFormatException e) {
+                    throw error("Value is not a number");
+                }
+            }
+            number = json.substring(start, end);
+        }
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            try {
+                return new BigDecimal(number).longValue();
+            } catch (NumberFormatException e2) {
+                throw error("Value is not a number");
+            }
+        }
+    }
+
+    /**
+     * Lit un entier : un nombre (tronqué s'il est décimal) ou une chaine numérique
+     * @return L'entier
+     * @throws JSONException si la valeur suivante n'est pas un nombre
+     */
+    public int readInt() throws JSONException {
+        return (int) readLong();
+    }
+
+    /**
+     * Lit un booléen : `true`, `false` ou les chaines correspondantes (sans tenir compte de la casse)
+     * @return Le booléen
+     * @throws JSONException si la valeur suivante n'est pas un booléen
+     */
+    public boolean readBoolean() throws JSONException {
+        char c = peek();
+        if (c == 't' && json.startsWith("true", pos)) {
+            pos += 4;
+            return true;
+        }
+        if (c == 'f' && json.startsWith("false", pos)) {
+            pos += 5;
+            return false;
+        }
+        if (c == '"') {
+            String s = readString();
+            if (s.equalsIgnoreCase("true")) {
+                return true;
+            } else if (s.equalsIgnoreCase("false")) {
+                return false;
+            }
+        }
+        throw error("Value is not a Boolean");
+    }
+
+    /**
+     * Lit un booléen facultatif, à la manière de {@link org.json.JSONObject#optBoolean(String)} :
+     * toute valeur qui n'est pas un booléen est sautée et vaut `false`
+     * @return Le booléen, ou `false`
+     * @throws JSONException si le JSON est mal formé
+     */
+    public boolean optBoolean() throws JSONException {
+        int start = pos;
+        try {
+            return readBoolean();
+        } catch (JSONException e) {
+            pos = start;
+            skipValue();
+            return false;
+        }
+    }
+
+    /**
+     * Saute la valeur suivante, quelle que soit sa nature, sans la convertir
+     * @throws JSONException si le JSON est mal formé
+     */
+    public void skipValue() throws JSONException {
+        char c = peek();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = peek();
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+                pos++;
+            } while (depth > 0);
+        } else {
+            int start = pos;
+            while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error("Missing value");
+            }
+        }
+    }
+
+    /**
+     * Vérifie que le JSON ne contient plus que des blancs
+     * @throws JSONException si des caractères suivent la valeur lue
+     */
+    public void end() throws JSONException {
+        skipWhitespace();
+        if (pos < json.length()) {
+            throw error("Unexpected character after the value");
+        }
+    }
+
+    /**
+     * Saute une chaine de caractères sans la décoder
+     * @throws JSONException si la chaine n'est pas terminée
+     */
+    private void skipString() throws JSONException {
+        pos++;
+        while (pos < json.length()) {
+            char c = json.charAt(pos++);
+            if (c == '\\') {
+                pos++;
+            } else if (c == '"') {
+                return;
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    /**
+     * Saute les blancs et renvoie le prochain caractère significatif, sans le consommer
+     * @return Le caractère
+     * @throws JSONException si la fin du JSON est atteinte
+     */
+    private char peek() throws JSONException {
+        skipWhitespace();
+        if (pos >= json.length()) {
+            throw error("Unexpected end of JSON");
+        }
+        return json.charAt(pos);
+    }
+
+    /**
+     * Avance la position de lecture après les blancs
+     */
+    private void skipWhitespace() {
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Le caractère peut-il appartenir à un nombre JSON ?
+     * @param c Le caractère
+     * @return `true` pour les chiffres, les signes, le point et l'exposant
+     */
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    /**
+     * Construit l'exception signalant une erreur à la position courante
+     * @param message La description de l'erreur
+     * @return L'exception
+     */
+    private JSONException error(String message) {
+        return new JSONException("%s at %d".formatted(message, pos));
+    }
+}
@@ -0,0 +1,589 @@
+package rtgre.modeles;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Segment du journal des posts ({@link MessageLog}) : un fichier projeté en mémoire, dans lequel les enregistrements
+ * sont ajoutés les uns à la suite des autres et jamais modifiés. Le fichier du segment actif est dimensionné
+ * à sa capacité dès sa création ; un segment scellé est tronqué à la fin de son dernier enregistrement.
+ *
+ * Format : un en-tête (`PLOG`, version) suivi des enregistrements, chacun de la forme
+ * `longueur | CRC32 | contenu | longueur`, la longueur finale, vérifiée à l'ouverture, écartant un enregistrement écrit en partie.
+ * Le contenu est `type | timestamp | id | conversation | from | to | body`, chaque chaine étant précédée
+ * de sa longueur en octets (UTF-8). Un enregistrement incomplet ou corrompu (CRC erroné) marque la fin du segment.
+ *
+ * Un index clairsemé associe à un enregistrement tous les {@link #INDEX_INTERVAL} octets le plus grand timestamp
+ * des enregistrements qui le précèdent : la lecture des posts depuis un instant donné commence directement
+ * au bon endroit, et le parcours à rebours sait quand aucun enregistrement antérieur ne peut plus convenir.
+ * Les positions des enregistrements de chaque conversation sont gardées en mémoire (voir {@link Chain}) :
+ * une lecture ne parcourt que les enregistrements de sa conversation.
+ * Les enregistrements périmés (versions remplacées, suppressions devenues inutiles) sont marqués par le journal,
+ * qui ne réécrit que les segments qui en contiennent.
+ */
+final class LogSegment {
+    /** Marque de début d'un fichier de segment ("PLOG") */
+    static final int MAGIC = 0x504C4F47;
+    /** Version du format */
+    static final int VERSION = 1;
+    /** Taille de l'en-tête du fichier */
+    static final int HEADER = 8;
+    /** Octets d'un enregistrement hors contenu : longueur, CRC32, longueur finale */
+    static final int OVERHEAD = 12;
+    /** Type d'un enregistrement de post (ajouté ou modifié) */
+    static final byte PUT = 1;
+    /** Type d'un enregistrement de suppression */
+    static final byte DELETE = 2;
+    /** Écart minimal, en octets, entre deux entrées de l'index clairsemé */
+    static final int INDEX_INTERVAL = 4096;
+    /** Position du type dans un enregistrement */
+    private static final int TYPE = 8;
+    /** Position du timestamp dans un enregistrement */
+    private static final int TIMESTAMP = 9;
+    /** Position de l'identifiant dans un enregistrement */
+    private static final int ID = 17;
+    /** Position de la première chaine (la conversation) dans un enregistrement */
+    private static final int STRINGS = 33;
+
+    /** Numéro d'ordre du segment dans le journal */
+    final long sequence;
+    /** Chemin du fichier, modifié lorsque le fichier d'un segment compacté remplace l'original */
+    private Path path;
+    /** Canal du fichier */
+    private final FileChannel channel;
+    /** Projection du fichier en mémoire */
+    private final MappedByteBuffer buffer;
+    /** Fin du dernier enregistrement */
+    private int end = HEADER;
+    /** Le segment est-il scellé (plus aucun ajout) ? */
+    private boolean sealed = false;
+    /** Nombre d'enregistrements */
+    private int records = 0;
+    /** Positions des enregistrements de l'index clairsemé */
+    private int[] indexOffsets = new int[16];
+    /** Plus grand timestamp des enregistrements précédant chaque entrée de l'index */
+    private long[] indexMaxBefore = new long[16];
+    /** Nombre d'entrées de l'index */
+    private int indexSize = 0;
+    /** Plus grand timestamp du segment */
+    private long maxTimestamp = Long.MIN_VALUE;
+    /** Positions des enregistrements périmés */
+    private final Set<Integer> dead = new HashSet<>();
+    /** Taille des enregistrements périmés, en octets */
+    private long deadBytes = 0;
+    /** Enregistrements de chaque conversation présente dans le segment */
+    private final Map<String, Chain> conversations = new HashMap<>();
+
+    /**
+     * Positions des enregistrements d'une conversation dans le segment, dans l'ordre du segment
+     */
+    static final class Chain {
+        /** Positions des enregistrements */
+        private int[] offsets = new int[8];
+        /** Nombre d'enregistrements */
+        private int size = 0;
+        /** Plus grand timestamp des enregistrements */
+        private long maxTimestamp = Long.MIN_VALUE;
+
+        /**
+         * Ajoute un enregistrement, placé après les précédents dans le segment
+         * @param offset La position de l'enregistrement
+         * @param timestamp Son timestamp
+         */
+        private void add(int offset, long timestamp) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * size);
+            }
+            offsets[size++] = offset;
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+
+        /**
+         * Getter de `size`
+         * @return Le nombre d'enregistrements de la conversation
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Position d'un enregistrement
+         * @param index Le rang de l'enregistrement parmi ceux de la conversation
+         * @return Sa position dans le segment
+         */
+        int get(int index) {
+            return offsets[index];
+        }
+
+        /**
+         * Rang du premier enregistrement situé à une position donnée ou après
+         * @param offset La position dans le segment
+         * @return Le rang, ou {@link #size()} si aucun enregistrement ne suit la position
+         */
+        int indexOf(int offset) {
+            int index = Arrays.binarySearch(offsets, 0, size, offset);
+            return (index < 0) ? -index - 1 : index;
+        }
+
+        /**
+         * Getter de `maxTimestamp`
+         * @return Le plus grand timestamp des enregistrements de la conversation
+         */
+        long maxTimestamp() {
+            return maxTimestamp;
+        }
+    }
+
+    /**
+     * Constructeur
+     * @param sequence Le numéro d'ordre du segment
+     * @param path Le chemin du fichier
+     * @param channel Le canal du fichier
+     * @param buffer La projection du fichier en mémoire
+     */
+    private LogSegment(long sequence, Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.sequence = sequence;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Getter de `path`
+     * @return Le chemin du fichier
+     */
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Nom du fichier d'un segment
+     * @param sequence Le numéro d'ordre du segment
+     * @return Le nom du fichier, qui trie les segments dans l'ordre du journal
+     */
+    static String fileName(long sequence) {
+        return "%020d.log".formatted(sequence);
+    }
+
+    /**
+     * Crée un segment vide
+     * @param path Le chemin du fichier, qui ne doit pas exister
+     * @param sequence Le numéro d'ordre du segment
+     * @param capacity La capacité du segment, en octets
+     * @return Le segment, actif
+     * @throws IOException si le fichier ne peut être créé
+     */
+    static LogSegment create(Path path, long sequence, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        LogSegment segment = new LogSegment(sequence, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, VERSION);
+        return segment;
+    }
+
+    /**
+     * Ouvre un segment existant et reconstruit son index en parcourant ses enregistrements
+     * @param path Le chemin du fichier, nommé par {@link #fileName(long)}
+     * @param capacity La capacité d'un segment actif, en octets
+     * @param active Le segment est-il le segment actif du journal ?
+     * @return Le segment
+     * @throws IOException si le fichier ne peut être lu ou n'est pas un segment
+     */
+    static LogSegment open(Path path, int capacity, boolean active) throws IOException {
+        long sequence = Long.parseLong(path.getFileName().toString().replace(".log", ""));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size < HEADER || size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Segment invalide : " + path);
+        }
+        long length = active ? Math.max(size, capacity) : size;
+        LogSegment segment = new LogSegment(sequence, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+        if (segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Segment invalide : " + path);
+        }
+        segment.recover();
+        segment.sealed = !active;
+        return segment;
+    }
+
+    /**
+     * Parcourt les enregistrements depuis le début du segment jusqu'au premier enregistrement incomplet ou corrompu,
+     * qui devient la fin du segment
+     */
+    private void recover() {
+        int offset = HEADER;
+        while (offset + OVERHEAD <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= STRINGS - TYPE || (long) offset + OVERHEAD + length > buffer.capacity()
+                    || buffer.getInt(offset + TYPE + length) != length || checksum(offset, length) != buffer.getInt(offset + 4)) {
+                break;
+            }
+            track(offset, timestamp(offset), conversation(offset));
+            offset = next(offset);
+        }
+        end = offset;
+    }
+
+    /**
+     * Ajoute un enregistrement à la fin du segment
+     * @param type Le type de l'enregistrement ({@link #PUT} ou {@link #DELETE})
+     * @param post Le post
+     * @param conversation La clé de la conversation du post
+     * @return La position de l'enregistrement, ou -1 si le segment n'a plus la place de le contenir
+     */
+    int append(byte type, Post post, String conversation) {
+        byte[][] strings = {
+                conversation.getBytes(StandardCharsets.UTF_8),
+                post.getFrom().getBytes(StandardCharsets.UTF_8),
+                post.getTo().getBytes(StandardCharsets.UTF_8),
+                (type == PUT) ? post.getBody().getBytes(StandardCharsets.UTF_8) : new byte[0]
+        };
+        int length = STRINGS - TYPE;
+        for (byte[] string : strings) {
+            length += 4 + string.length;
+        }
+        int offset = end;
+        if (sealed || (long) offset + OVERHEAD + length > buffer.capacity()) {
+            return -1;
+        }
+        buffer.put(offset + TYPE, type);
+        buffer.putLong(offset + TIMESTAMP, post.getTimestamp());
+        buffer.putLong(offset + ID, post.getId().getMostSignificantBits());
+        buffer.putLong(offset + ID + 8, post.getId().getLeastSignificantBits());
+        int position = offset + STRINGS;
+        for (byte[] string : strings) {
+            buffer.putInt(position, string.length);
+            buffer.put(position + 4, string);
+            position += 4 + string.length;
+        }
+        buffer.putInt(offset + TYPE + length, length);
+        buffer.putInt(offset + 4, checksum(offset, length));
+        buffer.putInt(offset, length);
+        end = offset + OVERHEAD + length;
+        track(offset, post.getTimestamp(), conversation);
+        return offset;
+    }
+
+    /**
+     * Recopie tel quel un enregistrement d'un autre segment à la fin de celui-ci
+     * @param source Le segment d'origine
+     * @param offset La position de l'enregistrement dans le segment d'origine
+     * @return La position de l'enregistrement, ou -1 si le segment n'a plus la place de le contenir
+     */
+    int copy(LogSegment source, int offset) {
+        int size = source.next(offset) - offset;
+        if (sealed || (long) end + size > buffer.capacity()) {
+            return -1;
+        }
+        byte[] record = new byte[size];
+        source.buffer.get(offset, record);
+        buffer.put(end, record);
+        int position = end;
+        end += size;
+        track(position, source.timestamp(offset), source.conversation(offset));
+        return position;
+    }
+
+    /**
+     * Met à jour l'index clairsemé et les statistiques du segment avec un nouvel enregistrement
+     * @param offset La position de l'enregistrement
+     * @param timestamp Son timestamp
+     * @param conversation Sa conversation
+     */
+    private void track(int offset, long timestamp, String conversation) {
+        if (indexSize == 0 || offset - indexOffsets[indexSize - 1] >= INDEX_INTERVAL) {
+            if (indexSize == indexOffsets.length) {
+                indexOffsets = Arrays.copyOf(indexOffsets, 2 * indexSize);
+                indexMaxBefore = Arrays.copyOf(indexMaxBefore, 2 * indexSize);
+            }
+            indexOffsets[indexSize] = offset;
+            indexMaxBefore[indexSize] = maxTimestamp;
+            indexSize++;
+        }
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+        conversations.computeIfAbsent(conversation, key -> new Chain()).add(offset, timestamp);
+        records++;
+    }
+
+    /**
+     * CRC32 du contenu d'un enregistrement
+     * @param offset La position de l'enregistrement
+     * @param length La longueur de son contenu
+     * @return Le CRC32
+     */
+    private int checksum(int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset + TYPE, length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Position de départ de la lecture des enregistrements de timestamp supérieur ou égal à celui donné :
+     * tous les enregistrements qui la précèdent sont antérieurs
+     * @param timestamp Le timestamp recherché
+     * @return La position d'un enregistrement, ou la fin du segment
+     */
+    int seek(long timestamp) {
+        int low = 0;
+        int high = indexSize - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (indexMaxBefore[middle] < timestamp) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return (found < 0) ? HEADER : indexOffsets[found];
+    }
+
+    /**
+     * Majorant, donné par l'index clairsemé, des timestamps des enregistrements précédant une position :
+     * le plus grand timestamp avant la première entrée de l'index située à cette position ou après
+     * @param offset La position d'un enregistrement
+     * @return Le majorant, `Long.MIN_VALUE` s'il n'y a aucun enregistrement avant
+     */
+    long maxTimestampBefore(int offset) {
+        int entry = Arrays.binarySearch(indexOffsets, 0, indexSize, offset);
+        if (entry < 0) {
+            entry = -entry - 1;
+        }
+        return (entry < indexSize) ? indexMaxBefore[entry] : maxTimestamp;
+    }
+
+    /**
+     * Position du premier enregistrement
+     * @return La position
+     */
+    int first() {
+        return HEADER;
+    }
+
+    /**
+     * Getter de `end`
+     * @return La fin du dernier enregistrement, c'est-à-dire la taille utile du segment
+     */
+    int end() {
+        return end;
+    }
+
+    /**
+     * Position de l'enregistrement suivant
+     * @param offset La position d'un enregistrement
+     * @return La position suivante (la fin du segment après le dernier enregistrement)
+     */
+    int next(int offset) {
+        return offset + OVERHEAD + buffer.getInt(offset);
+    }
+
+    /**
+     * Type d'un enregistrement
+     * @param offset La position de l'enregistrement
+     * @return {@link #PUT} ou {@link #DELETE}
+     */
+    byte type(int offset) {
+        return buffer.get(offset + TYPE);
+    }
+
+    /**
+     * Timestamp du post d'un enregistrement
+     * @param offset La position de l'enregistrement
+     * @return Le timestamp
+     */
+    long timestamp(int offset) {
+        return buffer.getLong(offset + TIMESTAMP);
+    }
+
+    /**
+     * Identifiant du post d'un enregistrement
+     * @param offset La position de l'enregistrement
+     * @return L'identifiant
+     */
+    UUID id(int offset) {
+        return new UUID(buffer.getLong(offset + ID), buffer.getLong(offset + ID + 8));
+    }
+
+    /**
+     * Recherche la dernière version d'un post située avant une position, parmi les enregistrements
+     * de sa conversation ayant son timestamp (une modification ou une suppression le conserve)
+     * @param conversation La clé de la conversation du post
+     * @param timestamp Le timestamp du post
+     * @param id L'identifiant du post
+     * @param before La position avant laquelle chercher
+     * @param live `true` pour ignorer les enregistrements périmés
+     * @return La position de l'enregistrement, ou -1 s'il n'y en a pas
+     */
+    int find(String conversation, long timestamp, UUID id, int before, boolean live) {
+        Chain chain = conversations.get(conversation);
+        if (chain == null || chain.maxTimestamp < timestamp) {
+            return -1;
+        }
+        int found = -1;
+        for (int i = chain.indexOf(seek(timestamp)); i < chain.size && chain.offsets[i] < before; i++) {
+            int offset = chain.offsets[i];
+            if (timestamp(offset) == timestamp && buffer.getLong(offset + ID) == id.getMostSignificantBits()
+                    && buffer.getLong(offset + ID + 8) == id.getLeastSignificantBits()
+                    && !(live && dead.contains(offset))) {
+                found = offset;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Marque un enregistrement comme périmé : il sera omis par le prochain compactage du segment
+     * @param offset La position de l'enregistrement
+     */
+    void markDead(int offset) {
+        if (dead.add(offset)) {
+            deadBytes += next(offset) - offset;
+        }
+    }
+
+    /**
+     * Positions des enregistrements périmés
+     * @return Une copie des positions
+     */
+    Set<Integer> deadOffsets() {
+        return new HashSet<>(dead);
+    }
+
+    /**
+     * Getter de `deadBytes`
+     * @return La taille des enregistrements périmés, en octets
+     */
+    long deadBytes() {
+        return deadBytes;
+    }
+
+    /**
+     * Conversation d'un enregistrement
+     * @param offset La position de l'enregistrement
+     * @return La clé de la conversation
+     */
+    String conversation(int offset) {
+        return readString(offset + STRINGS);
+    }
+
+    /**
+     * Post d'un enregistrement
+     * @param offset La position de l'enregistrement
+     * @return Le post
+     */
+    Post post(int offset) {
+        int position = offset + STRINGS;
+        position += 4 + buffer.getInt(position);
+        String from = readString(position);
+        position += 4 + buffer.getInt(position);
+        String to = readString(position);
+        position += 4 + buffer.getInt(position);
+        return new Post(id(offset), timestamp(offset), from, to, readString(position));
+    }
+
+    /**
+     * Lit une chaine précédée de sa longueur
+     * @param position La position de la longueur
+     * @return La chaine
+     */
+    private String readString(int position) {
+        byte[] bytes = new byte[buffer.getInt(position)];
+        buffer.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Plus grand timestamp d'une conversation dans le segment
+     * @param conversation La clé de la conversation
+     * @return Le timestamp, ou `Long.MIN_VALUE` si la conversation n'a aucun enregistrement dans le segment
+     */
+    long maxTimestamp(String conversation) {
+        Chain chain = conversations.get(conversation);
+        return (chain == null) ? Long.MIN_VALUE : chain.maxTimestamp;
+    }
+
+    /**
+     * Enregistrements d'une conversation dans le segment
+     * @param conversation La clé de la conversation
+     * @return Leurs positions, ou `null` si la conversation n'a aucun enregistrement dans le segment
+     */
+    Chain chain(String conversation) {
+        return conversations.get(conversation);
+    }
+
+    /**
+     * Plus grand timestamp de chaque conversation présente dans le segment
+     * @return Les timestamps, par conversation
+     */
+    Map<String, Long> conversations() {
+        Map<String, Long> timestamps = new HashMap<>();
+        conversations.forEach((conversation, chain) -> timestamps.put(conversation, chain.maxTimestamp));
+        return timestamps;
+    }
+
+    /**
+     * Getter de `records`
+     * @return Le nombre d'enregistrements
+     */
+    int records() {
+        return records;
+    }
+
+    /**
+     * Rend durables les enregistrements ajoutés
+     */
+    void force() {
+        buffer.force(0, end);
+    }
+
+    /**
+     * Scelle le segment : ses enregistrements sont rendus durables et le fichier est tronqué à leur fin
+     * @throws IOException si le fichier ne peut être tronqué
+     */
+    void seal() throws IOException {
+        if (!sealed) {
+            force();
+            channel.truncate(end);
+            sealed = true;
+        }
+    }
+
+    /**
+     * Ferme le fichier du segment. La projection en mémoire reste valide jusqu'à ce qu'elle soit récupérée
+     * par le ramasse-miettes.
+     * @throws IOException si le fichier ne peut être fermé
+     */
+    void close() throws IOException {
+        if (!sealed) {
+            force();
+        }
+        channel.close();
+    }
+
+    /**
+     * Remplace par le fichier du segment, par un renommage atomique, celui situé au chemin fourni.
+     * Le segment reste ouvert.
+     * @param target Le chemin du fichier remplacé
+     * @throws IOException si le fichier ne peut être renommé
+     */
+    void moveTo(Path target) throws IOException {
+        Files.move(path, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        path = target;
+    }
+}
@@ -0,0 +1,678 @@
+package rtgre.modeles;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+import static rtgre.chat.ChatApplication.LOGGER;
+
+/**
+ * Journal des posts en ajout seul, alternative à la base SQLite pour les salons très actifs : chaque enregistrement
+ * (ou modification, ou suppression) d'un post est ajouté à la fin du segment actif, un fichier projeté en mémoire
+ * (voir {@link LogSegment}), sans mise à jour en place ni index secondaire à maintenir.
+ * Lorsque le segment actif est plein, il est scellé et un nouveau segment est créé ; les segments scellés
+ * qui contiennent assez d'enregistrements périmés sont alors compactés par un thread dédié (voir {@link #compact(int)}).
+ *
+ * La version d'un post qui fait foi est son dernier enregistrement dans le journal ; l'horodatage d'un post
+ * n'étant pas modifié par une modification, les lectures par intervalle de temps retrouvent toutes ses versions.
+ * Les accès sont sérialisés entre les threads, à l'exception de la réécriture des segments compactés.
+ */
+public class MessageLog implements PostRepository {
+    /** Répertoire par défaut des segments */
+    public static final String DEFAULT_DIR = "target/messages";
+    /** Part minimale, en pourcentage, d'enregistrements périmés d'un segment compacté en arrière-plan */
+    static final int MIN_DEAD_PERCENT = 25;
+    /** Répertoire des segments */
+    private final Path dir;
+    /** Capacité d'un segment, en octets */
+    private final int segmentBytes;
+    /** Les segments, dans l'ordre du journal ; le dernier est le segment actif */
+    private final List<LogSegment> segments = new ArrayList<>();
+    /** Timestamp du dernier post de chaque conversation */
+    private final Map<String, Long> lastActivity = new HashMap<>();
+    /** Le compactage est-il lancé en arrière-plan à chaque changement de segment ? */
+    private final boolean background;
+    /** Verrou des compactages, qui ne bloque ni les lectures ni les ajouts */
+    private final Object compaction = new Object();
+    /** Thread du compactage en arrière-plan en cours, `null` s'il n'y en a pas */
+    private Thread compactor = null;
+    /** Le journal est-il fermé ? */
+    private boolean closed = false;
+    /** Nombre de compactages */
+    private long compactions = 0;
+
+    /**
+     * Constructeur : ouvre les segments du répertoire, ou crée le premier segment d'un journal vide,
+     * avec compactage en arrière-plan
+     * @param dir Le répertoire des segments
+     * @param segmentBytes La capacité d'un segment, en octets
+     * @throws IOException si le répertoire ou un segment ne peuvent être lus
+     */
+    public MessageLog(Path dir, int segmentBytes) throws IOException {
+        this(dir, segmentBytes, true);
+    }
+
+    /**
+     * Constructeur : ouvre les segments du répertoire, ou crée le premier segment d'un journal vide.
+     * Les fichiers temporaires d'un compactage interrompu sont supprimés.
+     * @param dir Le répertoire des segments
+     * @param segmentBytes La capacité d'un segment, en octets
+     * @param background `true` pour compacter en arrière-plan à chaque changement de segment,
+     *                   `false` pour ne compacter qu'à la demande
+     * @throws IOException si le répertoire ou un segment ne peuvent être lus
+     */
+    public MessageLog(Path dir, int segmentBytes, boolean background) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.background = background;
+        Files.createDirectories(dir);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir)) {
+            files = listing.sorted().toList();
+        }
+        List<Path> logs = new ArrayList<>();
+        for (Path file : files) {
+            if (file.getFileName().toString().endsWith(".compact")) {
+                Files.delete(file);
+            } else if (file.getFileName().toString().endsWith(".log")) {
+                logs.add(file);
+            }
+        }
+        for (int i = 0; i < logs.size(); i++) {
+            segments.add(LogSegment.open(logs.get(i), segmentBytes, i == logs.size() - 1));
+        }
+        if (segments.isEmpty()) {
+            segments.add(LogSegment.create(dir.resolve(LogSegment.fileName(0)), 0, segmentBytes));
+        }
+        replay();
+        refreshActivity();
+        LOGGER.info("Message log opened! (%s, %d segment(s))".formatted(dir, segments.size()));
+    }
+
+    /**
+     * Recalcule le timestamp du dernier post de chaque conversation à partir des segments
+     */
+    private void refreshActivity() {
+        lastActivity.clear();
+        for (LogSegment segment : segments) {
+            for (Map.Entry<String, Long> entry : segment.conversations().entrySet()) {
+                lastActivity.merge(entry.getKey(), entry.getValue(), Math::max);
+            }
+        }
+    }
+
+    /**
+     * Le segment actif, auquel sont ajoutés les enregistrements
+     * @return Le segment actif
+     */
+    private LogSegment active() {
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Ajoute les posts à la fin du journal, puis les rend durables. Contrairement à une transaction SQLite,
+     * un lot interrompu par une erreur peut avoir été partiellement enregistré.
+     * @param posts Les posts à enregistrer, dans l'ordre de leur arrivée
+     * @return `true` si le lot a bien été enregistré, `false` si une erreur est survenue
+     */
+    @Override
+    public synchronized boolean savePosts(List<Post> posts) {
+        try {
+            for (Post post : posts) {
+                append(LogSegment.PUT, post);
+            }
+            active().force();
+            return true;
+        } catch (IOException e) {
+            LOGGER.severe("Can't append %d posts!".formatted(posts.size()));
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Ajoute au journal la suppression d'un post
+     * @param post Le post à supprimer
+     * @return `true` si la suppression a bien été enregistrée, `false` si une erreur est survenue
+     */
+    @Override
+    public synchronized boolean removePost(Post post) {
+        try {
+            append(LogSegment.DELETE, post);
+            active().force();
+            return true;
+        } catch (IOException e) {
+            LOGGER.severe("Can't append post removal!");
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Ajoute un enregistrement au segment actif, en passant au segment suivant s'il est plein.
+     * Un enregistrement qui n'est pas plus récent que la conversation peut remplacer une version antérieure du post :
+     * celle-ci est alors marquée comme périmée
+     * @param type Le type de l'enregistrement
+     * @param post Le post
+     * @throws IOException si un nouveau segment ne peut être créé, ou si le post ne tient pas dans un segment vide
+     */
+    private void append(byte type, Post post) throws IOException {
+        String conversation = post.getConversation();
+        boolean replaces = type == LogSegment.DELETE
+                || post.getTimestamp() <= lastActivity.getOrDefault(conversation, Long.MIN_VALUE);
+        int offset = active().append(type, post, conversation);
+        if (offset < 0) {
+            roll();
+            offset = active().append(type, post, conversation);
+            if (offset < 0) {
+                throw new IOException("Post trop volumineux pour un segment : " + post.getId());
+            }
+        }
+        if (replaces) {
+            supersede(segments.size() - 1, offset, type, conversation, post.getTimestamp(), post.getId());
+        }
+        lastActivity.merge(conversation, post.getTimestamp(), Math::max);
+    }
+
+    /**
+     * Scelle le segment actif et crée le segment suivant, puis lance le compactage en arrière-plan
+     * si des segments scellés le justifient
+     * @throws IOException si le segment ne peut être scellé ou créé
+     */
+    private void roll() throws IOException {
+        LogSegment sealed = active();
+        sealed.seal();
+        long sequence = sealed.sequence + 1;
+        segments.add(LogSegment.create(dir.resolve(LogSegment.fileName(sequence)), sequence, segmentBytes));
+        if (background && compactor == null && !plan(segments.subList(0, segments.size() - 1), MIN_DEAD_PERCENT).isEmpty()) {
+            compactor = new Thread(this::compactInBackground, "log-compactor");
+            compactor.setDaemon(true);
+            compactor.start();
+        }
+    }
+
+    /**
+     * Marque comme périmée la version précédente d'un post qui vient d'être ajouté au journal,
+     * cherchée à rebours dans les segments parmi les enregistrements de même timestamp.
+     * Une suppression qui ne masque aucune version est elle-même périmée.
+     * @param index L'indice du segment de l'enregistrement ajouté
+     * @param offset La position de l'enregistrement ajouté
+     * @param type Le type de l'enregistrement ajouté
+     * @param conversation La clé de la conversation du post
+     * @param timestamp Le timestamp du post
+     * @param id L'identifiant du post
+     */
+    private void supersede(int index, int offset, byte type, String conversation, long timestamp, UUID id) {
+        for (int i = index; i >= 0; i--) {
+            LogSegment segment = segments.get(i);
+            int previous = segment.find(conversation, timestamp, id, (i == index) ? offset : segment.end(), true);
+            if (previous >= 0) {
+                segment.markDead(previous);
+                return;
+            }
+        }
+        if (type == LogSegment.DELETE) {
+            segments.get(index).markDead(offset);
+        }
+    }
+
+    /**
+     * Retrouve les enregistrements périmés des segments ouverts, en rejouant le journal conversation par conversation.
+     * Seuls les enregistrements qui ne sont pas plus récents que les précédents de leur conversation
+     * (modifications, suppressions, posts reçus dans le désordre) peuvent remplacer une version antérieure.
+     */
+    private void replay() {
+        Map<String, Long> latest = new HashMap<>();
+        for (int i = 0; i < segments.size(); i++) {
+            LogSegment segment = segments.get(i);
+            for (String conversation : segment.conversations().keySet()) {
+                LogSegment.Chain chain = segment.chain(conversation);
+                long max = latest.getOrDefault(conversation, Long.MIN_VALUE);
+                for (int j = 0; j < chain.size(); j++) {
+                    int offset = chain.get(j);
+                    long timestamp = segment.timestamp(offset);
+                    if (timestamp <= max || segment.type(offset) == LogSegment.DELETE) {
+                        supersede(i, offset, segment.type(offset), conversation, timestamp, segment.id(offset));
+                    }
+                    max = Math.max(max, timestamp);
+                }
+                latest.put(conversation, max);
+            }
+        }
+    }
+
+    /**
+     * Choisit les segments à réécrire : ceux dont la part d'enregistrements périmés atteint le seuil,
+     * et les petits segments (moins de la moitié de la capacité), regroupés avec leurs voisins retenus tant que
+     * leurs enregistrements valides tiennent dans un segment. Un petit segment sans enregistrement périmé
+     * n'est réécrit que s'il peut être fusionné avec un autre.
+     * @param sealed Les segments scellés, dans l'ordre du journal
+     * @param minDeadPercent La part minimale, en pourcentage, d'enregistrements périmés d'un segment à réécrire
+     * @return Les groupes de segments consécutifs à réécrire, chacun en un seul segment
+     */
+    private List<List<LogSegment>> plan(List<LogSegment> sealed, int minDeadPercent) {
+        List<List<LogSegment>> groups = new ArrayList<>();
+        List<LogSegment> group = new ArrayList<>();
+        long groupBytes = 0;
+        boolean groupDirty = false;
+        for (LogSegment segment : sealed) {
+            long live = segment.end() - segment.deadBytes();
+            boolean dirty = segment.deadBytes() > 0 && segment.deadBytes() * 100 >= (long) segment.end() * minDeadPercent;
+            boolean small = 2 * live < segmentBytes;
+            if (!group.isEmpty() && (!(dirty || small) || groupBytes + live > segmentBytes)) {
+                if (groupDirty || group.size() > 1) {
+                    groups.add(group);
+                }
+                group = new ArrayList<>();
+                groupBytes = 0;
+                groupDirty = false;
+            }
+            if (dirty || small) {
+                group.add(segment);
+                groupBytes += live;
+                groupDirty |= dirty;
+            }
+        }
+        if (groupDirty || group.size() > 1) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    /**
+     * Compactage lancé en arrière-plan par un changement de segment
+     */
+    private void compactInBackground() {
+        try {
+            compact(MIN_DEAD_PERCENT);
+        } catch (IOException e) {
+            LOGGER.severe("Can't compact message log!");
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+        } finally {
+            synchronized (this) {
+                compactor = null;
+            }
+        }
+    }
+
+    /**
+     * Compacte tous les segments scellés qui contiennent des enregistrements périmés (voir {@link #compact(int)})
+     * @throws IOException si un segment ne peut être réécrit
+     */
+    public void compact() throws IOException {
+        compact(0);
+    }
+
+    /**
+     * Compacte les segments scellés choisis par {@link #plan(List, int)} : chaque groupe de segments est réécrit
+     * en un seul, sans les enregistrements périmés. La réécriture se fait sans bloquer les lectures ni les ajouts,
+     * les segments scellés n'étant plus modifiés ; seul le remplacement des fichiers se fait sous le verrou du journal.
+     * Le fichier réécrit remplace celui du dernier segment du groupe par un renommage atomique, puis les autres
+     * fichiers du groupe sont supprimés dans l'ordre du journal : après un arrêt brutal, les versions recopiées
+     * restent les plus récentes. Pour la même raison, une suppression n'est omise que si aucun segment antérieur
+     * ne contient de version du post.
+     * @param minDeadPercent La part minimale, en pourcentage, d'enregistrements périmés d'un segment à réécrire
+     * @throws IOException si un segment ne peut être réécrit
+     */
+    void compact(int minDeadPercent) throws IOException {
+        synchronized (compaction) {
+            List<LogSegment> sealed;
+            Map<LogSegment, Set<Integer>> dead = new HashMap<>();
+            List<List<LogSegment>> groups;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                sealed = new ArrayList<>(segments.subList(0, segments.size() - 1));
+                groups = plan(sealed, minDeadPercent);
+                for (List<LogSegment> group : groups) {
+                    for (LogSegment segment : group) {
+                        dead.put(segment, segment.deadOffsets());
+                    }
+                }
+            }
+            if (groups.isEmpty()) {
+                return;
+            }
+            List<Rewrite> rewrites = new ArrayList<>();
+            try {
+                for (List<LogSegment> group : groups) {
+                    rewrites.add(rewrite(group, sealed, dead));
+                }
+            } catch (IOException e) {
+                discard(rewrites);
+                throw e;
+            }
+            synchronized (this) {
+                if (closed) {
+                    discard(rewrites);
+                    return;
+                }
+                for (Rewrite rewrite : rewrites) {
+                    commit(rewrite, dead);
+                }
+                for (Rewrite rewrite : rewrites) {
+                    if (rewrite.output() != null) {
+                        int index = segments.indexOf(rewrite.output());
+                        for (int offset : rewrite.tombstones()) {
+                            if (!existsBefore(segments, index, rewrite.output(), offset)) {
+                                rewrite.output().markDead(offset);
+                            }
+                        }
+                    }
+                }
+                refreshActivity();
+                compactions++;
+                LOGGER.fine("Message log compacted (%d group(s), %d segment(s))".formatted(groups.size(), segments.size()));
+            }
+        }
+    }
+
+    /**
+     * Segment réécrit par un compactage
+     * @param group Les segments remplacés
+     * @param output Le segment réécrit, `null` si aucun enregistrement n'est conservé
+     * @param tombstones Les positions, dans le segment réécrit, des suppressions conservées
+     */
+    private record Rewrite(List<LogSegment> group, LogSegment output, List<Integer> tombstones) {
+    }
+
+    /**
+     * Réécrit un groupe de segments scellés dans un fichier temporaire, sans leurs enregistrements périmés
+     * @param group Les segments à réécrire
+     * @param sealed Les segments scellés, dans l'ordre du journal
+     * @param dead Les positions des enregistrements périmés de chaque segment
+     * @return Le segment réécrit, scellé
+     * @throws IOException si le fichier temporaire ne peut être écrit
+     */
+    private Rewrite rewrite(List<LogSegment> group, List<LogSegment> sealed, Map<LogSegment, Set<Integer>> dead) throws IOException {
+        LogSegment last = group.get(group.size() - 1);
+        long capacity = LogSegment.HEADER;
+        for (LogSegment segment : group) {
+            capacity += segment.end() - LogSegment.HEADER;
+            for (int offset : dead.get(segment)) {
+                capacity -= segment.next(offset) - offset;
+            }
+        }
+        Path temporary = dir.resolve(last.path().getFileName() + ".compact");
+        LogSegment output = LogSegment.create(temporary, last.sequence, (int) capacity);
+        List<Integer> tombstones = new ArrayList<>();
+        for (LogSegment segment : group) {
+            int index = sealed.indexOf(segment);
+            Set<Integer> skipped = dead.get(segment);
+            for (int offset = segment.first(); offset < segment.end(); offset = segment.next(offset)) {
+                if (skipped.contains(offset)) {
+                    continue;
+                }
+                if (segment.type(offset) == LogSegment.DELETE) {
+                    if (!existsBefore(sealed, index, segment, offset)) {
+                        continue;
+                    }
+                    tombstones.add(output.copy(segment, offset));
+                } else {
+                    output.copy(segment, offset);
+                }
+            }
+        }
+        output.seal();
+        if (output.records() == 0) {
+            output.close();
+            Files.delete(temporary);
+            return new Rewrite(group, null, tombstones);
+        }
+        return new Rewrite(group, output, tombstones);
+    }
+
+    /**
+     * Un segment antérieur contient-il encore une version du post d'une suppression ?
+     * @param segments Les segments, dans l'ordre du journal
+     * @param index L'indice du segment de la suppression
+     * @param segment Le segment de la suppression
+     * @param offset La position de la suppression
+     * @return `true` si la suppression doit être conservée
+     */
+    private static boolean existsBefore(List<LogSegment> segments, int index, LogSegment segment, int offset) {
+        String conversation = segment.conversation(offset);
+        long timestamp = segment.timestamp(offset);
+        UUID id = segment.id(offset);
+        for (int i = 0; i < index; i++) {
+            LogSegment earlier = segments.get(i);
+            if (earlier.find(conversation, timestamp, id, earlier.end(), false) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remplace un groupe de segments par son segment réécrit. Les enregistrements périmés depuis le début
+     * de la réécriture sont reportés dans le segment réécrit.
+     * @param rewrite La réécriture
+     * @param dead Les positions des enregistrements périmés de chaque segment au début de la réécriture
+     * @throws IOException si les fichiers ne peuvent être remplacés
+     */
+    private void commit(Rewrite rewrite, Map<LogSegment, Set<Integer>> dead) throws IOException {
+        List<LogSegment> group = rewrite.group();
+        LogSegment output = rewrite.output();
+        LogSegment last = group.get(group.size() - 1);
+        int index = segments.indexOf(group.get(0));
+        if (output != null) {
+            for (LogSegment segment : group) {
+                for (int offset : segment.deadOffsets()) {
+                    if (!dead.get(segment).contains(offset)) {
+                        int moved = output.find(segment.conversation(offset), segment.timestamp(offset),
+                                segment.id(offset), output.end(), true);
+                        if (moved >= 0) {
+                            output.markDead(moved);
+                        }
+                    }
+                }
+            }
+            output.moveTo(last.path());
+        }
+        for (LogSegment segment : group) {
+            segment.close();
+            if (segment != last || output == null) {
+                Files.delete(segment.path());
+            }
+        }
+        segments.subList(index, index + group.size()).clear();
+        if (output != null) {
+            segments.add(index, output);
+        }
+    }
+
+    /**
+     * Abandonne des réécritures : les fichiers temporaires sont supprimés
+     * @param rewrites Les réécritures abandonnées
+     * @throws IOException si un fichier temporaire ne peut être supprimé
+     */
+    private static void discard(List<Rewrite> rewrites) throws IOException {
+        for (Rewrite rewrite : rewrites) {
+            if (rewrite.output() != null) {
+                rewrite.output().close();
+                Files.deleteIfExists(rewrite.output().path());
+            }
+        }
+    }
+
+    /**
+     * Liste les conversations du journal, les plus récemment actives en premier
+     * @return Les clés des conversations
+     */
+    @Override
+    public synchronized List<String> getConversations() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(lastActivity.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        List<String> conversations = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Long> entry : entries) {
+            conversations.add(entry.getKey());
+        }
+        return conversations;
+    }
+
+    /**
+     * Récupère les posts d'une conversation dont le timestamp est supérieur ou égal à celui donné.
+     * Les segments sans post assez récent de la conversation sont ignorés ; dans les autres, la lecture
+     * des enregistrements de la conversation commence à la position donnée par l'index clairsemé.
+     * @param conversation La clé de la conversation (voir {@link Post#conversationKey(String, String)})
+     * @param timestamp Le timestamp de comparaison
+     * @return Les posts, triés dans l'ordre chronologique
+     */
+    @Override
+    public synchronized List<Post> getConversationPosts(String conversation, long timestamp) {
+        Map<UUID, Post> versions = new LinkedHashMap<>();
+        for (LogSegment segment : segments) {
+            LogSegment.Chain chain = segment.chain(conversation);
+            if (chain == null || chain.maxTimestamp() < timestamp) {
+                continue;
+            }
+            for (int i = chain.indexOf(segment.seek(timestamp)); i < chain.size(); i++) {
+                int offset = chain.get(i);
+                if (segment.timestamp(offset) < timestamp) {
+                    continue;
+                }
+                if (segment.type(offset) == LogSegment.PUT) {
+                    versions.put(segment.id(offset), segment.post(offset));
+                } else {
+                    versions.remove(segment.id(offset));
+                }
+            }
+        }
+        List<Post> posts = new ArrayList<>(versions.values());
+        posts.sort(PostStore.ORDER);
+        return posts;
+    }
+
+    /**
+     * Récupère une page de l'historique d'une conversation, en parcourant ses enregistrements à rebours depuis
+     * la fin du journal : le premier enregistrement rencontré pour un post est sa dernière version. Les enregistrements
+     * postérieurs au curseur sont ignorés sans être décodés, une modification conservant le timestamp du post.
+     * Le parcours s'arrête dès que
+     * l'index clairsemé garantit qu'aucun enregistrement antérieur n'est plus récent que le plus ancien post de la page.
+     * @param conversation La clé de la conversation (voir {@link Post#conversationKey(String, String)})
+     * @param beforeTimestamp Le timestamp du curseur
+     * @param beforeId L'identifiant du curseur : les posts de même timestamp et d'identifiant inférieur sont renvoyés
+     * @param limit Le nombre maximal de posts
+     * @return Les posts, triés dans l'ordre chronologique
+     */
+    @Override
+    public synchronized List<Post> getConversationPage(String conversation, long beforeTimestamp, UUID beforeId, int limit) {
+        Post cursor = new Post(beforeId, beforeTimestamp, "", "", "");
+        long[] maxBefore = new long[segments.size()];
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < segments.size(); i++) {
+            maxBefore[i] = max;
+            max = Math.max(max, segments.get(i).maxTimestamp(conversation));
+        }
+        TreeSet<Post> page = new TreeSet<>(PostStore.ORDER);
+        Set<UUID> seen = new HashSet<>();
+        for (int i = segments.size() - 1; i >= 0 && !isComplete(page, limit, maxBefore[i], segments.get(i).maxTimestamp(conversation)); i--) {
+            LogSegment segment = segments.get(i);
+            LogSegment.Chain chain = segment.chain(conversation);
+            if (chain == null) {
+                continue;
+            }
+            for (int j = chain.size() - 1; j >= 0; j--) {
+                int offset = chain.get(j);
+                if (segment.timestamp(offset) <= beforeTimestamp && seen.add(segment.id(offset))
+                        && segment.type(offset) == LogSegment.PUT) {
+                    Post post = segment.post(offset);
+                    if (PostStore.ORDER.compare(post, cursor) < 0) {
+                        page.add(post);
+                        if (page.size() > limit) {
+                            page.pollFirst();
+                        }
+                    }
+                }
+                if (isComplete(page, limit, maxBefore[i], segment.maxTimestampBefore(offset))) {
+                    break;
+                }
+            }
+        }
+        return new ArrayList<>(page);
+    }
+
+    /**
+     * La page est-elle complète ? C'est le cas si elle contient le nombre de posts demandé
+     * et qu'aucun enregistrement restant à parcourir ne peut y entrer
+     * @param page La page en cours de constitution
+     * @param limit Le nombre de posts demandé
+     * @param earlierSegments Le plus grand timestamp de la conversation dans les segments précédents
+     * @param remaining Le plus grand timestamp possible des enregistrements restant à parcourir dans le segment courant
+     * @return `true` si le parcours peut s'arrêter
+     */
+    private static boolean isComplete(TreeSet<Post> page, int limit, long earlierSegments, long remaining) {
+        return page.size() >= limit && Math.max(earlierSegments, remaining) < page.first().getTimestamp();
+    }
+
+    /**
+     * Nombre de segments du journal
+     * @return Le nombre de segments, segment actif compris
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Taille utile du journal
+     * @return La somme des tailles utiles des segments, en octets
+     */
+    public synchronized long getDiskBytes() {
+        long bytes = 0;
+        for (LogSegment segment : segments) {
+            bytes += segment.end();
+        }
+        return bytes;
+    }
+
+    /**
+     * Getter de `compactions`
+     * @return Le nombre de compactages depuis l'ouverture du journal
+     */
+    public synchronized long getCompactions() {
+        return compactions;
+    }
+
+    /**
+     * Ferme le journal, après la fin du compactage en arrière-plan en cours (dont les réécritures sont abandonnées) :
+     * le segment actif est rendu durable et tronqué à sa taille utile (il reprend sa capacité à la réouverture)
+     */
+    @Override
+    public void close() {
+        Thread running;
+        synchronized (this) {
+            closed = true;
+            running = compactor;
+        }
+        if (running != null) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            try {
+                active().seal();
+                for (LogSegment segment : segments) {
+                    segment.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, e.getMessage(), e);
+                LOGGER.severe("Can't close message log!");
+            }
+        }
+    }
+}
@@ -2,7 +2,6 @@ package rtgre.modeles;
 
 import org.json.JSONObject;
 
-import java.util.Date;
 import java.util.UUID;
 
 /**
@@ -62,7 +61,7 @@ public class Post extends Message {
         this.from = from;
         this.to = to;
         this.body = body;
-        this.timestamp = new Date().getTime();
+        this.timestamp = System.currentTimeMillis();
         this.id = UUID.randomUUID();
     }
 
@@ -76,7 +75,7 @@ public class Post extends Message {
         this.from = from;
         this.to = message.to;
         this.body = message.body;
-        this.timestamp = new Date().getTime();
+        this.timestamp = System.currentTimeMillis();
         this.id = UUID.randomUUID();
     }
 
@@ -93,9 +92,37 @@ public class Post extends Message {
         return id.equals(post.id);
     }
 
+    /**
+     * Hachage d'un post, cohérent avec {@link #equals(Object)} : seul l'identifiant unique est pris en compte.
+     * Les posts sont ainsi répartis entre les seaux d'une table de hachage (un hachage constant les placerait
+     * tous dans le même), et les versions successives d'un post modifié ont le même hachage
+     * @return Le hachage de l'identifiant
+     */
     @Override
     public int hashCode() {
-        return 0;
+        return id.hashCode();
+    }
+
+    /**
+     * Clé de la conversation à laquelle appartient un post : le nom du salon pour un post public,
+     * ou la paire des deux logins, dans l'ordre alphabétique, pour une conversation privée
+     * @param from L'émetteur du post
+     * @param to Le destinataire du post (login ou salon)
+     * @return La clé de la conversation
+     */
+    public static String conversationKey(String from, String to) {
+        if (to.startsWith("#")) {
+            return to;
+        }
+        return (from.compareTo(to) <= 0) ? from + "|" + to : to + "|" + from;
+    }
+
+    /**
+     * Clé de la conversation à laquelle appartient le post
+     * @return La clé de la conversation (voir {@link #conversationKey(String, String)})
+     */
+    public String getConversation() {
+        return conversationKey(from, to);
     }
 
     /**
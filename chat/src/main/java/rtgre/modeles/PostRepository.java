@@ -0,0 +1,55 @@
+package rtgre.modeles;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Stockage persistant des posts du serveur : la base SQLite ({@link DatabaseApi}) ou le journal
+ * en ajout seul ({@link MessageLog}). Les posts d'une conversation sont lus dans l'ordre {@link PostStore#ORDER}.
+ * Les accès sont sérialisés entre les threads par chaque implémentation.
+ */
+public interface PostRepository {
+
+    /**
+     * Enregistre un lot de posts, ajoutés ou modifiés (un post remplace le post de même identifiant)
+     * @param posts Les posts à enregistrer, dans l'ordre de leur arrivée
+     * @return `true` si le lot a bien été enregistré, `false` si une erreur est survenue
+     */
+    boolean savePosts(List<Post> posts);
+
+    /**
+     * Supprime un post
+     * @param post Le post à supprimer
+     * @return `true` si la suppression a bien été enregistrée, `false` si une erreur est survenue
+     */
+    boolean removePost(Post post);
+
+    /**
+     * Liste les conversations enregistrées, les plus récemment actives en premier
+     * @return Les clés des conversations (liste vide si une erreur est survenue)
+     */
+    List<String> getConversations();
+
+    /**
+     * Récupère les posts d'une conversation dont le timestamp est supérieur ou égal à celui donné
+     * @param conversation La clé de la conversation (voir {@link Post#conversationKey(String, String)})
+     * @param timestamp Le timestamp de comparaison
+     * @return Les posts, triés dans l'ordre chronologique (liste vide si une erreur est survenue)
+     */
+    List<Post> getConversationPosts(String conversation, long timestamp);
+
+    /**
+     * Récupère une page de l'historique d'une conversation : les posts les plus récents antérieurs à un curseur
+     * @param conversation La clé de la conversation (voir {@link Post#conversationKey(String, String)})
+     * @param beforeTimestamp Le timestamp du curseur
+     * @param beforeId L'identifiant du curseur : les posts de même timestamp et d'identifiant inférieur sont renvoyés
+     * @param limit Le nombre maximal de posts
+     * @return Les posts, triés dans l'ordre chronologique (liste vide si une erreur est survenue)
+     */
+    List<Post> getConversationPage(String conversation, long beforeTimestamp, UUID beforeId, int limit);
+
+    /**
+     * Ferme le stockage, après avoir rendu durables les écritures
+     */
+    void close();
+}
@@ -0,0 +1,526 @@
+package rtgre.modeles;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stockage en mémoire des posts, regroupés par conversation (salon ou paire de contacts,
+ * voir {@link Post#conversationKey(String, String)}), chaque conversation étant triée par (timestamp, identifiant) :
+ * les posts d'une conversation depuis un instant donné s'obtiennent par une recherche dichotomique
+ * et une vue sur la fin de la conversation, sans parcourir les autres conversations ni copier les posts.
+ * Un index des posts par identifiant permet de retrouver ou remplacer un post en temps constant.
+ * Les lectures sont sûres en accès concurrent ; les écritures sont sérialisées pour garder
+ * l'index et les conversations cohérents.
+ *
+ * Un stockage borné (voir {@link Window}) ne garde en mémoire que la fenêtre des posts récents de chaque conversation :
+ * les posts les plus anciens en sont évincés au fil des ajouts, et les pages d'historique qui remontent au-delà
+ * de la fenêtre sont lues dans la base de données. Sa fenêtre peut être chargée pendant que le stockage est déjà utilisé
+ * (voir {@link #beginWarmup()}) : l'historique d'une conversation pas encore chargée est alors lu en base.
+ */
+public class PostStore implements Iterable<Post> {
+    /**
+     * Ordre chronologique des posts, départagés par leur identifiant comparé comme deux entiers non signés :
+     * c'est l'ordre des identifiants textuels (hexadécimal de longueur fixe) en base de données,
+     * si bien qu'une page lue en base suit le même ordre qu'une page lue en mémoire
+     */
+    public static final Comparator<Post> ORDER = PostStore::compare;
+    /** Plus petit identifiant possible, pour borner une recherche à un timestamp donné */
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+    /** Plus grand identifiant possible, pour borner une recherche à un timestamp donné */
+    private static final UUID MAX_ID = new UUID(-1L, -1L);
+    /** Occupation mémoire estimée d'un post hors chaines de caractères (objets, index et noeuds des listes), en octets */
+    static final long POST_OVERHEAD = 320;
+    /** Les conversations, par clé */
+    private final ConcurrentHashMap<String, Conversation> conversations = new ConcurrentHashMap<>();
+    /** Les posts par identifiant */
+    private final ConcurrentHashMap<UUID, Post> posts = new ConcurrentHashMap<>();
+    /** Les limites de la fenêtre des posts gardés en mémoire */
+    private final Window window;
+    /** Stockage persistant d'où sont lus les posts évincés de la mémoire, `null` pour un stockage non borné */
+    private final PostRepository cold;
+    /** Tous les posts en mémoire, dans l'ordre {@link #ORDER}, pour évincer les plus anciens ; `null` pour un stockage non borné */
+    private final NavigableSet<Post> chronology;
+    /** Occupation mémoire estimée des posts stockés, en octets */
+    private volatile long estimatedBytes = 0;
+    /** Nombre de posts évincés de la mémoire */
+    private final AtomicLong evictions = new AtomicLong();
+    /** Nombre de lectures de l'historique faites en base de données */
+    private final AtomicLong coldReads = new AtomicLong();
+    /** La fenêtre est-elle en cours de chargement ? */
+    private volatile boolean warming = false;
+
+    /**
+     * Limites de la fenêtre des posts gardés en mémoire. Un post est évincé dès que l'une d'elles est dépassée :
+     * nombre de posts de sa conversation, ancienneté, ou occupation mémoire estimée de l'ensemble des posts
+     * (les plus anciens, toutes conversations confondues, étant évincés en premier).
+     * @param maxPosts Le nombre maximal de posts gardés par conversation
+     * @param maxAgeMs L'ancienneté maximale d'un post gardé, en millisecondes (0 : sans limite)
+     * @param maxBytes L'occupation mémoire maximale estimée de l'ensemble des posts gardés, en octets
+     */
+    public record Window(int maxPosts, long maxAgeMs, long maxBytes) {
+        /** Fenêtre sans limite : tous les posts sont gardés en mémoire */
+        public static final Window UNBOUNDED = new Window(Integer.MAX_VALUE, 0, Long.MAX_VALUE);
+
+        /**
+         * Constructeur
+         * @throws IllegalArgumentException si une limite est négative ou si aucun post ne peut être gardé
+         */
+        public Window {
+            if (maxPosts < 1) {
+                throw new IllegalArgumentException("Au moins un post par conversation doit être gardé en mémoire");
+            }
+            if (maxAgeMs < 0 || maxBytes < 0) {
+                throw new IllegalArgumentException("Les limites de la fenêtre ne peuvent être négatives");
+            }
+        }
+
+        /**
+         * La fenêtre est-elle bornée ?
+         * @return `true` si une des limites peut être atteinte
+         */
+        public boolean isBounded() {
+            return !equals(UNBOUNDED);
+        }
+    }
+
+    /**
+     * Les posts en mémoire d'une conversation
+     */
+    private static final class Conversation {
+        /** Les posts, dans l'ordre {@link #ORDER} */
+        final NavigableSet<Post> posts = new ConcurrentSkipListSet<>(ORDER);
+        /** Nombre de posts (la taille d'une liste à enjambements n'est pas obtenue en temps constant) */
+        volatile int size = 0;
+        /** Borne du plus récent post évincé : tous les posts postérieurs sont en mémoire ; `null` si aucun n'a été évincé */
+        volatile Post floor = null;
+        /** Les posts enregistrés en base sont-ils chargés ? Sinon, seuls les posts reçus depuis le démarrage sont en mémoire */
+        volatile boolean warmed;
+
+        /**
+         * Constructeur
+         * @param warmed Les posts enregistrés en base sont-ils déjà chargés ?
+         */
+        Conversation(boolean warmed) {
+            this.warmed = warmed;
+        }
+    }
+
+    /**
+     * Une page de l'historique d'une conversation
+     * @param posts Les posts de la page, dans l'ordre chronologique
+     * @param hasMore Existe-t-il des posts plus anciens que ceux de la page ?
+     */
+    public record Page(List<Post> posts, boolean hasMore) {
+    }
+
+    /**
+     * Constructeur d'un stockage non borné : tous les posts restent en mémoire
+     */
+    public PostStore() {
+        this(Window.UNBOUNDED, null);
+    }
+
+    /**
+     * Constructeur d'un stockage dont seule une fenêtre de posts récents est gardée en mémoire
+     * @param window Les limites de la fenêtre
+     * @param cold Le stockage persistant où sont enregistrés tous les posts, et d'où sont lus ceux évincés
+     *             (ignoré si la fenêtre n'est pas bornée)
+     * @throws IllegalArgumentException si la fenêtre est bornée sans stockage persistant
+     */
+    public PostStore(Window window, PostRepository cold) throws IllegalArgumentException {
+        this.window = window;
+        if (window.isBounded()) {
+            if (cold == null) {
+                throw new IllegalArgumentException("Une fenêtre bornée requiert une base de données");
+            }
+            this.cold = cold;
+            this.chronology = new ConcurrentSkipListSet<>(ORDER);
+        } else {
+            this.cold = null;
+            this.chronology = null;
+        }
+    }
+
+    /**
+     * Ajoute un post à sa conversation. Un post de même identifiant déjà stocké (version précédente
+     * d'un post modifié) est remplacé : il est retrouvé par l'index des identifiants, sans parcourir les posts.
+     * Dans un stockage borné, un post antérieur aux posts évincés de sa conversation n'est pas gardé en mémoire
+     * (il reste lu en base), et l'ajout évince si besoin les posts les plus anciens.
+     * @param post Le post
+     * @return La version remplacée, ou `null` si le post n'était pas encore stocké
+     */
+    public synchronized Post add(Post post) {
+        Conversation conversation = conversations.computeIfAbsent(post.getConversation(), c -> new Conversation(!warming));
+        Post floor = conversation.floor;
+        if (floor != null && ORDER.compare(post, floor) <= 0) {
+            Post previous = posts.remove(post.getId());
+            if (previous != null) {
+                unlink(previous);
+            }
+            return previous;
+        }
+        Post previous = posts.put(post.getId(), post);
+        if (previous != null) {
+            unlink(previous);
+        }
+        conversation.posts.add(post);
+        conversation.size++;
+        if (chronology != null) {
+            chronology.add(post);
+            estimatedBytes += footprint(post);
+            evict(conversation);
+        }
+        return previous;
+    }
+
+    /**
+     * Retire un post, identifié par son identifiant
+     * @param id L'identifiant du post
+     * @return Le post retiré, ou `null` s'il n'était pas stocké
+     */
+    public synchronized Post remove(UUID id) {
+        Post previous = posts.remove(id);
+        if (previous != null) {
+            unlink(previous);
+        }
+        return previous;
+    }
+
+    /**
+     * Retire un post, identifié par l'identifiant du post fourni
+     * @param post Le post, ou une autre version du post
+     * @return `true` si un post de même identifiant était stocké
+     */
+    public boolean remove(Post post) {
+        return remove(post.getId()) != null;
+    }
+
+    /**
+     * Retire un post de sa conversation et de l'ordre chronologique, sans toucher à l'index des identifiants
+     * @param post Le post
+     */
+    private void unlink(Post post) {
+        Conversation conversation = conversations.get(post.getConversation());
+        if (conversation != null && conversation.posts.remove(post)) {
+            conversation.size--;
+        }
+        if (chronology != null && chronology.remove(post)) {
+            estimatedBytes -= footprint(post);
+        }
+    }
+
+    /**
+     * Évince les posts les plus anciens tant qu'une limite de la fenêtre est dépassée : d'abord ceux de la conversation
+     * qui vient de recevoir un post, puis, toutes conversations confondues, ceux trop anciens ou excédant le budget mémoire
+     * @param conversation La conversation qui vient de recevoir un post
+     */
+    private void evict(Conversation conversation) {
+        while (conversation.size > window.maxPosts()) {
+            evict(conversation.posts.first());
+        }
+        long horizon = (window.maxAgeMs() > 0) ? System.currentTimeMillis() - window.maxAgeMs() : Long.MIN_VALUE;
+        while (!chronology.isEmpty()
+                && (estimatedBytes > window.maxBytes() || chronology.first().getTimestamp() < horizon)) {
+            evict(chronology.first());
+        }
+    }
+
+    /**
+     * Évince un post de la mémoire : il devient la borne de sa conversation, en deçà de laquelle l'historique est lu en base
+     * @param post Le post le plus ancien de sa conversation
+     */
+    private void evict(Post post) {
+        posts.remove(post.getId());
+        unlink(post);
+        raiseFloor(conversations.get(post.getConversation()), post);
+        evictions.incrementAndGet();
+    }
+
+    /**
+     * Relève si besoin la borne d'une conversation, en deçà de laquelle l'historique est lu en base
+     * @param conversation La conversation
+     * @param post Le post le plus récent laissé en base
+     */
+    private void raiseFloor(Conversation conversation, Post post) {
+        if (conversation.floor == null || ORDER.compare(post, conversation.floor) > 0) {
+            conversation.floor = probe(post.getTimestamp(), post.getId());
+        }
+    }
+
+    /**
+     * Début du chargement de la fenêtre : jusqu'à {@link #endWarmup()}, l'historique des conversations
+     * qui n'ont pas encore été chargées par {@link #warm(PostRepository, String)} est lu en base, si bien que le stockage
+     * peut servir les clients dès le démarrage
+     * @throws IllegalStateException si la fenêtre n'est pas bornée (aucune base ne complèterait l'historique)
+     */
+    public synchronized void beginWarmup() throws IllegalStateException {
+        if (cold == null) {
+            throw new IllegalStateException("Seul un stockage borné peut être chargé en arrière-plan");
+        }
+        warming = true;
+        for (Conversation conversation : conversations.values()) {
+            conversation.warmed = false;
+        }
+    }
+
+    /**
+     * Charge la fenêtre d'une conversation : ses posts les plus récents, lus en base par l'index (conversation, timestamp)
+     * et ajoutés du plus récent au plus ancien. Les posts déjà en mémoire (reçus ou modifiés depuis le démarrage)
+     * sont conservés tels quels.
+     * @param database Le stockage persistant
+     * @param conversation La clé de la conversation
+     * @return Le nombre de posts lus
+     */
+    public int warm(PostRepository database, String conversation) {
+        int limit = (window.maxPosts() == Integer.MAX_VALUE) ? Integer.MAX_VALUE : window.maxPosts() + 1;
+        List<Post> newest = database.getConversationPage(conversation, Long.MAX_VALUE, MAX_ID, limit);
+        boolean more = newest.size() > window.maxPosts();
+        synchronized (this) {
+            for (int i = newest.size() - 1; i >= (more ? 1 : 0); i--) {
+                Post post = newest.get(i);
+                if (!posts.containsKey(post.getId())) {
+                    add(post);
+                }
+            }
+            Conversation hot = conversations.computeIfAbsent(conversation, c -> new Conversation(true));
+            if (more) {
+                raiseFloor(hot, newest.get(0));
+            }
+            hot.warmed = true;
+        }
+        return more ? newest.size() - 1 : newest.size();
+    }
+
+    /**
+     * Fin du chargement de la fenêtre : toutes les conversations enregistrées en base ont été chargées,
+     * les autres n'ont que des posts reçus depuis le démarrage
+     */
+    public synchronized void endWarmup() {
+        for (Conversation conversation : conversations.values()) {
+            conversation.warmed = true;
+        }
+        warming = false;
+    }
+
+    /**
+     * Getter de `warming`
+     * @return `true` si la fenêtre est en cours de chargement
+     */
+    public boolean isWarming() {
+        return warming;
+    }
+
+    /**
+     * Des posts d'une conversation peuvent-ils être en base sans être en mémoire ?
+     * @param hot La conversation, ou `null` si elle n'a aucun post en mémoire
+     * @return `true` si des posts ont été évincés, ou si la conversation n'est pas encore chargée
+     */
+    private boolean hasColdPosts(Conversation hot) {
+        return (hot == null) ? warming : (hot.floor != null || !hot.warmed);
+    }
+
+    /**
+     * Extrait un post en fonction de son identifiant
+     * @param id L'identifiant du post recherché
+     * @return Le post correspondant, ou `null` s'il n'est pas (ou plus) en mémoire
+     */
+    public Post getPostById(UUID id) {
+        return posts.get(id);
+    }
+
+    /**
+     * Les posts d'une conversation créés strictement après un timestamp donné. Si la conversation
+     * a des posts évincés postérieurs au timestamp, ou n'est pas encore chargée, ils sont lus en base.
+     * @param conversation La clé de la conversation
+     * @param timestamp Le timestamp à partir duquel extraire les posts
+     * @return Une vue non modifiable, dans l'ordre chronologique, sur les posts de la conversation
+     */
+    public NavigableSet<Post> getPostsSince(String conversation, long timestamp) {
+        Conversation hot = conversations.get(conversation);
+        NavigableSet<Post> tail = (hot == null) ? Collections.emptyNavigableSet() : hot.posts.tailSet(probe(timestamp, MAX_ID), false);
+        boolean warmed = (hot == null) ? !warming : hot.warmed;
+        Post floor = (hot == null) ? null : hot.floor;
+        if (warmed && (floor == null || timestamp >= floor.getTimestamp())) {
+            return Collections.unmodifiableNavigableSet(tail);
+        }
+        coldReads.incrementAndGet();
+        NavigableSet<Post> merged = new TreeSet<>(ORDER);
+        merged.addAll(tail);
+        for (Post post : cold.getConversationPosts(conversation, timestamp + 1)) {
+            if (!warmed || ORDER.compare(post, floor) <= 0) {
+                merged.add(post);
+            }
+        }
+        return Collections.unmodifiableNavigableSet(merged);
+    }
+
+    /**
+     * Les posts les plus récents d'une conversation antérieurs à un curseur. Les posts évincés de la mémoire
+     * complètent la page depuis la base, le curseur restant valable d'une page à l'autre.
+     * @param conversation La clé de la conversation
+     * @param beforeTimestamp Le timestamp du curseur, ou `null` pour partir du post le plus récent
+     * @param beforeId L'identifiant du curseur (ignoré sans timestamp) : les posts de même timestamp
+     *                 et d'identifiant inférieur sont renvoyés
+     * @param limit Le nombre maximal de posts
+     * @return La page, dont les posts sont dans l'ordre chronologique
+     */
+    public Page page(String conversation, Long beforeTimestamp, UUID beforeId, int limit) {
+        Conversation hot = conversations.get(conversation);
+        Post cursor = (beforeTimestamp == null) ? null : probe(beforeTimestamp, (beforeId == null) ? MIN_ID : beforeId);
+        List<Post> page = new ArrayList<>(Math.min(limit, 64));
+        boolean olderInMemory = false;
+        if (hot != null) {
+            NavigableSet<Post> older = (cursor == null) ? hot.posts : hot.posts.headSet(cursor, false);
+            Iterator<Post> iterator = older.descendingIterator();
+            while (iterator.hasNext() && page.size() < limit) {
+                page.add(iterator.next());
+            }
+            Collections.reverse(page);
+            olderInMemory = iterator.hasNext();
+        }
+        if (olderInMemory || !hasColdPosts(hot)) {
+            return new Page(page, olderInMemory);
+        }
+        if (page.size() == limit) {
+            return new Page(page, true);
+        }
+        if (!page.isEmpty()) {
+            cursor = page.get(0);
+        } else if (cursor == null) {
+            cursor = probe(Long.MAX_VALUE, MAX_ID);
+        }
+        coldReads.incrementAndGet();
+        int missing = limit - page.size();
+        List<Post> stored = cold.getConversationPage(conversation, cursor.getTimestamp(), cursor.getId(), missing + 1);
+        boolean hasMore = stored.size() > missing;
+        List<Post> merged = new ArrayList<>(limit);
+        merged.addAll(hasMore ? stored.subList(1, stored.size()) : stored);
+        merged.addAll(page);
+        return new Page(merged, hasMore);
+    }
+
+    /**
+     * Nombre de posts stockés en mémoire
+     * @return Le nombre de posts, toutes conversations confondues
+     */
+    public int size() {
+        return posts.size();
+    }
+
+    /**
+     * Nombre de posts d'une conversation stockés en mémoire
+     * @param conversation La clé de la conversation
+     * @return Le nombre de posts
+     */
+    public int size(String conversation) {
+        Conversation hot = conversations.get(conversation);
+        return (hot == null) ? 0 : hot.size;
+    }
+
+    /**
+     * Getter de `window`
+     * @return Les limites de la fenêtre des posts gardés en mémoire
+     */
+    public Window getWindow() {
+        return window;
+    }
+
+    /**
+     * Occupation mémoire estimée des posts, suivie seulement pour un stockage borné
+     * @return L'estimation en octets, 0 pour un stockage non borné
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Nombre de posts évincés de la mémoire depuis la création du stockage
+     * @return Le nombre de posts évincés
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Nombre de lectures de l'historique faites en base de données
+     * @return Le nombre de lectures
+     */
+    public long getColdReads() {
+        return coldReads.get();
+    }
+
+    /**
+     * Itérateur sur tous les posts stockés en mémoire, sans ordre particulier
+     * @return L'itérateur
+     */
+    @Override
+    public Iterator<Post> iterator() {
+        return Collections.unmodifiableCollection(posts.values()).iterator();
+    }
+
+    /**
+     * Charge les posts depuis un stockage persistant, conversation par conversation, les plus récemment actives
+     * en premier. Un stockage borné ne lit que la fenêtre de chaque conversation (voir {@link #warm(PostRepository, String)}).
+     * @param database Le stockage persistant
+     */
+    public void loadPosts(PostRepository database) {
+        if (cold != null) {
+            beginWarmup();
+            for (String conversation : database.getConversations()) {
+                warm(database, conversation);
+            }
+            endWarmup();
+            return;
+        }
+        for (String conversation : database.getConversations()) {
+            for (Post post : database.getConversationPosts(conversation, Long.MIN_VALUE)) {
+                add(post);
+            }
+        }
+    }
+
+    /**
+     * Post fictif servant de borne de recherche dans une conversation
+     * @param timestamp Le timestamp de la borne
+     * @param id L'identifiant de la borne
+     * @return Le post fictif
+     */
+    private static Post probe(long timestamp, UUID id) {
+        return new Post(id, timestamp, "", "", "");
+    }
+
+    /**
+     * Comparaison de deux posts selon l'ordre {@link #ORDER}
+     * @param a Le premier post
+     * @param b Le second post
+     * @return Un entier négatif, nul ou positif selon que le premier post précède, égale ou suit le second
+     */
+    private static int compare(Post a, Post b) {
+        int result = Long.compare(a.getTimestamp(), b.getTimestamp());
+        if (result == 0) {
+            result = Long.compareUnsigned(a.getId().getMostSignificantBits(), b.getId().getMostSignificantBits());
+        }
+        if (result == 0) {
+            result = Long.compareUnsigned(a.getId().getLeastSignificantBits(), b.getId().getLeastSignificantBits());
+        }
+        return result;
+    }
+
+    /**
+     * Occupation mémoire estimée d'un post : structures de stockage et caractères de ses chaines
+     * @param post Le post
+     * @return L'estimation en octets
+     */
+    static long footprint(Post post) {
+        return POST_OVERHEAD + 2L * (post.getFrom().length() + post.getTo().length() + post.getBody().length());
+    }
+}
@@ -19,7 +19,7 @@ public class PostVector extends Vector<Post> {
      */
     public Post getPostById(UUID uuid) {
         for (Post post : this) {
-            if (post.id == uuid) {
+            if (post.id.equals(uuid)) {
                 return post;
             }
         }
@@ -42,12 +42,23 @@ public class PostVector extends Vector<Post> {
     }
 
     /**
-     * Charge la liste des posts depuis la base de données
+     * Charge la liste des posts depuis la base de données, par une connexion ouverte le temps du chargement
      */
     public void loadPosts() {
+        DatabaseApi database = new DatabaseApi();
         try {
-            DatabaseApi database = new DatabaseApi();
-            ResultSet postResult = database.getPosts();
+            loadPosts(database);
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * Charge la liste des posts depuis une base de données déjà connectée, en refermant la liste de résultats
+     * @param database La connexion à la base de données
+     */
+    public void loadPosts(DatabaseApi database) {
+        try (ResultSet postResult = database.getPosts()) {
             while (postResult.next()) {
                 this.add(new Post(
                         UUID.fromString(postResult.getString("id")),
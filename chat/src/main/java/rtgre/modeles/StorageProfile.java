@@ -0,0 +1,106 @@
+package rtgre.modeles;
+
+/**
+ * Profil de stockage SQLite appliqué à l'ouverture de la base de données :
+ * compromis entre la durabilité des écritures et le débit.
+ */
+public enum StorageProfile {
+    /** Journal de retour arrière et synchronisation complète : chaque transaction validée survit à une coupure de courant */
+    DURABLE("DELETE", "FULL", -2000, 0, 4096),
+    /** Journal WAL : lectures et écritures ne se bloquent plus ; seule la dernière transaction peut être perdue en cas de coupure */
+    BALANCED("WAL", "NORMAL", -16000, 64L * 1024 * 1024, 4096),
+    /** Journal WAL sans synchronisation : débit maximal, les dernières transactions peuvent être perdues en cas de coupure */
+    THROUGHPUT("WAL", "OFF", -64000, 256L * 1024 * 1024, 8192);
+
+    /** Mode du journal (`PRAGMA journal_mode`) */
+    private final String journalMode;
+    /** Niveau de synchronisation sur le disque (`PRAGMA synchronous`) */
+    private final String synchronous;
+    /** Taille du cache de pages (`PRAGMA cache_size`) : en pages si positive, en Kio si négative */
+    private final int cacheSize;
+    /** Taille de la projection mémoire du fichier, en octets (`PRAGMA mmap_size`) */
+    private final long mmapSize;
+    /** Taille d'une page, en octets (`PRAGMA page_size`), prise en compte à la création de la base */
+    private final int pageSize;
+
+    /**
+     * Constructeur
+     * @param journalMode Le mode du journal
+     * @param synchronous Le niveau de synchronisation
+     * @param cacheSize La taille du cache de pages
+     * @param mmapSize La taille de la projection mémoire
+     * @param pageSize La taille d'une page
+     */
+    StorageProfile(String journalMode, String synchronous, int cacheSize, long mmapSize, int pageSize) {
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.cacheSize = cacheSize;
+        this.mmapSize = mmapSize;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Renvoie le profil associé à son nom, sans tenir compte de la casse
+     * @param name Le nom du profil (`durable`, `balanced`, `throughput`)
+     * @return Le profil correspondant
+     * @throws IllegalArgumentException si le nom ne correspond à aucun profil
+     */
+    public static StorageProfile fromName(String name) throws IllegalArgumentException {
+        return StorageProfile.valueOf(name.trim().toUpperCase());
+    }
+
+    /**
+     * Requêtes `PRAGMA` à exécuter, dans l'ordre, à l'ouverture de la connexion.
+     * La taille de page doit précéder le passage en mode WAL pour s'appliquer à une nouvelle base.
+     * @return Les requêtes de configuration
+     */
+    public String[] pragmas() {
+        return new String[] {
+                "PRAGMA page_size = " + pageSize,
+                "PRAGMA journal_mode = " + journalMode,
+                "PRAGMA synchronous = " + synchronous,
+                "PRAGMA cache_size = " + cacheSize,
+                "PRAGMA mmap_size = " + mmapSize
+        };
+    }
+
+    /**
+     * Getter de `journalMode`
+     * @return Le mode du journal
+     */
+    public String getJournalMode() {
+        return journalMode;
+    }
+
+    /**
+     * Getter de `synchronous`
+     * @return Le niveau de synchronisation
+     */
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    /**
+     * Getter de `cacheSize`
+     * @return La taille du cache de pages
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Getter de `mmapSize`
+     * @return La taille de la projection mémoire, en octets
+     */
+    public long getMmapSize() {
+        return mmapSize;
+    }
+
+    /**
+     * Getter de `pageSize`
+     * @return La taille d'une page, en octets
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+}
@@ -3,6 +3,7 @@ package rtgre.server;
 import org.json.JSONException;
 import org.json.JSONObject;
 import rtgre.chat.ChatController;
+import rtgre.chat.ChatLog;
 import rtgre.chat.net.ChatClient;
 import rtgre.modeles.*;
 
@@ -10,43 +11,93 @@ import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
-import java.util.Vector;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
-import java.util.logging.LogManager;
 
-import static rtgre.chat.ChatApplication.LOGGER;
+import static rtgre.chat.ChatApplication.LOG;
 
 /**
  * Programme serveur qui renvoie les chaines de caractères lues jusqu'à recevoir le message "fin"
  */
 public class ChatServer {
 
-    /** Liste des clients connectés */
-    private Vector<ChatClientHandler> clientList;
-    /** Liste des messages */
-    private PostVector postVector;
+    /** Registre des clients connectés */
+    private final ConnectionRegistry<ChatClientHandler> clients = new ConnectionRegistry<>();
+    /** Nombre maximal de posts d'une page de l'historique */
+    public static final int MAX_PAGE_SIZE = 500;
+    /** Les posts, par conversation et par identifiant */
+    private final PostStore postStore;
     /** Annuaire des contacts */
     private ContactMap contactMap;
     /** Liste des salons */
     private RoomMap roomMap;
-    /** Connexion à la base de données */
-    private DatabaseApi database;
+    /** Index des clients présents dans chaque salon */
+    private final RoomIndex<ChatClientHandler> roomIndex = new RoomIndex<>();
+    /** Index des sessions authentifiées de chaque login */
+    private final SessionIndex<ChatClientHandler> sessionIndex = new SessionIndex<>();
+    /** Stockage persistant des posts (base SQLite ou journal, selon `--persistence`), ouvert pendant toute la vie du serveur */
+    private final PostRepository database;
+    /** Écriture différée des posts en base de données */
+    private final PostWriter postWriter;
+    /** Chargement de la fenêtre des posts récents */
+    private final HistoryWarmer historyWarmer;
     /** Socket passif en écoute */
     private ServerSocket passiveSock;
+    /** Options de lancement du serveur */
+    private final ServerConfig config;
+    /** Moteur réseau non-bloquant (`null` avec le moteur bloquant) */
+    private NioServer nioServer;
+    /** Exécuteur des boucles de réception des clients (`null` avec le moteur NIO) */
+    private ExecutorService clientExecutor;
+    /** Exécuteur des lectures de l'historique demandées aux workers NIO, qui peuvent lire en base (`null` avec les moteurs bloquants) */
+    private ExecutorService historyExecutor;
+    /** Nombre de boucles de réception en cours d'exécution */
+    private final AtomicInteger receiveLoops = new AtomicInteger();
+    /** Nombre de trames émises vers les clients */
+    private final LongAdder framesSent = new LongAdder();
+    /** Nombre d'écritures sur les sockets des clients */
+    private final LongAdder flushes = new LongAdder();
+    /** Table de ventilation des évènements reçus, avec leurs statistiques par type */
+    private final EventDispatcher<ChatClientHandler, InboundEvent> dispatcher = new EventDispatcher<ChatClientHandler, InboundEvent>()
+            .onEach(EventType.AUTH, (client, event) -> client.doLogin((InboundEvent.Auth) event))
+            .onEach(EventType.LIST_CONTACTS, (client, event) -> client.doListContact((InboundEvent.ListContacts) event))
+            .onEach(EventType.MESG, (client, event) -> client.doMessage((InboundEvent.Mesg) event))
+            .onEach(EventType.LIST_POSTS, (client, event) -> client.doListPost((InboundEvent.ListPosts) event))
+            .onEach(EventType.LIST_ROOMS, (client, event) -> client.doListRoom((InboundEvent.ListRooms) event))
+            .onEach(EventType.JOIN, (client, event) -> client.doJoin((InboundEvent.Join) event))
+            .onEach(EventType.CONT, (client, event) -> client.doCont((InboundEvent.Cont) event))
+            .onEach(EventType.POST, (client, event) -> client.doPost(((InboundEvent.PostEdit) event).post()))
+            .on(EventType.QUIT, (client, event) -> {
+                LOG.log(Level.INFO, "[%s] Déconnexion", client.getIpPort());
+                return false;
+            });
 
 
     static {
         try {
             InputStream is = ChatController.class
                     .getResource("logging.properties").openStream();
-            LogManager.getLogManager().readConfiguration(is);
+            ChatLog.configure(is);
         } catch (Exception e) {
-            LOGGER.log(Level.INFO, "Cannot read configuration file", e);
+            LOG.log(Level.INFO, "Cannot read configuration file", e);
         }
     }
 
     /**
      * Le programme principal : instancie un serveur en écoute sur le port 2024 et le place en attente de clients.
+     * Le moteur réseau est choisi par l'option `--engine=blocking|virtual|nio` (voir {@link ServerConfig#fromArgs(String[])}).
      * @param args Arguments du programme principal
      * @throws IOException en cas de problème de connexion ou de base de données
      */
@@ -56,7 +107,7 @@ public class ChatServer {
         } catch (ClassNotFoundException e) {
             throw new IOException("Cannot connect to database");
         }
-        ChatServer server = new ChatServer(2024);
+        ChatServer server = new ChatServer(2024, ServerConfig.fromArgs(args));
         //daisyConnect();
         server.acceptClients();
     }
@@ -68,24 +119,83 @@ public class ChatServer {
      * @throws IOException si la connexion ne peut être établie
      */
     public ChatServer(int port) throws IOException {
-        passiveSock = new ServerSocket(port);
-        LOGGER.info("Serveur en écoute " + passiveSock);
-        clientList = new Vector<>();
+        this(port, new ServerConfig());
+    }
+
+    /**
+     * Constructeur : initialisation du serveur, en écoute sur le port fourni, avec le moteur réseau choisi
+     * @param port Le port de connexion
+     * @param engine Le moteur réseau
+     * @throws IOException si la connexion ne peut être établie
+     */
+    public ChatServer(int port, ServerEngine engine) throws IOException {
+        this(port, configWithEngine(engine));
+    }
+
+    /**
+     * Constructeur : initialisation du serveur, en écoute sur le port fourni, selon les options de lancement
+     * @param port Le port de connexion
+     * @param config Les options de lancement
+     * @throws IOException si la connexion ne peut être établie
+     */
+    public ChatServer(int port, ServerConfig config) throws IOException {
+        this.config = config;
+        if (config.getEngine() == ServerEngine.NIO) {
+            nioServer = new NioServer(this, port, config.getIoThreads());
+            passiveSock = nioServer.getServerChannel().socket();
+            historyExecutor = Executors.newFixedThreadPool(config.getIoThreads(),
+                    Thread.ofPlatform().name("history-", 1).daemon().factory());
+        } else {
+            passiveSock = new ServerSocket(port);
+            clientExecutor = (config.getEngine() == ServerEngine.VIRTUAL)
+                    ? Executors.newVirtualThreadPerTaskExecutor()
+                    : Executors.newThreadPerTaskExecutor(Thread.ofPlatform().name("client-", 1).factory());
+        }
+        LOG.log(Level.INFO, "Serveur en écoute %s (%s)", passiveSock, config);
+        database = (config.getPersistence() == PersistenceEngine.LOG)
+                ? new MessageLog(Path.of(config.getLogDir()), config.getSegmentMb() * 1024 * 1024)
+                : new DatabaseApi(config.getDbPath(), config.getStorageProfile());
+        postWriter = new PostWriter(database, config.getWriteQueueCapacity(),
+                config.getWriteBatchSize(), config.getWriteFlushMs());
         contactMap = new ContactMap();
-        postVector = new PostVector();
         roomMap = new RoomMap();
         contactMap.loadDefaultContacts();
         roomMap.loadDefaultRooms();
         roomMap.setLoginSets();
-        postVector.loadPosts();
+        postStore = new PostStore(config.getHistoryWindow(), postWriter);
+        historyWarmer = new HistoryWarmer(postStore, postWriter);
+        if (config.isFastStart()) {
+            historyWarmer.start();
+        } else {
+            historyWarmer.run();
+        }
     }
 
     /**
-     * Getter de `PostVector`
-     * @return La liste des posts
+     * Configuration par défaut utilisant le moteur réseau fourni
+     * @param engine Le moteur réseau
+     * @return La configuration
      */
-    public PostVector getPostVector() {
-        return postVector;
+    private static ServerConfig configWithEngine(ServerEngine engine) {
+        ServerConfig config = new ServerConfig();
+        config.setEngine(engine);
+        return config;
+    }
+
+    /**
+     * Getter de la configuration
+     * @return Les options de lancement du serveur
+     */
+    public ServerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Getter de `postStore`
+     * @return Les posts, par conversation et par identifiant
+     */
+    public PostStore getPostStore() {
+        return postStore;
     }
 
     /**
@@ -97,51 +207,141 @@ public class ChatServer {
     }
 
     /**
-     * Ferme la connexion du serveur, en fermant la connexion auprès de tous ses clients, puis en fermant son socket en écoute passive.
+     * Nombre de clients présents dans chaque salon
+     * @return Les nombres de membres présents, par nom de salon
+     */
+    public Map<String, Integer> getRoomMemberCounts() {
+        return roomIndex.memberCounts();
+    }
+
+    /**
+     * Nombre de clients présents dans un salon
+     * @param room Le nom du salon
+     * @return Le nombre de membres présents
+     */
+    public int getRoomMemberCount(String room) {
+        return roomIndex.memberCount(room);
+    }
+
+    /**
+     * Ferme la connexion du serveur, en fermant la connexion auprès de tous ses clients, puis en fermant son socket en écoute passive
+     * et sa connexion à la base de données, une fois tous les posts en attente enregistrés.
      * @throws IOException si la connexion
      */
     public void close() throws IOException {
-        for (ChatClientHandler client : clientList) {
+        for (ChatClientHandler client : clients.snapshot()) {
             client.close();
         }
-        passiveSock.close();
+        if (nioServer != null) {
+            nioServer.close();
+            historyExecutor.shutdown();
+        } else {
+            passiveSock.close();
+            clientExecutor.shutdown();
+        }
+        historyWarmer.close();
+        postWriter.close();
+        database.close();
     }
 
     /**
      * Boucle d'attente des clients
      */
     public void acceptClients() {
+        if (nioServer != null) {
+            nioServer.acceptClients();
+            return;
+        }
         int clientCounter = 1;
-        while (true) {
+        while (!passiveSock.isClosed()) {
             try {
-                LOGGER.info("Attente du client n°%02d".formatted(clientCounter));
+                LOG.log(Level.INFO, "Attente du client n°%02d", clientCounter);
                 Socket sock = passiveSock.accept();
-                LOGGER.info("[%s:%d] Connexion établie (client n°%02d)"
-                        .formatted(sock.getInetAddress().getHostAddress(), sock.getPort(), clientCounter));
+                LOG.log(Level.INFO, "[%s:%d] Connexion établie (client n°%02d)",
+                        sock.getInetAddress().getHostAddress(), sock.getPort(), clientCounter);
                 handleNewClient(sock);
             } catch (IOException e) {
-                LOGGER.severe(e.toString());
+                LOG.log(Level.SEVERE, e.toString());
             }
             clientCounter++;
         }
     }
 
     /**
-     * Retire `client` de la liste des clients connectés `clientList`
-     * @param client client à retirer de la liste `clientList`
+     * Retire `client` du registre des clients connectés `clients`
+     * @param client client à retirer du registre `clients`
      */
     public void removeClient(ChatClientHandler client) {
-        clientList.remove(client);
-        LOGGER.fine("Client [%s] retiré de la liste (%d clients connectés)"
-                .formatted(client.getIpPort(), clientList.size()));
+        clients.remove(client);
+        LOG.log(Level.FINE, "Client [%s] retiré de la liste (%d clients connectés)",
+                client.getIpPort(), clients.size());
     }
 
     /**
-     * Getter de `clientList`
+     * Copie figée de la liste des clients connectés
      * @return La liste des clients
      */
-    public Vector<ChatClientHandler> getClientList() {
-        return clientList;
+    public List<ChatClientHandler> getClientList() {
+        return clients.snapshot();
+    }
+
+    /**
+     * Getter de `clients`
+     * @return Le registre des clients connectés, parcourable pendant les connexions et déconnexions
+     */
+    public ConnectionRegistry<ChatClientHandler> getClients() {
+        return clients;
+    }
+
+    /**
+     * Statistiques de l'activité réseau : nombre de clients connectés, de boucles de réception
+     * en cours, de threads porteurs des threads virtuels, de trames émises et d'écritures sur les sockets
+     * @return Un instantané des statistiques
+     */
+    public ConnectionStats getConnectionStats() {
+        return new ConnectionStats(config.getEngine(), clients.size(), clients.getPeak(), clients.getTotal(),
+                receiveLoops.get(), countCarrierThreads(), framesSent.sum(), flushes.sum());
+    }
+
+    /**
+     * Statistiques de l'écriture différée des posts en base de données :
+     * profondeur de la file d'attente, nombre et durée des transactions
+     * @return Un instantané des statistiques
+     */
+    public PersistenceStats getPersistenceStats() {
+        return postWriter.getStats();
+    }
+
+    /**
+     * Avancement du chargement de l'historique en mémoire, en arrière-plan si le serveur a été lancé
+     * avec `--fast-start=true`
+     * @return Un instantané de l'avancement
+     */
+    public WarmupStats getWarmupStats() {
+        return historyWarmer.getStats();
+    }
+
+    /**
+     * Statistiques du traitement des évènements reçus, par type : nombre d'évènements,
+     * d'erreurs et durée des traitements
+     * @return Les statistiques des types déjà reçus
+     */
+    public Map<EventType, EventTypeStats> getEventStats() {
+        return dispatcher.getStats();
+    }
+
+    /**
+     * Compte les threads porteurs (carrier threads) de l'ordonnanceur des threads virtuels
+     * @return Le nombre de threads porteurs vivants
+     */
+    private static int countCarrierThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getClass().getName().equals("jdk.internal.misc.CarrierThread")) {
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
@@ -160,42 +360,91 @@ public class ChatServer {
      */
     private void handleNewClient(Socket sock) throws IOException {
         ChatClientHandler client = new ChatClientHandler(sock);
-        Thread clientLoop = new Thread(client::eventReceiveLoop);
-        clientLoop.start();
-        clientList.add(client);
-        LOGGER.fine("Ajout du client [%s] dans la liste (%d clients connectés)"
-                .formatted(client.getIpPort(), clientList.size()));
+        clients.add(client);
+        clientExecutor.execute(() -> {
+            receiveLoops.incrementAndGet();
+            try {
+                client.eventReceiveLoop();
+            } finally {
+                receiveLoops.decrementAndGet();
+            }
+        });
+        clientExecutor.execute(client::writeLoop);
+        LOG.log(Level.FINE, "Ajout du client [%s] dans la liste (%d clients connectés)",
+                client.getIpPort(), clients.size());
         //client.echoLoop();
     }
 
     /**
-     * Renvoie le client de connexion (objet ChatServer.ChatClientHandler) associé à un contact
+     * Prise en charge d'un nouveau client connecté via le moteur NIO : les évènements sont
+     * traités par le thread d'entrées/sorties du worker qui pilote la connexion
+     *
+     * @param connection connexion non-bloquante du client
+     */
+    void handleNewConnection(NioConnection connection) {
+        ChatClientHandler client = new ChatClientHandler(connection);
+        connection.setHandler(client);
+        clients.add(client);
+        LOG.log(Level.FINE, "Ajout du client [%s] dans la liste (%d clients connectés)",
+                client.getIpPort(), clients.size());
+    }
+
+    /**
+     * Renvoie un client de connexion (objet ChatServer.ChatClientHandler) associé à un contact
      * @param contact Le contact recherché
-     * @return Le client de connexion associé ou `null` si le contact n'existe pas
+     * @return L'un des clients de connexion associés ou `null` si le contact n'est pas connecté
      */
     public ChatClientHandler findClient(Contact contact) {
-        for (ChatClientHandler user: clientList) {
-            if (user.user.equals(contact)) {
-                return user;
-            }
+        return findClients(contact).stream().findFirst().orElse(null);
+    }
+
+    /**
+     * Renvoie tous les clients de connexion associés à un contact, un même contact pouvant
+     * ouvrir plusieurs sessions simultanées
+     * @param contact Le contact recherché
+     * @return Les clients de connexion associés (vide si le contact n'est pas connecté)
+     */
+    public Set<ChatClientHandler> findClients(Contact contact) {
+        if (contact == null) {
+            return Set.of();
         }
-        return null;
+        return sessionIndex.sessions(contact.getLogin());
+    }
+
+    /**
+     * Nombre de sessions ouvertes par un contact
+     * @param login Le login du contact
+     * @return Le nombre de sessions authentifiées sous ce login
+     */
+    public int getSessionCount(String login) {
+        return sessionIndex.sessionCount(login);
     }
 
     /**
-     * Envoi d'un évènement event à un contact donné, sous réserve qu'il soit connecté. Si l'envoi échoue, ferme la connexion avec le contact.
+     * Envoi d'un évènement event à un contact donné, sur chacune de ses sessions, sous réserve qu'il soit connecté.
+     * Si l'envoi échoue, ferme la connexion concernée.
+     * La trame de l'évènement n'est encodée qu'au premier envoi, puis partagée par tous les destinataires.
      * @param contact Le contact destinataire
      * @param event L'évènement à envoyer
      */
     public void sendEventToContact(Contact contact, Event event) {
-        ChatClientHandler user = findClient(contact);
-        if (!(user == null)) {
-            try {
-                user.send(event.toJson());
-            } catch (Exception e) {
-                LOGGER.warning("!!Erreur de l'envoi d'Event à %s, fermeture de la connexion".formatted(user.user.getLogin()));
-                user.close();
-            }
+        for (ChatClientHandler user : findClients(contact)) {
+            sendEventToClient(user, event);
+        }
+    }
+
+    /**
+     * Envoi d'un évènement à un client de connexion donné. Si l'envoi échoue, ferme la connexion avec le client.
+     * @param client Le client destinataire
+     * @param event L'évènement à envoyer
+     */
+    private void sendEventToClient(ChatClientHandler client, Event event) {
+        try {
+            client.send(event.toFrame());
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "!!Erreur de l'envoi d'Event à [%s], fermeture de la connexion",
+                    client.getIpPort());
+            client.close();
         }
     }
 
@@ -204,6 +453,7 @@ public class ChatServer {
      * @param event L'évènement à envoyer
      */
     public void sendEventToAllContacts(Event event) {
+        event.toFrame();
         for (Contact contact: contactMap.values()) {
             if (contact.isConnected()) {
                 sendEventToContact(contact, event);
@@ -231,9 +481,11 @@ public class ChatServer {
     /**
      * Gestion du dialogue avec un client TCP
      */
-    private class ChatClientHandler {
+    class ChatClientHandler {
         /** Message de fin d'une connexion */
         public static final String END_MESSAGE = "fin";
+        /** Taille du tampon d'émission (moteurs bloquants) */
+        static final int WRITE_BUFFER_SIZE = 16 * 1024;
         /**
          * Socket connecté au client
          */
@@ -243,20 +495,36 @@ public class ChatServer {
          */
         private PrintStream out;
         /**
-         * Flux de caractères en entrée
+         * Flux des évènements en entrée, dont le découpage est négocié par les premiers octets reçus
          */
-        private BufferedReader in;
+        private FrameReader in;
+        /** Découpage du flux négocié avec le client (moteurs bloquants, `null` tant qu'il n'est pas connu) */
+        private volatile Framing framing = null;
+        /** Encodage des évènements négocié avec le client (moteurs bloquants, `null` tant qu'il n'est pas connu) */
+        private volatile EventCodec codec = null;
+        /** Libéré une fois le découpage négocié ou la connexion fermée : le rédacteur attend ce signal avant d'émettre */
+        private final CountDownLatch negotiated = new CountDownLatch(1);
         /**
          * Chaine de caractères "ip:port" du client
          */
         private String ipPort;
         /** Contact associé au client courant */
         private Contact user;
+        /** Connexion non-bloquante du client (`null` avec le moteur bloquant) */
+        private NioConnection connection;
+        /** File des messages en attente d'émission vers le client */
+        private final OutboundQueue outbound = new OutboundQueue(config.getOutboundCapacity(), config.getOverflowPolicy());
+        /** La connexion a-t-elle été fermée ? */
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        /** Dernière réponse d'historique confiée à l'{@link #historyExecutor}, à laquelle la suivante est enchainée (worker NIO uniquement) */
+        private CompletableFuture<Void> historyReplies = CompletableFuture.completedFuture(null);
+        /** Lecteur JSON réutilisé pour décoder chaque ligne reçue (utilisé par le seul thread de réception) */
+        private final JsonPullParser parser = new JsonPullParser(InboundEvent.SYMBOLS);
 
         /**
          * Initialise les attributs {@link #sock} (socket connecté au client),
          * {@link #out} (flux de caractères UTF-8 en sortie) et
-         * {@link #in} (flux de caractères UTF-8 en entrée).
+         * {@link #in} (flux des évènements en entrée).
          *
          * @param sock socket connecté au client
          * @throws IOException si la connexion ne peut être établie ou si les flux ne peuvent être récupérés
@@ -266,8 +534,95 @@ public class ChatServer {
             this.ipPort = "%s:%d".formatted(sock.getInetAddress().getHostAddress(), sock.getPort());
             OutputStream os = sock.getOutputStream();
             InputStream is = sock.getInputStream();
-            this.out = new PrintStream(os, true, StandardCharsets.UTF_8);
-            this.in = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+            this.out = new PrintStream(new BufferedOutputStream(os, WRITE_BUFFER_SIZE), false, StandardCharsets.UTF_8);
+            this.in = new FrameReader(is);
+        }
+
+        /**
+         * Initialise un gestionnaire de client piloté par le moteur NIO : la lecture est assurée par
+         * le worker de la connexion, qui transmet chaque ligne reçue à {@link #handleEvent(String)}.
+         *
+         * @param connection connexion non-bloquante du client
+         */
+        ChatClientHandler(NioConnection connection) {
+            this.connection = connection;
+            this.ipPort = connection.getIpPort();
+            this.outbound.setListener(connection::notifyWritable);
+        }
+
+        /**
+         * Getter de la file d'émission
+         * @return La file des messages en attente d'émission vers le client
+         */
+        OutboundQueue getOutbound() {
+            return outbound;
+        }
+
+        /**
+         * Boucle d'émission (moteurs bloquants) : vide la file d'émission vers le flux de sortie du client,
+         * de sorte qu'un client lent ne bloque que son propre rédacteur et jamais les threads qui diffusent.
+         * Les trames sont accumulées dans le tampon d'émission tant que la file en contient, et le tampon
+         * est vidé sur la socket dès que la file est vide, ou au plus tard `outboundFlushMs` après la première trame.
+         * Rien n'est émis avant la négociation du découpage ; en mode {@link Framing#LENGTH_PREFIXED},
+         * le préambule est d'abord renvoyé au client pour accepter ce mode.
+         */
+        public void writeLoop() {
+            long flushNanos = TimeUnit.MILLISECONDS.toNanos(config.getOutboundFlushMs());
+            try {
+                negotiated.await();
+                if (framing == Framing.LENGTH_PREFIXED) {
+                    out.write(Framing.preamble(codec));
+                    out.flush();
+                }
+                EventFrame frame;
+                while ((frame = outbound.take()) != null) {
+                    long deadline = System.nanoTime() + flushNanos;
+                    int frames = 0;
+                    do {
+                        frame.writeTo(out, framing, codec);
+                        frames++;
+                    } while (System.nanoTime() - deadline < 0 && (frame = outbound.poll()) != null);
+                    recordFrames(frames);
+                    recordFlush();
+                    out.flush();
+                    if (out.checkError()) {
+                        LOG.log(Level.WARNING, "[%s] Erreur du flux de sortie", ipPort);
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "[%s] %s", ipPort, e);
+            }
+            close();
+        }
+
+        /**
+         * Mémorise le découpage et l'encodage négociés avec le client et libère le rédacteur
+         * @param framing Le découpage du flux
+         * @param codec L'encodage des évènements
+         */
+        private void setFraming(Framing framing, EventCodec codec) {
+            this.framing = framing;
+            this.codec = codec;
+            negotiated.countDown();
+            LOG.log(Level.FINE, "[%s] Découpage %s, encodage %s", ipPort, framing, codec);
+        }
+
+        /**
+         * Comptabilise des trames émises vers le client
+         * @param frames Le nombre de trames
+         */
+        void recordFrames(int frames) {
+            framesSent.add(frames);
+        }
+
+        /**
+         * Comptabilise une écriture sur la socket du client
+         */
+        void recordFlush() {
+            flushes.increment();
         }
 
         /**
@@ -275,157 +630,161 @@ public class ChatServer {
          */
         public void echoLoop() {
             try {
+                setFraming(in.negotiate(), in.getCodec());
                 String message = null;
                 while (!END_MESSAGE.equals(message)) {
-                    message = in.readLine();
+                    message = in.readFrame();
                     if (message == null) {
                         break;
                     }
-                    LOGGER.info("[%s] Réception de : %s".formatted(ipPort, message));
-                    LOGGER.info("[%s] Envoi de : %s".formatted(ipPort, message));
+                    LOG.log(Level.FINEST, "[%s] Réception de : %s", ipPort, message);
+                    LOG.log(Level.FINEST, "[%s] Envoi de : %s", ipPort, message);
                     //out.println(message);
                     sendAllOtherClients(this, message);
 
                 }
             } catch (IOException e) {
-                LOGGER.severe("[%s] %s".formatted(ipPort, e));
+                LOG.log(Level.SEVERE, "[%s] %s", ipPort, e);
             }
             close();
         }
 
         /**
-         * Boucle de réception d'évènement : réceptionne les messages reçus et les délèguent à `handleEvent(java.lang.String)` pour les interpréter
+         * Boucle de réception d'évènement : les lignes JSON sont décodées en un seul passage par
+         * `handleEvent(String)`, les évènements binaires par le {@link FrameReader} puis délégués
+         * à `handleEvent(rtgre.modeles.Event)`
          */
         public void eventReceiveLoop() {
             try {
-                String message = null;
-                while (!END_MESSAGE.equals(message)) {
-                    message = in.readLine();
-                    if (message == null) {
+                setFraming(in.negotiate(), in.getCodec());
+                boolean json = (in.getCodec() == EventCodec.JSON);
+                while (true) {
+                    String message = null;
+                    Event event = null;
+                    if (json) {
+                        message = in.readFrame();
+                    } else {
+                        event = in.readEvent();
+                    }
+                    if (message == null && event == null) {
                         break;
                     }
-                    LOGGER.info("[%s] Réception de : %s".formatted(ipPort, message));
+                    LOG.log(Level.FINEST, "[%s] Réception de : %s", ipPort, json ? message : event);
                     try {
-                        if (!handleEvent(message)) {
+                        if (!(json ? handleEvent(message) : handleEvent(event))) {
                             break;
                         }
                     } catch (Exception e) {
-                        LOGGER.severe(e.getMessage());
+                        LOG.log(Level.SEVERE, e.getMessage());
                         break;
                     }
                 }
-            } catch (IOException e) {
-                LOGGER.severe("[%s] %s".formatted(ipPort, e));
+            } catch (IOException | JSONException e) {
+                LOG.log(Level.SEVERE, "[%s] %s", ipPort, e);
             }
             close();
         }
 
         /**
-         * Traitement d'un évènement. Ventile vers les méthodes traitant chaque type d'évènement.
+         * Traitement d'un évènement reçu sous forme de ligne JSON, décodée en un seul passage par le lecteur
+         * de la connexion (voir {@link InboundEvent#parse(JsonPullParser, String)}) puis ventilée par {@link #handleEvent(InboundEvent)}.
          * @param message objet évènement sous la forme d'une chaine JSON brute de réception
          * @return `false` si l'évènement est de type Event.QUIT , `true` pour tous les autres types.
          * @throws JSONException si l'objet JSON n'est pas conforme
          * @throws IllegalStateException si l'authentification n'est pas effectuée
          */
-        private boolean handleEvent(String message) throws JSONException, IllegalStateException {
-            Event event = Event.fromJson(message);
-            if (event.getType().equals(Event.AUTH)) {
-                doLogin(event.getContent());
-                LOGGER.finest("Login successful");
-                return true;
-            } else if (event.getType().equals(Event.LIST_CONTACTS)) {
-                doListContact(event.getContent());
-                LOGGER.finest("Sending contacts");
-                return true;
-            } else if (event.getType().equals(Event.MESG)) {
-                doMessage(event.getContent());
-                LOGGER.info("Receiving message");
-                return true;
-            } else if (event.getType().equals(Event.LIST_POSTS)) {
-                doListPost(event.getContent());
-                LOGGER.info("Sending Posts");
-                return true;
-            } else if (event.getType().equals(Event.LIST_ROOMS)) {
-                doListRoom(event.getContent());
-                LOGGER.info("Sending Rooms");
-                return true;
-            } else if (event.getType().equals(Event.JOIN)) {
-                doJoin(event.getContent());
-                LOGGER.info("New user joining room!");
-                return true;
-            } else if (event.getType().equals(Event.QUIT)) {
-                LOGGER.info("Déconnexion");
-                return false;
-            } else if (event.getType().equals(Event.CONT)) {
-                doCont(event.getContent());
-                LOGGER.info("Update de contact");
-                return true;
-            } else if (event.getType().equals(Event.POST)) {
-                doPost(event.getContent());
-                LOGGER.info("Post edited");
-                return true;
-            } else {
-                LOGGER.warning("Unhandled event type: " + event.getType());
-                return false;
+        boolean handleEvent(String message) throws JSONException, IllegalStateException {
+            return handleEvent(InboundEvent.parse(parser, message));
+        }
+
+        /**
+         * Traitement d'un évènement décodé (encodage binaire), converti en évènement typé
+         * puis ventilé par {@link #handleEvent(InboundEvent)}.
+         * @param event L'évènement reçu
+         * @return `false` si l'évènement est de type Event.QUIT , `true` pour tous les autres types.
+         * @throws JSONException si le contenu de l'évènement n'est pas conforme
+         * @throws IllegalStateException si l'authentification n'est pas effectuée
+         */
+        boolean handleEvent(Event event) throws JSONException, IllegalStateException {
+            return handleEvent(InboundEvent.of(event));
+        }
+
+        /**
+         * Traitement d'un évènement typé. Ventile vers la méthode traitant son type par la table {@link #dispatcher}.
+         * @param event L'évènement reçu
+         * @return `false` si l'évènement est de type Event.QUIT ou d'un type non géré, `true` pour tous les autres types.
+         * @throws JSONException si le contenu de l'évènement n'est pas conforme
+         * @throws IllegalStateException si l'authentification n'est pas effectuée
+         */
+        boolean handleEvent(InboundEvent event) throws JSONException, IllegalStateException {
+            if (event instanceof InboundEvent.Unknown unknown) {
+                LOG.log(Level.WARNING, "Unhandled event type: %s", unknown.tag());
             }
+            return dispatcher.dispatch(event.type(), this, event);
         }
 
         /**
          * Met à jour un Post en fonction de son UUID
-         * @param content le contenu d'un évènement "POST"
+         * @param edited le post modifié, reçu dans un évènement "POST"
          */
-        private void doPost(JSONObject content) {
-            database = new DatabaseApi();
-            database.removePost(Post.fromJson(content));
-            database.addPost(Post.fromJson(content));
-            database.close();
-            postVector.removeIf(post -> post.getId().equals(Post.fromJson(content).getId()));
-            postVector.add(Post.fromJson(content));
-            sendEventToAllContacts(new Event(Event.POST, content));
-            LOGGER.info("didpost");
+        private void doPost(Post edited) {
+            postWriter.save(edited);
+            postStore.add(edited);
+            sendEventToAllContacts(new Event(Event.POST, edited.toJsonObject()));
+            LOG.log(Level.FINEST, "didpost");
         }
 
         /**
          * Met à jour un contact et envoie à tous les autres utilisateurs la mise à jour
-         * @param content Le contenu d'un évènement "CONT"
+         * @param cont L'évènement "CONT"
          */
-        private void doCont(JSONObject content) {
+        private void doCont(InboundEvent.Cont cont) {
             if (user.isConnected()) {
-                sendEventToAllContacts(new Event("CONT", content));
-                contactMap.getContact(content.getString("login")).setAvatar(Contact.base64ToImage(content.getString("avatar")));
+                sendEventToAllContacts(new Event("CONT", cont.toJsonObject()));
+                contactMap.getContact(cont.login()).setAvatar(Contact.base64ToImage(cont.avatar()));
             }
         }
 
         /**
-         * Gère l'arrivée à un utilisateur dans un salon donné dans le contenu du message.
-         * @param content Le contenu d'un évènement "JOIN"
+         * Gère l'arrivée à un utilisateur dans un salon donné dans le contenu du message,
+         * et tient à jour l'index des membres présents dans les salons.
+         * @param join L'évènement "JOIN"
          */
-        private void doJoin(JSONObject content) {
-            if (content.getString("room").isEmpty()) {
-                user.setCurrentRoom(null);
-            }
-            if (user.getLogin().isEmpty()) {
+        private void doJoin(InboundEvent.Join join) {
+            String room = join.room();
+            if (room.isEmpty() || user.getLogin().isEmpty()) {
                 user.setCurrentRoom(null);
+                roomIndex.leave(this);
                 return;
             }
-            if (roomMap.get(content.getString("room")).getLoginSet() == null) {
-                user.setCurrentRoom(content.getString("room"));
-            }
-            else if (roomMap.get(content.getString("room")).getLoginSet().contains(user.getLogin())) {
-                user.setCurrentRoom(content.getString("room"));
+            if (roomMap.get(room).getLoginSet() == null
+                    || roomMap.get(room).getLoginSet().contains(user.getLogin())) {
+                user.setCurrentRoom(room);
+                roomIndex.join(room, this);
             }
         }
 
         /**
          * Gère la demande d'envoi de la liste des salons : récupère tous les posts dont l'utilisateur est autorisé à accéder, puis les envoie un par un au client via des évènements "ROOM".
-         * @param content Le contenu d'un évènement "LSTR"
+         * Si l'évènement contient `"batch": true`, les salons sont envoyés regroupés en évènements "BTCH".
+         * @param list L'évènement "LSTR"
          */
-        private void doListRoom(JSONObject content) {
+        private void doListRoom(InboundEvent.ListRooms list) {
             if (contactMap.getContact(user.getLogin()).isConnected()) {
+                if (list.batch()) {
+                    List<JSONObject> rooms = new ArrayList<>();
+                    for (Room room: roomMap.values()) {
+                        if (room.getLoginSet().contains(user.getLogin())) {
+                            rooms.add(room.toJsonObject());
+                        }
+                    }
+                    sendBatches(Event.ROOM, rooms);
+                    return;
+                }
                 for (Room room: roomMap.values()) {
                     if (room.getLoginSet().contains(user.getLogin())) {
                         try {
-                            send(new Event("ROOM", room.toJsonObject()).toJson());
+                            send(new Event("ROOM", room.toJsonObject()).toFrame());
                         } catch (IOException e) {
                             throw new IllegalStateException();
                         }
@@ -435,140 +794,241 @@ public class ChatServer {
         }
 
         /**
-         * Gère la demande d'envoi de la liste des posts : récupère tous les posts ayant trait au login ou au salon indiqué dans content et étant postérieur au timestamp indiqué dans content, puis les envoie un par un au client via des évènements "POST".
-         * @param content Le contenu d'un évènement "LSTP"
-         * @throws JSONException si le format JSON n'est pas respecté
+         * Gère la demande d'envoi de la liste des posts ayant trait au login ou au salon indiqué dans l'évènement.
+         * Si l'évènement indique une taille de page (`limit`), seule la page des posts les plus récents antérieurs
+         * au curseur (`beforeTimestamp`, `beforeId`) est envoyée (voir {@link #sendPostPage(String, InboundEvent.ListPosts)}).
+         * Sinon, tous les posts de la conversation (salon, ou échanges privés avec le contact) postérieurs au timestamp `since`
+         * sont envoyés un par un au client via des évènements "POST".
+         * Si l'évènement contient `"batch": true`, les posts sont envoyés regroupés en évènements "BTCH".
+         * Les posts ne sont envoyés qu'à la session qui les a demandés.
+         * @param list L'évènement "LSTP"
+         * @throws JSONException si ni `limit` ni `since` ne sont indiqués
          * @throws IllegalStateException si le login ou le salon demandé n'existent pas
          */
-        private void doListPost(JSONObject content) throws JSONException, IllegalStateException {
+        private void doListPost(InboundEvent.ListPosts list) throws JSONException, IllegalStateException {
             if (contactMap.getContact(user.getLogin()).isConnected()) {
-                if (!contactMap.containsKey(content.getString("select")) && !roomMap.containsKey(content.getString("select"))) {
-                    LOGGER.log(Level.FINEST, "!select");
+                String select = list.select();
+                if (!contactMap.containsKey(select) && !roomMap.containsKey(select)) {
+                    LOG.log(Level.FINEST, "!select");
                     throw new IllegalStateException();
                 }
-                if (!content.getString("select").contains("#")) {
-                    LOGGER.log(Level.FINEST, "!#");
-                    for (Post post : postVector.getPostsSince(content.getLong("since"))) {
-                        if (post.getTo().equals(content.getString("select")) ||
-                                post.getFrom().equals(content.getString("select"))) {
-                            sendEventToContact(contactMap.getContact(user.getLogin()), new Event(Event.POST, post.toJsonObject()));
-                        }
-                    }
-                } else if (user.getCurrentRoom().equals(content.getString("select"))) {
-                    LOGGER.log(Level.FINEST, "#");
-                    for (Post post: postVector.getPostsSince(content.getLong("since"))) {
-                        if (post.getTo().equals(content.getString("select"))) {
-                            sendEventToContact(contactMap.getContact(user.getLogin()), new Event(Event.POST, post.toJsonObject()));
-                        }
+                if (select.contains("#") && !select.equals(user.getCurrentRoom())) {
+                    return;
+                }
+                if (list.limit() != null) {
+                    readHistory(() -> sendPostPage(select, list));
+                    return;
+                }
+                if (list.since() == null) {
+                    throw new JSONException("JSONObject[\"since\"] not found.");
+                }
+                readHistory(() -> {
+                    List<JSONObject> posts = new ArrayList<>();
+                    for (Post post : postStore.getPostsSince(Post.conversationKey(user.getLogin(), select), list.since())) {
+                        posts.add(post.toJsonObject());
                     }
+                    sendItems(Event.POST, posts, list.batch());
+                });
+            }
+        }
+
+        /**
+         * Lit l'historique et envoie la réponse. Sur un worker NIO, la lecture, qui peut attendre la base de données,
+         * est confiée à l'{@link #historyExecutor} et la réponse passe par la file d'émission ; les réponses d'un même client
+         * sont enchainées, si bien qu'elles ne s'entremêlent pas et lui parviennent dans l'ordre de ses demandes.
+         * @param reply La lecture de l'historique et l'envoi de la réponse
+         */
+        private void readHistory(Runnable reply) {
+            if (!NioServer.isSelectorThread()) {
+                reply.run();
+                return;
+            }
+            historyReplies = historyReplies.thenRunAsync(() -> {
+                try {
+                    reply.run();
+                } catch (RuntimeException e) {
+                    LOG.log(Level.SEVERE, "[%s] Lecture de l'historique : %s", ipPort, e);
+                    close();
                 }
+            }, historyExecutor);
+        }
+
+        /**
+         * Envoie une page de l'historique d'une conversation : au plus `limit` posts, les plus récents parmi ceux
+         * antérieurs au curseur, dans l'ordre chronologique (regroupés en évènements "BTCH" si l'évènement contient `"batch": true`),
+         * suivis d'un évènement "PAGE" indiquant le nombre de posts envoyés,
+         * s'il en reste de plus anciens (`hasMore`) et le curseur de la page suivante (`beforeTimestamp`, `beforeId`).
+         * @param select Le login du contact ou le salon de la conversation
+         * @param list L'évènement "LSTP"
+         */
+        private void sendPostPage(String select, InboundEvent.ListPosts list) {
+            int limit = Math.max(1, Math.min(list.limit(), MAX_PAGE_SIZE));
+            PostStore.Page page = postStore.page(
+                    Post.conversationKey(user.getLogin(), select), list.beforeTimestamp(), list.beforeId(), limit);
+            List<JSONObject> posts = new ArrayList<>(page.posts().size());
+            for (Post post : page.posts()) {
+                posts.add(post.toJsonObject());
+            }
+            sendItems(Event.POST, posts, list.batch());
+            JSONObject marker = new JSONObject()
+                    .put("select", select)
+                    .put("count", page.posts().size())
+                    .put("hasMore", page.hasMore());
+            if (!page.posts().isEmpty()) {
+                Post oldest = page.posts().get(0);
+                marker.put("beforeTimestamp", oldest.getTimestamp()).put("beforeId", oldest.getId().toString());
+            }
+            sendEventToClient(this, new Event(Event.PAGE, marker));
+        }
+
+        /**
+         * Envoie des éléments de même type à la session courante : un évènement par élément,
+         * ou des évènements "BTCH" si le client les a demandés (voir {@link #sendBatches(String, List)})
+         * @param itemType Le type des évènements ("POST", "CONT" ou "ROOM")
+         * @param items Les contenus des évènements
+         * @param batch Les éléments doivent-ils être regroupés ?
+         */
+        private void sendItems(String itemType, List<JSONObject> items, boolean batch) {
+            if (batch) {
+                sendBatches(itemType, items);
+                return;
+            }
+            for (JSONObject item : items) {
+                sendEventToClient(this, new Event(itemType, item));
+            }
+        }
+
+        /**
+         * Envoie des éléments de même type à la session courante, regroupés en évènements "BTCH"
+         * d'au plus {@link Event#MAX_BATCH_ITEMS} éléments : le client les traite en une seule mise à jour
+         * par évènement au lieu d'une par élément. Rien n'est envoyé si la liste est vide.
+         * @param itemType Le type des évènements regroupés ("POST", "CONT" ou "ROOM")
+         * @param items Les contenus des évènements regroupés
+         */
+        private void sendBatches(String itemType, List<JSONObject> items) {
+            for (int from = 0; from < items.size(); from += Event.MAX_BATCH_ITEMS) {
+                int to = Math.min(items.size(), from + Event.MAX_BATCH_ITEMS);
+                sendEventToClient(this, Event.batch(itemType, items.subList(from, to)));
             }
         }
 
         /**
          * Gère la réception d'un message, en créant le Post associé et en l'envoyant à son destinataire privé ou aux membres d'un salon de discussion public
-         * @param content Le contenu JSON représentant un message
-         * @throws JSONException si le format JSON n'est pas respecté
+         * @param mesg L'évènement "MESG" représentant un message
          * @throws IllegalStateException si un évènement destiné à un contact ne peut être envoyé
          */
-        private void doMessage(JSONObject content) throws JSONException, IllegalStateException {
+        private void doMessage(InboundEvent.Mesg mesg) throws IllegalStateException {
             if (contactMap.getContact(user.getLogin()).isConnected()) {
-                if (content.getString("to").equals(user.getLogin()) ||
-                    (!contactMap.containsKey(content.getString("to"))) && !roomMap.containsKey(content.getString("to"))) {
+                String to = mesg.to();
+                if (to.equals(user.getLogin()) ||
+                    (!contactMap.containsKey(to)) && !roomMap.containsKey(to)) {
                     throw new IllegalStateException("IllegalStateException! Cannot Post");
-                } if(!content.getString("to").contains("#")) {
-                    Post post = new Post(
-                            user.getLogin(),
-                            Message.fromJson(content)
-                    );
+                } if(!to.contains("#")) {
+                    Post post = new Post(user.getLogin(), to, mesg.body());
                     Event postEvent = new Event("POST", post.toJsonObject());
 
                     sendEventToContact(contactMap.getContact(post.getFrom()), postEvent);
                     sendEventToContact(contactMap.getContact(post.getTo()), postEvent);
 
-                    postVector.add(post);
+                    postWriter.save(post);
 
-                    database = new DatabaseApi();
-                    database.addPost(post);
-                    database.close();
+                    postStore.add(post);
 
-                    LOGGER.info("Fin de doMessage:dm");
+                    LOG.log(Level.FINEST, "Fin de doMessage:dm");
                 } else {
-                    Post post = new Post(
-                            user.getLogin(),
-                            Message.fromJson(content)
-                    );
+                    Post post = new Post(user.getLogin(), to, mesg.body());
                     Event postEvent = new Event("POST", post.toJsonObject());
 
-                    for (ChatClientHandler client: clientList) {
-                        if (client.user.getCurrentRoom() != null) {
-                            if (client.user.getCurrentRoom().equals(content.getString("to"))) {
-                                sendEventToContact(client.user, postEvent);
-                            }
-                        }
+                    for (ChatClientHandler client: roomIndex.members(post.getTo())) {
+                        sendEventToClient(client, postEvent);
                     }
-                    postVector.add(post);
-                    LOGGER.info("Fin de doMessage:room");
+                    postWriter.save(post);
+                    postStore.add(post);
+                    LOG.log(Level.FINEST, "Fin de doMessage:room");
 
                 }
             }
         }
 
         /**
-         * Gère la demande de la liste des contacts : les contacts sont envoyés un par un au client sous la forme d'évènement "CONT"
-         * @param content Le contenu de la demande de la liste des contacts
-         * @throws JSONException si le format JSON n'est pas respecté
+         * Gère la demande de la liste des contacts : les contacts sont envoyés un par un sous la forme d'évènement "CONT",
+         * ou regroupés en évènements "BTCH" si l'évènement contient `"batch": true`, à la seule session qui les a demandés.
+         * @param list L'évènement "LSTC" de demande de la liste des contacts
          * @throws IllegalStateException si un évènement destiné à un contact ne peut être envoyé
          */
-        private void doListContact(JSONObject content) throws JSONException, IllegalStateException {
-            for (Contact contact: contactMap.values()) {
-                if (contactMap.getContact(user.getLogin()).isConnected()) {
-                    sendEventToContact(user, new Event(Event.CONT, contact.toJsonObject()));
+        private void doListContact(InboundEvent.ListContacts list) throws IllegalStateException {
+            if (!contactMap.getContact(user.getLogin()).isConnected()) {
+                return;
+            }
+            if (list.batch()) {
+                List<JSONObject> contacts = new ArrayList<>();
+                for (Contact contact: contactMap.values()) {
+                    contacts.add(contact.toJsonObject());
                 }
+                sendBatches(Event.CONT, contacts);
+                return;
+            }
+            for (Contact contact: contactMap.values()) {
+                sendEventToClient(this, new Event(Event.CONT, contact.toJsonObject()));
             }
         }
 
         /**
          * Gère l'authentification d'un client en :
-         * *    récupérant son login dans content.
+         * *    récupérant son login dans l'évènement.
          * *    en vérifiant qu'il fait partie des contacts autorisés dans l'annuaire des contacts.
          * *    en modifiant son état de connexion dans l'annuaire des contacts.
          * *    en informant les autres clients de la connexion.
          * Si aucun login n'est fourni, si le client n'est pas autorisé à se connecter, ou si le client s'authentifie alors qu'il est déjà connecté, une exception IllegalStateException est levée.
-         * @param content Le contenu de la demande
-         * @throws JSONException si le format JSON n'est pas respecté
+         * @param auth L'évènement "AUTH" de demande d'authentification
+         * @throws JSONException si le login est vide
          * @throws IllegalStateException si l'utilisateur n'est pas autorisé à se connecter ou s'il est déjà connecté
          */
-        private void doLogin(JSONObject content) throws JSONException, IllegalStateException {
-            String login = content.getString("login");
+        private void doLogin(InboundEvent.Auth auth) throws JSONException, IllegalStateException {
+            String login = auth.login();
             if (login.isEmpty()) {
-                LOGGER.warning("Aucun login fourni");
+                LOG.log(Level.WARNING, "Aucun login fourni");
                 throw new JSONException("Aucun login fourni");
             } else if (!contactMap.containsKey(login)) {
-                LOGGER.warning("Login non-authorisé");
+                LOG.log(Level.WARNING, "Login non-authorisé");
                 throw new IllegalStateException("Login non-authorisé");
             } else {
-                LOGGER.info("Connexion de " + login);
+                LOG.log(Level.INFO, "Connexion de %s", login);
+                if (user != null && !user.getLogin().equals(login)) {
+                    unregisterSession();
+                }
                 contactMap.getContact(login).setConnected(true);
                 this.user = contactMap.getContact(login);
-                LOGGER.log(Level.FINEST, String.valueOf(user.isConnected()));
-                sendAllOtherClients(
-                        findClient(contactMap.getContact(login)),
-                        new Event("CONT", user.toJsonObject()).toJson()
-                );
+                sessionIndex.add(login, this);
+                LOG.log(Level.FINEST, "%s", user.isConnected());
+                sendAllOtherClients(this, new Event("CONT", user.toJsonObject()).toFrame());
             }
         }
 
         /**
-         * Envoie une chaine de caractères
+         * Dépose une chaine de caractères dans la file d'émission du client, sans attendre le réseau.
+         * Lorsque la file est pleine, la politique de débordement du serveur s'applique.
          * @param message Chaine de caractères à transmettre
-         * @throws IOException lorsqu'une erreur sur le flux de sortie est détectée
+         * @throws IOException si la connexion est fermée ou si le client, trop lent, doit être déconnecté
          */
         public void send(String message) throws IOException {
-            LOGGER.finest("send: %s".formatted(message));
-            out.println(message);
-            if (out.checkError()) {
-                throw new IOException("Output stream error");
+            send(EventFrame.of(message));
+        }
+
+        /**
+         * Dépose une trame déjà encodée dans la file d'émission du client : la même trame peut être
+         * partagée par tous les destinataires d'une diffusion.
+         * Lorsque la file est pleine, la politique de débordement du serveur s'applique, y compris aux réponses
+         * qu'un worker NIO adresse au client qu'il pilote ; un worker NIO n'attend jamais de place
+         * et déconnecte plutôt le client trop lent.
+         * @param frame La trame à transmettre
+         * @throws IOException si la connexion est fermée ou si le client, trop lent, doit être déconnecté
+         */
+        public void send(EventFrame frame) throws IOException {
+            LOG.log(Level.FINEST, "send: %s", frame);
+            boolean accepted = outbound.offer(frame, !NioServer.isSelectorThread());
+            if (!accepted) {
+                throw new IOException("Outbound queue closed or full (%d messages)".formatted(outbound.size()));
             }
         }
 
@@ -586,14 +1046,22 @@ public class ChatServer {
          * @param message Le message à envoyer
          */
         public void sendAllOtherClients(ChatClientHandler fromClient, String message) {
-            for (ChatClientHandler client : clientList) {
+            sendAllOtherClients(fromClient, EventFrame.of(message));
+        }
+
+        /**
+         * Envoie une trame, encodée une seule fois, à tous les autres clients que le client courant
+         * @param fromClient Le client courant
+         * @param message La trame à envoyer
+         */
+        public void sendAllOtherClients(ChatClientHandler fromClient, EventFrame message) {
+            for (ChatClientHandler client : clients) {
                 if (!client.equals(fromClient)) {
-                    LOGGER.fine(clientList.toString());
-                    LOGGER.fine("Envoi vers [%s] : %s".formatted(client.getIpPort(), message));
+                    LOG.log(Level.FINEST, "Envoi vers [%s] : %s", client.getIpPort(), message);
                     try {
                         client.send(message);
                     } catch (Exception e) {
-                        LOGGER.severe("[%s] %s".formatted(client.getIpPort(), e));
+                        LOG.log(Level.SEVERE, "[%s] %s", client.getIpPort(), e);
                         client.close();
                     }
                 }
@@ -606,8 +1074,8 @@ public class ChatServer {
          * @throws IOException lorsque la fin du flux est atteinte
          */
         public String receive() throws IOException {
-            String message = in.readLine();
-            LOGGER.info("receive: %s".formatted(message));
+            String message = in.readFrame();
+            LOG.log(Level.FINEST, "receive: %s", message);
             if (message == null) {
                 throw new IOException("End of the stream has been reached");
             }
@@ -618,17 +1086,41 @@ public class ChatServer {
          * Ferme la connexion TCP
          */
         public void close() {
-            LOGGER.info("[%s] Fermeture de la connexion".formatted(ipPort));
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            LOG.log(Level.INFO, "[%s] Fermeture de la connexion", ipPort);
+            outbound.close();
+            negotiated.countDown();
             try {
-                sock.close();
+                if (connection != null) {
+                    connection.close();
+                } else {
+                    sock.close();
+                }
                 removeClient(this);
-                user.setConnected(false);
-                contactMap.get(user.getLogin()).setConnected(false);
-                sendEventToAllContacts(new Event(Event.CONT, user.toJsonObject()));
+                roomIndex.leave(this);
+                if (user == null) {
+                    return;
+                }
+                unregisterSession();
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
 
         }
+
+        /**
+         * Retire la session de l'index des sessions de son login. S'il s'agissait de la dernière session,
+         * le contact est marqué déconnecté et les autres clients en sont informés.
+         */
+        private void unregisterSession() {
+            if (!sessionIndex.remove(user.getLogin(), this)) {
+                return;
+            }
+            user.setConnected(false);
+            contactMap.get(user.getLogin()).setConnected(false);
+            sendEventToAllContacts(new Event(Event.CONT, user.toJsonObject()));
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,160 @@
+package rtgre.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registre des connexions ouvertes sur le serveur, sans verrou global :
+ * l'ajout et le retrait se font en temps constant, et le parcours ne lève jamais
+ * d'exception lorsque des connexions s'ouvrent ou se ferment pendant une diffusion.
+ * Les diffusions étant bien plus fréquentes que les connexions, le parcours se fait sur un tableau
+ * figé, reconstruit à la demande après chaque modification puis partagé par toutes les diffusions.
+ * Tient à jour des compteurs atomiques (connexions ouvertes, pic, total depuis le démarrage).
+ * @param <T> Le type des connexions enregistrées
+ */
+public class ConnectionRegistry<T> implements Iterable<T> {
+    /** Les connexions ouvertes */
+    private final Set<T> connections = ConcurrentHashMap.newKeySet();
+    /** Nombre de connexions ouvertes */
+    private final AtomicInteger size = new AtomicInteger();
+    /** Nombre maximal de connexions ouvertes simultanément */
+    private final AtomicInteger peak = new AtomicInteger();
+    /** Nombre total de connexions enregistrées depuis la création du registre */
+    private final AtomicLong total = new AtomicLong();
+    /** Numéro de version du registre, incrémenté après chaque modification */
+    private final AtomicLong version = new AtomicLong();
+    /** Dernier tableau figé des connexions */
+    private volatile Snapshot snapshot = new Snapshot(0, new Object[0]);
+
+    /**
+     * Tableau figé des connexions, valide tant que le registre est dans la version indiquée
+     * @param version La version du registre au début de la construction du tableau
+     * @param items Les connexions (tableau jamais modifié)
+     */
+    private record Snapshot(long version, Object[] items) {
+    }
+
+    /**
+     * Enregistre une connexion
+     * @param connection La connexion ouverte
+     * @return `true` si la connexion n'était pas déjà enregistrée
+     */
+    public boolean add(T connection) {
+        if (!connections.add(connection)) {
+            return false;
+        }
+        int current = size.incrementAndGet();
+        peak.accumulateAndGet(current, Math::max);
+        total.incrementAndGet();
+        version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Retire une connexion du registre
+     * @param connection La connexion fermée
+     * @return `true` si la connexion était enregistrée
+     */
+    public boolean remove(T connection) {
+        if (!connections.remove(connection)) {
+            return false;
+        }
+        size.decrementAndGet();
+        version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Renvoie le tableau figé des connexions, en le reconstruisant si le registre a été modifié depuis.
+     * La version est lue avant la copie : une modification concurrente rend le tableau périmé
+     * et le suivant sera reconstruit.
+     * @return Le tableau figé des connexions
+     */
+    private Object[] items() {
+        long current = version.get();
+        Snapshot last = snapshot;
+        if (last.version() == current) {
+            return last.items();
+        }
+        Object[] items = connections.toArray();
+        snapshot = new Snapshot(current, items);
+        return items;
+    }
+
+    /**
+     * Parcours des connexions ouvertes au début du parcours, sans verrou ni exception
+     * en cas de modification concurrente.
+     * @return L'itérateur des connexions (le retrait par l'itérateur n'est pas supporté)
+     */
+    @Override
+    public Iterator<T> iterator() {
+        Object[] items = items();
+        return new Iterator<>() {
+            /** Indice de la prochaine connexion */
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < items.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (next >= items.length) {
+                    throw new NoSuchElementException();
+                }
+                return (T) items[next++];
+            }
+        };
+    }
+
+    /**
+     * Copie figée des connexions ouvertes à l'instant de l'appel
+     * @return La liste non modifiable des connexions
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> snapshot() {
+        return Collections.unmodifiableList(Arrays.asList((T[]) items()));
+    }
+
+    /**
+     * Nombre de connexions ouvertes
+     * @return Le nombre de connexions
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Nombre maximal de connexions ouvertes simultanément
+     * @return Le pic de connexions
+     */
+    public int getPeak() {
+        return peak.get();
+    }
+
+    /**
+     * Nombre total de connexions enregistrées depuis la création du registre
+     * @return Le nombre total de connexions
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * Représentation textuelle du registre
+     * @return La chaine de caractères représentant les compteurs du registre
+     */
+    @Override
+    public String toString() {
+        return "ConnectionRegistry{size=" + size() + ", peak=" + getPeak() + ", total=" + getTotal() + "}";
+    }
+}
@@ -0,0 +1,35 @@
+package rtgre.server;
+
+/**
+ * Instantané de l'activité réseau du serveur
+ * @param engine Le moteur réseau utilisé
+ * @param connections Le nombre de clients connectés
+ * @param peakConnections Le nombre maximal de clients connectés simultanément
+ * @param totalConnections Le nombre total de connexions acceptées depuis le démarrage
+ * @param receiveLoops Le nombre de boucles de réception en cours d'exécution (moteurs bloquants)
+ * @param carrierThreads Le nombre de threads porteurs des threads virtuels
+ * @param framesSent Le nombre de trames émises vers les clients
+ * @param flushes Le nombre d'écritures sur les sockets des clients (vidages de tampon ou écritures groupées)
+ */
+public record ConnectionStats(ServerEngine engine, int connections, int peakConnections, long totalConnections,
+                              int receiveLoops, int carrierThreads, long framesSent, long flushes) {
+
+    /**
+     * Nombre moyen de trames par écriture sur une socket
+     * @return Le nombre moyen de trames émises par écriture (0 si aucune écriture)
+     */
+    public double averageFramesPerFlush() {
+        return (flushes == 0) ? 0 : (double) framesSent / flushes;
+    }
+
+    /**
+     * Représentation textuelle des statistiques
+     * @return La chaine de caractères représentant les statistiques
+     */
+    @Override
+    public String toString() {
+        return "%s : %d connexion(s) (pic %d, total %d), %d boucle(s) de réception, %d thread(s) porteur(s), %d trame(s) émise(s) en %d écriture(s)"
+                .formatted(engine, connections, peakConnections, totalConnections, receiveLoops, carrierThreads,
+                        framesSent, flushes);
+    }
+}
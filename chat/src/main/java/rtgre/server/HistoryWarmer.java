@@ -0,0 +1,119 @@
+package rtgre.server;
+
+import rtgre.modeles.PostRepository;
+import rtgre.modeles.PostStore;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import static rtgre.chat.ChatApplication.LOG;
+
+/**
+ * Chargement de la fenêtre des posts récents au démarrage du serveur : conversation par conversation,
+ * les plus récemment actives en premier, et dans chacune les posts du plus récent au plus ancien.
+ * Le chargement peut être fait avant d'accepter les clients ({@link #run()}) ou par un thread dédié ({@link #start()}) :
+ * le serveur accepte alors les clients immédiatement, l'historique des conversations pas encore chargées étant lu en base.
+ */
+class HistoryWarmer {
+    /** Nombre de conversations chargées entre deux journalisations de l'avancement */
+    static final int PROGRESS_INTERVAL = 100;
+    /** Stockage des posts à charger */
+    private final PostStore store;
+    /** Stockage persistant des posts */
+    private final PostRepository database;
+    /** Thread de chargement, `null` pour un chargement synchrone */
+    private Thread thread;
+    /** Le chargement est-il interrompu ? */
+    private volatile boolean closed = false;
+    /** Nombre de conversations à charger */
+    private volatile int conversations = 0;
+    /** Nombre de conversations chargées */
+    private final AtomicInteger warmedConversations = new AtomicInteger();
+    /** Nombre de posts lus */
+    private final AtomicLong posts = new AtomicLong();
+    /** Instant du début du chargement (ns) */
+    private volatile long startNanos = 0;
+    /** Durée du chargement terminé (ms), -1 tant qu'il n'est pas terminé */
+    private volatile long elapsedMillis = -1;
+
+    /**
+     * Constructeur
+     * @param store Le stockage des posts, borné (voir {@link PostStore.Window})
+     * @param database Le stockage persistant des posts
+     */
+    HistoryWarmer(PostStore store, PostRepository database) {
+        this.store = store;
+        this.database = database;
+    }
+
+    /**
+     * Charge la fenêtre avant de rendre la main
+     */
+    void run() {
+        store.beginWarmup();
+        warmAll();
+    }
+
+    /**
+     * Démarre le chargement en arrière-plan. Le stockage est placé en chargement avant de rendre la main,
+     * si bien que les clients acceptés ensuite lisent en base l'historique pas encore chargé.
+     */
+    void start() {
+        store.beginWarmup();
+        thread = new Thread(this::warmAll, "history-warmer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Charge chacune des conversations enregistrées, puis termine le chargement du stockage
+     */
+    private void warmAll() {
+        startNanos = System.nanoTime();
+        List<String> keys = database.getConversations();
+        conversations = keys.size();
+        for (String conversation : keys) {
+            if (closed) {
+                LOG.log(Level.WARNING, "Chargement de l'historique interrompu : %s", getStats());
+                return;
+            }
+            posts.addAndGet(store.warm(database, conversation));
+            if (warmedConversations.incrementAndGet() % PROGRESS_INTERVAL == 0) {
+                LOG.log(Level.FINE, "Chargement de l'historique : %s", getStats());
+            }
+        }
+        store.endWarmup();
+        elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        LOG.log(Level.INFO, "Historique chargé : %s", getStats());
+    }
+
+    /**
+     * Avancement du chargement
+     * @return Un instantané de l'avancement
+     */
+    WarmupStats getStats() {
+        long elapsed = elapsedMillis;
+        boolean complete = elapsed >= 0;
+        if (!complete) {
+            elapsed = (startNanos == 0) ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+        return new WarmupStats(conversations, warmedConversations.get(), posts.get(), elapsed, complete);
+    }
+
+    /**
+     * Interrompt le chargement en arrière-plan, après la conversation en cours
+     */
+    void close() {
+        closed = true;
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
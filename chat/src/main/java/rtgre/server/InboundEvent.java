@@ -0,0 +1,334 @@
+package rtgre.server;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import rtgre.modeles.Event;
+import rtgre.modeles.EventType;
+import rtgre.modeles.JsonPullParser;
+import rtgre.modeles.Post;
+
+import java.util.UUID;
+
+/**
+ * Évènement reçu par le serveur, sous une forme typée propre à chaque type d'évènement.
+ * Une ligne JSON est décodée en un seul passage par {@link #parse(String)}, sans arbre {@link JSONObject}
+ * intermédiaire ; un évènement déjà décodé (encodage binaire) est converti par {@link #of(Event)}.
+ * Les champs obligatoires manquants ou mal typés lèvent une {@link JSONException}, comme les accesseurs de {@link JSONObject}.
+ */
+sealed interface InboundEvent {
+
+    /**
+     * Type de l'évènement
+     * @return Le type, ou `null` pour un type non géré par le serveur
+     */
+    EventType type();
+
+    /**
+     * Table de symboles des lecteurs réutilisés par connexion : clés des contenus et étiquettes des types,
+     * renvoyées sans allocation par {@link JsonPullParser#nextKey()} et {@link JsonPullParser#readSymbol()}
+     */
+    String[] SYMBOLS = {
+            "type", "content", "login", "to", "body", "from", "select", "room", "avatar", "id", "beforeId",
+            "since", "timestamp", "beforeTimestamp", "limit", "connected", "editable", "batch",
+            Event.AUTH, Event.QUIT, Event.MESG, Event.LIST_CONTACTS, Event.LIST_ROOMS, Event.LIST_POSTS,
+            Event.JOIN, Event.CONT, Event.POST
+    };
+
+    /**
+     * Demande d'authentification ("AUTH")
+     * @param login Le login de l'utilisateur
+     */
+    record Auth(String login) implements InboundEvent {
+        @Override
+        public EventType type() {
+            return EventType.AUTH;
+        }
+    }
+
+    /**
+     * Déconnexion ("QUIT")
+     */
+    record Quit() implements InboundEvent {
+        @Override
+        public EventType type() {
+            return EventType.QUIT;
+        }
+    }
+
+    /**
+     * Envoi d'un message ("MESG")
+     * @param to Le destinataire : login d'un contact ou salon
+     * @param body Le corps du message
+     */
+    record Mesg(String to, String body) implements InboundEvent {
+        @Override
+        public EventType type() {
+            return EventType.MESG;
+        }
+    }
+
+    /**
+     * Demande de la liste des contacts ("LSTC")
+     * @param batch Les contacts doivent-ils être regroupés en évènements "BTCH" ?
+     */
+    record ListContacts(boolean batch) implements InboundEvent {
+        @Override
+        public EventType type() {
+            return EventType.LIST_CONTACTS;
+        }
+    }
+
+    /**
+     * Demande de la liste des salons ("LSTR")
+     * @param batch Les salons doivent-ils être regroupés en évènements "BTCH" ?
+     */
+    record ListRooms(boolean batch) implements InboundEvent {
+        @Override
+        public EventType type() {
+            return EventType.LIST_ROOMS;
+        }
+    }
+
+    /**
+     * Demande de l'historique d'une conversation ("LSTP")
+     * @param select Le login du contact ou le salon de la conversation
+     * @param since Le timestamp à partir duquel envoyer les posts, ou `null`
+     * @param limit La taille de la page demandée, ou `null` pour tout l'historique depuis `since`
+     * @param beforeTimestamp Le timestamp du curseur de la page, ou `null`
+     * @param beforeId L'identifiant du curseur de la page, ou `null`
+     * @param batch Les posts doivent-ils être regroupés en évènements "BTCH" ?
+     */
+    record ListPosts(String select, Long since, Integer limit, Long beforeTimestamp, UUID beforeId,
+                     boolean batch) implements InboundEvent {
+        @Override
+        public EventType type() {
+            return EventType.LIST_POSTS;
+        }
+    }
+
+    /**
+     * Entrée dans un salon ("JOIN")
+     * @param room Le salon, vide pour quitter le salon courant
+     */
+    record Join(String room) implements InboundEvent {
+        @Override
+        public EventType type() {
+            return EventType.JOIN;
+        }
+    }
+
+    /**
+     * Mise à jour d'un contact ("CONT")
+     * @param login Le login du contact
+     * @param connected L'état de connexion annoncé, ou `null`
+     * @param avatar L'avatar encodé en base 64
+     */
+    record Cont(String login, Boolean connected, String avatar) implements InboundEvent {
+        @Override
+        public EventType type() {
+            return EventType.CONT;
+        }
+
+        /**
+         * Contenu de l'évènement "CONT" à diffuser
+         * @return L'objet JSON du contact
+         */
+        JSONObject toJsonObject() {
+            JSONObject content = new JSONObject().put("login", login);
+            if (connected != null) {
+                content.put("connected", connected);
+            }
+            return content.put("avatar", avatar);
+        }
+    }
+
+    /**
+     * Modification d'un post ("POST")
+     * @param post Le post modifié
+     */
+    record PostEdit(Post post) implements InboundEvent {
+        @Override
+        public EventType type() {
+            return EventType.POST;
+        }
+    }
+
+    /**
+     * Évènement d'un type non géré par le serveur
+     * @param tag L'étiquette du type de l'évènement
+     */
+    record Unknown(String tag) implements InboundEvent {
+        @Override
+        public EventType type() {
+            return null;
+        }
+    }
+
+    /**
+     * Décode une ligne JSON `{"type": ..., "content": {...}}` en un seul passage
+     * @param json La ligne reçue
+     * @return L'évènement typé
+     * @throws JSONException si la ligne n'est pas un évènement JSON conforme
+     */
+    static InboundEvent parse(String json) throws JSONException {
+        return parse(new JsonPullParser(SYMBOLS), json);
+    }
+
+    /**
+     * Décode une ligne JSON `{"type": ..., "content": {...}}` en un seul passage, avec un lecteur réutilisé
+     * d'une ligne à l'autre (construit sur {@link #SYMBOLS})
+     * @param parser Le lecteur de la connexion
+     * @param json La ligne reçue
+     * @return L'évènement typé
+     * @throws JSONException si la ligne n'est pas un évènement JSON conforme
+     */
+    static InboundEvent parse(JsonPullParser parser, String json) throws JSONException {
+        parser.reset(json);
+        parser.beginObject();
+        String type = null;
+        InboundEvent event = null;
+        int content = -1;
+        for (String key = parser.nextKey(); key != null; key = parser.nextKey()) {
+            if (key.equals("type")) {
+                type = parser.readSymbol();
+            } else if (key.equals("content") && type != null) {
+                event = read(type, parser);
+            } else if (key.equals("content")) {
+                content = parser.position();
+                parser.skipValue();
+            } else {
+                parser.skipValue();
+            }
+        }
+        parser.end();
+        if (type == null) {
+            throw new JSONException("JSONObject[\"type\"] not found.");
+        }
+        if (event == null && content >= 0) {
+            parser.seek(content);
+            event = read(type, parser);
+        }
+        if (event == null) {
+            throw new JSONException("JSONObject[\"content\"] not found.");
+        }
+        return event;
+    }
+
+    /**
+     * Lit le contenu d'un évènement selon son type
+     * @param type Le type de l'évènement
+     * @param parser Le lecteur, positionné au début du contenu
+     * @return L'évènement typé
+     * @throws JSONException si le contenu n'est pas conforme
+     */
+    private static InboundEvent read(String type, JsonPullParser parser) throws JSONException {
+        parser.beginObject();
+        String login = null, to = null, body = null, select = null, room = null, avatar = null, from = null;
+        Long since = null, timestamp = null, beforeTimestamp = null;
+        Integer limit = null;
+        Boolean connected = null, editable = null;
+        String id = null, beforeId = null;
+        boolean batch = false;
+        for (String key = parser.nextKey(); key != null; key = parser.nextKey()) {
+            if (parser.readNull()) {
+                continue;
+            }
+            switch (key) {
+                case "login" -> login = parser.readString();
+                case "to" -> to = parser.readString();
+                case "body" -> body = parser.readString();
+                case "from" -> from = parser.readString();
+                case "select" -> select = parser.readString();
+                case "room" -> room = parser.readString();
+                case "avatar" -> avatar = parser.readString();
+                case "id" -> id = parser.readString();
+                case "beforeId" -> beforeId = parser.readString();
+                case "since" -> since = parser.readLong();
+                case "timestamp" -> timestamp = parser.readLong();
+                case "beforeTimestamp" -> beforeTimestamp = parser.readLong();
+                case "limit" -> limit = parser.readInt();
+                case "connected" -> connected = parser.readBoolean();
+                case "editable" -> editable = parser.readBoolean();
+                case "batch" -> batch = parser.optBoolean();
+                default -> parser.skipValue();
+            }
+        }
+        return switch (type) {
+            case Event.AUTH -> new Auth(require("login", login));
+            case Event.QUIT -> new Quit();
+            case Event.MESG -> new Mesg(require("to", to), require("body", body));
+            case Event.LIST_CONTACTS -> new ListContacts(batch);
+            case Event.LIST_ROOMS -> new ListRooms(batch);
+            case Event.LIST_POSTS -> new ListPosts(require("select", select), since, limit, beforeTimestamp,
+                    (beforeId == null) ? null : uuid(beforeId), batch);
+            case Event.JOIN -> new Join(require("room", room));
+            case Event.CONT -> new Cont(require("login", login), connected, require("avatar", avatar));
+            case Event.POST -> {
+                Post post = new Post(uuid(require("id", id)), require("timestamp", timestamp),
+                        require("from", from), require("to", to), require("body", body));
+                if (editable != null) {
+                    post.setEditable(editable);
+                }
+                yield new PostEdit(post);
+            }
+            default -> new Unknown(type);
+        };
+    }
+
+    /**
+     * Convertit un évènement déjà décodé en évènement typé
+     * @param event L'évènement reçu
+     * @return L'évènement typé
+     * @throws JSONException si le contenu n'est pas conforme
+     */
+    static InboundEvent of(Event event) throws JSONException {
+        JSONObject content = event.getContent();
+        return switch (event.getType()) {
+            case Event.AUTH -> new Auth(content.getString("login"));
+            case Event.QUIT -> new Quit();
+            case Event.MESG -> new Mesg(content.getString("to"), content.getString("body"));
+            case Event.LIST_CONTACTS -> new ListContacts(content.optBoolean("batch"));
+            case Event.LIST_ROOMS -> new ListRooms(content.optBoolean("batch"));
+            case Event.LIST_POSTS -> new ListPosts(content.getString("select"),
+                    content.has("since") ? content.getLong("since") : null,
+                    content.has("limit") ? content.getInt("limit") : null,
+                    content.has("beforeTimestamp") ? content.getLong("beforeTimestamp") : null,
+                    content.has("beforeId") ? uuid(content.getString("beforeId")) : null,
+                    content.optBoolean("batch"));
+            case Event.JOIN -> new Join(content.getString("room"));
+            case Event.CONT -> new Cont(content.getString("login"),
+                    content.has("connected") ? content.getBoolean("connected") : null,
+                    content.getString("avatar"));
+            case Event.POST -> new PostEdit(Post.fromJson(content));
+            default -> new Unknown(event.getType());
+        };
+    }
+
+    /**
+     * Vérifie la présence d'un champ obligatoire
+     * @param key Le nom du champ
+     * @param value La valeur lue, ou `null` si le champ est absent
+     * @return La valeur
+     * @throws JSONException si le champ est absent
+     */
+    private static <T> T require(String key, T value) throws JSONException {
+        if (value == null) {
+            throw new JSONException("JSONObject[\"%s\"] not found.".formatted(key));
+        }
+        return value;
+    }
+
+    /**
+     * Interprète un identifiant UUID
+     * @param value La représentation textuelle de l'identifiant
+     * @return L'identifiant
+     * @throws JSONException si la chaine n'est pas un UUID
+     */
+    private static UUID uuid(String value) throws JSONException {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            throw new JSONException("Invalid UUID: " + value);
+        }
+    }
+}
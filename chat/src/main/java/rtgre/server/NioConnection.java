@@ -0,0 +1,389 @@
+package rtgre.server;
+
+import rtgre.modeles.Event;
+import rtgre.modeles.EventCodec;
+import rtgre.modeles.EventFrame;
+import rtgre.modeles.Framing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+import static rtgre.chat.ChatApplication.LOG;
+
+/**
+ * Connexion non-bloquante d'un client, pilotée par le sélecteur d'un {@link NioServer.Worker}.
+ * Découpe le flux d'octets reçu en évènements selon le {@link Framing} et l'{@link EventCodec} négociés par
+ * les premiers octets (lignes JSON, ou trames préfixées par leur longueur) et vide la file d'émission du gestionnaire du client
+ * lorsque le canal est prêt en écriture.
+ */
+class NioConnection {
+    /** Taille du tampon de lecture */
+    private static final int READ_BUFFER_SIZE = 8192;
+    /** Taille initiale du tampon des octets en attente */
+    private static final int PENDING_SIZE = 256;
+    /** Taille au-delà de laquelle le tampon des octets en attente est ramené à sa taille initiale une fois vidé */
+    private static final int MAX_RETAINED_PENDING_SIZE = READ_BUFFER_SIZE;
+    /** Nombre maximal de trames émises par une même écriture groupée */
+    static final int MAX_GATHERED_FRAMES = 64;
+    /** Canal connecté au client */
+    private final SocketChannel channel;
+    /** Clé d'enregistrement du canal auprès du sélecteur */
+    private final SelectionKey key;
+    /** Chaine de caractères "ip:port" du client */
+    private final String ipPort;
+    /** Tampon de lecture */
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    /** Octets reçus appartenant à une ligne, une trame ou un préambule incomplet */
+    private byte[] pending = new byte[PENDING_SIZE];
+    /** Nombre d'octets utiles dans `pending` */
+    private int pendingLength = 0;
+    /** Découpage du flux négocié avec le client, `null` tant qu'il n'est pas connu */
+    private Framing framing = null;
+    /** Encodage des évènements négocié avec le client, `null` tant qu'il n'est pas connu */
+    private EventCodec codec = null;
+    /** Le préambule reste-t-il à renvoyer au client pour accepter le mode {@link Framing#LENGTH_PREFIXED} ? */
+    private boolean acknowledgePending = false;
+    /** Longueur de la trame en cours de réception en mode {@link Framing#LENGTH_PREFIXED}, -1 pendant la lecture de l'entête */
+    private int frameLength = -1;
+    /** Tampons en cours d'émission (entête et JSON de chaque trame en mode {@link Framing#LENGTH_PREFIXED}),
+     * de `gatherStart` (inclus) à `gatherEnd` (exclu) */
+    private final ByteBuffer[] gathered = new ByteBuffer[2 * MAX_GATHERED_FRAMES + 1];
+    /** Indice du premier tampon non entièrement émis */
+    private int gatherStart = 0;
+    /** Indice suivant le dernier tampon à émettre */
+    private int gatherEnd = 0;
+    /** Gestionnaire des évènements du client */
+    private ChatServer.ChatClientHandler handler;
+    /** La connexion est-elle fermée ? */
+    private volatile boolean closed = false;
+
+    /**
+     * Crée la connexion associée à un canal déjà enregistré auprès d'un sélecteur,
+     * par le thread du worker qui pilote ce sélecteur
+     * @param channel Le canal connecté au client
+     * @param key La clé d'enregistrement du canal
+     */
+    NioConnection(SocketChannel channel, SelectionKey key) {
+        this.channel = channel;
+        this.key = key;
+        String ipPort;
+        try {
+            ipPort = channel.getRemoteAddress().toString().replaceFirst("^.*/", "");
+        } catch (IOException e) {
+            ipPort = "?";
+        }
+        this.ipPort = ipPort;
+    }
+
+    /**
+     * Setter du gestionnaire des évènements du client
+     * @param handler Le gestionnaire
+     */
+    void setHandler(ChatServer.ChatClientHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Getter de ipPort
+     * @return L'IP et le port du client
+     */
+    String getIpPort() {
+        return ipPort;
+    }
+
+    /**
+     * Lit les octets disponibles sur le canal et transmet chaque évènement complet au gestionnaire.
+     * Appelée par le thread du sélecteur lorsque le canal est prêt en lecture.
+     */
+    void onReadable() {
+        try {
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                LOG.log(Level.FINE, "[%s] Fin du flux", ipPort);
+                handler.close();
+                return;
+            }
+            readBuffer.flip();
+            if (framing == null) {
+                negotiate();
+            }
+            boolean open = (framing == Framing.LENGTH_PREFIXED) ? readFrames() : readLines();
+            if (!open) {
+                handler.close();
+                return;
+            }
+            readBuffer.clear();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "[%s] %s", ipPort, e);
+            handler.close();
+        }
+    }
+
+    /**
+     * Détermine le découpage du flux à partir des premiers octets reçus : le préambule de négociation
+     * (éventuellement reçu en plusieurs fois) sélectionne {@link Framing#LENGTH_PREFIXED} avec l'encodage désigné
+     * par son dernier octet, tout autre premier octet sélectionne {@link Framing#LINE} en JSON. Une fois le découpage connu, l'émission des messages en attente est autorisée.
+     * @throws IOException si le préambule est invalide ou désigne un encodage inconnu
+     */
+    private void negotiate() throws IOException {
+        while (framing == null && readBuffer.hasRemaining()) {
+            byte b = readBuffer.get(readBuffer.position());
+            if (pendingLength == 0 && b != Framing.preambleByte(0)) {
+                framing = Framing.LINE;
+                codec = EventCodec.JSON;
+                break;
+            }
+            readBuffer.get();
+            if (pendingLength == Framing.PREAMBLE_LENGTH - 1) {
+                codec = EventCodec.fromId(b);
+                if (codec == null) {
+                    throw new IOException("Invalid framing preamble");
+                }
+                pendingLength = 0;
+                framing = Framing.LENGTH_PREFIXED;
+                acknowledgePending = true;
+            } else if (b != Framing.preambleByte(pendingLength)) {
+                throw new IOException("Invalid framing preamble");
+            } else {
+                pendingLength++;
+            }
+        }
+        if (framing != null) {
+            LOG.log(Level.FINE, "[%s] Découpage %s, encodage %s", ipPort, framing, codec);
+            key.interestOpsOr(SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Découpe les octets du tampon de lecture en lignes et transmet chaque ligne complète au gestionnaire
+     * @return `false` si la connexion doit être fermée, `true` sinon
+     * @throws IOException si la ligne dépasse {@link Framing#MAX_FRAME_LENGTH}
+     */
+    private boolean readLines() throws IOException {
+        while (readBuffer.hasRemaining() && !closed) {
+            byte b = readBuffer.get();
+            if (b == '\n') {
+                String message = new String(pending, 0, trimmedLength(), StandardCharsets.UTF_8);
+                pendingLength = 0;
+                shrinkPending();
+                if (!dispatch(message)) {
+                    return false;
+                }
+            } else {
+                if (pendingLength == pending.length) {
+                    if (pendingLength >= Framing.MAX_FRAME_LENGTH) {
+                        throw new IOException("Line too long");
+                    }
+                    pending = Arrays.copyOf(pending, Math.min(pending.length * 2, Framing.MAX_FRAME_LENGTH));
+                }
+                pending[pendingLength++] = b;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Découpe les octets du tampon de lecture en trames préfixées par leur longueur et transmet chaque trame
+     * complète au gestionnaire. Le contenu d'une trame est copié directement, sans recherche de délimiteur,
+     * dans un tampon agrandi au fil des octets reçus (jamais d'après la seule longueur annoncée, qu'un client
+     * peut annoncer sans envoyer la trame), puis décodé selon l'encodage négocié ;
+     * le tampon agrandi pour une grande trame est libéré une fois la trame transmise.
+     * @return `false` si la connexion doit être fermée, `true` sinon
+     * @throws IOException si la longueur annoncée dépasse {@link Framing#MAX_FRAME_LENGTH}
+     *                     ou si une trame ne forme pas un évènement valide
+     */
+    private boolean readFrames() throws IOException {
+        while (readBuffer.hasRemaining() && !closed) {
+            if (frameLength < 0) {
+                pending[pendingLength++] = readBuffer.get();
+                if (pendingLength < Framing.HEADER_LENGTH) {
+                    continue;
+                }
+                frameLength = ((pending[0] & 0xFF) << 24) | ((pending[1] & 0xFF) << 16)
+                        | ((pending[2] & 0xFF) << 8) | (pending[3] & 0xFF);
+                pendingLength = 0;
+                if (frameLength < 0 || frameLength > Framing.MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length: " + frameLength);
+                }
+            }
+            int n = Math.min(readBuffer.remaining(), frameLength - pendingLength);
+            if (pendingLength + n > pending.length) {
+                pending = Arrays.copyOf(pending, Math.min(frameLength, Math.max(pending.length * 2, pendingLength + n)));
+            }
+            readBuffer.get(pending, pendingLength, n);
+            pendingLength += n;
+            if (pendingLength == frameLength) {
+                int length = frameLength;
+                pendingLength = 0;
+                frameLength = -1;
+                boolean open = (codec == EventCodec.JSON)
+                        ? dispatch(new String(pending, 0, length, StandardCharsets.UTF_8))
+                        : dispatch(codec.decode(pending, 0, length));
+                shrinkPending();
+                if (!open) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Libère le tampon des octets en attente agrandi pour une ligne ou une trame de plus de
+     * {@link #MAX_RETAINED_PENDING_SIZE} octets. Appelée lorsqu'aucun octet n'est en attente.
+     */
+    private void shrinkPending() {
+        if (pending.length > MAX_RETAINED_PENDING_SIZE) {
+            pending = new byte[PENDING_SIZE];
+        }
+    }
+
+    /**
+     * Longueur de la ligne en attente, sans l'éventuel retour chariot final
+     * @return Le nombre d'octets de la ligne
+     */
+    private int trimmedLength() {
+        if (pendingLength > 0 && pending[pendingLength - 1] == '\r') {
+            return pendingLength - 1;
+        }
+        return pendingLength;
+    }
+
+    /**
+     * Transmet une ligne reçue au gestionnaire, comme le fait la boucle de réception bloquante
+     * @param message La ligne reçue
+     * @return `false` si la connexion doit être fermée, `true` sinon
+     */
+    private boolean dispatch(String message) {
+        LOG.log(Level.FINEST, "[%s] Réception de : %s", ipPort, message);
+        if (ChatServer.ChatClientHandler.END_MESSAGE.equals(message)) {
+            return false;
+        }
+        try {
+            return handler.handleEvent(message);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Transmet un évènement décodé au gestionnaire
+     * @param event L'évènement reçu
+     * @return `false` si la connexion doit être fermée, `true` sinon
+     */
+    private boolean dispatch(Event event) {
+        LOG.log(Level.FINEST, "[%s] Réception de : %s", ipPort, event);
+        try {
+            return handler.handleEvent(event);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Signale qu'un message a été déposé dans la file d'émission : réveille le sélecteur
+     * pour qu'il l'écrive dès que le canal le permet
+     */
+    void notifyWritable() {
+        try {
+            key.interestOpsOr(SelectionKey.OP_WRITE);
+            key.selector().wakeup();
+        } catch (CancelledKeyException e) {
+            LOG.log(Level.FINEST, "[%s] %s", ipPort, e);
+        }
+    }
+
+    /**
+     * Écrit autant de messages de la file d'émission que le canal l'accepte : les messages en attente
+     * sont regroupés (jusqu'à {@link #MAX_GATHERED_FRAMES}) et émis par une seule écriture groupée.
+     * Rien n'est émis avant la négociation du découpage ; en mode {@link Framing#LENGTH_PREFIXED},
+     * le préambule est d'abord renvoyé au client pour accepter ce mode.
+     * Appelée par le thread du sélecteur lorsque le canal est prêt en écriture.
+     */
+    void onWritable() {
+        OutboundQueue outbound = handler.getOutbound();
+        try {
+            if (framing == null) {
+                key.interestOpsAnd(~SelectionKey.OP_WRITE);
+                return;
+            }
+            while (true) {
+                if (gatherStart == gatherEnd) {
+                    gatherStart = 0;
+                    gatherEnd = 0;
+                    if (acknowledgePending) {
+                        gathered[gatherEnd++] = ByteBuffer.wrap(Framing.preamble(codec));
+                        acknowledgePending = false;
+                    }
+                    int frames = 0;
+                    EventFrame frame;
+                    while (frames < MAX_GATHERED_FRAMES && (frame = outbound.poll()) != null) {
+                        if (framing == Framing.LENGTH_PREFIXED) {
+                            gathered[gatherEnd++] = frame.headerBuffer(codec);
+                            gathered[gatherEnd++] = frame.asByteBuffer(codec);
+                        } else {
+                            gathered[gatherEnd++] = frame.asByteBuffer(Framing.LINE);
+                        }
+                        frames++;
+                    }
+                    if (gatherEnd == 0) {
+                        break;
+                    }
+                    handler.recordFrames(frames);
+                }
+                handler.recordFlush();
+                channel.write(gathered, gatherStart, gatherEnd - gatherStart);
+                while (gatherStart < gatherEnd && !gathered[gatherStart].hasRemaining()) {
+                    gathered[gatherStart++] = null;
+                }
+                if (gatherStart < gatherEnd) {
+                    return;
+                }
+            }
+            key.interestOpsAnd(~SelectionKey.OP_WRITE);
+            if (!outbound.isEmpty()) {
+                key.interestOpsOr(SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "[%s] %s", ipPort, e);
+            handler.close();
+        }
+    }
+
+    /**
+     * Ferme la connexion après une exception inattendue levée pendant son traitement,
+     * sans interrompre le worker qui pilote les autres connexions
+     * @param e L'exception
+     */
+    void abort(RuntimeException e) {
+        LOG.log(Level.SEVERE, "[%s] Fermeture sur erreur : %s", ipPort, e);
+        try {
+            handler.close();
+        } catch (RuntimeException closing) {
+            LOG.log(Level.FINE, "[%s] %s", ipPort, closing);
+        }
+        try {
+            close();
+        } catch (IOException closing) {
+            LOG.log(Level.FINE, "[%s] %s", ipPort, closing);
+        }
+    }
+
+    /**
+     * Ferme le canal et le retire du sélecteur
+     * @throws IOException si la fermeture échoue
+     */
+    void close() throws IOException {
+        closed = true;
+        key.cancel();
+        channel.close();
+    }
+}
@@ -0,0 +1,205 @@
+package rtgre.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+
+import static rtgre.chat.ChatApplication.LOG;
+
+/**
+ * Moteur réseau non-bloquant du serveur : un sélecteur accepte les connexions
+ * et les répartit (round-robin) sur un nombre fixe de {@link Worker}, chacun pilotant son propre sélecteur.
+ */
+class NioServer {
+    /** Marque les threads des workers, qui ne doivent jamais attendre */
+    private static final ThreadLocal<Boolean> SELECTOR_THREAD = ThreadLocal.withInitial(() -> false);
+    /** Le serveur de chat qui traite les évènements */
+    private final ChatServer server;
+    /** Canal en écoute passive */
+    private final ServerSocketChannel serverChannel;
+    /** Sélecteur des nouvelles connexions */
+    private final Selector acceptSelector;
+    /** Les threads d'entrées/sorties */
+    private final Worker[] workers;
+    /** Indice du prochain worker auquel attribuer une connexion */
+    private int nextWorker = 0;
+
+    /**
+     * Ouvre le canal en écoute sur le port fourni et démarre les threads d'entrées/sorties
+     * @param server Le serveur de chat qui traite les évènements
+     * @param port Le port d'écoute
+     * @param ioThreads Le nombre de threads d'entrées/sorties
+     * @throws IOException si le canal ou les sélecteurs ne peuvent être ouverts
+     */
+    NioServer(ChatServer server, int port, int ioThreads) throws IOException {
+        this.server = server;
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.serverChannel.configureBlocking(false);
+        this.acceptSelector = Selector.open();
+        this.serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+        this.workers = new Worker[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            workers[i] = new Worker(i);
+            Thread thread = new Thread(workers[i], "nio-worker-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Le thread courant est-il le thread d'un worker, qui pilote un sélecteur ?
+     * @return `true` si le thread courant ne doit pas être mis en attente
+     */
+    static boolean isSelectorThread() {
+        return SELECTOR_THREAD.get();
+    }
+
+    /**
+     * Désigne le thread courant comme thread de sélecteur, qui ne doit jamais être mis en attente
+     */
+    static void markSelectorThread() {
+        SELECTOR_THREAD.set(true);
+    }
+
+    /**
+     * Getter du canal en écoute passive
+     * @return Le canal en écoute passive
+     */
+    ServerSocketChannel getServerChannel() {
+        return serverChannel;
+    }
+
+    /**
+     * Boucle d'attente des clients : chaque nouvelle connexion est confiée à un worker
+     */
+    void acceptClients() {
+        int clientCounter = 1;
+        try {
+            while (serverChannel.isOpen()) {
+                acceptSelector.select();
+                Iterator<SelectionKey> keys = acceptSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    keys.next();
+                    keys.remove();
+                    SocketChannel channel = serverChannel.accept();
+                    if (channel == null) {
+                        continue;
+                    }
+                    LOG.log(Level.INFO, "[%s] Connexion établie (client n°%02d)",
+                            channel.getRemoteAddress(), clientCounter);
+                    channel.configureBlocking(false);
+                    workers[nextWorker].register(channel);
+                    nextWorker = (nextWorker + 1) % workers.length;
+                    clientCounter++;
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            LOG.log(Level.SEVERE, e.toString());
+        }
+    }
+
+    /**
+     * Ferme le canal en écoute et les sélecteurs
+     * @throws IOException si la fermeture échoue
+     */
+    void close() throws IOException {
+        serverChannel.close();
+        acceptSelector.close();
+        for (Worker worker : workers) {
+            worker.selector.close();
+        }
+    }
+
+    /**
+     * Thread d'entrées/sorties : pilote les lectures et écritures d'un sous-ensemble des connexions
+     */
+    class Worker implements Runnable {
+        /** Sélecteur des connexions du worker */
+        private final Selector selector;
+        /** Canaux acceptés en attente d'enregistrement auprès du sélecteur */
+        private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<>();
+        /** Numéro du worker */
+        private final int id;
+
+        /**
+         * Ouvre le sélecteur du worker
+         * @param id Le numéro du worker
+         * @throws IOException si le sélecteur ne peut être ouvert
+         */
+        Worker(int id) throws IOException {
+            this.id = id;
+            this.selector = Selector.open();
+        }
+
+        /**
+         * Confie un canal au worker ; l'enregistrement est effectué par le thread du worker
+         * @param channel Le canal à enregistrer
+         */
+        void register(SocketChannel channel) {
+            registrations.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Boucle de sélection : enregistre les nouveaux canaux puis traite les canaux prêts
+         */
+        @Override
+        public void run() {
+            LOG.log(Level.FINE, "Démarrage du worker NIO n°%d", id);
+            markSelectorThread();
+            try {
+                while (selector.isOpen()) {
+                    selector.select();
+                    registerPending();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        } catch (CancelledKeyException e) {
+                            LOG.log(Level.FINEST, "[%s] %s", connection.getIpPort(), e);
+                        } catch (RuntimeException e) {
+                            connection.abort(e);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                LOG.log(Level.FINE, "Arrêt du worker NIO n°%d : %s", id, e);
+            }
+        }
+
+        /**
+         * Enregistre auprès du sélecteur les canaux en attente et crée leur gestionnaire
+         */
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = registrations.poll()) != null) {
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    NioConnection connection = new NioConnection(channel, key);
+                    key.attach(connection);
+                    server.handleNewConnection(connection);
+                } catch (IOException e) {
+                    LOG.log(Level.SEVERE, e.toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package rtgre.server;
+
+import rtgre.modeles.EventFrame;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * File d'émission bornée d'un client : les threads qui diffusent un évènement y déposent le message
+ * sans attendre le réseau, et un rédacteur propre au client la vide vers sa connexion.
+ * Lorsque la file est pleine, la {@link OverflowPolicy} choisie s'applique.
+ */
+class OutboundQueue {
+    /** Délai maximal d'attente d'une place avec la politique {@link OverflowPolicy#BLOCK} (en ms) */
+    static final long BLOCK_TIMEOUT_MS = 2000;
+    /** Les messages en attente d'émission */
+    private final ArrayDeque<EventFrame> messages;
+    /** Nombre maximal de messages en attente */
+    private final int capacity;
+    /** Comportement lorsque la file est pleine */
+    private final OverflowPolicy policy;
+    /** Verrou protégeant la file */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Signalé lorsqu'un message est déposé */
+    private final Condition notEmpty = lock.newCondition();
+    /** Signalé lorsqu'une place se libère */
+    private final Condition notFull = lock.newCondition();
+    /** Action déclenchée après chaque dépôt (réveil d'un sélecteur, par exemple) */
+    private Runnable listener = null;
+    /** Nombre de messages abandonnés par la politique {@link OverflowPolicy#DROP_OLDEST} */
+    private long dropped = 0;
+    /** La file est-elle fermée ? */
+    private boolean closed = false;
+
+    /**
+     * Crée une file d'émission vide
+     * @param capacity Le nombre maximal de messages en attente
+     * @param policy Le comportement lorsque la file est pleine
+     */
+    OutboundQueue(int capacity, OverflowPolicy policy) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.messages = new ArrayDeque<>(Math.min(capacity, 64));
+    }
+
+    /**
+     * Setter de l'action déclenchée après chaque dépôt
+     * @param listener L'action à déclencher
+     */
+    void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Dépose un message dans la file en appliquant la politique de débordement
+     * @param message La trame à émettre
+     * @return `true` si le message a été accepté, `false` si la file est fermée ou si le client doit être déconnecté
+     */
+    boolean offer(EventFrame message) {
+        return offer(message, true);
+    }
+
+    /**
+     * Dépose un message dans la file en appliquant la politique de débordement
+     * @param message La trame à émettre
+     * @param mayWait L'émetteur peut-il attendre une place ? Sinon, la politique {@link OverflowPolicy#BLOCK}
+     *                se comporte comme {@link OverflowPolicy#DISCONNECT}
+     * @return `true` si le message a été accepté, `false` si la file est fermée ou si le client doit être déconnecté
+     */
+    boolean offer(EventFrame message, boolean mayWait) {
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            if (messages.size() >= capacity) {
+                switch (policy) {
+                    case DROP_OLDEST -> {
+                        messages.poll();
+                        dropped++;
+                    }
+                    case DISCONNECT -> {
+                        return false;
+                    }
+                    case BLOCK -> {
+                        if (!mayWait) {
+                            return false;
+                        }
+                        long nanos = TimeUnit.MILLISECONDS.toNanos(BLOCK_TIMEOUT_MS);
+                        while (messages.size() >= capacity && !closed) {
+                            if (nanos <= 0) {
+                                return false;
+                            }
+                            nanos = notFull.awaitNanos(nanos);
+                        }
+                        if (closed) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            messages.add(message);
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+        if (listener != null) {
+            listener.run();
+        }
+        return true;
+    }
+
+    /**
+     * Retire le plus ancien message, en attendant qu'il y en ait un
+     * @return Le message, ou `null` si la file a été fermée
+     * @throws InterruptedException si le thread est interrompu pendant l'attente
+     */
+    EventFrame take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (messages.isEmpty() && !closed) {
+                notEmpty.await();
+            }
+            if (closed) {
+                return null;
+            }
+            EventFrame message = messages.poll();
+            notFull.signal();
+            return message;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retire le plus ancien message sans attendre
+     * @return Le message, ou `null` si la file est vide ou fermée
+     */
+    EventFrame poll() {
+        lock.lock();
+        try {
+            if (closed) {
+                return null;
+            }
+            EventFrame message = messages.poll();
+            if (message != null) {
+                notFull.signal();
+            }
+            return message;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * La file est-elle vide ?
+     * @return `true` si aucun message n'est en attente
+     */
+    boolean isEmpty() {
+        lock.lock();
+        try {
+            return messages.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Nombre de messages en attente d'émission
+     * @return La profondeur de la file
+     */
+    int size() {
+        lock.lock();
+        try {
+            return messages.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Getter de `dropped`
+     * @return Le nombre de messages abandonnés depuis la création de la file
+     */
+    long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ferme la file : les messages en attente sont abandonnés et les threads en attente sont réveillés
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            messages.clear();
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package rtgre.server;
+
+/**
+ * Comportement d'une file d'émission pleine lorsqu'un nouveau message doit y être déposé
+ */
+public enum OverflowPolicy {
+    /** Le plus ancien message en attente est abandonné pour faire place au nouveau */
+    DROP_OLDEST,
+    /** Le client trop lent est déconnecté */
+    DISCONNECT,
+    /**
+     * L'émetteur attend qu'une place se libère, puis déconnecte le client si l'attente dépasse le délai maximal.
+     * Un thread de sélecteur NIO n'attend jamais : le client est alors déconnecté comme avec {@link #DISCONNECT}
+     */
+    BLOCK;
+
+    /**
+     * Renvoie la politique associée à son nom, sans tenir compte de la casse
+     * @param name Le nom de la politique (`drop-oldest`, `disconnect`, `block`)
+     * @return La politique correspondante
+     * @throws IllegalArgumentException si le nom ne correspond à aucune politique
+     */
+    public static OverflowPolicy fromName(String name) throws IllegalArgumentException {
+        return OverflowPolicy.valueOf(name.trim().replace('-', '_').toUpperCase());
+    }
+}
@@ -0,0 +1,21 @@
+package rtgre.server;
+
+/**
+ * Moteur de stockage persistant des posts du serveur
+ */
+public enum PersistenceEngine {
+    /** Base SQLite, une ligne par post (voir {@link rtgre.modeles.DatabaseApi}) */
+    SQLITE,
+    /** Journal en ajout seul, par segments projetés en mémoire (voir {@link rtgre.modeles.MessageLog}) */
+    LOG;
+
+    /**
+     * Renvoie le moteur associé à son nom, sans tenir compte de la casse
+     * @param name Le nom du moteur (`sqlite`, `log`)
+     * @return Le moteur correspondant
+     * @throws IllegalArgumentException si le nom ne correspond à aucun moteur
+     */
+    public static PersistenceEngine fromName(String name) throws IllegalArgumentException {
+        return PersistenceEngine.valueOf(name.trim().toUpperCase());
+    }
+}
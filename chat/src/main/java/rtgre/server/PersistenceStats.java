@@ -0,0 +1,41 @@
+package rtgre.server;
+
+/**
+ * Instantané de l'activité d'écriture différée des posts en base de données
+ * @param queueDepth Le nombre de posts en attente d'écriture
+ * @param saved Le nombre de posts enregistrés depuis le démarrage
+ * @param batches Le nombre de transactions validées
+ * @param failed Le nombre de posts dont l'enregistrement a échoué
+ * @param lastCommitMicros La durée de la dernière transaction, en microsecondes
+ * @param maxCommitMicros La durée de la plus longue transaction, en microsecondes
+ * @param totalCommitMicros La durée cumulée des transactions, en microsecondes
+ */
+public record PersistenceStats(int queueDepth, long saved, long batches, long failed,
+                               long lastCommitMicros, long maxCommitMicros, long totalCommitMicros) {
+
+    /**
+     * Durée moyenne d'une transaction
+     * @return La durée moyenne, en microsecondes (0 si aucune transaction)
+     */
+    public double averageCommitMicros() {
+        return (batches == 0) ? 0 : (double) totalCommitMicros / batches;
+    }
+
+    /**
+     * Nombre moyen de posts par transaction
+     * @return La taille moyenne d'un lot (0 si aucune transaction)
+     */
+    public double averageBatchSize() {
+        return (batches == 0) ? 0 : (double) saved / batches;
+    }
+
+    /**
+     * Représentation textuelle des statistiques
+     * @return La chaine de caractères représentant les statistiques
+     */
+    @Override
+    public String toString() {
+        return "%d post(s) en attente, %d enregistré(s) en %d transaction(s) (%.1f post(s)/transaction, %.0f µs en moyenne, %d µs au plus), %d échec(s)"
+                .formatted(queueDepth, saved, batches, averageBatchSize(), averageCommitMicros(), maxCommitMicros, failed);
+    }
+}
@@ -0,0 +1,301 @@
+package rtgre.server;
+
+import rtgre.modeles.Post;
+import rtgre.modeles.PostRepository;
+import rtgre.modeles.PostStore;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import static rtgre.chat.ChatApplication.LOG;
+
+/**
+ * Écriture différée des posts en base de données : les gestionnaires des clients déposent les posts
+ * dans une file bornée sans attendre le disque, et un thread dédié les enregistre par lots,
+ * chaque lot dans une seule transaction (group commit).
+ * Un lot est validé dès qu'il atteint sa taille maximale, ou au plus tard `flushDelayMs` après son premier post.
+ * Lorsque la file est pleine, un thread de sélecteur NIO abandonne le post (compté parmi les échecs) au lieu d'attendre,
+ * les autres threads attendent une place puis l'écrivent directement.
+ * Les lectures de l'historique complètent celles de la base avec les posts pas encore enregistrés, si bien qu'un post
+ * évincé de la mémoire (voir {@link PostStore.Window}) avant son enregistrement reste lisible.
+ */
+class PostWriter implements PostRepository {
+    /** Délai maximal d'attente d'une place dans une file pleine, avant écriture directe */
+    static final long OFFER_TIMEOUT_MS = 1000;
+    /** Plus grand identifiant possible, pour borner une recherche à un timestamp donné */
+    private static final UUID MAX_ID = new UUID(-1L, -1L);
+    /** Stockage persistant des posts */
+    private final PostRepository database;
+    /** Posts en attente d'écriture */
+    private final BlockingQueue<Post> queue;
+    /** Dernière version de chaque post déposé et pas encore enregistré (en file ou dans le lot en cours), par identifiant */
+    private final ConcurrentHashMap<UUID, Post> unsaved = new ConcurrentHashMap<>();
+    /** Nombre maximal de posts par transaction */
+    private final int batchSize;
+    /** Délai maximal entre l'arrivée d'un post et la validation de son lot, en millisecondes */
+    private final long flushDelayMs;
+    /** Thread d'écriture */
+    private final Thread thread;
+    /** L'écriture différée est-elle arrêtée ? */
+    private volatile boolean closed = false;
+    /** Nombre de posts enregistrés */
+    private final AtomicLong saved = new AtomicLong();
+    /** Nombre de transactions validées */
+    private final AtomicLong batches = new AtomicLong();
+    /** Nombre de posts non enregistrés */
+    private final AtomicLong failed = new AtomicLong();
+    /** Durée de la dernière transaction (µs) */
+    private volatile long lastCommitMicros = 0;
+    /** Durée de la plus longue transaction (µs) */
+    private final AtomicLong maxCommitMicros = new AtomicLong();
+    /** Durée cumulée des transactions (µs) */
+    private final AtomicLong totalCommitMicros = new AtomicLong();
+
+    /**
+     * Démarre le thread d'écriture
+     * @param database Le stockage persistant des posts
+     * @param capacity Le nombre maximal de posts en attente
+     * @param batchSize Le nombre maximal de posts par transaction
+     * @param flushDelayMs Le délai maximal avant la validation d'un lot, en millisecondes
+     */
+    PostWriter(PostRepository database, int capacity, int batchSize, long flushDelayMs) {
+        this.database = database;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushDelayMs = flushDelayMs;
+        this.thread = new Thread(this::writeLoop, "post-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Dépose un post (nouveau ou modifié) dans la file d'écriture. Si la file reste pleine plus de
+     * {@link #OFFER_TIMEOUT_MS} ms, ou si l'écriture différée est arrêtée, le post est enregistré directement.
+     * Un thread de sélecteur NIO n'attend jamais et n'écrit jamais lui-même en base : si la file est pleine
+     * ou fermée, le post n'est pas enregistré et compte parmi les échecs ({@link PersistenceStats#failed()}),
+     * plutôt que de bloquer toutes les connexions du worker.
+     * @param post Le post à enregistrer
+     */
+    void save(Post post) {
+        unsaved.put(post.getId(), post);
+        if (NioServer.isSelectorThread()) {
+            if (!closed && queue.offer(post)) {
+                return;
+            }
+            unsaved.remove(post.getId(), post);
+            failed.incrementAndGet();
+            LOG.log(Level.WARNING, "File d'écriture des posts pleine ou fermée : post %s non enregistré", post.getId());
+            return;
+        }
+        try {
+            if (!closed && queue.offer(post, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.log(Level.WARNING, "File d'écriture des posts pleine ou fermée : écriture directe");
+        commit(List.of(post));
+    }
+
+    /**
+     * Boucle du thread d'écriture : constitue les lots et les valide, jusqu'à l'arrêt
+     * et l'écriture des derniers posts en attente
+     */
+    private void writeLoop() {
+        List<Post> batch = new ArrayList<>(batchSize);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Post first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushDelayMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || closed) {
+                        break;
+                    }
+                    Post next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            LOG.log(Level.WARNING, "Interruption de l'écriture des posts : %d post(s) non enregistré(s)",
+                    batch.size() + queue.size());
+        }
+    }
+
+    /**
+     * Enregistre un lot de posts dans une transaction et met à jour les statistiques
+     * @param batch Le lot de posts
+     */
+    private void commit(List<Post> batch) {
+        long start = System.nanoTime();
+        boolean ok = database.savePosts(batch);
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        for (Post post : batch) {
+            unsaved.remove(post.getId(), post);
+        }
+        if (!ok) {
+            failed.addAndGet(batch.size());
+            return;
+        }
+        saved.addAndGet(batch.size());
+        batches.incrementAndGet();
+        lastCommitMicros = micros;
+        maxCommitMicros.accumulateAndGet(micros, Math::max);
+        totalCommitMicros.addAndGet(micros);
+        LOG.log(Level.FINEST, "%d post(s) enregistré(s) en %d µs", batch.size(), micros);
+    }
+
+    /**
+     * Dépose un lot de posts dans la file d'écriture (voir {@link #save(Post)})
+     * @param posts Les posts à enregistrer, dans l'ordre de leur arrivée
+     * @return `true`, les échecs d'écriture n'étant connus qu'au moment de la validation de leur lot
+     */
+    @Override
+    public boolean savePosts(List<Post> posts) {
+        for (Post post : posts) {
+            save(post);
+        }
+        return true;
+    }
+
+    /**
+     * Supprime un post de la base
+     * @param post Le post à supprimer
+     * @return `true` si la suppression a bien été enregistrée, `false` si une erreur est survenue
+     */
+    @Override
+    public boolean removePost(Post post) {
+        return database.removePost(post);
+    }
+
+    /**
+     * Liste les conversations enregistrées en base, les plus récemment actives en premier
+     * @return Les clés des conversations
+     */
+    @Override
+    public List<String> getConversations() {
+        return database.getConversations();
+    }
+
+    /**
+     * Récupère les posts d'une conversation dont le timestamp est supérieur ou égal à celui donné,
+     * qu'ils soient enregistrés en base ou encore en attente d'écriture
+     * @param conversation La clé de la conversation
+     * @param timestamp Le timestamp de comparaison
+     * @return Les posts, triés dans l'ordre chronologique
+     */
+    @Override
+    public List<Post> getConversationPosts(String conversation, long timestamp) {
+        List<Post> pending = pending(conversation, Long.MAX_VALUE, MAX_ID);
+        List<Post> stored = database.getConversationPosts(conversation, timestamp);
+        pending.removeIf(post -> post.getTimestamp() < timestamp);
+        return pending.isEmpty() ? stored : merge(stored, pending, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Récupère une page de l'historique d'une conversation, les posts en attente d'écriture complétant ceux de la base
+     * @param conversation La clé de la conversation
+     * @param beforeTimestamp Le timestamp du curseur
+     * @param beforeId L'identifiant du curseur
+     * @param limit Le nombre maximal de posts
+     * @return Les posts, triés dans l'ordre chronologique
+     */
+    @Override
+    public List<Post> getConversationPage(String conversation, long beforeTimestamp, UUID beforeId, int limit) {
+        List<Post> pending = pending(conversation, beforeTimestamp, beforeId);
+        List<Post> stored = database.getConversationPage(conversation, beforeTimestamp, beforeId, limit);
+        return pending.isEmpty() ? stored : merge(stored, pending, limit);
+    }
+
+    /**
+     * Les posts d'une conversation en attente d'écriture antérieurs à un curseur. Ils sont relevés avant la lecture
+     * en base : un post enregistré entre-temps est lu en base, et non perdu entre les deux lectures.
+     * @param conversation La clé de la conversation
+     * @param beforeTimestamp Le timestamp du curseur
+     * @param beforeId L'identifiant du curseur
+     * @return Les posts, sans ordre particulier
+     */
+    private List<Post> pending(String conversation, long beforeTimestamp, UUID beforeId) {
+        List<Post> pending = new ArrayList<>();
+        if (unsaved.isEmpty()) {
+            return pending;
+        }
+        Post cursor = new Post(beforeId, beforeTimestamp, "", "", "");
+        for (Post post : unsaved.values()) {
+            if (post.getConversation().equals(conversation) && PostStore.ORDER.compare(post, cursor) < 0) {
+                pending.add(post);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Fusionne des posts lus en base et des posts en attente d'écriture, ces derniers remplaçant
+     * les versions enregistrées de même identifiant
+     * @param stored Les posts lus en base
+     * @param pending Les posts en attente d'écriture
+     * @param limit Le nombre maximal de posts gardés, les plus récents
+     * @return Les posts, triés dans l'ordre chronologique
+     */
+    private static List<Post> merge(List<Post> stored, List<Post> pending, int limit) {
+        Map<UUID, Post> byId = new LinkedHashMap<>();
+        for (Post post : stored) {
+            byId.put(post.getId(), post);
+        }
+        for (Post post : pending) {
+            byId.put(post.getId(), post);
+        }
+        List<Post> merged = new ArrayList<>(byId.values());
+        merged.sort(PostStore.ORDER);
+        return (merged.size() > limit) ? merged.subList(merged.size() - limit, merged.size()) : merged;
+    }
+
+    /**
+     * Statistiques de l'écriture différée
+     * @return Un instantané des statistiques
+     */
+    PersistenceStats getStats() {
+        return new PersistenceStats(queue.size(), saved.get(), batches.get(), failed.get(),
+                lastCommitMicros, maxCommitMicros.get(), totalCommitMicros.get());
+    }
+
+    /**
+     * Arrête l'écriture différée après avoir enregistré tous les posts en attente.
+     * La base elle-même reste ouverte, sa fermeture revenant au serveur.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Post> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            commit(remaining);
+        }
+        LOG.log(Level.INFO, "Arrêt de l'écriture des posts : %s", getStats());
+    }
+}
@@ -0,0 +1,87 @@
+package rtgre.server;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index des membres présents dans chaque salon : associe au nom d'un salon l'ensemble des clients
+ * qui l'ont rejoint, afin qu'un post ne soit diffusé qu'aux membres du salon.
+ * Chaque client n'est présent que dans un salon à la fois. Sûr en accès concurrent.
+ * @param <T> Le type des clients indexés
+ */
+class RoomIndex<T> {
+    /** Les membres de chaque salon */
+    private final ConcurrentHashMap<String, Set<T>> members = new ConcurrentHashMap<>();
+    /** Le salon courant de chaque client */
+    private final ConcurrentHashMap<T, String> roomOf = new ConcurrentHashMap<>();
+
+    /**
+     * Place un client dans un salon, en le retirant du salon qu'il occupait auparavant
+     * @param room Le nom du salon rejoint
+     * @param client Le client
+     */
+    void join(String room, T client) {
+        String previous = roomOf.put(client, room);
+        if (previous != null && !previous.equals(room)) {
+            removeMember(previous, client);
+        }
+        members.computeIfAbsent(room, r -> ConcurrentHashMap.newKeySet()).add(client);
+    }
+
+    /**
+     * Retire un client du salon qu'il occupe
+     * @param client Le client
+     */
+    void leave(T client) {
+        String previous = roomOf.remove(client);
+        if (previous != null) {
+            removeMember(previous, client);
+        }
+    }
+
+    /**
+     * Retire un client de l'ensemble des membres d'un salon
+     * @param room Le nom du salon
+     * @param client Le client
+     */
+    private void removeMember(String room, T client) {
+        Set<T> set = members.get(room);
+        if (set != null) {
+            set.remove(client);
+        }
+    }
+
+    /**
+     * Membres présents dans un salon. L'itération est faiblement cohérente : elle ne lève jamais
+     * d'exception si des clients rejoignent ou quittent le salon pendant le parcours.
+     * @param room Le nom du salon
+     * @return Les membres du salon (vue non modifiable, vide si le salon n'a pas de membre)
+     */
+    Set<T> members(String room) {
+        Set<T> set = members.get(room);
+        return (set == null) ? Collections.emptySet() : Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * Nombre de membres présents dans un salon
+     * @param room Le nom du salon
+     * @return Le nombre de membres
+     */
+    int memberCount(String room) {
+        Set<T> set = members.get(room);
+        return (set == null) ? 0 : set.size();
+    }
+
+    /**
+     * Nombre de membres présents dans chaque salon ayant déjà été rejoint
+     * @return Les nombres de membres, triés par nom de salon
+     */
+    Map<String, Integer> memberCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        members.forEach((room, set) -> counts.put(room, set.size()));
+        return counts;
+    }
+}
@@ -0,0 +1,466 @@
+package rtgre.server;
+
+import rtgre.modeles.DatabaseApi;
+import rtgre.modeles.MessageLog;
+import rtgre.modeles.PostStore;
+import rtgre.modeles.StorageProfile;
+
+import java.util.logging.Level;
+
+import static rtgre.chat.ChatApplication.LOG;
+
+/**
+ * Options de lancement du serveur, renseignées sur la ligne de commande sous la forme `--option=valeur`
+ */
+public class ServerConfig {
+    /** Moteur réseau utilisé pour les connexions */
+    private ServerEngine engine = ServerEngine.BLOCKING;
+    /** Nombre de threads d'entrées/sorties du moteur NIO */
+    private int ioThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /** Nombre maximal de messages en attente dans la file d'émission d'un client */
+    private int outboundCapacity = 4096;
+    /** Comportement d'une file d'émission pleine */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DISCONNECT;
+    /** Délai maximal pendant lequel une trame peut rester dans le tampon d'émission d'un client, en millisecondes */
+    private long outboundFlushMs = 5;
+    /** Nombre maximal de posts en attente d'écriture en base de données */
+    private int writeQueueCapacity = 10000;
+    /** Nombre maximal de posts enregistrés par transaction */
+    private int writeBatchSize = 256;
+    /** Délai maximal avant l'enregistrement d'un post en attente, en millisecondes */
+    private long writeFlushMs = 20;
+    /** Chemin du fichier de la base de données */
+    private String dbPath = DatabaseApi.DEFAULT_PATH;
+    /** Profil de stockage de la base de données */
+    private StorageProfile storageProfile = StorageProfile.BALANCED;
+    /** Moteur de stockage persistant des posts */
+    private PersistenceEngine persistence = PersistenceEngine.SQLITE;
+    /** Répertoire des segments du journal des posts */
+    private String logDir = MessageLog.DEFAULT_DIR;
+    /** Taille d'un segment du journal des posts, en mégaoctets */
+    private int segmentMb = 64;
+    /** Nombre maximal de posts gardés en mémoire par conversation */
+    private int hotPosts = 1000;
+    /** Ancienneté maximale d'un post gardé en mémoire, en minutes (0 : sans limite) */
+    private long hotMinutes = 0;
+    /** Budget mémoire de l'ensemble des posts gardés en mémoire, en mégaoctets */
+    private long historyBudgetMb = 64;
+    /** Les clients sont-ils acceptés avant le chargement de l'historique en mémoire ? */
+    private boolean fastStart = false;
+
+    /**
+     * Construit une configuration à partir des arguments de la ligne de commande.
+     * Les options reconnues sont :
+     * *    `--engine=blocking|virtual|nio` : le moteur réseau
+     * *    `--io-threads=n` : le nombre de threads d'entrées/sorties du moteur NIO
+     * *    `--outbound-capacity=n` : la taille de la file d'émission de chaque client
+     * *    `--overflow=drop-oldest|disconnect|block` : le comportement d'une file d'émission pleine
+     * *    `--outbound-flush-ms=n` : le délai maximal avant l'émission d'une trame mise en tampon, en millisecondes
+     *      (moteurs bloquants ; le moteur NIO émet les trames en attente par écritures groupées)
+     * *    `--write-queue=n` : le nombre maximal de posts en attente d'écriture en base de données
+     * *    `--write-batch=n` : le nombre maximal de posts enregistrés par transaction
+     * *    `--write-flush-ms=n` : le délai maximal avant l'enregistrement d'un post, en millisecondes
+     * *    `--db=chemin` : le fichier de la base de données
+     * *    `--storage=durable|balanced|throughput` : le profil de stockage de la base de données
+     * *    `--persistence=sqlite|log` : le moteur de stockage des posts, base SQLite ou journal en ajout seul
+     * *    `--log-dir=chemin` : le répertoire des segments du journal
+     * *    `--segment-mb=n` : la taille d'un segment du journal, en mégaoctets
+     * *    `--hot-posts=n` : le nombre maximal de posts gardés en mémoire par conversation
+     * *    `--hot-minutes=n` : l'ancienneté maximale d'un post gardé en mémoire, en minutes (0 : sans limite)
+     * *    `--history-budget-mb=n` : le budget mémoire de l'ensemble des posts gardés en mémoire, en mégaoctets ;
+     *      les posts plus anciens sont lus en base de données
+     * *    `--fast-start=true|false` : accepter les clients dès le démarrage, l'historique étant chargé en arrière-plan
+     * Les autres arguments sont ignorés.
+     * @param args Arguments de la ligne de commande
+     * @return La configuration correspondante
+     * @throws IllegalArgumentException si la valeur d'une option n'est pas valide
+     */
+    public static ServerConfig fromArgs(String[] args) throws IllegalArgumentException {
+        ServerConfig config = new ServerConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                continue;
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (key) {
+                case "engine" -> config.setEngine(ServerEngine.fromName(value));
+                case "io-threads" -> config.setIoThreads(Integer.parseInt(value));
+                case "outbound-capacity" -> config.setOutboundCapacity(Integer.parseInt(value));
+                case "overflow" -> config.setOverflowPolicy(OverflowPolicy.fromName(value));
+                case "outbound-flush-ms" -> config.setOutboundFlushMs(Long.parseLong(value));
+                case "write-queue" -> config.setWriteQueueCapacity(Integer.parseInt(value));
+                case "write-batch" -> config.setWriteBatchSize(Integer.parseInt(value));
+                case "write-flush-ms" -> config.setWriteFlushMs(Long.parseLong(value));
+                case "db" -> config.setDbPath(value);
+                case "storage" -> config.setStorageProfile(StorageProfile.fromName(value));
+                case "persistence" -> config.setPersistence(PersistenceEngine.fromName(value));
+                case "log-dir" -> config.setLogDir(value);
+                case "segment-mb" -> config.setSegmentMb(Integer.parseInt(value));
+                case "hot-posts" -> config.setHotPosts(Integer.parseInt(value));
+                case "hot-minutes" -> config.setHotMinutes(Long.parseLong(value));
+                case "history-budget-mb" -> config.setHistoryBudgetMb(Long.parseLong(value));
+                case "fast-start" -> config.setFastStart(parseBoolean(value));
+                default -> LOG.log(Level.WARNING, "Option inconnue : %s", arg);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Valeur booléenne d'une option
+     * @param value La valeur de l'option, `true` ou `false`
+     * @return La valeur correspondante
+     * @throws IllegalArgumentException si la valeur n'est ni `true` ni `false`
+     */
+    private static boolean parseBoolean(String value) throws IllegalArgumentException {
+        if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+            throw new IllegalArgumentException("Valeur booléenne invalide : " + value);
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Getter de `engine`
+     * @return Le moteur réseau
+     */
+    public ServerEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Setter de `engine`
+     * @param engine Le moteur réseau
+     */
+    public void setEngine(ServerEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Getter de `ioThreads`
+     * @return Le nombre de threads d'entrées/sorties du moteur NIO
+     */
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Setter de `ioThreads`
+     * @param ioThreads Le nombre de threads d'entrées/sorties du moteur NIO (au moins 1)
+     * @throws IllegalArgumentException si le nombre de threads est inférieur à 1
+     */
+    public void setIoThreads(int ioThreads) throws IllegalArgumentException {
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException("Au moins un thread d'entrées/sorties est requis");
+        }
+        this.ioThreads = ioThreads;
+    }
+
+    /**
+     * Getter de `outboundCapacity`
+     * @return Le nombre maximal de messages en attente dans la file d'émission d'un client
+     */
+    public int getOutboundCapacity() {
+        return outboundCapacity;
+    }
+
+    /**
+     * Setter de `outboundCapacity`
+     * @param outboundCapacity Le nombre maximal de messages en attente (au moins 1)
+     * @throws IllegalArgumentException si la capacité est inférieure à 1
+     */
+    public void setOutboundCapacity(int outboundCapacity) throws IllegalArgumentException {
+        if (outboundCapacity < 1) {
+            throw new IllegalArgumentException("La file d'émission doit pouvoir contenir au moins un message");
+        }
+        this.outboundCapacity = outboundCapacity;
+    }
+
+    /**
+     * Getter de `overflowPolicy`
+     * @return Le comportement d'une file d'émission pleine
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Setter de `overflowPolicy`
+     * @param overflowPolicy Le comportement d'une file d'émission pleine
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Getter de `outboundFlushMs`
+     * @return Le délai maximal avant l'émission d'une trame mise en tampon, en millisecondes
+     */
+    public long getOutboundFlushMs() {
+        return outboundFlushMs;
+    }
+
+    /**
+     * Setter de `outboundFlushMs`
+     * @param outboundFlushMs Le délai maximal avant l'émission d'une trame mise en tampon, en millisecondes (positif ou nul)
+     * @throws IllegalArgumentException si le délai est négatif
+     */
+    public void setOutboundFlushMs(long outboundFlushMs) throws IllegalArgumentException {
+        if (outboundFlushMs < 0) {
+            throw new IllegalArgumentException("Le délai d'émission ne peut être négatif");
+        }
+        this.outboundFlushMs = outboundFlushMs;
+    }
+
+    /**
+     * Getter de `writeQueueCapacity`
+     * @return Le nombre maximal de posts en attente d'écriture
+     */
+    public int getWriteQueueCapacity() {
+        return writeQueueCapacity;
+    }
+
+    /**
+     * Setter de `writeQueueCapacity`
+     * @param writeQueueCapacity Le nombre maximal de posts en attente d'écriture (au moins 1)
+     * @throws IllegalArgumentException si la capacité est inférieure à 1
+     */
+    public void setWriteQueueCapacity(int writeQueueCapacity) throws IllegalArgumentException {
+        if (writeQueueCapacity < 1) {
+            throw new IllegalArgumentException("La file d'écriture doit pouvoir contenir au moins un post");
+        }
+        this.writeQueueCapacity = writeQueueCapacity;
+    }
+
+    /**
+     * Getter de `writeBatchSize`
+     * @return Le nombre maximal de posts enregistrés par transaction
+     */
+    public int getWriteBatchSize() {
+        return writeBatchSize;
+    }
+
+    /**
+     * Setter de `writeBatchSize`
+     * @param writeBatchSize Le nombre maximal de posts enregistrés par transaction (au moins 1)
+     * @throws IllegalArgumentException si la taille est inférieure à 1
+     */
+    public void setWriteBatchSize(int writeBatchSize) throws IllegalArgumentException {
+        if (writeBatchSize < 1) {
+            throw new IllegalArgumentException("Un lot doit contenir au moins un post");
+        }
+        this.writeBatchSize = writeBatchSize;
+    }
+
+    /**
+     * Getter de `writeFlushMs`
+     * @return Le délai maximal avant l'enregistrement d'un post, en millisecondes
+     */
+    public long getWriteFlushMs() {
+        return writeFlushMs;
+    }
+
+    /**
+     * Setter de `writeFlushMs`
+     * @param writeFlushMs Le délai maximal avant l'enregistrement d'un post, en millisecondes (positif ou nul)
+     * @throws IllegalArgumentException si le délai est négatif
+     */
+    public void setWriteFlushMs(long writeFlushMs) throws IllegalArgumentException {
+        if (writeFlushMs < 0) {
+            throw new IllegalArgumentException("Le délai d'écriture ne peut être négatif");
+        }
+        this.writeFlushMs = writeFlushMs;
+    }
+
+    /**
+     * Getter de `dbPath`
+     * @return Le chemin du fichier de la base de données
+     */
+    public String getDbPath() {
+        return dbPath;
+    }
+
+    /**
+     * Setter de `dbPath`
+     * @param dbPath Le chemin du fichier de la base de données
+     * @throws IllegalArgumentException si le chemin est vide
+     */
+    public void setDbPath(String dbPath) throws IllegalArgumentException {
+        if (dbPath.isBlank()) {
+            throw new IllegalArgumentException("Le chemin de la base de données ne peut être vide");
+        }
+        this.dbPath = dbPath;
+    }
+
+    /**
+     * Getter de `storageProfile`
+     * @return Le profil de stockage de la base de données
+     */
+    public StorageProfile getStorageProfile() {
+        return storageProfile;
+    }
+
+    /**
+     * Setter de `storageProfile`
+     * @param storageProfile Le profil de stockage de la base de données
+     */
+    public void setStorageProfile(StorageProfile storageProfile) {
+        this.storageProfile = storageProfile;
+    }
+
+    /**
+     * Getter de `persistence`
+     * @return Le moteur de stockage persistant des posts
+     */
+    public PersistenceEngine getPersistence() {
+        return persistence;
+    }
+
+    /**
+     * Setter de `persistence`
+     * @param persistence Le moteur de stockage persistant des posts
+     */
+    public void setPersistence(PersistenceEngine persistence) {
+        this.persistence = persistence;
+    }
+
+    /**
+     * Getter de `logDir`
+     * @return Le répertoire des segments du journal des posts
+     */
+    public String getLogDir() {
+        return logDir;
+    }
+
+    /**
+     * Setter de `logDir`
+     * @param logDir Le répertoire des segments du journal des posts
+     * @throws IllegalArgumentException si le chemin est vide
+     */
+    public void setLogDir(String logDir) throws IllegalArgumentException {
+        if (logDir.isBlank()) {
+            throw new IllegalArgumentException("Le répertoire du journal ne peut être vide");
+        }
+        this.logDir = logDir;
+    }
+
+    /**
+     * Getter de `segmentMb`
+     * @return La taille d'un segment du journal des posts, en mégaoctets
+     */
+    public int getSegmentMb() {
+        return segmentMb;
+    }
+
+    /**
+     * Setter de `segmentMb`
+     * @param segmentMb La taille d'un segment du journal des posts, en mégaoctets (entre 1 et 1024)
+     * @throws IllegalArgumentException si la taille est hors de ces bornes
+     */
+    public void setSegmentMb(int segmentMb) throws IllegalArgumentException {
+        if (segmentMb < 1 || segmentMb > 1024) {
+            throw new IllegalArgumentException("Un segment du journal doit mesurer entre 1 et 1024 Mo");
+        }
+        this.segmentMb = segmentMb;
+    }
+
+    /**
+     * Getter de `hotPosts`
+     * @return Le nombre maximal de posts gardés en mémoire par conversation
+     */
+    public int getHotPosts() {
+        return hotPosts;
+    }
+
+    /**
+     * Setter de `hotPosts`
+     * @param hotPosts Le nombre maximal de posts gardés en mémoire par conversation (au moins 1)
+     * @throws IllegalArgumentException si le nombre est inférieur à 1
+     */
+    public void setHotPosts(int hotPosts) throws IllegalArgumentException {
+        if (hotPosts < 1) {
+            throw new IllegalArgumentException("Au moins un post par conversation doit être gardé en mémoire");
+        }
+        this.hotPosts = hotPosts;
+    }
+
+    /**
+     * Getter de `hotMinutes`
+     * @return L'ancienneté maximale d'un post gardé en mémoire, en minutes (0 : sans limite)
+     */
+    public long getHotMinutes() {
+        return hotMinutes;
+    }
+
+    /**
+     * Setter de `hotMinutes`
+     * @param hotMinutes L'ancienneté maximale d'un post gardé en mémoire, en minutes (positive, ou 0 pour ne pas la limiter)
+     * @throws IllegalArgumentException si l'ancienneté est négative
+     */
+    public void setHotMinutes(long hotMinutes) throws IllegalArgumentException {
+        if (hotMinutes < 0) {
+            throw new IllegalArgumentException("L'ancienneté des posts en mémoire ne peut être négative");
+        }
+        this.hotMinutes = hotMinutes;
+    }
+
+    /**
+     * Getter de `historyBudgetMb`
+     * @return Le budget mémoire des posts gardés en mémoire, en mégaoctets
+     */
+    public long getHistoryBudgetMb() {
+        return historyBudgetMb;
+    }
+
+    /**
+     * Setter de `historyBudgetMb`
+     * @param historyBudgetMb Le budget mémoire des posts gardés en mémoire, en mégaoctets (au moins 1)
+     * @throws IllegalArgumentException si le budget est inférieur à 1 Mo
+     */
+    public void setHistoryBudgetMb(long historyBudgetMb) throws IllegalArgumentException {
+        if (historyBudgetMb < 1) {
+            throw new IllegalArgumentException("Le budget mémoire de l'historique doit être d'au moins 1 Mo");
+        }
+        this.historyBudgetMb = historyBudgetMb;
+    }
+
+    /**
+     * Getter de `fastStart`
+     * @return `true` si les clients sont acceptés avant le chargement de l'historique en mémoire
+     */
+    public boolean isFastStart() {
+        return fastStart;
+    }
+
+    /**
+     * Setter de `fastStart`
+     * @param fastStart `true` pour accepter les clients dès le démarrage, l'historique étant chargé en arrière-plan
+     */
+    public void setFastStart(boolean fastStart) {
+        this.fastStart = fastStart;
+    }
+
+    /**
+     * Fenêtre des posts gardés en mémoire par le serveur
+     * @return Les limites de la fenêtre, issues de `hotPosts`, `hotMinutes` et `historyBudgetMb`
+     */
+    public PostStore.Window getHistoryWindow() {
+        return new PostStore.Window(hotPosts, hotMinutes * 60_000, historyBudgetMb * 1024 * 1024);
+    }
+
+    /**
+     * Représentation textuelle de la configuration
+     * @return La chaine de caractères représentant la configuration
+     */
+    @Override
+    public String toString() {
+        return "ServerConfig{engine=" + engine + ", ioThreads=" + ioThreads
+                + ", outboundCapacity=" + outboundCapacity + ", overflowPolicy=" + overflowPolicy
+                + ", outboundFlushMs=" + outboundFlushMs
+                + ", writeQueueCapacity=" + writeQueueCapacity + ", writeBatchSize=" + writeBatchSize
+                + ", writeFlushMs=" + writeFlushMs + ", dbPath=" + dbPath + ", storageProfile=" + storageProfile
+                + ", persistence=" + persistence + ", logDir=" + logDir + ", segmentMb=" + segmentMb
+                + ", hotPosts=" + hotPosts + ", hotMinutes=" + hotMinutes + ", historyBudgetMb=" + historyBudgetMb
+                + ", fastStart=" + fastStart + "}";
+    }
+}
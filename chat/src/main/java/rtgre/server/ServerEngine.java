@@ -0,0 +1,23 @@
+package rtgre.server;
+
+/**
+ * Moteur réseau utilisé par le serveur pour gérer les connexions des clients
+ */
+public enum ServerEngine {
+    /** Moteur historique : un thread (plateforme) bloquant par client connecté */
+    BLOCKING,
+    /** Moteur bloquant dont la boucle de réception de chaque client s'exécute sur un thread virtuel */
+    VIRTUAL,
+    /** Moteur non-bloquant : un sélecteur `java.nio` réparti sur un petit nombre de threads d'entrées/sorties */
+    NIO;
+
+    /**
+     * Renvoie le moteur associé à son nom, sans tenir compte de la casse
+     * @param name Le nom du moteur (`blocking`, `virtual`, `nio`)
+     * @return Le moteur correspondant
+     * @throws IllegalArgumentException si le nom ne correspond à aucun moteur
+     */
+    public static ServerEngine fromName(String name) throws IllegalArgumentException {
+        return ServerEngine.valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,74 @@
+package rtgre.server;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index des sessions ouvertes par chaque utilisateur : associe à un login l'ensemble des clients
+ * authentifiés sous ce login, afin de retrouver en temps constant les destinataires d'un évènement.
+ * Un même login peut avoir plusieurs sessions simultanées. Sûr en accès concurrent.
+ * @param <T> Le type des sessions indexées
+ */
+class SessionIndex<T> {
+    /** Les sessions de chaque login */
+    private final ConcurrentHashMap<String, Set<T>> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Ajoute une session à un login
+     * @param login Le login
+     * @param session La session authentifiée
+     * @return `true` si c'est la première session du login
+     */
+    boolean add(String login, T session) {
+        boolean[] first = {false};
+        sessions.compute(login, (l, set) -> {
+            if (set == null) {
+                set = ConcurrentHashMap.newKeySet();
+                first[0] = true;
+            }
+            set.add(session);
+            return set;
+        });
+        return first[0];
+    }
+
+    /**
+     * Retire une session d'un login
+     * @param login Le login
+     * @param session La session fermée
+     * @return `true` si c'était la dernière session du login
+     */
+    boolean remove(String login, T session) {
+        boolean[] last = {false};
+        sessions.computeIfPresent(login, (l, set) -> {
+            if (set.remove(session) && set.isEmpty()) {
+                last[0] = true;
+                return null;
+            }
+            return set;
+        });
+        return last[0];
+    }
+
+    /**
+     * Sessions ouvertes par un login. L'itération est faiblement cohérente : elle ne lève jamais
+     * d'exception si des sessions s'ouvrent ou se ferment pendant le parcours.
+     * @param login Le login
+     * @return Les sessions du login (vue non modifiable, vide si le login n'est pas connecté)
+     */
+    Set<T> sessions(String login) {
+        Set<T> set = sessions.get(login);
+        return (set == null) ? Collections.emptySet() : Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * Nombre de sessions ouvertes par un login
+     * @param login Le login
+     * @return Le nombre de sessions
+     */
+    int sessionCount(String login) {
+        Set<T> set = sessions.get(login);
+        return (set == null) ? 0 : set.size();
+    }
+}
@@ -0,0 +1,33 @@
+package rtgre.server;
+
+/**
+ * Instantané de l'avancement du chargement de l'historique en mémoire
+ * @param conversations Le nombre de conversations à charger (0 tant qu'elles ne sont pas listées)
+ * @param warmedConversations Le nombre de conversations chargées
+ * @param posts Le nombre de posts lus en base
+ * @param elapsedMillis La durée du chargement, en millisecondes (jusqu'à présent s'il n'est pas terminé)
+ * @param complete Le chargement est-il terminé ?
+ */
+public record WarmupStats(int conversations, int warmedConversations, long posts, long elapsedMillis, boolean complete) {
+
+    /**
+     * Avancement du chargement
+     * @return La part des conversations chargées, entre 0 et 1 (1 si le chargement est terminé)
+     */
+    public double progress() {
+        if (complete) {
+            return 1;
+        }
+        return (conversations == 0) ? 0 : (double) warmedConversations / conversations;
+    }
+
+    /**
+     * Représentation textuelle de l'avancement
+     * @return La chaine de caractères représentant l'avancement
+     */
+    @Override
+    public String toString() {
+        return "%d/%d conversation(s), %d post(s) en %d ms (%.0f %%%s)"
+                .formatted(warmedConversations, conversations, posts, elapsedMillis, 100 * progress(), complete ? ", terminé" : "");
+    }
+}
@@ -0,0 +1,144 @@
+package rtgre.chat;
+
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatLogTest {
+
+    /**
+     * Handler de test mémorisant les enregistrements publiés et le thread qui les publie
+     */
+    static class RecordingHandler extends Handler {
+        final List<String> messages = new CopyOnWriteArrayList<>();
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void publish(LogRecord record) {
+            threads.add(Thread.currentThread());
+            messages.add(record.getMessage());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Argument comptant ses mises en forme
+     */
+    static class Counted {
+        int formatted = 0;
+
+        @Override
+        public String toString() {
+            formatted++;
+            return "compté";
+        }
+    }
+
+    /**
+     * Logger isolé, sans handler parent, au niveau fourni
+     */
+    static Logger isolatedLogger(String name, Level level, Handler handler) {
+        Logger logger = Logger.getLogger(name);
+        logger.setUseParentHandlers(false);
+        logger.setLevel(level);
+        for (Handler h : logger.getHandlers()) {
+            logger.removeHandler(h);
+        }
+        logger.addHandler(handler);
+        return logger;
+    }
+
+    @DisplayName("01-Journalisation différée")
+    @Nested
+    class LazyTest {
+
+        @Test
+        @DisplayName("Rien n'est construit sous le niveau actif")
+        void testDisabled() {
+            RecordingHandler handler = new RecordingHandler();
+            ChatLog log = new ChatLog(isolatedLogger("rtgre.test.disabled", Level.INFO, handler));
+            Counted counted = new Counted();
+            log.log(Level.FINE, "valeur %s", counted);
+            log.log(Level.FINEST, () -> fail("Le fournisseur ne doit pas être appelé"));
+            assertEquals(0, counted.formatted, "L'argument ne doit pas être mis en forme");
+            assertTrue(handler.messages.isEmpty());
+        }
+
+        @Test
+        @DisplayName("Le message est mis en forme par le handler, une seule fois")
+        void testFormattedOnPublish() {
+            RecordingHandler handler = new RecordingHandler();
+            ChatLog log = new ChatLog(isolatedLogger("rtgre.test.enabled", Level.ALL, handler));
+            Counted counted = new Counted();
+            log.log(Level.FINE, "[%s] valeur %s", "1.2.3.4:5", counted);
+            log.log(Level.INFO, "constant {0} 100%");
+            assertEquals(List.of("[1.2.3.4:5] valeur compté", "constant {0} 100%"), handler.messages);
+            assertEquals(1, counted.formatted, "L'argument doit être mis en forme une seule fois");
+        }
+    }
+
+    @DisplayName("02-Handler asynchrone")
+    @Nested
+    class AsyncTest {
+
+        @Test
+        @DisplayName("Publication par le thread d'écriture")
+        void testPublishedByWriter() throws InterruptedException {
+            RecordingHandler target = new RecordingHandler();
+            AsyncLogHandler async = AsyncLogHandler.start(List.of(target), 16);
+            ChatLog log = new ChatLog(isolatedLogger("rtgre.test.async", Level.ALL, async));
+            log.log(Level.FINE, "message %s", 1);
+            async.close();
+            assertEquals(List.of("message 1"), target.messages, "Le message doit être publié avant la fermeture");
+            assertNotEquals(Thread.currentThread(), target.threads.get(0), "La publication ne doit pas être faite par l'émetteur");
+        }
+
+        @Test
+        @DisplayName("File pleine : les enregistrements sont abandonnés sans attente")
+        void testDropWhenFull() throws InterruptedException {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch blocked = new CountDownLatch(1);
+            RecordingHandler target = new RecordingHandler() {
+                @Override
+                public void publish(LogRecord record) {
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.publish(record);
+                }
+            };
+            AsyncLogHandler async = AsyncLogHandler.start(List.of(target), 2);
+            ChatLog log = new ChatLog(isolatedLogger("rtgre.test.full", Level.ALL, async));
+            log.log(Level.INFO, "bloquant");
+            assertTrue(blocked.await(1, TimeUnit.SECONDS), "Le thread d'écriture doit publier le premier message");
+            long start = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                log.log(Level.INFO, "message %d", i);
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "L'émetteur ne doit pas attendre");
+            assertEquals(8, async.getDropped(), "Seuls les messages tenant dans la file doivent être conservés");
+            release.countDown();
+            async.close();
+            assertEquals(List.of("bloquant", "message 0", "message 1"), target.messages);
+        }
+    }
+}
@@ -128,6 +128,7 @@ class ChatClientTest {
             Logger logger = client.getLogger();
             ByteArrayOutputStream out = new ByteArrayOutputStream();
             Handler handler = new StreamHandler(out, new SimpleFormatter());
+            handler.setLevel(Level.FINE);
             logger.addHandler(handler);
 
 
@@ -5,6 +5,8 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import rtgre.chat.net.ClientTCP;
+import rtgre.modeles.EventCodec;
+import rtgre.modeles.Framing;
 
 
 import java.io.IOException;
@@ -121,6 +123,18 @@ class ClientTCPTest {
             Assertions.assertFalse(client.isConnected(), "Etat de connexion erroné");
         }
 
+        @DisplayName("Serveur muet au préambule : repli sur le mode ligne")
+        @Test
+        void testHandshakeFallback() throws IOException {
+            long start = System.nanoTime();
+            ChatClient client = ChatClient.connect("localhost", port, null, Framing.LENGTH_PREFIXED, EventCodec.BINARY);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            Assertions.assertEquals(Framing.LINE, client.framing, "Le client doit se replier sur le mode ligne");
+            Assertions.assertEquals(EventCodec.JSON, client.codec, "Le client doit se replier sur l'encodage JSON");
+            Assertions.assertTrue(elapsedMs < 2 * ClientTCP.HANDSHAKE_TIMEOUT_MS, "La négociation doit être bornée");
+            client.close();
+        }
+
     }
 
 }
\ No newline at end of file
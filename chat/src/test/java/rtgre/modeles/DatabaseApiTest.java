@@ -0,0 +1,116 @@
+package rtgre.modeles;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseApiTest {
+
+    @DisplayName("01-Profils de stockage")
+    @Nested
+    class ProfileTest {
+
+        @TempDir
+        Path dir;
+
+        @DisplayName("Paramètres SQLite appliqués à l'ouverture")
+        @ParameterizedTest
+        @EnumSource(StorageProfile.class)
+        void testPragmas(StorageProfile profile) {
+            String path = dir.resolve(profile + ".db").toString();
+            DatabaseApi database = new DatabaseApi(path, profile);
+            try {
+                assertEquals(path, database.getPath(), "Chemin erroné");
+                assertEquals(profile.getJournalMode().toLowerCase(), database.getPragma("journal_mode"), "Mode du journal erroné");
+                assertEquals(String.valueOf(profile.getPageSize()), database.getPragma("page_size"), "Taille de page erronée");
+                assertEquals(String.valueOf(profile.getCacheSize()), database.getPragma("cache_size"), "Taille du cache erronée");
+            } finally {
+                database.close();
+            }
+        }
+
+        @DisplayName("Écriture et relecture d'un post")
+        @ParameterizedTest
+        @EnumSource(StorageProfile.class)
+        void testReadWrite(StorageProfile profile) throws SQLException {
+            DatabaseApi database = new DatabaseApi(dir.resolve(profile + ".db").toString(), profile);
+            try {
+                Post post = new Post("riri", "fifi", "coin");
+                assertTrue(database.addPost(post), "Le post doit être ajouté");
+                ResultSet result = database.getPosts();
+                assertTrue(result.next(), "Le post doit être relu");
+                assertEquals(post.getId().toString(), result.getString("id"), "Identifiant erroné");
+                assertEquals("coin", result.getString("body"), "Message erroné");
+                result.close();
+            } finally {
+                database.close();
+            }
+        }
+    }
+
+    @DisplayName("02-Schéma versionné")
+    @Nested
+    class SchemaTest {
+
+        @TempDir
+        Path dir;
+
+        @DisplayName("Migration d'une base créée avec le schéma d'origine")
+        @Test
+        void testMigration() throws SQLException {
+            String path = dir.resolve("legacy.db").toString();
+            try (Connection con = DriverManager.getConnection("jdbc:sqlite:" + path);
+                 Statement stmt = con.createStatement()) {
+                stmt.execute("CREATE TABLE `posts` (`id` text PRIMARY KEY NOT NULL, `timestamp` long,"
+                        + " `from` text, `to` text, `body` text, `connected` boolean)");
+                stmt.execute("INSERT INTO posts VALUES ('00000000-0000-0000-0000-000000000001', 10, 'riri', 'fifi', 'coin', 1)");
+                stmt.execute("INSERT INTO posts VALUES ('00000000-0000-0000-0000-000000000002', 20, 'fifi', 'riri', 'coin coin', 1)");
+                stmt.execute("INSERT INTO posts VALUES ('00000000-0000-0000-0000-000000000003', 30, 'riri', '#juniors', 'salut', 1)");
+            }
+            DatabaseApi database = new DatabaseApi(path, StorageProfile.BALANCED);
+            try {
+                assertEquals(DatabaseApi.SCHEMA_VERSION, database.getSchemaVersion(), "Version du schéma erronée");
+                List<Post> dm = database.getConversationPosts(Post.conversationKey("riri", "fifi"), 0);
+                assertEquals(List.of("coin", "coin coin"), dm.stream().map(Post::getBody).toList(), "Conversation privée erronée");
+                List<Post> room = database.getConversationPosts("#juniors", 0);
+                assertEquals(1, room.size(), "Conversation du salon erronée");
+                assertTrue(database.addPost(new Post("fifi", "#juniors", "bonjour")), "Le post doit être ajouté");
+                assertEquals(2, database.getConversationPosts("#juniors", 0).size(), "Le nouveau post doit être indexé");
+                assertEquals(1, database.getConversationPosts("#juniors", 31).size(), "Filtrage par timestamp erroné");
+            } finally {
+                database.close();
+            }
+        }
+
+        @DisplayName("Recherche par conversation sur l'index (conversation, timestamp)")
+        @Test
+        void testQueryPlan() throws SQLException {
+            DatabaseApi database = new DatabaseApi(dir.resolve("plan.db").toString(), StorageProfile.BALANCED);
+            try {
+                assertTrue(database.explainConversationQuery().contains("posts_conversation_timestamp"),
+                        "La recherche doit utiliser l'index");
+            } finally {
+                database.close();
+            }
+        }
+
+        @DisplayName("Clé de conversation")
+        @Test
+        void testConversationKey() {
+            assertEquals("fifi|riri", Post.conversationKey("riri", "fifi"));
+            assertEquals("fifi|riri", Post.conversationKey("fifi", "riri"));
+            assertEquals("#juniors", Post.conversationKey("riri", "#juniors"));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package rtgre.modeles;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Banc d'essai des encodages d'évènements : débit d'encodage et de décodage,
+ * et octets émis sur la socket, pour un post isolé et pour un lot de posts.
+ * Exécution : `mvn test -Pbench`
+ */
+@Tag("benchmark")
+class EventCodecBenchmarkTest {
+    /** Nombre d'itérations de chauffe */
+    static final int WARMUP = 20000;
+    /** Nombre d'itérations mesurées */
+    static final int ITERATIONS = 100000;
+    /** Nombre de posts du lot */
+    static final int BATCH_POSTS = 100;
+
+    /** Résultat des décodages, consommé pour éviter l'élimination du code mesuré */
+    static int sink = 0;
+
+    /**
+     * Mesure le débit d'encodage d'un évènement
+     * @return Le nombre d'encodages par seconde
+     */
+    static double encodeRate(EventCodec codec, Event event, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += codec.encode(event).length;
+        }
+        return iterations / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Mesure le débit de décodage d'un évènement encodé
+     * @return Le nombre de décodages par seconde
+     */
+    static double decodeRate(EventCodec codec, byte[] bytes, int iterations) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += codec.decode(bytes, 0, bytes.length).getContent().length();
+        }
+        return iterations / ((System.nanoTime() - start) / 1e9);
+    }
+
+    @DisplayName("Encodage et décodage JSON et binaire")
+    @Test
+    void benchmarkCodecs() throws IOException {
+        Event post = new Event(Event.POST, new Post("riri", "#juniors", "Bonjour à tous, la réunion est décalée à 14h.").toJsonObject());
+        List<JSONObject> posts = new ArrayList<>(BATCH_POSTS);
+        for (int i = 0; i < BATCH_POSTS; i++) {
+            posts.add(new Post("riri", "#juniors", "message n°" + i).toJsonObject());
+        }
+        Event batch = Event.batch(Event.POST, posts);
+
+        System.out.printf("%-6s %-7s %10s %18s %18s%n", "évt", "codec", "octets", "encodage (évt/s)", "décodage (évt/s)");
+        for (Event event : List.of(post, batch)) {
+            int iterations = (event == batch) ? ITERATIONS / BATCH_POSTS : ITERATIONS;
+            int jsonLength = 0;
+            for (EventCodec codec : List.of(EventCodec.JSON, EventCodec.BINARY)) {
+                byte[] bytes = codec.encode(event);
+                encodeRate(codec, event, WARMUP);
+                decodeRate(codec, bytes, WARMUP / ((event == batch) ? BATCH_POSTS : 1));
+                double encode = encodeRate(codec, event, iterations);
+                double decode = decodeRate(codec, bytes, iterations);
+                System.out.printf("%-6s %-7s %10d %18.0f %18.0f%n",
+                        (event == batch) ? "BTCH" : "POST", codec, bytes.length, encode, decode);
+                if (codec == EventCodec.JSON) {
+                    jsonLength = bytes.length;
+                } else {
+                    assertTrue(bytes.length < jsonLength, "L'encodage binaire doit être plus compact");
+                }
+            }
+        }
+        assertNotEquals(0, sink);
+    }
+}
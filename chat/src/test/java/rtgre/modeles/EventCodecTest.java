@@ -0,0 +1,138 @@
+package rtgre.modeles;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventCodecTest {
+
+    /**
+     * Évènements représentatifs du protocole
+     */
+    static Stream<Event> events() {
+        Post post = new Post("riri", "fifi", "ligne 1\nligne 2 été");
+        List<JSONObject> posts = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            posts.add(new Post("riri", "#juniors", "message n°" + i).toJsonObject());
+        }
+        return Stream.of(
+                new Event(Event.AUTH, new JSONObject().put("login", "riri")),
+                new Event(Event.QUIT, new JSONObject()),
+                new Event(Event.MESG, new JSONObject().put("to", "fifi").put("body", "bonjour")),
+                new Event(Event.POST, post.toJsonObject()),
+                new Event(Event.CONT, new JSONObject().put("login", "fifi").put("connected", true).put("avatar", JSONObject.NULL)),
+                Event.batch(Event.POST, posts),
+                new Event(Event.PAGE, new JSONObject().put("conversation", "#juniors").put("hasMore", false)
+                        .put("beforeTimestamp", -1234567890123L).put("beforeId", UUID.randomUUID().toString())
+                        .put("ratio", 0.5).put("tags", new JSONArray().put("a").put(1).put(JSONObject.NULL))),
+                new Event("XTRA", new JSONObject().put("id", "pas-un-uuid").put("n", Long.MIN_VALUE))
+        );
+    }
+
+    /**
+     * Contenu JSON de l'évènement après une sérialisation complète, pour comparer des contenus équivalents
+     */
+    static JSONObject normalized(Event event) {
+        return Event.fromJson(event.toJson()).getContent();
+    }
+
+    @DisplayName("01-Encodage et décodage")
+    @Nested
+    class RoundTripTest {
+
+        @DisplayName("JSON : aller-retour")
+        @ParameterizedTest
+        @MethodSource("rtgre.modeles.EventCodecTest#events")
+        void testJson(Event event) throws IOException {
+            byte[] bytes = EventCodec.JSON.encode(event);
+            Event decoded = EventCodec.JSON.decode(bytes, 0, bytes.length);
+            assertEquals(event.getType(), decoded.getType(), "Type erroné");
+            assertTrue(normalized(event).similar(decoded.getContent()), "Contenu erroné : " + decoded);
+        }
+
+        @DisplayName("Binaire : aller-retour")
+        @ParameterizedTest
+        @MethodSource("rtgre.modeles.EventCodecTest#events")
+        void testBinary(Event event) throws IOException {
+            byte[] bytes = EventCodec.BINARY.encode(event);
+            Event decoded = EventCodec.BINARY.decode(bytes, 0, bytes.length);
+            assertEquals(event.getType(), decoded.getType(), "Type erroné");
+            assertTrue(normalized(event).similar(normalized(decoded)), "Contenu erroné : " + decoded);
+        }
+
+        @DisplayName("Binaire : décodage au milieu d'un tableau")
+        @Test
+        void testOffset() throws IOException {
+            Event event = new Event(Event.MESG, new JSONObject().put("to", "fifi").put("body", "bonjour"));
+            byte[] bytes = EventCodec.BINARY.encode(event);
+            byte[] padded = new byte[bytes.length + 10];
+            System.arraycopy(bytes, 0, padded, 5, bytes.length);
+            Event decoded = EventCodec.BINARY.decode(padded, 5, bytes.length);
+            assertTrue(normalized(event).similar(decoded.getContent()), "Contenu erroné : " + decoded);
+        }
+    }
+
+    @DisplayName("02-Encodage binaire")
+    @Nested
+    class BinaryTest {
+
+        @DisplayName("Un post est plus compact qu'en JSON")
+        @Test
+        void testCompactPost() {
+            Event event = new Event(Event.POST, new Post("riri", "fifi", "bonjour").toJsonObject());
+            int json = EventCodec.JSON.encode(event).length;
+            int binary = EventCodec.BINARY.encode(event).length;
+            assertTrue(binary * 2 < json, "Encodage binaire trop long : %d octets contre %d en JSON".formatted(binary, json));
+        }
+
+        @DisplayName("Octets tronqués ou invalides")
+        @Test
+        void testInvalid() {
+            byte[] bytes = EventCodec.BINARY.encode(new Event(Event.POST, new Post("riri", "fifi", "bonjour").toJsonObject()));
+            assertThrows(IOException.class, () -> EventCodec.BINARY.decode(bytes, 0, bytes.length - 1));
+            assertThrows(IOException.class, () -> EventCodec.BINARY.decode(new byte[] {0, 'X'}, 0, 2));
+        }
+
+        @DisplayName("Nombres non représentables et imbrication trop profonde")
+        @Test
+        void testMalformed() {
+            long nan = Double.doubleToLongBits(Double.NaN);
+            byte[] notFinite = {0, 'O', 1, 1, 'x', 'D', (byte) (nan >>> 56), (byte) (nan >>> 48), (byte) (nan >>> 40),
+                    (byte) (nan >>> 32), (byte) (nan >>> 24), (byte) (nan >>> 16), (byte) (nan >>> 8), (byte) nan};
+            assertThrows(IOException.class, () -> EventCodec.BINARY.decode(notFinite, 0, notFinite.length));
+            byte[] decimal = {0, 'O', 1, 1, 'x', 'B', 3, 'a', 'b', 'c'};
+            assertThrows(IOException.class, () -> EventCodec.BINARY.decode(decimal, 0, decimal.length));
+            byte[] nested = new byte[5 + 2 * 100_000 + 1];
+            nested[0] = 0;
+            nested[1] = 'O';
+            nested[2] = 1;
+            nested[3] = 1;
+            nested[4] = 'x';
+            for (int i = 5; i < nested.length - 1; i += 2) {
+                nested[i] = 'A';
+                nested[i + 1] = 1;
+            }
+            nested[nested.length - 1] = 'N';
+            assertThrows(IOException.class, () -> EventCodec.BINARY.decode(nested, 0, nested.length));
+        }
+
+        @DisplayName("Identifiants des encodages")
+        @Test
+        void testFromId() {
+            assertSame(EventCodec.JSON, EventCodec.fromId(EventCodec.JSON.id()));
+            assertSame(EventCodec.BINARY, EventCodec.fromId(EventCodec.BINARY.id()));
+            assertNull(EventCodec.fromId((byte) 'Z'));
+            assertSame(EventCodec.BINARY, Framing.codecOf(Framing.preamble(EventCodec.BINARY)));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package rtgre.modeles;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventDispatcherTest {
+
+    @DisplayName("01-Types d'évènements")
+    @Nested
+    class TypeTest {
+
+        @DisplayName("Étiquette de chaque type")
+        @ParameterizedTest
+        @EnumSource(EventType.class)
+        void testFromTag(EventType type) {
+            assertSame(type, EventType.fromTag(type.getTag()), "Type erroné");
+        }
+
+        @DisplayName("Étiquette inconnue")
+        @Test
+        void testUnknownTag() {
+            assertNull(EventType.fromTag("XTRA"));
+        }
+    }
+
+    @DisplayName("02-Ventilation")
+    @Nested
+    class DispatchTest {
+
+        @DisplayName("Chaque type est ventilé vers son traitement")
+        @Test
+        void testDispatch() {
+            EventDispatcher<List<String>, String> dispatcher = new EventDispatcher<List<String>, String>()
+                    .onEach(EventType.MESG, List::add)
+                    .on(EventType.QUIT, (received, event) -> false);
+            List<String> received = new ArrayList<>();
+            assertTrue(dispatcher.dispatch(EventType.MESG, received, "bonjour"));
+            assertTrue(dispatcher.dispatch(EventType.MESG, received, "au revoir"));
+            assertFalse(dispatcher.dispatch(EventType.QUIT, received, ""), "QUIT doit fermer la connexion");
+            assertEquals(List.of("bonjour", "au revoir"), received);
+            assertFalse(dispatcher.dispatch(EventType.POST, received, "post"), "Type sans traitement");
+            assertFalse(dispatcher.dispatch(null, received, "inconnu"), "Type inconnu");
+            assertEquals(2, dispatcher.getUnhandled());
+        }
+
+        @DisplayName("Un seul traitement par type")
+        @Test
+        void testDuplicate() {
+            EventDispatcher<Object, Object> dispatcher = new EventDispatcher<>().onEach(EventType.AUTH, (c, e) -> { });
+            assertThrows(IllegalStateException.class, () -> dispatcher.onEach(EventType.AUTH, (c, e) -> { }));
+        }
+
+        @DisplayName("Statistiques par type")
+        @Test
+        void testStats() {
+            EventDispatcher<Object, String> dispatcher = new EventDispatcher<Object, String>()
+                    .onEach(EventType.MESG, (c, event) -> {
+                        if (event.isEmpty()) {
+                            throw new IllegalStateException("vide");
+                        }
+                    });
+            dispatcher.dispatch(EventType.MESG, null, "bonjour");
+            assertThrows(IllegalStateException.class, () -> dispatcher.dispatch(EventType.MESG, null, ""));
+            EventTypeStats stats = dispatcher.getStats(EventType.MESG);
+            assertEquals(2, stats.count(), "Nombre d'évènements erroné");
+            assertEquals(1, stats.errors(), "Nombre d'erreurs erroné");
+            assertTrue(stats.maxNanos() > 0 && stats.totalNanos() >= stats.maxNanos(), "Durées erronées");
+            assertEquals(List.of(EventType.MESG), List.copyOf(dispatcher.getStats().keySet()),
+                    "Seuls les types reçus sont renvoyés");
+        }
+    }
+}
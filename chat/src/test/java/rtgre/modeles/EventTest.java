@@ -50,7 +50,8 @@ class EventTest {
                     arguments("CONT", "CONT"),
                     arguments("LIST_POSTS", "LSTP"),
                     arguments("LIST_CONTACTS", "LSTC"),
-                    arguments("SYSTEM", "SYST")
+                    arguments("SYSTEM", "SYST"),
+                    arguments("BATCH", "BTCH")
             );
         }
 
@@ -216,6 +217,31 @@ class EventTest {
                     json, "Sérialisation JSON erronée");
         }
 
+        @Test
+        @DisplayName("Méthode toFrame")
+        void TestToFrame() {
+            Event event = Event.fromJson("{\"type\":\"MESG\",\"content\":{\"to\":\"riri\",\"body\":\"été\"}}");
+            EventFrame frame = event.toFrame();
+            byte[] expected = (event.toJson() + "\n").getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            byte[] bytes = new byte[frame.length()];
+            frame.asByteBuffer().get(bytes);
+            Assertions.assertArrayEquals(expected, bytes, "Trame erronée");
+            Assertions.assertEquals(event.toJson(), frame.toString(), "Représentation textuelle de la trame erronée");
+            Assertions.assertSame(frame, event.toFrame(), "La trame doit n'être encodée qu'une fois");
+        }
+
+        @Test
+        @DisplayName("Méthode batch")
+        void TestBatch() {
+            List<JSONObject> items = List.of(new JSONObject().put("room", "#juniors"), new JSONObject().put("room", "#ducks"));
+            Event event = Event.fromJson(Event.batch(Event.ROOM, items).toJson());
+            Assertions.assertEquals(Event.BATCH, event.getType(), "Type erroné");
+            Assertions.assertEquals(Event.ROOM, event.getContent().getString("type"), "Type des éléments erroné");
+            Assertions.assertEquals(2, event.getContent().getJSONArray("items").length(), "Nombre d'éléments erroné");
+            Assertions.assertEquals("#ducks", event.getContent().getJSONArray("items").getJSONObject(1).getString("room"),
+                    "Contenu des éléments erroné");
+        }
+
 
     }
 
@@ -0,0 +1,137 @@
+package rtgre.modeles;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameReaderTest {
+
+    /**
+     * Flux contenant le préambule puis les évènements fournis, en mode préfixé par la longueur
+     */
+    static byte[] lengthPrefixed(Event... events) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(Framing.preamble());
+        for (Event event : events) {
+            event.toFrame().writeTo(out, Framing.LENGTH_PREFIXED);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Flux ne délivrant qu'un octet par lecture, comme une socket au débit très irrégulier
+     */
+    static InputStream trickle(byte[] bytes) {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    @DisplayName("01-Négociation du découpage")
+    @Nested
+    class NegotiationTest {
+
+        @Test
+        @DisplayName("Client historique : lignes JSON")
+        void testLine() throws IOException {
+            byte[] bytes = "{\"type\":\"AUTH\",\"content\":{\"login\":\"riri\"}}\n{\"type\":\"QUIT\",\"content\":{}}\n"
+                    .getBytes(StandardCharsets.UTF_8);
+            FrameReader reader = new FrameReader(new ByteArrayInputStream(bytes));
+            assertEquals(Framing.LINE, reader.negotiate(), "Découpage erroné");
+            assertEquals(Event.AUTH, Event.fromJson(reader.readFrame()).getType());
+            assertEquals(Event.QUIT, Event.fromJson(reader.readFrame()).getType());
+            assertNull(reader.readFrame(), "Fin du flux non détectée");
+        }
+
+        @Test
+        @DisplayName("Préambule : trames préfixées par leur longueur")
+        void testLengthPrefixed() throws IOException {
+            Event message = new Event(Event.MESG, new org.json.JSONObject().put("to", "fifi").put("body", "ligne 1\nligne 2 été"));
+            FrameReader reader = new FrameReader(new ByteArrayInputStream(lengthPrefixed(message, message)));
+            assertEquals(Framing.LENGTH_PREFIXED, reader.negotiate(), "Découpage erroné");
+            assertEquals(message.toJson(), reader.readFrame(), "Trame erronée");
+            assertEquals("ligne 1\nligne 2 été", Event.fromJson(reader.readFrame()).getContent().getString("body"));
+            assertNull(reader.readFrame(), "Fin du flux non détectée");
+        }
+
+        @Test
+        @DisplayName("Préambule invalide")
+        void testInvalidPreamble() {
+            FrameReader reader = new FrameReader(new ByteArrayInputStream(new byte[] {0, 'X', 'Y', 'Z'}));
+            assertThrows(IOException.class, reader::negotiate);
+        }
+    }
+
+    @DisplayName("02-Trames préfixées")
+    @Nested
+    class FrameTest {
+
+        @Test
+        @DisplayName("Trame tronquée")
+        void testTruncated() throws IOException {
+            byte[] bytes = lengthPrefixed(new Event(Event.QUIT, new org.json.JSONObject()));
+            byte[] truncated = java.util.Arrays.copyOf(bytes, bytes.length - 3);
+            FrameReader reader = new FrameReader(new ByteArrayInputStream(truncated));
+            assertThrows(EOFException.class, reader::readFrame);
+        }
+
+        @Test
+        @DisplayName("Longueur excessive")
+        void testTooLong() {
+            byte[] bytes = {0, 'L', 'P', '1', 0x7F, 0, 0, 0};
+            FrameReader reader = new FrameReader(new ByteArrayInputStream(bytes));
+            assertThrows(IOException.class, reader::readFrame);
+        }
+
+        @Test
+        @DisplayName("Une longueur annoncée n'est pas allouée avant la réception de la trame")
+        void testAnnouncedLengthNotPreallocated() {
+            byte[] bytes = {0, 'L', 'P', '1', 0x01, 0, 0, 0, '{', '"'};
+            int[] largestRead = {0};
+            InputStream in = new ByteArrayInputStream(bytes) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    largestRead[0] = Math.max(largestRead[0], len);
+                    return super.read(b, off, len);
+                }
+            };
+            FrameReader reader = new FrameReader(in);
+            assertThrows(EOFException.class, reader::readFrame);
+            assertTrue(largestRead[0] < 1024 * 1024, "Le tampon ne doit pas être agrandi à la longueur annoncée");
+        }
+
+        @Test
+        @DisplayName("Lignes et trames plus grandes que le tampon, reçues octet par octet")
+        void testLargeTrickled() throws IOException {
+            String large = "é".repeat(20000);
+            byte[] lines = ("a\r\n" + large + "\n\nfin").getBytes(StandardCharsets.UTF_8);
+            FrameReader lineReader = new FrameReader(trickle(lines));
+            assertEquals("a", lineReader.readFrame(), "Le retour chariot doit être retiré");
+            assertEquals(large, lineReader.readFrame(), "Ligne longue erronée");
+            assertEquals("", lineReader.readFrame(), "Ligne vide erronée");
+            assertEquals("fin", lineReader.readFrame(), "Dernière ligne non terminée perdue");
+            assertNull(lineReader.readFrame(), "Fin du flux non détectée");
+
+            Event message = new Event(Event.MESG, new org.json.JSONObject().put("to", "fifi").put("body", large));
+            FrameReader frameReader = new FrameReader(trickle(lengthPrefixed(message, message)));
+            assertEquals(message.toJson(), frameReader.readFrame(), "Trame longue erronée");
+            assertEquals(large, frameReader.readEvent().getContent().getString("body"), "Trame longue erronée");
+            assertNull(frameReader.readEvent(), "Fin du flux non détectée");
+        }
+
+        @Test
+        @DisplayName("Entête d'une trame")
+        void testHeader() {
+            EventFrame frame = EventFrame.of("{}");
+            assertEquals(2, frame.headerBuffer().getInt(), "Longueur annoncée erronée");
+            assertEquals(2, frame.asByteBuffer(Framing.LENGTH_PREFIXED).remaining(), "La fin de ligne ne doit pas être émise");
+            assertEquals(3, frame.asByteBuffer(Framing.LINE).remaining(), "La fin de ligne doit être émise");
+        }
+    }
+}
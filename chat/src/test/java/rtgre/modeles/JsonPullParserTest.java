@@ -0,0 +1,103 @@
+package rtgre.modeles;
+
+import org.json.JSONException;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonPullParserTest {
+
+    @DisplayName("01-Lecture des valeurs")
+    @Nested
+    class ValueTest {
+
+        @Test
+        @DisplayName("Clés et valeurs d'un objet, valeurs sautées")
+        void testObject() {
+            JsonPullParser parser = new JsonPullParser(
+                    " { \"to\" : \"fifi\", \"n\": -42, \"skip\": {\"a\": [1, \"]}\", {}], \"b\": null}, \"ok\": true, \"d\": 1.5e3 } ");
+            parser.beginObject();
+            assertEquals("to", parser.nextKey());
+            assertEquals("fifi", parser.readString());
+            assertEquals("n", parser.nextKey());
+            assertEquals(-42, parser.readLong());
+            assertEquals("skip", parser.nextKey());
+            parser.skipValue();
+            assertEquals("ok", parser.nextKey());
+            assertTrue(parser.readBoolean());
+            assertEquals("d", parser.nextKey());
+            assertEquals(1500, parser.readLong());
+            assertNull(parser.nextKey(), "Fin de l'objet non détectée");
+            parser.end();
+        }
+
+        @Test
+        @DisplayName("Séquences d'échappement")
+        void testEscapes() {
+            JsonPullParser parser = new JsonPullParser("\"ligne 1\\nligne 2 \\\"été\\\" \\u00e9\\\\\"");
+            assertEquals("ligne 1\nligne 2 \"été\" é\\", parser.readString());
+        }
+
+        @Test
+        @DisplayName("Conversions à la manière de JSONObject")
+        void testConversions() {
+            JsonPullParser parser = new JsonPullParser("{\"a\": \"123\", \"b\": \"TRUE\", \"c\": 3, \"d\": null}");
+            parser.beginObject();
+            parser.nextKey();
+            assertEquals(123, parser.readLong());
+            parser.nextKey();
+            assertTrue(parser.readBoolean());
+            parser.nextKey();
+            assertFalse(parser.optBoolean(), "Une valeur non booléenne vaut false");
+            parser.nextKey();
+            assertTrue(parser.readNull());
+            assertNull(parser.nextKey());
+        }
+
+        @Test
+        @DisplayName("Lecteur réutilisé et table de symboles")
+        void testReuse() {
+            String[] symbols = {"type", "MESG"};
+            JsonPullParser parser = new JsonPullParser(symbols);
+            for (String json : new String[] {"{\"type\": \"MESG\"}", "{\"type\":\"MESGX\", \"to\": \"type\"}"}) {
+                parser.reset(json);
+                parser.beginObject();
+                assertSame(symbols[0], parser.nextKey(), "La clé connue doit être celle de la table");
+                String type = parser.readSymbol();
+                assertEquals(json.contains("MESGX") ? "MESGX" : "MESG", type);
+                if (type.equals("MESG")) {
+                    assertSame(symbols[1], type, "Le symbole connu doit être celui de la table");
+                } else {
+                    assertEquals("to", parser.nextKey());
+                    assertEquals("type", parser.readString());
+                }
+                assertNull(parser.nextKey());
+                parser.end();
+            }
+        }
+    }
+
+    @DisplayName("02-JSON mal formé")
+    @Nested
+    class ErrorTest {
+
+        @Test
+        @DisplayName("Erreurs de syntaxe et de type")
+        void testErrors() {
+            assertThrows(JSONException.class, () -> new JsonPullParser("[1]").beginObject());
+            assertThrows(JSONException.class, () -> new JsonPullParser("\"abc").readString());
+            assertThrows(JSONException.class, () -> new JsonPullParser("12").readString());
+            assertThrows(JSONException.class, () -> new JsonPullParser("\"abc\"").readLong());
+            assertThrows(JSONException.class, () -> new JsonPullParser("1").readBoolean());
+            JsonPullParser parser = new JsonPullParser("{\"a\": 1 \"b\": 2}");
+            parser.beginObject();
+            parser.nextKey();
+            parser.skipValue();
+            assertThrows(JSONException.class, parser::nextKey);
+            JsonPullParser trailing = new JsonPullParser("{} x");
+            trailing.beginObject();
+            trailing.nextKey();
+            assertThrows(JSONException.class, trailing::end);
+        }
+    }
+}
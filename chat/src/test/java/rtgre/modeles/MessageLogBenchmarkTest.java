@@ -0,0 +1,148 @@
+package rtgre.modeles;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Banc d'essai des stockages persistants : débit d'ajout par lots, puis latence de lecture d'un intervalle
+ * de temps et d'une page de l'historique d'une conversation, pour le journal en ajout seul et la base SQLite.
+ * Exécution : `mvn test -Pbench`
+ */
+@Tag("benchmark")
+class MessageLogBenchmarkTest {
+    /** Nombre de posts ajoutés */
+    static final int POSTS = 200_000;
+    /** Nombre de conversations entre lesquelles les posts sont répartis */
+    static final int CONVERSATIONS = 100;
+    /** Taille d'un lot */
+    static final int BATCH_SIZE = 256;
+    /** Taille d'un segment du journal, pour en obtenir plusieurs */
+    static final int SEGMENT_BYTES = 8 * 1024 * 1024;
+    /** Nombre de lectures mesurées */
+    static final int READS = 2000;
+    /** Nombre de lectures d'échauffement, non mesurées */
+    static final int WARMUP = 500;
+    /** Nombre de posts d'une page */
+    static final int PAGE_SIZE = 50;
+    /** Durée de l'intervalle de temps lu, en millisecondes */
+    static final long RANGE_MS = 20_000;
+
+    @TempDir
+    Path dir;
+
+    /** Les posts ajoutés, dans l'ordre chronologique */
+    static Post[] history;
+
+    @BeforeAll
+    static void createHistory() {
+        Random random = new Random(42);
+        history = new Post[POSTS];
+        long timestamp = 1_700_000_000_000L;
+        for (int i = 0; i < POSTS; i++) {
+            timestamp += random.nextInt(3);
+            history[i] = new Post(UUID.randomUUID(), timestamp, "user" + random.nextInt(50),
+                    "#salon" + random.nextInt(CONVERSATIONS), "message n°" + i);
+        }
+    }
+
+    @AfterAll
+    static void releaseHistory() {
+        history = null;
+    }
+
+    /**
+     * Affiche une ligne de résultats
+     * @param operation Le nom de l'opération
+     * @param engine Le nom du stockage
+     * @param latencies Les latences mesurées, en nanosecondes
+     */
+    static void report(String operation, String engine, long[] latencies) {
+        Arrays.sort(latencies);
+        double average = Arrays.stream(latencies).average().orElse(0) / 1000.0;
+        double p99 = latencies[(int) (latencies.length * 0.99)] / 1000.0;
+        System.out.printf("%-14s %-8s %12d %14.2f %14.2f%n", operation, engine, latencies.length, average, p99);
+    }
+
+    /**
+     * Ajoute tout l'historique par lots
+     * @param repository Le stockage
+     * @return Le débit d'ajout, en posts par seconde
+     */
+    static double append(PostRepository repository) {
+        long start = System.nanoTime();
+        List<Post> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < POSTS; i++) {
+            batch.add(history[i]);
+            if (batch.size() == BATCH_SIZE || i == POSTS - 1) {
+                assertTrue(repository.savePosts(batch));
+                batch.clear();
+            }
+        }
+        return POSTS / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Mesure les lectures d'intervalles de temps et de pages sur des conversations et des dates tirées au hasard
+     * @param repository Le stockage
+     * @param engine Le nom du stockage
+     */
+    static void read(PostRepository repository, String engine) {
+        Random random = new Random(7);
+        long first = history[0].getTimestamp();
+        long span = history[POSTS - 1].getTimestamp() - first;
+        long[] ranges = new long[READS];
+        long[] pages = new long[READS];
+        for (int i = -WARMUP; i < READS; i++) {
+            String conversation = "#salon" + random.nextInt(CONVERSATIONS);
+            long timestamp = first + (long) (random.nextDouble() * span);
+
+            long start = System.nanoTime();
+            List<Post> range = repository.getConversationPosts(conversation, Math.max(first, timestamp - RANGE_MS));
+            long rangeLatency = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<Post> page = repository.getConversationPage(conversation, timestamp, new UUID(0L, 0L), PAGE_SIZE);
+            long pageLatency = System.nanoTime() - start;
+
+            assertFalse(range.isEmpty());
+            assertTrue(page.size() <= PAGE_SIZE);
+            if (i >= 0) {
+                ranges[i] = rangeLatency;
+                pages[i] = pageLatency;
+            }
+        }
+        report("intervalle", engine, ranges);
+        report("page", engine, pages);
+    }
+
+    @DisplayName("Ajouts et lectures : journal en ajout seul et base SQLite")
+    @Test
+    void benchmarkEngines() throws IOException {
+        MessageLog log = new MessageLog(dir.resolve("messages"), SEGMENT_BYTES);
+        DatabaseApi database = new DatabaseApi(dir.resolve("posts.db").toString(), StorageProfile.BALANCED);
+        try {
+            double logRate = append(log);
+            double databaseRate = append(database);
+            System.out.printf("%-8s %20s %12s%n", "stockage", "ajouts (posts/s)", "segments");
+            System.out.printf("%-8s %20.0f %12d%n", "journal", logRate, log.getSegmentCount());
+            System.out.printf("%-8s %20.0f %12s%n", "sqlite", databaseRate, "-");
+
+            System.out.printf("%-14s %-8s %12s %14s %14s%n", "lecture", "stockage", "lectures", "moyenne (µs)", "p99 (µs)");
+            read(log, "journal");
+            read(database, "sqlite");
+        } finally {
+            log.close();
+            database.close();
+        }
+    }
+}
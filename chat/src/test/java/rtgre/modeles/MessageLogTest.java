@@ -0,0 +1,312 @@
+package rtgre.modeles;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageLogTest {
+    @TempDir
+    Path dir;
+
+    /**
+     * 20 posts de #juniors (timestamps 1 à 20, les 4 derniers partageant le timestamp 20)
+     * et 5 posts entre riri et fifi (timestamps 1 à 5)
+     */
+    static List<Post> samplePosts() {
+        List<Post> posts = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            posts.add(new Post(UUID.randomUUID(), (i > 16) ? 20 : i, "riri", "#juniors", "message " + i));
+            if (i <= 5) {
+                posts.add(new Post(UUID.randomUUID(), i, "riri", "fifi", "privé " + i));
+            }
+        }
+        return posts;
+    }
+
+    /**
+     * Lit toutes les pages d'une conversation, de la plus récente à la plus ancienne
+     * @param log Le journal
+     * @param conversation La conversation
+     * @param limit La taille d'une page
+     * @return Les posts, dans l'ordre chronologique
+     */
+    static List<Post> allPages(MessageLog log, String conversation, int limit) {
+        List<Post> all = new ArrayList<>();
+        List<Post> page = log.getConversationPage(conversation, Long.MAX_VALUE, new UUID(-1L, -1L), limit);
+        while (!page.isEmpty()) {
+            all.addAll(0, page);
+            Post oldest = page.get(0);
+            page = log.getConversationPage(conversation, oldest.getTimestamp(), oldest.getId(), limit);
+        }
+        return all;
+    }
+
+    @DisplayName("01-Lecture")
+    @Nested
+    class ReadTest {
+
+        @Test
+        @DisplayName("Posts d'une conversation depuis un timestamp")
+        void testPostsSince() throws IOException {
+            MessageLog log = new MessageLog(dir, 1 << 20);
+            try {
+                assertTrue(log.savePosts(samplePosts()));
+                assertEquals(20, log.getConversationPosts("#juniors", Long.MIN_VALUE).size());
+                List<Post> recent = log.getConversationPosts("#juniors", 15);
+                assertEquals(6, recent.size());
+                assertEquals("message 15", recent.get(0).getBody());
+                assertEquals(3, log.getConversationPosts(Post.conversationKey("riri", "fifi"), 3).size());
+                assertTrue(log.getConversationPosts("#inconnu", 0).isEmpty());
+                assertEquals(List.of("#juniors", Post.conversationKey("riri", "fifi")), log.getConversations(),
+                        "Les conversations les plus récemment actives doivent être listées en premier");
+            } finally {
+                log.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Pages successives, posts de même timestamp départagés par leur identifiant")
+        void testPages() throws IOException {
+            MessageLog log = new MessageLog(dir, 1 << 20);
+            try {
+                assertTrue(log.savePosts(samplePosts()));
+                List<Post> all = allPages(log, "#juniors", 3);
+                assertEquals(20, all.size(), "Aucun post ne doit être perdu ni répété");
+                assertEquals(20, all.stream().distinct().count());
+                List<Post> sorted = new ArrayList<>(all);
+                sorted.sort(PostStore.ORDER);
+                assertEquals(sorted, all, "Les pages doivent se suivre dans l'ordre chronologique");
+                assertEquals(log.getConversationPosts("#juniors", Long.MIN_VALUE), all);
+            } finally {
+                log.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Un post modifié remplace l'original, un post supprimé n'est plus lu")
+        void testEditAndRemove() throws IOException {
+            MessageLog log = new MessageLog(dir, 1 << 20);
+            try {
+                List<Post> posts = samplePosts();
+                assertTrue(log.savePosts(posts));
+                Post original = posts.get(0);
+                Post edited = new Post(original.getId(), original.getTimestamp(), "riri", "#juniors", "modifié");
+                assertTrue(log.savePosts(List.of(edited)));
+                assertTrue(log.removePost(posts.get(2)));
+
+                List<Post> all = log.getConversationPosts("#juniors", Long.MIN_VALUE);
+                assertEquals(19, all.size());
+                assertEquals("modifié", all.get(0).getBody());
+                assertFalse(all.contains(posts.get(2)));
+                assertEquals(all, allPages(log, "#juniors", 4), "Les pages doivent lire la dernière version des posts");
+            } finally {
+                log.close();
+            }
+        }
+    }
+
+    @DisplayName("02-Segments")
+    @Nested
+    class SegmentTest {
+
+        @Test
+        @DisplayName("Changement de segment et réouverture")
+        void testRollAndReopen() throws IOException {
+            MessageLog log = new MessageLog(dir, 1024);
+            List<Post> posts = samplePosts();
+            try {
+                for (Post post : posts) {
+                    assertTrue(log.savePosts(List.of(post)));
+                }
+                assertTrue(log.getSegmentCount() > 1, "Les posts doivent être répartis sur plusieurs segments");
+            } finally {
+                log.close();
+            }
+            log = new MessageLog(dir, 1024);
+            try {
+                assertEquals(20, log.getConversationPosts("#juniors", Long.MIN_VALUE).size());
+                assertEquals(20, allPages(log, "#juniors", 3).size());
+                assertTrue(log.savePosts(List.of(new Post(UUID.randomUUID(), 30, "riri", "#juniors", "après"))));
+                assertEquals(1, log.getConversationPosts("#juniors", 30).size());
+            } finally {
+                log.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Le compactage supprime les versions remplacées et les posts supprimés, y compris après réouverture")
+        void testCompact() throws IOException {
+            MessageLog log = new MessageLog(dir, 1024, false);
+            try {
+                List<Post> posts = samplePosts();
+                assertTrue(log.savePosts(posts));
+                for (Post post : posts) {
+                    Post edited = new Post(post.getId(), post.getTimestamp(), post.getFrom(), post.getTo(), "modifié");
+                    assertTrue(log.savePosts(List.of(edited)));
+                }
+                for (Post post : posts.subList(0, 10)) {
+                    assertTrue(log.removePost(post));
+                }
+            } finally {
+                log.close();
+            }
+            log = new MessageLog(dir, 1024, false);
+            try {
+                List<Post> before = log.getConversationPosts("#juniors", Long.MIN_VALUE);
+                long bytes = log.getDiskBytes();
+                log.compact();
+                assertTrue(log.getCompactions() > 0);
+                assertTrue(log.getDiskBytes() < bytes, "Le journal compacté doit être plus petit");
+                assertEquals(before, log.getConversationPosts("#juniors", Long.MIN_VALUE));
+                assertEquals(before, allPages(log, "#juniors", 5));
+                assertTrue(before.stream().allMatch(p -> p.getBody().equals("modifié")));
+                try (var files = Files.list(dir)) {
+                    assertTrue(files.noneMatch(f -> f.toString().endsWith(".compact")), "Aucun fichier temporaire ne doit rester");
+                }
+            } finally {
+                log.close();
+            }
+            log = new MessageLog(dir, 1024);
+            try {
+                assertEquals(15, log.getConversationPosts("#juniors", Long.MIN_VALUE).size()
+                        + log.getConversationPosts(Post.conversationKey("riri", "fifi"), Long.MIN_VALUE).size());
+            } finally {
+                log.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Seuls les segments contenant des enregistrements périmés sont réécrits")
+        void testCompactDirtyOnly() throws IOException {
+            MessageLog log = new MessageLog(dir, 4096, false);
+            try {
+                List<Post> posts = new ArrayList<>();
+                for (int i = 0; i < 300; i++) {
+                    posts.add(new Post(UUID.randomUUID(), i, "riri", "#juniors", "message " + i));
+                }
+                assertTrue(log.savePosts(posts));
+                int sealed = log.getSegmentCount() - 1;
+                assertTrue(sealed > 2);
+                log.compact();
+                assertEquals(0, log.getCompactions(), "Un journal sans enregistrement périmé ne doit pas être réécrit");
+
+                List<Object> keys = fileKeys(sealed);
+                for (Post post : posts.subList(0, 5)) {
+                    assertTrue(log.savePosts(List.of(new Post(post.getId(), post.getTimestamp(), "riri", "#juniors", "modifié"))));
+                }
+                log.compact();
+                assertEquals(1, log.getCompactions());
+                List<Object> compacted = fileKeys(sealed);
+                assertNotEquals(keys.get(0), compacted.get(0), "Le premier segment doit être réécrit");
+                assertEquals(keys.subList(1, sealed), compacted.subList(1, sealed), "Les autres segments ne doivent pas être réécrits");
+
+                List<Post> all = log.getConversationPosts("#juniors", Long.MIN_VALUE);
+                assertEquals(300, all.size());
+                assertEquals("modifié", all.get(0).getBody());
+                assertEquals(all, allPages(log, "#juniors", 50));
+            } finally {
+                log.close();
+            }
+        }
+
+        /**
+         * Identifiants des fichiers des premiers segments
+         * @param count Le nombre de segments
+         * @return Les identifiants (inodes), dans l'ordre du journal
+         */
+        List<Object> fileKeys(int count) throws IOException {
+            List<Object> keys = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                keys.add(Files.readAttributes(dir.resolve(LogSegment.fileName(i)), BasicFileAttributes.class).fileKey());
+            }
+            return keys;
+        }
+
+        @Test
+        @DisplayName("Compactage en arrière-plan lors des changements de segment")
+        void testBackgroundCompaction() throws IOException, InterruptedException {
+            MessageLog log = new MessageLog(dir, 1024);
+            List<Post> posts = samplePosts();
+            try {
+                assertTrue(log.savePosts(posts));
+                for (Post post : posts) {
+                    assertTrue(log.savePosts(List.of(new Post(post.getId(), post.getTimestamp(), post.getFrom(), post.getTo(), "modifié"))));
+                }
+                for (int i = 0; i < 100 && log.getCompactions() == 0; i++) {
+                    assertTrue(log.savePosts(List.of(new Post(UUID.randomUUID(), 100 + i, "fifi", "#seniors", "remplissage"))));
+                    Thread.sleep(10);
+                }
+                assertTrue(log.getCompactions() > 0, "Le compactage doit être lancé par les changements de segment");
+                List<Post> all = log.getConversationPosts("#juniors", Long.MIN_VALUE);
+                assertEquals(20, all.size());
+                assertTrue(all.stream().allMatch(p -> p.getBody().equals("modifié")));
+            } finally {
+                log.close();
+            }
+            log = new MessageLog(dir, 1024, false);
+            try {
+                assertEquals(20, allPages(log, "#juniors", 3).size());
+            } finally {
+                log.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Un enregistrement tronqué en fin de journal est ignoré à la réouverture")
+        void testTornTail() throws IOException {
+            MessageLog log = new MessageLog(dir, 1 << 20);
+            try {
+                assertTrue(log.savePosts(samplePosts()));
+            } finally {
+                log.close();
+            }
+            Path segment = dir.resolve(LogSegment.fileName(0));
+            long size = Files.size(segment);
+            try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+                file.setLength(size - 10);
+            }
+            log = new MessageLog(dir, 1 << 20);
+            try {
+                assertEquals(19, log.getConversationPosts("#juniors", Long.MIN_VALUE).size(),
+                        "Seul le dernier enregistrement, tronqué, doit être perdu");
+                assertTrue(log.savePosts(List.of(new Post(UUID.randomUUID(), 30, "riri", "#juniors", "après"))));
+                assertEquals(20, log.getConversationPosts("#juniors", Long.MIN_VALUE).size());
+            } finally {
+                log.close();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("03-Fenêtre en mémoire adossée au journal")
+    void testPostStore() throws IOException {
+        MessageLog log = new MessageLog(dir, 4096);
+        try {
+            assertTrue(log.savePosts(samplePosts()));
+            PostStore store = new PostStore(new PostStore.Window(5, 0, Long.MAX_VALUE), log);
+            store.loadPosts(log);
+            assertEquals(5, store.size("#juniors"));
+            List<Post> all = new ArrayList<>();
+            PostStore.Page page = store.page("#juniors", null, null, 3);
+            all.addAll(0, page.posts());
+            while (page.hasMore()) {
+                Post oldest = page.posts().get(0);
+                page = store.page("#juniors", oldest.getTimestamp(), oldest.getId(), 3);
+                all.addAll(0, page.posts());
+            }
+            assertEquals(log.getConversationPosts("#juniors", Long.MIN_VALUE), all);
+        } finally {
+            log.close();
+        }
+    }
+}
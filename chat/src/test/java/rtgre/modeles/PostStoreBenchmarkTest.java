@@ -0,0 +1,142 @@
+package rtgre.modeles;
+
+import org.junit.jupiter.api.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Banc d'essai des modifications et suppressions de posts : latence d'une modification (remplacement
+ * d'un post par sa nouvelle version), d'une recherche et d'une suppression par identifiant,
+ * sur un historique d'un million de posts, comparée au parcours linéaire de la {@link PostVector}.
+ * Exécution : `mvn test -Pbench`
+ */
+@Tag("benchmark")
+class PostStoreBenchmarkTest {
+    /** Nombre de posts de l'historique */
+    static final int POSTS = 1_000_000;
+    /** Nombre de conversations entre lesquelles les posts sont répartis */
+    static final int CONVERSATIONS = 1000;
+    /** Nombre d'opérations mesurées sur le {@link PostStore} */
+    static final int OPERATIONS = 100_000;
+    /** Nombre d'opérations mesurées sur la {@link PostVector} */
+    static final int VECTOR_OPERATIONS = 50;
+    /** Nombre d'opérations d'échauffement, non mesurées */
+    static final int WARMUP = 20_000;
+
+    /** Les posts de l'historique */
+    static Post[] history;
+
+    @BeforeAll
+    static void createHistory() {
+        Random random = new Random(42);
+        history = new Post[POSTS];
+        long timestamp = 1_700_000_000_000L;
+        for (int i = 0; i < POSTS; i++) {
+            timestamp += random.nextInt(3);
+            history[i] = new Post(UUID.randomUUID(), timestamp, "user" + random.nextInt(50),
+                    "#salon" + random.nextInt(CONVERSATIONS), "message n°" + i);
+        }
+    }
+
+    @AfterAll
+    static void releaseHistory() {
+        history = null;
+    }
+
+    /**
+     * Nouvelle version d'un post de l'historique, de même identifiant et timestamp
+     * @param post Le post modifié
+     * @return La nouvelle version
+     */
+    static Post edit(Post post) {
+        return new Post(post.getId(), post.getTimestamp(), post.getFrom(), post.getTo(), post.getBody() + " (modifié)");
+    }
+
+    /**
+     * Affiche une ligne de résultats
+     * @param operation Le nom de l'opération
+     * @param structure Le nom de la structure
+     * @param latencies Les latences mesurées, en nanosecondes
+     */
+    static void report(String operation, String structure, long[] latencies) {
+        Arrays.sort(latencies);
+        double average = Arrays.stream(latencies).average().orElse(0) / 1000.0;
+        double p99 = latencies[(int) (latencies.length * 0.99)] / 1000.0;
+        System.out.printf("%-14s %-11s %12d %14.2f %14.2f%n", operation, structure, latencies.length, average, p99);
+    }
+
+    @DisplayName("Modification, recherche et suppression par identifiant sur 1M de posts")
+    @Test
+    void benchmarkEdits() {
+        Random random = new Random(7);
+        System.out.printf("%-14s %-11s %12s %14s %14s%n", "opération", "structure", "opérations", "moyenne (µs)", "p99 (µs)");
+
+        PostStore store = new PostStore();
+        for (Post post : history) {
+            store.add(post);
+        }
+        assertEquals(POSTS, store.size());
+        for (int i = 0; i < WARMUP; i++) {
+            Post post = history[random.nextInt(POSTS)];
+            store.add(edit(post));
+            store.getPostById(post.getId());
+        }
+
+        long[] latencies = new long[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            Post edited = edit(history[random.nextInt(POSTS)]);
+            long start = System.nanoTime();
+            assertNotNull(store.add(edited), "La version précédente doit être remplacée");
+            latencies[i] = System.nanoTime() - start;
+        }
+        report("modification", "PostStore", latencies);
+
+        latencies = new long[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            UUID id = history[random.nextInt(POSTS)].getId();
+            long start = System.nanoTime();
+            assertNotNull(store.getPostById(id));
+            latencies[i] = System.nanoTime() - start;
+        }
+        report("recherche", "PostStore", latencies);
+
+        latencies = new long[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            Post post = history[random.nextInt(POSTS)];
+            long start = System.nanoTime();
+            Post removed = store.remove(post.getId());
+            latencies[i] = System.nanoTime() - start;
+            if (removed != null) {
+                store.add(removed);
+            }
+        }
+        report("suppression", "PostStore", latencies);
+        assertEquals(POSTS, store.size());
+        store = null;
+
+        PostVector vector = new PostVector();
+        vector.addAll(Arrays.asList(history));
+        latencies = new long[VECTOR_OPERATIONS];
+        for (int i = 0; i < VECTOR_OPERATIONS; i++) {
+            Post edited = edit(history[random.nextInt(POSTS)]);
+            long start = System.nanoTime();
+            assertTrue(vector.removeIf(post -> post.equals(edited)));
+            vector.add(edited);
+            latencies[i] = System.nanoTime() - start;
+        }
+        report("modification", "PostVector", latencies);
+
+        latencies = new long[VECTOR_OPERATIONS];
+        for (int i = 0; i < VECTOR_OPERATIONS; i++) {
+            UUID id = history[random.nextInt(POSTS)].getId();
+            long start = System.nanoTime();
+            assertNotNull(vector.getPostById(id));
+            latencies[i] = System.nanoTime() - start;
+        }
+        report("recherche", "PostVector", latencies);
+    }
+}
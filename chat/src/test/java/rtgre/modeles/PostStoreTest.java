@@ -0,0 +1,228 @@
+package rtgre.modeles;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostStoreTest {
+
+    /**
+     * Stockage contenant 5 posts entre riri et fifi (timestamps 10 à 50) et un post dans #juniors
+     */
+    static PostStore sampleIndex() {
+        PostStore index = new PostStore();
+        for (int i = 1; i <= 5; i++) {
+            index.add(new Post(UUID.randomUUID(), i * 10L, (i % 2 == 0) ? "riri" : "fifi",
+                    (i % 2 == 0) ? "fifi" : "riri", "message " + i));
+        }
+        index.add(new Post(UUID.randomUUID(), 25, "riri", "#juniors", "salut"));
+        return index;
+    }
+
+    /**
+     * Messages des posts d'une page
+     */
+    static List<String> bodies(PostStore.Page page) {
+        return page.posts().stream().map(Post::getBody).toList();
+    }
+
+    @DisplayName("01-Pagination")
+    @Nested
+    class PageTest {
+
+        @Test
+        @DisplayName("Page la plus récente puis pages précédentes")
+        void testKeysetPages() {
+            PostStore index = sampleIndex();
+            String conversation = Post.conversationKey("riri", "fifi");
+            assertEquals(5, index.size(conversation));
+
+            PostStore.Page page = index.page(conversation, null, null, 2);
+            assertEquals(List.of("message 4", "message 5"), bodies(page), "Première page erronée");
+            assertTrue(page.hasMore());
+
+            Post oldest = page.posts().get(0);
+            page = index.page(conversation, oldest.getTimestamp(), oldest.getId(), 2);
+            assertEquals(List.of("message 2", "message 3"), bodies(page), "Deuxième page erronée");
+            assertTrue(page.hasMore());
+
+            oldest = page.posts().get(0);
+            page = index.page(conversation, oldest.getTimestamp(), oldest.getId(), 2);
+            assertEquals(List.of("message 1"), bodies(page), "Dernière page erronée");
+            assertFalse(page.hasMore());
+        }
+
+        @Test
+        @DisplayName("Posts de même timestamp départagés par leur identifiant")
+        void testSameTimestamp() {
+            PostStore index = new PostStore();
+            for (int i = 0; i < 4; i++) {
+                index.add(new Post(UUID.randomUUID(), 100, "riri", "#juniors", "message " + i));
+            }
+            PostStore.Page first = index.page("#juniors", null, null, 3);
+            Post oldest = first.posts().get(0);
+            PostStore.Page second = index.page("#juniors", oldest.getTimestamp(), oldest.getId(), 3);
+            assertEquals(3, first.posts().size());
+            assertEquals(1, second.posts().size(), "Aucun post ne doit être perdu ni répété");
+            assertFalse(first.posts().contains(second.posts().get(0)));
+        }
+
+        @Test
+        @DisplayName("Un post modifié remplace l'original")
+        void testReplace() {
+            PostStore index = sampleIndex();
+            Post post = index.page("#juniors", null, null, 1).posts().get(0);
+            index.add(new Post(post.getId(), post.getTimestamp(), "riri", "#juniors", "bonjour"));
+            assertEquals(List.of("bonjour"), bodies(index.page("#juniors", null, null, 10)));
+        }
+
+        @Test
+        @DisplayName("Conversation inconnue")
+        void testUnknown() {
+            PostStore.Page page = sampleIndex().page("#ducks", null, null, 10);
+            assertTrue(page.posts().isEmpty());
+            assertFalse(page.hasMore());
+        }
+    }
+
+    @DisplayName("02-Recherche")
+    @Nested
+    class LookupTest {
+
+        @Test
+        @DisplayName("Posts d'une conversation depuis un timestamp")
+        void testSince() {
+            PostStore store = sampleIndex();
+            String conversation = Post.conversationKey("fifi", "riri");
+            assertEquals(List.of("message 3", "message 4", "message 5"),
+                    store.getPostsSince(conversation, 20).stream().map(Post::getBody).toList(),
+                    "Seuls les posts strictement postérieurs doivent être renvoyés");
+            assertEquals(List.of("salut"), store.getPostsSince("#juniors", 0).stream().map(Post::getBody).toList());
+            assertTrue(store.getPostsSince("#ducks", 0).isEmpty());
+            assertThrows(UnsupportedOperationException.class,
+                    () -> store.getPostsSince(conversation, 0).pollFirst(), "La vue ne doit pas être modifiable");
+        }
+
+        @Test
+        @DisplayName("Recherche, remplacement et retrait par identifiant")
+        void testById() {
+            PostStore store = sampleIndex();
+            Post post = store.page("#juniors", null, null, 1).posts().get(0);
+            assertSame(post, store.getPostById(post.getId()));
+            Post edited = new Post(post.getId(), post.getTimestamp() + 100, "riri", "#juniors", "modifié");
+            store.add(edited);
+            assertEquals(6, store.size(), "Le post modifié doit remplacer l'original");
+            assertEquals(List.of(edited), List.copyOf(store.getPostsSince("#juniors", 0)));
+            assertSame(edited, store.remove(post.getId()));
+            assertNull(store.getPostById(post.getId()));
+            assertEquals(0, store.size("#juniors"));
+            assertNull(store.remove(post.getId()));
+        }
+    }
+
+    @DisplayName("03-Fenêtre en mémoire")
+    @Nested
+    class WindowTest {
+        @TempDir
+        Path dir;
+
+        /**
+         * Base contenant 20 posts de #juniors (timestamps 1 à 20, les 4 derniers partageant le timestamp 20)
+         */
+        DatabaseApi sampleDatabase() {
+            DatabaseApi database = new DatabaseApi(dir.resolve("posts.db").toString(), StorageProfile.BALANCED);
+            List<Post> posts = new ArrayList<>();
+            for (int i = 1; i <= 20; i++) {
+                posts.add(new Post(UUID.randomUUID(), (i > 16) ? 20 : i, "riri", "#juniors", "message " + i));
+            }
+            assertTrue(database.savePosts(posts));
+            return database;
+        }
+
+        @Test
+        @DisplayName("Seuls les posts récents restent en mémoire, l'historique complet reste lisible")
+        void testColdPages() {
+            DatabaseApi database = sampleDatabase();
+            try {
+                PostStore store = new PostStore(new PostStore.Window(5, 0, Long.MAX_VALUE), database);
+                store.loadPosts(database);
+                assertEquals(5, store.size("#juniors"), "Seuls les 5 posts les plus récents doivent rester en mémoire");
+                assertEquals(0, store.getEvictions(), "Seule la fenêtre doit être lue en base");
+
+                List<Post> all = new ArrayList<>();
+                PostStore.Page page = store.page("#juniors", null, null, 3);
+                all.addAll(0, page.posts());
+                while (page.hasMore()) {
+                    Post oldest = page.posts().get(0);
+                    page = store.page("#juniors", oldest.getTimestamp(), oldest.getId(), 3);
+                    all.addAll(0, page.posts());
+                }
+                assertEquals(20, all.size(), "Aucun post ne doit être perdu ni répété");
+                assertEquals(20, all.stream().distinct().count());
+                List<Post> sorted = new ArrayList<>(all);
+                sorted.sort(PostStore.ORDER);
+                assertEquals(sorted, all, "Les pages doivent se suivre dans l'ordre chronologique");
+                assertTrue(store.getColdReads() > 0);
+
+                assertEquals(20, store.getPostsSince("#juniors", 0).size(), "Les posts évincés doivent être lus en base");
+                assertEquals(all.subList(14, 20), List.copyOf(store.getPostsSince("#juniors", 14)),
+                        "Les posts évincés et ceux en mémoire doivent être fusionnés dans l'ordre");
+            } finally {
+                database.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Un post plus ancien que la fenêtre n'est pas gardé en mémoire")
+        void testOlderThanWindow() {
+            DatabaseApi database = sampleDatabase();
+            try {
+                PostStore store = new PostStore(new PostStore.Window(5, 0, Long.MAX_VALUE), database);
+                store.loadPosts(database);
+                assertNull(store.add(new Post(UUID.randomUUID(), 2, "riri", "#juniors", "ancien")));
+                assertEquals(5, store.size("#juniors"));
+                assertNull(store.add(new Post(UUID.randomUUID(), 100, "riri", "#juniors", "récent")));
+                assertEquals(5, store.size("#juniors"));
+                assertEquals("récent", store.page("#juniors", null, null, 1).posts().get(0).getBody());
+            } finally {
+                database.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Ancienneté et budget mémoire")
+        void testAgeAndBudget() {
+            DatabaseApi database = sampleDatabase();
+            try {
+                PostStore aged = new PostStore(new PostStore.Window(1000, 60_000, Long.MAX_VALUE), database);
+                aged.loadPosts(database);
+                assertEquals(0, aged.size(), "Les posts plus anciens qu'une minute doivent être évincés");
+                assertEquals(20, aged.page("#juniors", null, null, 50).posts().size());
+
+                long budget = 3 * PostStore.footprint(new Post(UUID.randomUUID(), 0, "riri", "#juniors", "message 10"));
+                PostStore bounded = new PostStore(new PostStore.Window(1000, 0, budget), database);
+                bounded.loadPosts(database);
+                assertTrue(bounded.getEstimatedBytes() <= budget, "Le budget mémoire doit être respecté");
+                assertEquals(3, bounded.size());
+                assertEquals(20, bounded.page("#juniors", null, null, 50).posts().size());
+            } finally {
+                database.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Fenêtre non bornée")
+        void testUnbounded() {
+            assertFalse(PostStore.Window.UNBOUNDED.isBounded());
+            assertTrue(new PostStore.Window(10, 0, Long.MAX_VALUE).isBounded());
+            assertThrows(IllegalArgumentException.class, () -> new PostStore(new PostStore.Window(10, 0, Long.MAX_VALUE), null));
+            assertThrows(IllegalArgumentException.class, () -> new PostStore.Window(0, 0, 0));
+        }
+    }
+}
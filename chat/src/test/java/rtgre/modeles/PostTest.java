@@ -237,5 +237,20 @@ class PostTest {
             Assertions.assertNotEquals(p2, p3, "Erreur de comparaison");
 
         }
+
+        @Test
+        @DisplayName("Hachage cohérent avec l'égalité")
+        void testHashCode() {
+            Post p1 = new Post("riri", "fifi", "salut");
+            Post p2 = new Post(p1.id, 17297794, "riri", "fifi", "bonjour");
+            Assertions.assertEquals(p1.hashCode(), p2.hashCode(), "Deux posts égaux doivent avoir le même hachage");
+            java.util.Set<Integer> hashes = new java.util.HashSet<>();
+            for (int i = 0; i < 100; i++) {
+                hashes.add(new Post("riri", "fifi", "salut").hashCode());
+            }
+            Assertions.assertTrue(hashes.size() > 90, "Le hachage doit dépendre de l'identifiant");
+            java.util.Set<Post> posts = new java.util.HashSet<>(java.util.List.of(p1));
+            Assertions.assertTrue(posts.contains(p2), "Un post modifié doit être retrouvé par son identifiant");
+        }
     }
 }
\ No newline at end of file
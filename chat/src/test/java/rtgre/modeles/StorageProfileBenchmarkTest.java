@@ -0,0 +1,85 @@
+package rtgre.modeles;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Banc d'essai des profils de stockage : débit d'insertion (post par post, puis par lots)
+ * et latence de relecture de l'historique.
+ * Exécution : `mvn test -Pbench`
+ */
+@Tag("benchmark")
+class StorageProfileBenchmarkTest {
+    /** Nombre de posts insérés un par un */
+    static final int SINGLE_INSERTS = 500;
+    /** Nombre de posts insérés par lots */
+    static final int BATCH_INSERTS = 20000;
+    /** Taille d'un lot */
+    static final int BATCH_SIZE = 256;
+    /** Nombre de relectures de l'historique */
+    static final int READS = 20;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Relit tout l'historique
+     * @return Le nombre de posts lus
+     */
+    static int readAll(DatabaseApi database) throws SQLException {
+        int count = 0;
+        try (ResultSet result = database.getPosts()) {
+            while (result.next()) {
+                result.getString("body");
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @DisplayName("Insertions et relectures selon le profil de stockage")
+    @Test
+    void benchmarkProfiles() throws SQLException {
+        System.out.printf("%-11s %20s %20s %20s%n", "profil", "insert (posts/s)", "lots (posts/s)", "relecture (ms)");
+        for (StorageProfile profile : StorageProfile.values()) {
+            DatabaseApi database = new DatabaseApi(dir.resolve(profile + ".db").toString(), profile);
+            try {
+                long start = System.nanoTime();
+                for (int i = 0; i < SINGLE_INSERTS; i++) {
+                    assertTrue(database.addPost(new Post("riri", "fifi", "message n°" + i)));
+                }
+                double singleRate = SINGLE_INSERTS / ((System.nanoTime() - start) / 1e9);
+
+                start = System.nanoTime();
+                List<Post> batch = new ArrayList<>(BATCH_SIZE);
+                for (int i = 0; i < BATCH_INSERTS; i++) {
+                    batch.add(new Post("riri", "#juniors", "message n°" + i));
+                    if (batch.size() == BATCH_SIZE || i == BATCH_INSERTS - 1) {
+                        assertTrue(database.savePosts(batch));
+                        batch.clear();
+                    }
+                }
+                double batchRate = BATCH_INSERTS / ((System.nanoTime() - start) / 1e9);
+
+                readAll(database);
+                start = System.nanoTime();
+                for (int i = 0; i < READS; i++) {
+                    assertEquals(SINGLE_INSERTS + BATCH_INSERTS, readAll(database));
+                }
+                double readMs = (System.nanoTime() - start) / 1e6 / READS;
+
+                System.out.printf("%-11s %20.0f %20.0f %20.2f%n", profile, singleRate, batchRate, readMs);
+            } finally {
+                database.close();
+            }
+        }
+    }
+}
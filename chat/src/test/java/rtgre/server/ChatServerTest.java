@@ -1,7 +1,601 @@
 package rtgre.server;
 
+import org.json.JSONObject;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import rtgre.modeles.Event;
+import rtgre.modeles.EventCodec;
+import rtgre.modeles.EventType;
+import rtgre.modeles.FrameReader;
+import rtgre.modeles.Framing;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class ChatServerTest {
 
-}
\ No newline at end of file
+    /**
+     * Démarre un serveur sur le port fourni avec le moteur choisi, la boucle d'attente tournant en tâche de fond
+     */
+    static ChatServer startServer(int port, ServerConfig config) throws IOException {
+        ChatServer server = new ChatServer(port, config);
+        Thread acceptLoop = new Thread(server::acceptClients);
+        acceptLoop.setDaemon(true);
+        acceptLoop.start();
+        return server;
+    }
+
+    /**
+     * Configuration de test utilisant le moteur fourni et deux threads d'entrées/sorties
+     */
+    static ServerConfig configWithEngine(ServerEngine engine) {
+        ServerConfig config = new ServerConfig();
+        config.setEngine(engine);
+        config.setIoThreads(2);
+        return config;
+    }
+
+    /**
+     * Client de test minimaliste envoyant et recevant des évènements JSON ligne par ligne
+     */
+    static class RawClient implements Closeable {
+        Socket sock;
+        PrintStream out;
+        BufferedReader in;
+
+        RawClient(int port) throws IOException {
+            sock = new Socket("localhost", port);
+            sock.setSoTimeout(5000);
+            out = new PrintStream(sock.getOutputStream(), true, StandardCharsets.UTF_8);
+            in = new BufferedReader(new InputStreamReader(sock.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        void send(Event event) {
+            out.println(event.toJson());
+        }
+
+        Event receive() throws IOException {
+            return Event.fromJson(in.readLine());
+        }
+
+        @Override
+        public void close() throws IOException {
+            sock.close();
+        }
+    }
+
+    @DisplayName("01-Moteurs réseau (ports 1820-1823)")
+    @Nested
+    class EngineTest {
+
+        @DisplayName("Liste des contacts après authentification")
+        @ParameterizedTest
+        @EnumSource(ServerEngine.class)
+        void testListContacts(ServerEngine engine) throws IOException {
+            int port = 1820 + engine.ordinal();
+            ChatServer server = startServer(port, configWithEngine(engine));
+            try (RawClient client = new RawClient(port)) {
+                client.send(new Event(Event.AUTH, new JSONObject().put("login", "riri")));
+                client.send(new Event(Event.LIST_CONTACTS, new JSONObject()));
+                Set<String> logins = new HashSet<>();
+                for (int i = 0; i < server.getContactMap().size(); i++) {
+                    Event event = client.receive();
+                    assertEquals(Event.CONT, event.getType(), "Type d'évènement erroné");
+                    logins.add(event.getContent().getString("login"));
+                }
+                assertEquals(server.getContactMap().keySet(), logins, "Liste des contacts erronée");
+                assertTrue(server.getContactMap().getContact("riri").isConnected(), "riri doit être connecté");
+                ConnectionStats stats = server.getConnectionStats();
+                assertTrue(stats.framesSent() >= logins.size(), "Trames émises non comptabilisées");
+                assertTrue(stats.flushes() >= 1 && stats.flushes() <= stats.framesSent(),
+                        "Chaque écriture doit émettre au moins une trame");
+                assertEquals(1, server.getEventStats().get(EventType.AUTH).count(), "Authentification non comptabilisée");
+            } finally {
+                server.close();
+            }
+        }
+
+        @DisplayName("Statistiques du moteur à threads virtuels")
+        @Test
+        void testVirtualStats() throws IOException, InterruptedException {
+            int port = 1823;
+            ChatServer server = startServer(port, configWithEngine(ServerEngine.VIRTUAL));
+            try (RawClient c1 = new RawClient(port); RawClient c2 = new RawClient(port); RawClient c3 = new RawClient(port)) {
+                ConnectionStats stats = server.getConnectionStats();
+                for (int i = 0; i < 50 && stats.receiveLoops() < 3; i++) {
+                    Thread.sleep(20);
+                    stats = server.getConnectionStats();
+                }
+                assertEquals(ServerEngine.VIRTUAL, stats.engine(), "Moteur erroné");
+                assertEquals(3, stats.connections(), "Nombre de connexions erroné");
+                assertEquals(3, stats.receiveLoops(), "Nombre de boucles de réception erroné");
+                assertTrue(stats.carrierThreads() >= 1, "Au moins un thread porteur doit être actif");
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    @DisplayName("02-Salons (port 1824)")
+    @Nested
+    class RoomTest {
+
+        @DisplayName("Diffusion d'un message aux seuls membres présents dans le salon")
+        @Test
+        void testRoomFanOut() throws IOException, InterruptedException {
+            int port = 1824;
+            ChatServer server = startServer(port, configWithEngine(ServerEngine.BLOCKING));
+            try (RawClient riri = new RawClient(port); RawClient fifi = new RawClient(port)) {
+                fifi.send(new Event(Event.AUTH, new JSONObject().put("login", "fifi")));
+                fifi.send(new Event(Event.JOIN, new JSONObject().put("room", "#juniors")));
+                riri.send(new Event(Event.AUTH, new JSONObject().put("login", "riri")));
+                riri.send(new Event(Event.JOIN, new JSONObject().put("room", "#juniors")));
+                for (int i = 0; i < 50 && server.getRoomMemberCount("#juniors") < 2; i++) {
+                    Thread.sleep(20);
+                }
+                assertEquals(2, server.getRoomMemberCount("#juniors"), "Nombre de membres erroné");
+
+                riri.send(new Event(Event.MESG, new JSONObject().put("to", "#juniors").put("body", "coin")));
+                Event event = fifi.receive();
+                while (!Event.POST.equals(event.getType())) {
+                    event = fifi.receive();
+                }
+                assertEquals("riri", event.getContent().getString("from"), "Expéditeur erroné");
+                assertEquals("coin", event.getContent().getString("body"), "Message erroné");
+
+                riri.send(new Event(Event.JOIN, new JSONObject().put("room", "")));
+                for (int i = 0; i < 50 && server.getRoomMemberCount("#juniors") > 1; i++) {
+                    Thread.sleep(20);
+                }
+                assertEquals(1, server.getRoomMemberCount("#juniors"), "riri doit avoir quitté le salon");
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    @DisplayName("03-Sessions multiples (ports 1825 et 1834)")
+    @Nested
+    class SessionTest {
+
+        @DisplayName("Un même login connecté depuis deux clients")
+        @Test
+        void testMultipleSessions() throws IOException, InterruptedException {
+            int port = 1825;
+            ChatServer server = startServer(port, configWithEngine(ServerEngine.BLOCKING));
+            try (RawClient riri1 = new RawClient(port); RawClient riri2 = new RawClient(port)) {
+                riri1.send(new Event(Event.AUTH, new JSONObject().put("login", "riri")));
+                riri2.send(new Event(Event.AUTH, new JSONObject().put("login", "riri")));
+                for (int i = 0; i < 50 && server.getSessionCount("riri") < 2; i++) {
+                    Thread.sleep(20);
+                }
+                assertEquals(2, server.getSessionCount("riri"), "Nombre de sessions erroné");
+
+                try (RawClient fifi = new RawClient(port)) {
+                    fifi.send(new Event(Event.AUTH, new JSONObject().put("login", "fifi")));
+                    for (RawClient riri : new RawClient[] {riri1, riri2}) {
+                        Event event = riri.receive();
+                        while (!"fifi".equals(event.getContent().optString("login"))) {
+                            event = riri.receive();
+                        }
+                        assertEquals(Event.CONT, event.getType(), "Chaque session doit être informée");
+                    }
+                }
+
+                riri2.close();
+                for (int i = 0; i < 50 && server.getSessionCount("riri") > 1; i++) {
+                    Thread.sleep(20);
+                }
+                assertEquals(1, server.getSessionCount("riri"), "Nombre de sessions erroné");
+                assertTrue(server.getContactMap().getContact("riri").isConnected(),
+                        "riri doit rester connecté tant qu'une session est ouverte");
+            } finally {
+                server.close();
+            }
+        }
+
+        @DisplayName("La liste des contacts n'est envoyée qu'à la session qui la demande")
+        @Test
+        void testListContactsToRequester() throws IOException, InterruptedException {
+            int port = 1834;
+            ChatServer server = startServer(port, configWithEngine(ServerEngine.BLOCKING));
+            try (RawClient riri1 = new RawClient(port); RawClient riri2 = new RawClient(port)) {
+                riri1.send(new Event(Event.AUTH, new JSONObject().put("login", "riri")));
+                riri2.send(new Event(Event.AUTH, new JSONObject().put("login", "riri")));
+                for (int i = 0; i < 50 && server.getSessionCount("riri") < 2; i++) {
+                    Thread.sleep(20);
+                }
+                Thread.sleep(100);
+                riri2.sock.setSoTimeout(200);
+                try {
+                    while (true) {
+                        riri2.receive();
+                    }
+                } catch (SocketTimeoutException e) {
+                    // plus rien en attente
+                }
+
+                riri1.send(new Event(Event.LIST_CONTACTS, new JSONObject()));
+                Set<String> logins = new HashSet<>();
+                while (logins.size() < server.getContactMap().size()) {
+                    Event event = riri1.receive();
+                    if (Event.CONT.equals(event.getType())) {
+                        logins.add(event.getContent().getString("login"));
+                    }
+                }
+                assertThrows(SocketTimeoutException.class, riri2::receive,
+                        "L'autre session ne doit pas recevoir la liste des contacts");
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    @DisplayName("04-Historique paginé (port 1826)")
+    @Nested
+    class HistoryTest {
+
+        @TempDir
+        Path dir;
+
+        @DisplayName("Pages successives de l'historique d'une conversation privée")
+        @Test
+        void testListPostPages() throws IOException {
+            int port = 1826;
+            ServerConfig config = configWithEngine(ServerEngine.BLOCKING);
+            config.setDbPath(dir.resolve("history.db").toString());
+            ChatServer server = startServer(port, config);
+            try (RawClient riri = new RawClient(port)) {
+                riri.send(new Event(Event.AUTH, new JSONObject().put("login", "riri")));
+                for (int i = 1; i <= 5; i++) {
+                    riri.send(new Event(Event.MESG, new JSONObject().put("to", "fifi").put("body", "message " + i)));
+                    assertEquals(Event.POST, riri.receive().getType(), "Le post doit être renvoyé à son émetteur");
+                }
+
+                Set<String> bodies = new HashSet<>();
+                JSONObject request = new JSONObject().put("select", "fifi").put("limit", 2);
+                int[] expectedCounts = {2, 2, 1};
+                for (int expected : expectedCounts) {
+                    riri.send(new Event(Event.LIST_POSTS, request));
+                    for (int i = 0; i < expected; i++) {
+                        Event post = riri.receive();
+                        assertEquals(Event.POST, post.getType(), "Type d'évènement erroné");
+                        bodies.add(post.getContent().getString("body"));
+                    }
+                    Event page = riri.receive();
+                    assertEquals(Event.PAGE, page.getType(), "La page doit se terminer par un évènement PAGE");
+                    assertEquals(expected, page.getContent().getInt("count"), "Taille de page erronée");
+                    assertEquals(expected == 2, page.getContent().getBoolean("hasMore"), "Indicateur hasMore erroné");
+                    request = new JSONObject().put("select", "fifi").put("limit", 2)
+                            .put("beforeTimestamp", page.getContent().getLong("beforeTimestamp"))
+                            .put("beforeId", page.getContent().getString("beforeId"));
+                }
+                assertEquals(5, bodies.size(), "Chaque post doit être reçu une fois");
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    @DisplayName("05-Évènements groupés (port 1827)")
+    @Nested
+    class BatchTest {
+
+        @TempDir
+        Path dir;
+
+        @DisplayName("Contacts et historique reçus en évènements BTCH")
+        @Test
+        void testBatchLists() throws IOException {
+            int port = 1827;
+            ServerConfig config = configWithEngine(ServerEngine.BLOCKING);
+            config.setDbPath(dir.resolve("batch.db").toString());
+            ChatServer server = startServer(port, config);
+            try (RawClient riri = new RawClient(port)) {
+                riri.send(new Event(Event.AUTH, new JSONObject().put("login", "riri")));
+                riri.send(new Event(Event.LIST_CONTACTS, new JSONObject().put("batch", true)));
+                Event contacts = riri.receive();
+                assertEquals(Event.BATCH, contacts.getType(), "Les contacts doivent être groupés");
+                assertEquals(Event.CONT, contacts.getContent().getString("type"), "Type des éléments erroné");
+                assertEquals(server.getContactMap().size(), contacts.getContent().getJSONArray("items").length(),
+                        "Nombre de contacts erroné");
+
+                for (int i = 1; i <= 3; i++) {
+                    riri.send(new Event(Event.MESG, new JSONObject().put("to", "fifi").put("body", "message " + i)));
+                    assertEquals(Event.POST, riri.receive().getType(), "Le post doit être renvoyé à son émetteur");
+                }
+                riri.send(new Event(Event.LIST_POSTS, new JSONObject().put("select", "fifi").put("limit", 10).put("batch", true)));
+                Event posts = riri.receive();
+                assertEquals(Event.BATCH, posts.getType(), "Les posts doivent être groupés");
+                assertEquals(Event.POST, posts.getContent().getString("type"), "Type des éléments erroné");
+                assertEquals(3, posts.getContent().getJSONArray("items").length(), "Nombre de posts erroné");
+                Event page = riri.receive();
+                assertEquals(Event.PAGE, page.getType(), "Le lot doit être suivi d'un évènement PAGE");
+                assertFalse(page.getContent().getBoolean("hasMore"), "Indicateur hasMore erroné");
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    @DisplayName("06-Découpage négocié (ports 1828-1830)")
+    @Nested
+    class FramingTest {
+
+        @DisplayName("Client à trames préfixées et client historique sur le même port")
+        @ParameterizedTest
+        @EnumSource(ServerEngine.class)
+        void testMixedFraming(ServerEngine engine) throws IOException {
+            int port = 1828 + engine.ordinal();
+            ChatServer server = startServer(port, configWithEngine(engine));
+            try (Socket sock = new Socket("localhost", port); RawClient fifi = new RawClient(port)) {
+                sock.setSoTimeout(5000);
+                OutputStream out = new BufferedOutputStream(sock.getOutputStream());
+                out.write(Framing.preamble());
+                new Event(Event.AUTH, new JSONObject().put("login", "riri")).toFrame().writeTo(out, Framing.LENGTH_PREFIXED);
+                out.flush();
+                InputStream in = new BufferedInputStream(sock.getInputStream());
+                assertTrue(Framing.isPreamble(in.readNBytes(Framing.preamble().length)), "Le préambule doit être renvoyé");
+                FrameReader riri = new FrameReader(in, Framing.LENGTH_PREFIXED);
+
+                fifi.send(new Event(Event.AUTH, new JSONObject().put("login", "fifi")));
+                Event cont = Event.fromJson(riri.readFrame());
+                assertEquals(Event.CONT, cont.getType(), "riri doit être informé de la connexion de fifi");
+                assertEquals("fifi", cont.getContent().getString("login"));
+
+                new Event(Event.MESG, new JSONObject().put("to", "fifi").put("body", "ligne 1\nligne 2"))
+                        .toFrame().writeTo(out, Framing.LENGTH_PREFIXED);
+                out.flush();
+                assertEquals("ligne 1\nligne 2", Event.fromJson(riri.readFrame()).getContent().getString("body"),
+                        "Le post doit être renvoyé à riri en trame préfixée");
+                Event post = fifi.receive();
+                while (post.getType().equals(Event.CONT)) {
+                    post = fifi.receive();
+                }
+                assertEquals(Event.POST, post.getType(), "fifi doit recevoir le post en ligne JSON");
+                assertEquals("ligne 1\nligne 2", post.getContent().getString("body"));
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    @DisplayName("07-Encodage binaire (ports 1831-1833)")
+    @Nested
+    class CodecTest {
+
+        @DisplayName("Client binaire et client historique sur le même port")
+        @ParameterizedTest
+        @EnumSource(ServerEngine.class)
+        void testBinaryCodec(ServerEngine engine) throws IOException {
+            int port = 1831 + engine.ordinal();
+            ChatServer server = startServer(port, configWithEngine(engine));
+            try (Socket sock = new Socket("localhost", port); RawClient fifi = new RawClient(port)) {
+                sock.setSoTimeout(5000);
+                OutputStream out = new BufferedOutputStream(sock.getOutputStream());
+                out.write(Framing.preamble(EventCodec.BINARY));
+                new Event(Event.AUTH, new JSONObject().put("login", "riri")).toFrame()
+                        .writeTo(out, Framing.LENGTH_PREFIXED, EventCodec.BINARY);
+                out.flush();
+                InputStream in = new BufferedInputStream(sock.getInputStream());
+                assertArrayEquals(Framing.preamble(EventCodec.BINARY), in.readNBytes(Framing.PREAMBLE_LENGTH),
+                        "Le préambule binaire doit être renvoyé");
+                FrameReader riri = new FrameReader(in, Framing.LENGTH_PREFIXED, EventCodec.BINARY);
+
+                fifi.send(new Event(Event.AUTH, new JSONObject().put("login", "fifi")));
+                Event cont = riri.readEvent();
+                assertEquals(Event.CONT, cont.getType(), "riri doit être informé de la connexion de fifi");
+                assertEquals("fifi", cont.getContent().getString("login"));
+
+                new Event(Event.MESG, new JSONObject().put("to", "fifi").put("body", "ligne 1\nligne 2 été"))
+                        .toFrame().writeTo(out, Framing.LENGTH_PREFIXED, EventCodec.BINARY);
+                out.flush();
+                Event echo = riri.readEvent();
+                assertEquals(Event.POST, echo.getType(), "Le post doit être renvoyé à riri en binaire");
+                assertEquals("ligne 1\nligne 2 été", echo.getContent().getString("body"));
+                Event post = fifi.receive();
+                while (post.getType().equals(Event.CONT)) {
+                    post = fifi.receive();
+                }
+                assertEquals(Event.POST, post.getType(), "fifi doit recevoir le post en ligne JSON");
+                assertEquals(echo.getContent().getString("id"), post.getContent().getString("id"));
+                assertEquals("ligne 1\nligne 2 été", post.getContent().getString("body"));
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    @DisplayName("08-Ligne trop longue (port 1835)")
+    @Nested
+    class OversizedLineTest {
+
+        @DisplayName("Le moteur non-bloquant ferme la connexion d'une ligne sans fin")
+        @Test
+        void testOversizedLine() throws IOException {
+            int port = 1835;
+            ChatServer server = startServer(port, configWithEngine(ServerEngine.NIO));
+            try (Socket sock = new Socket("localhost", port)) {
+                sock.setSoTimeout(5000);
+                OutputStream out = sock.getOutputStream();
+                byte[] chunk = new byte[64 * 1024];
+                Arrays.fill(chunk, (byte) 'a');
+                try {
+                    for (int sent = 0; sent <= Framing.MAX_FRAME_LENGTH; sent += chunk.length) {
+                        out.write(chunk);
+                    }
+                    out.flush();
+                    assertEquals(-1, sock.getInputStream().read(), "La connexion doit être fermée par le serveur");
+                } catch (SocketException e) {
+                    // Connexion réinitialisée par le serveur pendant l'envoi ou la lecture
+                }
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    @DisplayName("09-Trame binaire invalide (port 1836)")
+    @Nested
+    class MalformedFrameTest {
+
+        @DisplayName("Une trame invalide ne ferme que sa connexion, le worker continue de servir les autres")
+        @Test
+        void testMalformedFrame() throws IOException {
+            int port = 1836;
+            ChatServer server = startServer(port, configWithEngine(ServerEngine.NIO));
+            long nan = Double.doubleToLongBits(Double.NaN);
+            byte[] payload = {0, 'O', 1, 1, 'x', 'D', (byte) (nan >>> 56), (byte) (nan >>> 48), (byte) (nan >>> 40),
+                    (byte) (nan >>> 32), (byte) (nan >>> 24), (byte) (nan >>> 16), (byte) (nan >>> 8), (byte) nan};
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            frame.write(Framing.preamble(EventCodec.BINARY));
+            frame.write(new byte[] {0, 0, 0, (byte) payload.length});
+            frame.write(payload);
+            try {
+                for (int i = 0; i < 2; i++) {
+                    try (Socket sock = new Socket("localhost", port)) {
+                        sock.setSoTimeout(5000);
+                        sock.getOutputStream().write(frame.toByteArray());
+                        try {
+                            byte[] answer = sock.getInputStream().readAllBytes();
+                            assertTrue(answer.length <= Framing.PREAMBLE_LENGTH,
+                                    "La connexion doit être fermée sans autre réponse que le préambule");
+                        } catch (SocketException e) {
+                            // Connexion réinitialisée par le serveur
+                        }
+                    }
+                }
+                for (String login : new String[] {"riri", "fifi"}) {
+                    try (RawClient client = new RawClient(port)) {
+                        client.send(new Event(Event.AUTH, new JSONObject().put("login", login)));
+                        client.send(new Event(Event.LIST_CONTACTS, new JSONObject()));
+                        assertEquals(Event.CONT, client.receive().getType(), "Les workers doivent encore répondre");
+                    }
+                }
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    @DisplayName("10-Client qui ne lit pas (port 1837)")
+    @Nested
+    class SlowReaderTest {
+
+        @TempDir
+        Path dir;
+
+        @DisplayName("Les réponses du worker NIO à son propre client respectent la capacité de la file d'émission")
+        @Test
+        void testNeverReadingClient() throws IOException, InterruptedException {
+            int port = 1837;
+            ServerConfig config = configWithEngine(ServerEngine.NIO);
+            config.setDbPath(dir.resolve("slow.db").toString());
+            config.setOutboundCapacity(64);
+            ChatServer server = startServer(port, config);
+            try (RawClient riri = new RawClient(port)) {
+                riri.send(new Event(Event.AUTH, new JSONObject().put("login", "riri")));
+                String body = "x".repeat(8 * 1024);
+                for (int i = 0; i < 20; i++) {
+                    riri.send(new Event(Event.MESG, new JSONObject().put("to", "fifi").put("body", body)));
+                }
+                long deadline = System.currentTimeMillis() + 10_000;
+                while (server.getConnectionStats().connections() > 0 && System.currentTimeMillis() < deadline
+                        && !riri.out.checkError()) {
+                    riri.send(new Event(Event.LIST_POSTS, new JSONObject().put("select", "fifi").put("since", 0)));
+                    Thread.sleep(5);
+                }
+                for (int i = 0; i < 100 && server.getConnectionStats().connections() > 0; i++) {
+                    Thread.sleep(20);
+                }
+                assertEquals(0, server.getConnectionStats().connections(),
+                        "Le client qui ne lit pas doit être déconnecté une fois sa file pleine");
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    @DisplayName("11-Historique lu hors du sélecteur (port 1838)")
+    @Nested
+    class ColdHistoryTest {
+
+        @TempDir
+        Path dir;
+
+        @DisplayName("Pages lues en base par le moteur NIO, renvoyées dans l'ordre des demandes")
+        @Test
+        void testColdPagesInOrder() throws IOException {
+            int port = 1838;
+            ServerConfig config = configWithEngine(ServerEngine.NIO);
+            config.setDbPath(dir.resolve("cold.db").toString());
+            config.setHotPosts(1);
+            ChatServer server = startServer(port, config);
+            try (RawClient riri = new RawClient(port)) {
+                riri.send(new Event(Event.AUTH, new JSONObject().put("login", "riri")));
+                for (int i = 1; i <= 5; i++) {
+                    riri.send(new Event(Event.MESG, new JSONObject().put("to", "fifi").put("body", "message " + i)));
+                    assertEquals(Event.POST, riri.receive().getType(), "Le post doit être renvoyé à son émetteur");
+                }
+                riri.send(new Event(Event.LIST_POSTS, new JSONObject().put("select", "fifi").put("limit", 2)));
+                riri.send(new Event(Event.LIST_POSTS, new JSONObject().put("select", "fifi").put("limit", 5)));
+                for (int expected : new int[] {2, 5}) {
+                    for (int i = 5 - expected + 1; i <= 5; i++) {
+                        Event post = riri.receive();
+                        assertEquals(Event.POST, post.getType(), "Les réponses ne doivent pas s'entremêler");
+                        assertEquals("message " + i, post.getContent().getString("body"), "Ordre des posts erroné");
+                    }
+                    Event page = riri.receive();
+                    assertEquals(Event.PAGE, page.getType(), "La page doit se terminer par un évènement PAGE");
+                    assertEquals(expected, page.getContent().getInt("count"), "Taille de page erronée");
+                }
+                assertTrue(server.getPostStore().getColdReads() > 0, "Les pages doivent avoir été complétées en base");
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    @DisplayName("12-Grande trame reçue en morceaux (port 1839)")
+    @Nested
+    class LargeFrameTest {
+
+        @DisplayName("Le moteur NIO reconstitue une trame plus grande que son tampon de lecture")
+        @Test
+        void testLargeFrame() throws IOException {
+            int port = 1839;
+            ChatServer server = startServer(port, configWithEngine(ServerEngine.NIO));
+            try (Socket sock = new Socket("localhost", port)) {
+                sock.setSoTimeout(5000);
+                OutputStream out = new BufferedOutputStream(sock.getOutputStream());
+                out.write(Framing.preamble());
+                new Event(Event.AUTH, new JSONObject().put("login", "riri")).toFrame().writeTo(out, Framing.LENGTH_PREFIXED);
+                String body = "é".repeat(100_000);
+                new Event(Event.MESG, new JSONObject().put("to", "fifi").put("body", body))
+                        .toFrame().writeTo(out, Framing.LENGTH_PREFIXED);
+                out.flush();
+                InputStream in = new BufferedInputStream(sock.getInputStream());
+                assertTrue(Framing.isPreamble(in.readNBytes(Framing.PREAMBLE_LENGTH)), "Le préambule doit être renvoyé");
+                FrameReader riri = new FrameReader(in, Framing.LENGTH_PREFIXED);
+                Event post = Event.fromJson(riri.readFrame());
+                while (!post.getType().equals(Event.POST)) {
+                    post = Event.fromJson(riri.readFrame());
+                }
+                assertEquals(body, post.getContent().getString("body"), "Le post doit être reçu en entier");
+            } finally {
+                server.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package rtgre.server;
+
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.*;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Banc d'essai du registre des connexions face à l'ancienne liste `Vector` :
+ * des threads enchainent une connexion, quelques diffusions à tous les clients puis une déconnexion.
+ * Exécution : `mvn test -Pbench`
+ */
+@Tag("benchmark")
+class ConnectionRegistryBenchmarkTest {
+    /** Nombre de clients connectés en permanence */
+    static final int RESIDENTS = 1000;
+    /** Nombre de diffusions par tour */
+    static final int BROADCASTS = 10;
+    /** Nombre de tours (connexion, diffusions, déconnexion) par thread */
+    static final int ROUNDS = 2000;
+    /** Nombre de tours de chauffe par thread */
+    static final int WARMUP_ROUNDS = 500;
+
+    /**
+     * Exécute des tours sur chacun des threads et renvoie le débit mesuré
+     * @param threads Nombre de threads concurrents
+     * @param rounds Nombre de tours par thread
+     * @param round Un tour, paramétré par le numéro du client qui se connecte
+     * @return Le nombre de tours par seconde
+     */
+    static double run(int threads, int rounds, IntConsumer round) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CyclicBarrier start = new CyclicBarrier(threads + 1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int base = RESIDENTS + t * rounds;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < rounds; i++) {
+                        round.accept(base + i);
+                    }
+                    return null;
+                }));
+            }
+            start.await();
+            long begin = System.nanoTime();
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+            long elapsed = System.nanoTime() - begin;
+            return threads * (double) rounds / (elapsed / 1e9);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @DisplayName("Connexions et diffusions concurrentes : Vector contre ConnectionRegistry")
+    @Test
+    void benchmarkJoinsAndBroadcasts() throws Exception {
+        System.out.printf("%-8s %18s %18s%n", "threads", "Vector (tours/s)", "Registre (tours/s)");
+        for (int threads : new int[] {1, 4, 16}) {
+            Vector<Integer> vector = new Vector<>();
+            ConnectionRegistry<Integer> registry = new ConnectionRegistry<>();
+            for (int i = 0; i < RESIDENTS; i++) {
+                vector.add(i);
+                registry.add(i);
+            }
+            IntConsumer vectorRound = id -> {
+                vector.add(id);
+                long sum = 0;
+                for (int b = 0; b < BROADCASTS; b++) {
+                    synchronized (vector) {
+                        for (Integer client : vector) {
+                            sum += client;
+                        }
+                    }
+                }
+                assertTrue(sum > 0);
+                vector.remove(Integer.valueOf(id));
+            };
+            IntConsumer registryRound = id -> {
+                registry.add(id);
+                long sum = 0;
+                for (int b = 0; b < BROADCASTS; b++) {
+                    for (Integer client : registry) {
+                        sum += client;
+                    }
+                }
+                assertTrue(sum > 0);
+                registry.remove(id);
+            };
+            run(threads, WARMUP_ROUNDS, vectorRound);
+            run(threads, WARMUP_ROUNDS, registryRound);
+            double vectorRate = run(threads, ROUNDS, vectorRound);
+            double registryRate = run(threads, ROUNDS, registryRound);
+            System.out.printf("%-8d %18.0f %18.0f%n", threads, vectorRate, registryRate);
+
+            assertEquals(RESIDENTS, vector.size());
+            assertEquals(RESIDENTS, registry.size());
+        }
+    }
+}
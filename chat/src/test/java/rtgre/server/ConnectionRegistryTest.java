@@ -0,0 +1,73 @@
+package rtgre.server;
+
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionRegistryTest {
+
+    @DisplayName("01-Compteurs")
+    @Nested
+    class CounterTest {
+
+        @Test
+        @DisplayName("Ajout, retrait, pic et total")
+        void testCounters() {
+            ConnectionRegistry<String> registry = new ConnectionRegistry<>();
+            assertTrue(registry.add("a"));
+            assertTrue(registry.add("b"));
+            assertFalse(registry.add("a"), "Une connexion ne doit être enregistrée qu'une fois");
+            assertTrue(registry.remove("a"));
+            assertFalse(registry.remove("a"), "Une connexion ne doit être retirée qu'une fois");
+            assertTrue(registry.add("c"));
+            assertEquals(2, registry.size(), "Nombre de connexions erroné");
+            assertEquals(2, registry.getPeak(), "Pic de connexions erroné");
+            assertEquals(3, registry.getTotal(), "Nombre total de connexions erroné");
+            assertEquals(List.of("b", "c"), registry.snapshot().stream().sorted().toList(), "Instantané erroné");
+        }
+    }
+
+    @DisplayName("02-Accès concurrents")
+    @Nested
+    class ConcurrencyTest {
+
+        @Test
+        @DisplayName("Parcours pendant des ajouts et retraits concurrents")
+        void testIterationDuringChanges() throws Exception {
+            ConnectionRegistry<Integer> registry = new ConnectionRegistry<>();
+            for (int i = 0; i < 100; i++) {
+                registry.add(i);
+            }
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    int base = 1000 * (t + 1);
+                    futures.add(pool.submit(() -> {
+                        for (int i = 0; i < 2000; i++) {
+                            registry.add(base + i % 50);
+                            int seen = 0;
+                            for (Integer ignored : registry) {
+                                seen++;
+                            }
+                            assertTrue(seen >= 100, "Les connexions stables doivent toutes être parcourues");
+                            registry.remove(base + i % 50);
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get(10, TimeUnit.SECONDS);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            assertEquals(100, registry.size(), "Nombre de connexions erroné");
+            assertEquals(100, registry.snapshot().size(), "Instantané erroné");
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package rtgre.server;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import rtgre.modeles.DatabaseApi;
+import rtgre.modeles.Post;
+import rtgre.modeles.PostStore;
+import rtgre.modeles.StorageProfile;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryWarmerTest {
+    /** Fenêtre de 10 posts par conversation */
+    static final PostStore.Window WINDOW = new PostStore.Window(10, 0, Long.MAX_VALUE);
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Base contenant 30 posts dans chacun des salons #juniors et #ducks, et 5 posts entre riri et fifi
+     */
+    DatabaseApi sampleDatabase() {
+        DatabaseApi database = new DatabaseApi(dir.resolve("posts.db").toString(), StorageProfile.BALANCED);
+        List<Post> posts = new ArrayList<>();
+        for (int i = 1; i <= 30; i++) {
+            posts.add(new Post(UUID.randomUUID(), i, "riri", "#juniors", "juniors " + i));
+            posts.add(new Post(UUID.randomUUID(), 100 + i, "fifi", "#ducks", "ducks " + i));
+        }
+        for (int i = 1; i <= 5; i++) {
+            posts.add(new Post(UUID.randomUUID(), 50 + i, "riri", "fifi", "privé " + i));
+        }
+        assertTrue(database.savePosts(posts));
+        return database;
+    }
+
+    /**
+     * Attend la fin du chargement en arrière-plan
+     */
+    static WarmupStats awaitComplete(HistoryWarmer warmer) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!warmer.getStats().complete() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return warmer.getStats();
+    }
+
+    @Test
+    @DisplayName("Chargement synchrone de la fenêtre de chaque conversation")
+    void testRun() {
+        DatabaseApi database = sampleDatabase();
+        try {
+            PostStore store = new PostStore(WINDOW, database);
+            HistoryWarmer warmer = new HistoryWarmer(store, database);
+            warmer.run();
+            WarmupStats stats = warmer.getStats();
+            assertTrue(stats.complete());
+            assertEquals(3, stats.conversations());
+            assertEquals(3, stats.warmedConversations());
+            assertEquals(25, stats.posts(), "Seuls les 10 posts les plus récents de chaque salon doivent être lus");
+            assertEquals(1.0, stats.progress());
+            assertFalse(store.isWarming());
+            assertEquals(10, store.size("#ducks"));
+            assertEquals(5, store.size(Post.conversationKey("riri", "fifi")));
+            assertEquals("ducks 21", store.page("#ducks", null, null, 10).posts().get(0).getBody());
+            assertEquals(30, store.page("#ducks", null, null, 50).posts().size(), "Les posts plus anciens doivent être lus en base");
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Historique complet servi pendant et après le chargement en arrière-plan")
+    void testStart() throws InterruptedException {
+        DatabaseApi database = sampleDatabase();
+        try {
+            PostStore store = new PostStore(WINDOW, database);
+            HistoryWarmer warmer = new HistoryWarmer(store, database);
+            Post live = new Post(UUID.randomUUID(), 1000, "riri", "#juniors", "reçu au démarrage");
+            warmer.start();
+            store.add(live);
+            PostStore.Page page = store.page("#juniors", null, null, 50);
+            assertEquals(31, page.posts().size(), "Les posts pas encore chargés doivent être lus en base");
+            assertEquals(live, page.posts().get(30));
+            assertEquals(31, store.getPostsSince("#juniors", 0).size());
+
+            WarmupStats stats = awaitComplete(warmer);
+            assertTrue(stats.complete(), "Le chargement doit se terminer");
+            assertEquals(3, stats.warmedConversations());
+            assertFalse(store.isWarming());
+            assertEquals(10, store.size("#juniors"), "La fenêtre doit être respectée");
+            assertSame(live, store.getPostById(live.getId()), "Le post reçu au démarrage doit être conservé");
+            page = store.page("#juniors", null, null, 50);
+            assertEquals(31, page.posts().size());
+            assertFalse(page.hasMore());
+            assertEquals(5, store.getPostsSince(Post.conversationKey("fifi", "riri"), 0).size());
+        } finally {
+            database.close();
+        }
+    }
+}
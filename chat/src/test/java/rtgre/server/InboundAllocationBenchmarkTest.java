@@ -0,0 +1,203 @@
+package rtgre.server;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import rtgre.modeles.Event;
+import rtgre.modeles.FrameReader;
+import rtgre.modeles.Framing;
+import rtgre.modeles.JsonPullParser;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Banc d'essai des allocations du chemin de réception du serveur :
+ * <ul>
+ *     <li>lecture et décodage d'un flux de messages : {@link BufferedReader} puis arbre JSON (chemin historique)
+ *     contre {@link FrameReader} et lecteur JSON réutilisé par connexion ;</li>
+ *     <li>aller-retour d'un message dans un salon en régime établi, pour chaque moteur réseau, en sommant
+ *     les octets alloués par tous les threads de la JVM (client de mesure compris, réduit à des octets bruts).</li>
+ * </ul>
+ * Exécution : `mvn test -Pbench`
+ */
+@Tag("benchmark")
+class InboundAllocationBenchmarkTest {
+    /** Nombre de messages de chauffe */
+    static final int WARMUP = 50000;
+    /** Nombre de messages mesurés */
+    static final int ITERATIONS = 200000;
+    /** Nombre d'allers-retours de chauffe */
+    static final int ROUND_TRIP_WARMUP = 5000;
+    /** Nombre d'allers-retours mesurés */
+    static final int ROUND_TRIPS = 20000;
+
+    /** Résultat des décodages, consommé pour éviter l'élimination du code mesuré */
+    static long sink = 0;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Interface d'accès aux compteurs d'allocation de la JVM
+     * @return Le bean, ou `null` si la JVM ne sait pas mesurer les allocations
+     */
+    static com.sun.management.ThreadMXBean allocationBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            return bean;
+        }
+        return null;
+    }
+
+    /**
+     * Octets alloués par l'ensemble des threads vivants de la JVM
+     */
+    static long allThreadsAllocatedBytes(com.sun.management.ThreadMXBean bean) {
+        long total = 0;
+        for (long bytes : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            total += Math.max(bytes, 0);
+        }
+        return total;
+    }
+
+    /**
+     * Flux contenant `count` fois la ligne fournie
+     */
+    static byte[] lines(String line, int count) {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        byte[] stream = new byte[bytes.length * count];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(bytes, 0, stream, i * bytes.length, bytes.length);
+        }
+        return stream;
+    }
+
+    /**
+     * Chemin historique : lecture d'une ligne par {@link BufferedReader}, arbre JSON puis évènement typé
+     */
+    static long readTree(byte[] stream, int count) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(stream), StandardCharsets.UTF_8));
+        long n = 0;
+        for (int i = 0; i < count; i++) {
+            n += InboundEvent.of(Event.fromJson(reader.readLine())).hashCode();
+        }
+        return n;
+    }
+
+    /**
+     * Chemin allégé : lecture d'une ligne depuis le tampon du {@link FrameReader}, lecteur JSON réutilisé
+     */
+    static long readReused(byte[] stream, int count) throws IOException {
+        FrameReader reader = new FrameReader(new ByteArrayInputStream(stream), Framing.LINE);
+        JsonPullParser parser = new JsonPullParser(InboundEvent.SYMBOLS);
+        long n = 0;
+        for (int i = 0; i < count; i++) {
+            n += InboundEvent.parse(parser, reader.readFrame()).hashCode();
+        }
+        return n;
+    }
+
+    /**
+     * Interface fonctionnelle d'une lecture de flux
+     */
+    interface StreamReader {
+        long read(byte[] stream, int count) throws IOException;
+    }
+
+    /**
+     * Mesure les octets alloués par message par une lecture de flux
+     */
+    static double bytesPerMessage(com.sun.management.ThreadMXBean bean, StreamReader reader, String line) throws IOException {
+        sink += reader.read(lines(line, WARMUP), WARMUP);
+        byte[] stream = lines(line, ITERATIONS);
+        long before = bean.getCurrentThreadAllocatedBytes();
+        sink += reader.read(stream, ITERATIONS);
+        return (double) (bean.getCurrentThreadAllocatedBytes() - before) / ITERATIONS;
+    }
+
+    @DisplayName("Allocations du décodage d'un flux de messages")
+    @Test
+    void benchmarkDecoding() throws IOException {
+        com.sun.management.ThreadMXBean bean = allocationBean();
+        Assumptions.assumeTrue(bean != null, "Mesure des allocations non supportée");
+        String line = new Event(Event.MESG, new JSONObject().put("to", "#juniors")
+                .put("body", "Bonjour à tous, la réunion est décalée à 14h.")).toJson();
+        double tree = bytesPerMessage(bean, InboundAllocationBenchmarkTest::readTree, line);
+        double reused = bytesPerMessage(bean, InboundAllocationBenchmarkTest::readReused, line);
+        System.out.printf("%-28s %12s%n", "décodage MESG", "o/msg");
+        System.out.printf("%-28s %12.0f%n", "BufferedReader + arbre", tree);
+        System.out.printf("%-28s %12.0f%n", "FrameReader + lecteur", reused);
+        assertTrue(reused < tree, "Le chemin allégé doit allouer moins");
+        assertNotEquals(0, sink);
+    }
+
+    /**
+     * Lit une ligne sur le flux sans la décoder
+     * @return Le nombre d'octets de la ligne
+     */
+    static int skipLine(InputStream in) throws IOException {
+        int n = 0;
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                throw new EOFException();
+            }
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Mesure les allers-retours d'un message dans un salon avec le moteur fourni
+     * @return Le nombre d'octets alloués par aller-retour, tous threads confondus
+     */
+    double roundTrips(com.sun.management.ThreadMXBean bean, int port, ServerEngine engine) throws IOException {
+        ServerConfig config = ChatServerTest.configWithEngine(engine);
+        config.setDbPath(dir.resolve(engine + ".db").toString());
+        ChatServer server = ChatServerTest.startServer(port, config);
+        try (Socket sock = new Socket("localhost", port)) {
+            sock.setSoTimeout(5000);
+            sock.setTcpNoDelay(true);
+            OutputStream out = sock.getOutputStream();
+            InputStream in = new BufferedInputStream(sock.getInputStream());
+            out.write(lines(new Event(Event.AUTH, new JSONObject().put("login", "riri")).toJson(), 1));
+            out.write(lines(new Event(Event.JOIN, new JSONObject().put("room", "#juniors")).toJson(), 1));
+            byte[] message = lines(new Event(Event.MESG, new JSONObject().put("to", "#juniors")
+                    .put("body", "Bonjour à tous, la réunion est décalée à 14h.")).toJson(), 1);
+            for (int i = 0; i < ROUND_TRIP_WARMUP; i++) {
+                out.write(message);
+                sink += skipLine(in);
+            }
+            long before = allThreadsAllocatedBytes(bean);
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUND_TRIPS; i++) {
+                out.write(message);
+                sink += skipLine(in);
+            }
+            long elapsed = System.nanoTime() - start;
+            double bytes = (double) (allThreadsAllocatedBytes(bean) - before) / ROUND_TRIPS;
+            System.out.printf("%-10s %15.0f %15.0f%n", engine, ROUND_TRIPS / (elapsed / 1e9), bytes);
+            return bytes;
+        } finally {
+            server.close();
+        }
+    }
+
+    @DisplayName("Allocations d'un aller-retour MESG/POST en régime établi")
+    @Test
+    void benchmarkRoundTrip() throws IOException {
+        com.sun.management.ThreadMXBean bean = allocationBean();
+        Assumptions.assumeTrue(bean != null, "Mesure des allocations non supportée");
+        System.out.printf("%-10s %15s %15s%n", "moteur", "allers-retours/s", "o/aller-retour");
+        int port = 1850;
+        for (ServerEngine engine : new ServerEngine[] {ServerEngine.BLOCKING, ServerEngine.NIO}) {
+            assertTrue(roundTrips(bean, port++, engine) > 0, "Allocations non mesurées");
+        }
+        assertNotEquals(0, sink);
+    }
+}
@@ -0,0 +1,105 @@
+package rtgre.server;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.*;
+import rtgre.modeles.Event;
+import rtgre.modeles.Post;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Banc d'essai du décodage des évènements reçus par le serveur : arbre {@link JSONObject} puis accès aux champs
+ * (décodage historique) contre décodage en un seul passage en évènement typé ({@link InboundEvent#parse(String)}).
+ * Mesure le débit et les octets alloués par message.
+ * Exécution : `mvn test -Pbench`
+ */
+@Tag("benchmark")
+class InboundDecodingBenchmarkTest {
+    /** Nombre d'itérations de chauffe */
+    static final int WARMUP = 50000;
+    /** Nombre d'itérations mesurées */
+    static final int ITERATIONS = 200000;
+
+    /** Résultat des décodages, consommé pour éviter l'élimination du code mesuré */
+    static long sink = 0;
+
+    /**
+     * Décodage historique : arbre JSON, puis lecture des champs comme le faisaient les gestionnaires
+     * (le contenu d'un POST étant relu quatre fois par `Post.fromJson`)
+     */
+    static int decodeTree(String line) {
+        Event event = Event.fromJson(line);
+        JSONObject content = event.getContent();
+        return switch (event.getType()) {
+            case Event.MESG -> content.getString("to").length() + content.getString("body").length();
+            case Event.LIST_POSTS -> content.getString("select").length() + (int) content.getLong("since");
+            case Event.POST -> {
+                int n = 0;
+                for (int i = 0; i < 4; i++) {
+                    n += Post.fromJson(content).getBody().length();
+                }
+                yield n;
+            }
+            default -> content.length();
+        };
+    }
+
+    /**
+     * Décodage en un seul passage en évènement typé
+     */
+    static int decodeTyped(String line) {
+        return InboundEvent.parse(line).hashCode();
+    }
+
+    /**
+     * Octets alloués par le thread courant, si la JVM sait les mesurer
+     * @return Le nombre d'octets alloués, ou -1
+     */
+    static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean) {
+            return bean.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /**
+     * Mesure un décodage sur une ligne
+     * @return Le débit (messages/s) et les octets alloués par message
+     */
+    static double[] measure(ToIntFunction<String> decoder, String line) {
+        for (int i = 0; i < WARMUP; i++) {
+            sink += decoder.applyAsInt(line);
+        }
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += decoder.applyAsInt(line);
+        }
+        long elapsed = System.nanoTime() - start;
+        bytes = (bytes < 0) ? -1 : allocatedBytes() - bytes;
+        return new double[] {ITERATIONS / (elapsed / 1e9), (bytes < 0) ? -1 : (double) bytes / ITERATIONS};
+    }
+
+    @DisplayName("Décodage arbre JSON contre décodage typé en un passage")
+    @Test
+    void benchmarkDecoding() {
+        List<Event> events = List.of(
+                new Event(Event.MESG, new JSONObject().put("to", "#juniors").put("body", "Bonjour à tous, la réunion est décalée à 14h.")),
+                new Event(Event.LIST_POSTS, new JSONObject().put("select", "fifi").put("since", 0).put("batch", true)),
+                new Event(Event.POST, new Post("riri", "fifi", "Bonjour, message modifié").toJsonObject())
+        );
+        System.out.printf("%-5s %14s %14s %14s %14s%n", "évt", "arbre (msg/s)", "arbre (o/msg)", "typé (msg/s)", "typé (o/msg)");
+        for (Event event : events) {
+            String line = event.toJson();
+            double[] tree = measure(InboundDecodingBenchmarkTest::decodeTree, line);
+            double[] typed = measure(InboundDecodingBenchmarkTest::decodeTyped, line);
+            System.out.printf("%-5s %14.0f %14.0f %14.0f %14.0f%n", event.getType(), tree[0], tree[1], typed[0], typed[1]);
+            assertTrue(typed[1] <= tree[1], "Le décodage typé ne doit pas allouer davantage");
+        }
+        assertNotEquals(0, sink);
+    }
+}
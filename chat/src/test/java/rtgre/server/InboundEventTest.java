@@ -0,0 +1,81 @@
+package rtgre.server;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import rtgre.modeles.Event;
+import rtgre.modeles.EventCodec;
+import rtgre.modeles.Post;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InboundEventTest {
+
+    /**
+     * Évènements reçus par le serveur
+     */
+    static Stream<Event> events() {
+        Post post = new Post("riri", "fifi", "ligne 1\nligne 2 \"été\"");
+        post.setEditable(false);
+        return Stream.of(
+                new Event(Event.AUTH, new JSONObject().put("login", "riri")),
+                new Event(Event.QUIT, new JSONObject()),
+                new Event(Event.MESG, new JSONObject().put("to", "#juniors").put("body", "bonjour")),
+                new Event(Event.LIST_CONTACTS, new JSONObject().put("batch", true)),
+                new Event(Event.LIST_ROOMS, new JSONObject()),
+                new Event(Event.LIST_POSTS, new JSONObject().put("select", "fifi").put("since", 0)),
+                new Event(Event.LIST_POSTS, new JSONObject().put("select", "#juniors").put("limit", 50)
+                        .put("beforeTimestamp", 1234L).put("beforeId", UUID.randomUUID().toString()).put("batch", true)),
+                new Event(Event.JOIN, new JSONObject().put("room", "")),
+                new Event(Event.CONT, new JSONObject().put("login", "riri").put("connected", true).put("avatar", "iVBOR")),
+                new Event(Event.POST, post.toJsonObject()),
+                new Event("XTRA", new JSONObject().put("x", 1))
+        );
+    }
+
+    @DisplayName("01-Décodage typé")
+    @Nested
+    class DecodingTest {
+
+        @DisplayName("Une ligne JSON et l'évènement décodé donnent le même évènement typé")
+        @ParameterizedTest
+        @MethodSource("rtgre.server.InboundEventTest#events")
+        void testParseMatchesTree(Event event) throws IOException {
+            InboundEvent parsed = InboundEvent.parse(event.toJson());
+            assertEquals(InboundEvent.of(Event.fromJson(event.toJson())), parsed, "Décodage en un passage erroné");
+            byte[] bytes = EventCodec.BINARY.encode(event);
+            assertEquals(parsed, InboundEvent.of(EventCodec.BINARY.decode(bytes, 0, bytes.length)), "Décodage binaire erroné");
+        }
+
+        @DisplayName("Champs d'un message et d'une demande de page")
+        @Test
+        void testFields() {
+            assertEquals(new InboundEvent.Mesg("fifi", "a\nb"),
+                    InboundEvent.parse("{\"content\":{\"body\":\"a\\nb\",\"to\":\"fifi\",\"extra\":[1,{}]},\"type\":\"MESG\"}"),
+                    "Le contenu peut précéder le type");
+            InboundEvent.ListPosts list = (InboundEvent.ListPosts) InboundEvent.parse(
+                    "{\"type\":\"LSTP\",\"content\":{\"select\":\"fifi\",\"limit\":20,\"beforeTimestamp\":99}}");
+            assertEquals(20, list.limit());
+            assertEquals(99L, list.beforeTimestamp());
+            assertNull(list.beforeId());
+            assertNull(list.since());
+            assertFalse(list.batch());
+        }
+
+        @DisplayName("Évènements non conformes")
+        @Test
+        void testInvalid() {
+            assertThrows(JSONException.class, () -> InboundEvent.parse("fin"));
+            assertThrows(JSONException.class, () -> InboundEvent.parse("{\"type\":\"AUTH\"}"));
+            assertThrows(JSONException.class, () -> InboundEvent.parse("{\"type\":\"AUTH\",\"content\":{}}"));
+            assertThrows(JSONException.class, () -> InboundEvent.parse("{\"type\":\"MESG\",\"content\":{\"to\":\"fifi\",\"body\":3}}"));
+            assertThrows(JSONException.class, () -> InboundEvent.parse("{\"type\":\"LSTP\",\"content\":{\"select\":\"fifi\",\"beforeId\":\"x\"}}"));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package rtgre.server;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import rtgre.modeles.Event;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Banc d'essai du regroupement des écritures sur les sockets : relecture d'un historique de posts
+ * envoyés un par un (LSTP sans regroupement en évènements BTCH), en comptant les trames émises
+ * et les écritures sur la socket, pour chaque moteur réseau et avec ou sans délai de regroupement.
+ * Exécution : `mvn test -Pbench`
+ */
+@Tag("benchmark")
+class OutboundFlushBenchmarkTest {
+    /** Nombre de posts de l'historique */
+    static final int POSTS = 5000;
+    /** Nombre de relectures de l'historique */
+    static final int REPLAYS = 5;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Mesure la relecture de l'historique avec le moteur et le délai de regroupement fournis
+     * @return Le nombre de posts reçus par seconde
+     */
+    double replay(int port, ServerEngine engine, long flushMs, String label) throws IOException {
+        ServerConfig config = ChatServerTest.configWithEngine(engine);
+        config.setOutboundFlushMs(flushMs);
+        config.setDbPath(dir.resolve(label + ".db").toString());
+        ChatServer server = ChatServerTest.startServer(port, config);
+        try (ChatServerTest.RawClient riri = new ChatServerTest.RawClient(port)) {
+            riri.send(new Event(Event.AUTH, new JSONObject().put("login", "riri")));
+            for (int i = 0; i < POSTS; i++) {
+                riri.send(new Event(Event.MESG, new JSONObject().put("to", "fifi").put("body", "message n°" + i)));
+            }
+            for (int i = 0; i < POSTS; i++) {
+                assertEquals(Event.POST, riri.receive().getType());
+            }
+            ConnectionStats before = server.getConnectionStats();
+            long start = System.nanoTime();
+            for (int r = 0; r < REPLAYS; r++) {
+                riri.send(new Event(Event.LIST_POSTS, new JSONObject().put("select", "fifi").put("since", 0)));
+                for (int i = 0; i < POSTS; i++) {
+                    assertEquals(Event.POST, riri.receive().getType());
+                }
+            }
+            double rate = REPLAYS * POSTS / ((System.nanoTime() - start) / 1e9);
+            ConnectionStats after = server.getConnectionStats();
+            long frames = after.framesSent() - before.framesSent();
+            long flushes = after.flushes() - before.flushes();
+            System.out.printf("%-10s %10d %15.0f %12d %12d %15.1f%n",
+                    engine, flushMs, rate, frames, flushes, (flushes == 0) ? 0 : (double) frames / flushes);
+            return rate;
+        } finally {
+            server.close();
+        }
+    }
+
+    @DisplayName("Relecture d'un historique selon le moteur et le délai de regroupement")
+    @Test
+    void benchmarkReplay() throws IOException {
+        System.out.printf("%-10s %10s %15s %12s %12s %15s%n",
+                "moteur", "délai (ms)", "posts/s", "trames", "écritures", "trames/écriture");
+        int port = 1840;
+        for (ServerEngine engine : new ServerEngine[] {ServerEngine.BLOCKING, ServerEngine.NIO}) {
+            for (long flushMs : new long[] {0, 5}) {
+                replay(port++, engine, flushMs, engine + "-" + flushMs);
+            }
+        }
+    }
+}
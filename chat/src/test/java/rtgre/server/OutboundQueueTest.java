@@ -0,0 +1,91 @@
+package rtgre.server;
+
+import org.junit.jupiter.api.*;
+import rtgre.modeles.EventFrame;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundQueueTest {
+
+    @DisplayName("01-Politiques de débordement")
+    @Nested
+    class OverflowTest {
+
+        @Test
+        @DisplayName("DROP_OLDEST abandonne le plus ancien message")
+        void testDropOldest() {
+            OutboundQueue queue = new OutboundQueue(2, OverflowPolicy.DROP_OLDEST);
+            assertTrue(queue.offer(EventFrame.of("a")));
+            assertTrue(queue.offer(EventFrame.of("b")));
+            assertTrue(queue.offer(EventFrame.of("c")), "Le dépôt doit être accepté");
+            assertEquals(2, queue.size(), "Taille erronée");
+            assertEquals(1, queue.getDropped(), "Nombre de messages abandonnés erroné");
+            assertEquals("b", queue.poll().toString(), "Le plus ancien message doit avoir été abandonné");
+            assertEquals("c", queue.poll().toString());
+        }
+
+        @Test
+        @DisplayName("DISCONNECT refuse le message")
+        void testDisconnect() {
+            OutboundQueue queue = new OutboundQueue(1, OverflowPolicy.DISCONNECT);
+            assertTrue(queue.offer(EventFrame.of("a")));
+            assertFalse(queue.offer(EventFrame.of("b")), "Le dépôt doit être refusé");
+            assertEquals("a", queue.poll().toString());
+        }
+
+        @Test
+        @DisplayName("BLOCK attend qu'une place se libère")
+        void testBlock() throws InterruptedException {
+            OutboundQueue queue = new OutboundQueue(1, OverflowPolicy.BLOCK);
+            assertTrue(queue.offer(EventFrame.of("a")));
+            Thread consumer = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                    queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            consumer.start();
+            assertTrue(queue.offer(EventFrame.of("b")), "Le dépôt doit être accepté après libération d'une place");
+            consumer.join();
+            assertEquals("b", queue.poll().toString());
+        }
+
+        @Test
+        @DisplayName("BLOCK n'attend pas lorsque l'émetteur ne le peut pas")
+        void testBlockWithoutWait() {
+            OutboundQueue queue = new OutboundQueue(1, OverflowPolicy.BLOCK);
+            assertTrue(queue.offer(EventFrame.of("a"), false));
+            long start = System.nanoTime();
+            assertFalse(queue.offer(EventFrame.of("b"), false), "Le dépôt doit être refusé sans attendre");
+            assertTrue(System.nanoTime() - start < OutboundQueue.BLOCK_TIMEOUT_MS * 1_000_000 / 2);
+        }
+    }
+
+    @DisplayName("02-Fermeture")
+    @Nested
+    class CloseTest {
+
+        @Test
+        @DisplayName("La fermeture réveille le rédacteur")
+        void testCloseWakesTake() throws InterruptedException {
+            OutboundQueue queue = new OutboundQueue(4, OverflowPolicy.BLOCK);
+            EventFrame[] taken = {EventFrame.of("?")};
+            Thread writer = new Thread(() -> {
+                try {
+                    taken[0] = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            writer.start();
+            Thread.sleep(50);
+            queue.close();
+            writer.join(1000);
+            assertFalse(writer.isAlive(), "Le rédacteur doit s'arrêter");
+            assertNull(taken[0], "take doit renvoyer null après fermeture");
+            assertFalse(queue.offer(EventFrame.of("a")), "Une file fermée doit refuser les messages");
+        }
+    }
+}
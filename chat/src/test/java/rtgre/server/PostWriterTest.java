@@ -0,0 +1,214 @@
+package rtgre.server;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import rtgre.modeles.DatabaseApi;
+import rtgre.modeles.Post;
+import rtgre.modeles.PostRepository;
+import rtgre.modeles.PostStore;
+import rtgre.modeles.StorageProfile;
+
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostWriterTest {
+
+    /**
+     * Identifiants des posts présents en base parmi ceux fournis
+     */
+    static Set<String> savedIds(DatabaseApi database, Set<String> ids) throws SQLException {
+        Set<String> found = new HashSet<>();
+        ResultSet result = database.getPosts();
+        while (result.next()) {
+            if (ids.contains(result.getString("id"))) {
+                found.add(result.getString("id"));
+            }
+        }
+        result.close();
+        return found;
+    }
+
+    @DisplayName("01-Écriture par lots")
+    @Nested
+    class BatchTest {
+
+        @TempDir
+        Path dir;
+
+        @Test
+        @DisplayName("Tous les posts sont enregistrés à l'arrêt, en moins de transactions que de posts")
+        void testFlushOnClose() throws SQLException {
+            DatabaseApi database = new DatabaseApi(dir.resolve("posts.db").toString(), StorageProfile.BALANCED);
+            PostWriter writer = new PostWriter(database, 1000, 64, 50);
+            Set<String> ids = new HashSet<>();
+            for (int i = 0; i < 500; i++) {
+                Post post = new Post("riri", "fifi", "message n°" + i);
+                ids.add(post.getId().toString());
+                writer.save(post);
+            }
+            writer.close();
+            PersistenceStats stats = writer.getStats();
+            assertEquals(0, stats.queueDepth(), "La file doit être vide");
+            assertEquals(500, stats.saved(), "Nombre de posts enregistrés erroné");
+            assertTrue(stats.batches() < 500, "Les posts doivent être regroupés en lots");
+            assertEquals(ids, savedIds(database, ids), "Posts absents de la base");
+            database.close();
+        }
+
+        @Test
+        @DisplayName("Un post modifié remplace le post de même identifiant")
+        void testReplace() throws SQLException {
+            DatabaseApi database = new DatabaseApi(dir.resolve("posts.db").toString(), StorageProfile.BALANCED);
+            PostWriter writer = new PostWriter(database, 10, 10, 0);
+            Post post = new Post("riri", "fifi", "coin");
+            writer.save(post);
+            writer.save(new Post(post.getId(), post.getTimestamp(), "riri", "fifi", "coin coin"));
+            writer.close();
+            assertEquals(2, writer.getStats().saved(), "Nombre de posts enregistrés erroné");
+            ResultSet result = database.getPosts();
+            int count = 0;
+            String body = null;
+            while (result.next()) {
+                if (result.getString("id").equals(post.getId().toString())) {
+                    count++;
+                    body = result.getString("body");
+                }
+            }
+            result.close();
+            assertEquals(1, count, "Le post ne doit être présent qu'une fois");
+            assertEquals("coin coin", body, "Le post doit avoir été modifié");
+            database.close();
+        }
+    }
+
+    /**
+     * Stockage dont les écritures restent bloquées jusqu'à leur libération, pour observer les posts en attente
+     */
+    static class HeldRepository implements PostRepository {
+        final DatabaseApi database;
+        final CountDownLatch release = new CountDownLatch(1);
+
+        HeldRepository(DatabaseApi database) {
+            this.database = database;
+        }
+
+        @Override
+        public boolean savePosts(List<Post> posts) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return database.savePosts(posts);
+        }
+
+        @Override
+        public boolean removePost(Post post) {
+            return database.removePost(post);
+        }
+
+        @Override
+        public List<String> getConversations() {
+            return database.getConversations();
+        }
+
+        @Override
+        public List<Post> getConversationPosts(String conversation, long timestamp) {
+            return database.getConversationPosts(conversation, timestamp);
+        }
+
+        @Override
+        public List<Post> getConversationPage(String conversation, long beforeTimestamp, UUID beforeId, int limit) {
+            return database.getConversationPage(conversation, beforeTimestamp, beforeId, limit);
+        }
+
+        @Override
+        public void close() {
+            database.close();
+        }
+    }
+
+    @DisplayName("02-Lecture des posts en attente")
+    @Nested
+    class PendingTest {
+
+        @TempDir
+        Path dir;
+
+        @Test
+        @DisplayName("Un post évincé de la mémoire avant son enregistrement reste lisible")
+        void testEvictedBeforeSaved() {
+            HeldRepository database = new HeldRepository(
+                    new DatabaseApi(dir.resolve("posts.db").toString(), StorageProfile.BALANCED));
+            PostWriter writer = new PostWriter(database, 100, 10, 0);
+            PostStore store = new PostStore(new PostStore.Window(2, 0, Long.MAX_VALUE), writer);
+            List<Post> posts = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                Post post = new Post(UUID.randomUUID(), 1000 + i, "riri", "fifi", "message n°" + i);
+                posts.add(post);
+                writer.save(post);
+                store.add(post);
+            }
+            String conversation = posts.get(0).getConversation();
+            assertEquals(2, store.size(conversation), "Seuls les deux posts les plus récents doivent rester en mémoire");
+            assertEquals(posts, store.page(conversation, null, null, 10).posts(),
+                    "Les posts évincés non enregistrés doivent compléter la page");
+            assertEquals(posts.subList(1, 5), List.copyOf(store.getPostsSince(conversation, 1000)),
+                    "Les posts évincés non enregistrés doivent être relus");
+
+            Post edited = new Post(posts.get(1).getId(), 1001, "riri", "fifi", "modifié");
+            writer.save(edited);
+            assertEquals("modifié", store.page(conversation, null, null, 10).posts().get(1).getBody(),
+                    "La dernière version en attente doit remplacer la précédente");
+
+            database.release.countDown();
+            writer.close();
+            assertEquals(0, writer.getStats().queueDepth(), "La file doit être vide");
+            assertEquals(posts.size(), store.page(conversation, null, null, 10).posts().size(),
+                    "Les posts doivent être lus en base une fois enregistrés");
+            database.close();
+        }
+    }
+
+    @DisplayName("03-File pleine sur un thread de sélecteur")
+    @Nested
+    class SelectorThreadTest {
+
+        @TempDir
+        Path dir;
+
+        @Test
+        @DisplayName("Un thread de sélecteur n'attend pas une place et n'écrit pas lui-même en base")
+        void testFullQueueOnSelectorThread() throws InterruptedException {
+            HeldRepository database = new HeldRepository(
+                    new DatabaseApi(dir.resolve("posts.db").toString(), StorageProfile.BALANCED));
+            PostWriter writer = new PostWriter(database, 2, 1, 0);
+            long[] elapsed = new long[1];
+            Thread selector = new Thread(() -> {
+                NioServer.markSelectorThread();
+                long start = System.nanoTime();
+                for (int i = 0; i < 5; i++) {
+                    writer.save(new Post("riri", "fifi", "message n°" + i));
+                }
+                elapsed[0] = System.nanoTime() - start;
+            });
+            selector.start();
+            selector.join();
+            assertTrue(elapsed[0] < PostWriter.OFFER_TIMEOUT_MS * 1_000_000 / 2, "Le thread de sélecteur ne doit pas attendre");
+            assertTrue(writer.getStats().failed() >= 2, "Les posts refusés doivent être comptés comme des échecs");
+            database.release.countDown();
+            writer.close();
+            assertEquals(5, writer.getStats().saved() + writer.getStats().failed(), "Chaque post doit être compté une fois");
+            database.close();
+        }
+    }
+}